@@ -71,6 +71,8 @@ import com.vmware.safekeeping.core.command.results.support.StatisticResult;
 import com.vmware.safekeeping.core.control.IoFunction;
 import com.vmware.safekeeping.core.control.Vmbk;
 import com.vmware.safekeeping.core.control.info.InfoData;
+import com.vmware.safekeeping.core.control.target.BlockPackStore;
+import com.vmware.safekeeping.core.control.target.FileTarget;
 import com.vmware.safekeeping.core.control.target.ITarget;
 import com.vmware.safekeeping.core.exception.CoreResultActionException;
 import com.vmware.safekeeping.core.profile.GlobalFcoProfileCatalog;
@@ -96,6 +98,8 @@ public class ArchiveCommandInteractive extends AbstractArchiveCommand implements
 
     private static final String OPTION_COMMIT = "commit";
 
+    private static final String OPTION_PACK = "pack";
+
     private static final String OPTION_REMOVE = "remove";
 
     private static final String OPTION_HELP = "help";
@@ -164,6 +168,8 @@ public class ArchiveCommandInteractive extends AbstractArchiveCommand implements
                     }
                 } else if (getOptions().isStatus()) {
                     result = actionStatusInteractive(connetionManager);
+                } else if (getOptions().isPack()) {
+                    result = actionPackInteractive(connetionManager);
                 } else if (getOptions().getShow() != ArchiveObjects.NONE) {
                     result = actionShowInteractive(connetionManager);
                 } else {
@@ -251,6 +257,26 @@ public class ArchiveCommandInteractive extends AbstractArchiveCommand implements
         return result;
     }
 
+    private OperationStateList actionPackInteractive(final ConnectionManager connetionManager) {
+        final ITarget target = connetionManager.getRepositoryTarget();
+        if (!(target instanceof FileTarget)) {
+            return new OperationStateList(OperationState.FAILED,
+                    IoFunction.showWarning(this.logger, "Pack segments are supported only by file repositories"));
+        }
+        if (getOptions().isDryRun()) {
+            return new OperationStateList(OperationState.SKIPPED);
+        }
+        try {
+            final BlockPackStore.MigrationResult migration = ((FileTarget) target).migrateToPackStore();
+            IoFunction.showInfo(this.logger, "Repository %s blocks %s", target.getName(), migration.toString());
+            return new OperationStateList(
+                    (migration.getFailed() == 0) ? OperationState.SUCCESS : OperationState.FAILED);
+        } catch (final IOException e) {
+            Utility.logWarning(this.logger, e);
+            return new OperationStateList(OperationState.FAILED);
+        }
+    }
+
     private OperationStateList actionRemoveGenerationsInteractive(final ConnectionManager connetionManager)
             throws CoreResultActionException {
         final OperationStateList result = new OperationStateList();
@@ -573,9 +599,11 @@ public class ArchiveCommandInteractive extends AbstractArchiveCommand implements
         final OptionSpecBuilder optionHelp = this.parser.accepts(OPTION_HELP, "Help");
         final OptionSpecBuilder optionCheck = this.parser.accepts(OPTION_CHECK, "Validate the archives.");
         final OptionSpecBuilder optionCommit = this.parser.accepts(OPTION_COMMIT, "Force database data to commit.");
+        final OptionSpecBuilder optionPack = this.parser.accepts(OPTION_PACK,
+                "Move the blocks of a file repository to pack segments and compact the segments.");
 
         this.parser.mainOptions(optionList, optionCheck, optionShow, optionRemove, optionStatus, optionCommit,
-                optionHelp);
+                optionPack, optionHelp);
         optionShow.withRequiredArg().withValuesConvertedBy(RegexMatcher.regex(
                 "GlobalProfile|FcoProfile|GenerationProfile|VmxFile|ReportFile|Md5File|VappConfig|global|fco|generation|vmx|report|md5|vapp",
                 Pattern.CASE_INSENSITIVE))
@@ -586,13 +614,13 @@ public class ArchiveCommandInteractive extends AbstractArchiveCommand implements
                 .accepts(OPTION_GENERATION,
                         "Generations <id> to check " + "all - All generation " + "last  - Last generation (default) "
                                 + "succeded - Only succeded ones " + " failed - Only failed ones")
-                .availableUnless(optionHelp, optionCommit).withRequiredArg().describedAs("id");
+                .availableUnless(optionHelp, optionCommit, optionPack).withRequiredArg().describedAs("id");
 
         this.parser.accepts(OPTION_DRYRUN, "Do not do anything.").availableUnless(optionList, optionHelp, optionCommit);
         this.parser.accepts(OPTION_PROFILE, "Remove the First Class Object profile. Used with Remove")
                 .availableIf(optionRemove);
         this.parser.accepts(OPTION_ALL, "Operation to any Virtual Machines, Improved Virtual Disks, vApps repository.")
-                .availableUnless(optionHelp, optionCommit).withOptionalArg().ofType(FirstClassObjectType.class)
+                .availableUnless(optionHelp, optionCommit, optionPack).withOptionalArg().ofType(FirstClassObjectType.class)
                 .describedAs("vm|ivd|vapp");
 
         this.parser.accepts(OPTION_OLDER_THAN, "Filter by creation time means older than dd:hh:mm ")
@@ -633,8 +661,9 @@ public class ArchiveCommandInteractive extends AbstractArchiveCommand implements
                 OPTION_QUIET));
         comp.put("A15", stringsCompleter(OPTION_COMMIT));
         comp.put("A16", stringsCompleter(OPTION_SHOW, OPTION_GENERATION));
+        comp.put("A17", stringsCompleter(OPTION_PACK, OPTION_DRYRUN));
         comp.put("A99", stringsCompleter(OPTION_HELP));
-        return "|A1 A11*|A1 A12*|A1 A13*|A1 A14*|A1 A15?|A1 A16*|A1 A21*|A1 A99?";
+        return "|A1 A11*|A1 A12*|A1 A13*|A1 A14*|A1 A15?|A1 A16*|A1 A17*|A1 A21*|A1 A99?";
     }
 
     @Override
@@ -657,7 +686,8 @@ public class ArchiveCommandInteractive extends AbstractArchiveCommand implements
                 + "archive -status vm:testVM vm:vm-2313 vm:f9ad3050-d5a6-d107-d0d8-d305c4bc2330 -details\n\tShow the archive status with details of 3 different Vm.  1st by name. 2nd by Moref. 3rd by UUID\n\n"
                 + "archive -check -all\n\tValidate any archived object\n\n"
                 + "archive -remove vm:testVM -generation 2,4\n\tRemove TestVM generation 2 and 4 from the archive\n\n"
-                + "archive -remove vm:testVM -profile\n\tRemove TestVM Profile from the archive\n\n";
+                + "archive -remove vm:testVM -profile\n\tRemove TestVM Profile from the archive\n\n"
+                + "archive -pack\n\tMove the blocks of a file repository to pack segments\n\n";
     }
 
     @Override
@@ -687,6 +717,8 @@ public class ArchiveCommandInteractive extends AbstractArchiveCommand implements
             getOptions().setShow(ArchiveObjects.parse(optionSet.valueOf(OPTION_SHOW)));
         } else if (optionSet.has(OPTION_REMOVE)) {
             getOptions().setRemove(optionSet.has(OPTION_REMOVE));
+        } else if (optionSet.has(OPTION_PACK)) {
+            getOptions().setPack(true);
         } else {
             throw new ParsingException("No Action specified");
         }
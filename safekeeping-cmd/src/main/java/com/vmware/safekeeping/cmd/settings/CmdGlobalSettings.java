@@ -244,6 +244,17 @@ public final class CmdGlobalSettings extends CoreGlobalSettings {
         s3Option.setAccessKey(getTargetCustomValueAsString(AwsS3Target.TARGET_TYPE_NAME, AwsS3Target.S3_ACCESS_KEY));
         s3Option.setSecretKey(getTargetCustomValueAsString(AwsS3Target.TARGET_TYPE_NAME, AwsS3Target.S3_SECRET_KEY));
         s3Option.setBase64(useBase64Passwd());
+        s3Option.setEndpoint(getTargetCustomValueAsString(AwsS3Target.TARGET_TYPE_NAME, AwsS3Target.ENDPOINT));
+        s3Option.setPathStyleAccess(
+                getTargetCustomValueAsBool(AwsS3Target.TARGET_TYPE_NAME, AwsS3Target.PATH_STYLE_ACCESS));
+        s3Option.setMaxConnections(getTargetCustomValueAsInt(AwsS3Target.TARGET_TYPE_NAME,
+                AwsS3Target.MAX_CONNECTIONS, CoreAwsS3TargetOptions.DEFAULT_MAX_CONNECTIONS));
+        s3Option.setMaxConcurrentUploads(getTargetCustomValueAsInt(AwsS3Target.TARGET_TYPE_NAME,
+                AwsS3Target.MAX_CONCURRENT_UPLOADS, CoreAwsS3TargetOptions.DEFAULT_MAX_CONCURRENT_UPLOADS));
+        s3Option.setMultipartThreshold(getTargetCustomValueAsInt(AwsS3Target.TARGET_TYPE_NAME,
+                AwsS3Target.MULTIPART_THRESHOLD, (int) CoreAwsS3TargetOptions.DEFAULT_MULTIPART_THRESHOLD));
+        s3Option.setMultipartPartSize(getTargetCustomValueAsInt(AwsS3Target.TARGET_TYPE_NAME,
+                AwsS3Target.MULTIPART_PART_SIZE, (int) CoreAwsS3TargetOptions.DEFAULT_MULTIPART_PART_SIZE));
 
         s3Option.setActive(getTargetRepository().equals(AwsS3Target.TARGET_TYPE_NAME));
         s3Option.setName("Default_" + AwsS3Target.TARGET_TYPE_NAME);
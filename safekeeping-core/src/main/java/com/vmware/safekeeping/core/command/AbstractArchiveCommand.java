@@ -30,16 +30,21 @@ import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -79,6 +84,7 @@ import com.vmware.safekeeping.core.control.info.InfoData;
 import com.vmware.safekeeping.core.control.target.ITarget;
 import com.vmware.safekeeping.core.control.target.ITargetOperation;
 import com.vmware.safekeeping.core.core.BlockLocker;
+import com.vmware.safekeeping.core.core.Dedup;
 import com.vmware.safekeeping.core.core.ThreadsManager;
 import com.vmware.safekeeping.core.core.ThreadsManager.ThreadType;
 import com.vmware.safekeeping.core.exception.ArchiveException;
@@ -108,6 +114,11 @@ public abstract class AbstractArchiveCommand extends AbstractCommandWithOptions
 
     public static final int FAILED_GENERATIONS = -3;
 
+    /**
+     * Shared by the block tasks, ObjectMapper is thread safe once configured
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     protected CoreResultActionArchiveCheckGenerationWithDependencies actionCheckGenerations(final ITarget target,
             final CoreResultActionArchiveCheckGenerationWithDependencies resultAction,
             final AbstractCheckGenerationsInteractive interactive) throws CoreResultActionException {
@@ -716,15 +727,19 @@ public abstract class AbstractArchiveCommand extends AbstractCommandWithOptions
                 interactive.endLoadProfileGeneration();
                 for (final DiskProfile disk : profile.getDisks()) {
                     final StringBuilder errorReason = new StringBuilder();
-                    for (final Entry<Integer, SimpleBlockInfo> entry : disk.getDumps().entrySet()) {
+                    final Map<Integer, SimpleBlockInfo> dumps = profile.getDumps(disk.getDiskId());
+                    for (final Entry<Integer, SimpleBlockInfo> entry : dumps.entrySet()) {
                         /**
                          * start Section CheckFile
                          */
                         interactive.startCheckFile(entry.getKey());
-                        final ExBlockInfo block = new ExBlockInfo(entry.getValue(), disk.getDumps().size(),
+                        final ExBlockInfo block = new ExBlockInfo(entry.getValue(), dumps.size(),
                                 target.getDisksPath());
-                        if (target.doesKeyExist(block)) {
-                            final byte[] digest = target.getObjectMd5(block.getDataKey());
+                        if (block.isZero()) {
+                            // zero blocks have no object on the target
+                            resultAction.getMd5fileCheck().add(entry.getKey(), true);
+                        } else if (target.doesKeyExistOnTarget(block)) {
+                            final byte[] digest = target.getDumpMd5(block);
                             final String md5 = new String(digest);
                             resultAction.getMd5fileCheck().add(entry.getKey(), md5.equalsIgnoreCase(block.getMd5()));
                         } else {
@@ -979,27 +994,39 @@ public abstract class AbstractArchiveCommand extends AbstractCommandWithOptions
         final AtomicInteger updateKeys = new AtomicInteger(0);
         final ITargetOperation targetOperation = profile.getTargetOperation();
         try {
-            final List<Future<Boolean>> futures = new ArrayList<>();
+            final Map<String, ExBlockInfo> blocks = new LinkedHashMap<>();
             for (final DiskProfile disk : profile.getDisks()) {
-                for (final Entry<Integer, SimpleBlockInfo> entry : disk.getDumps().entrySet()) {
-                    final ExBlockInfo dumpFileInfo = new ExBlockInfo(entry.getValue(), disk.getDumps().size(),
-                            targetOperation.getDisksPath());
-                    final Future<Boolean> f = submit(dumpFileInfo, removedKeys, updateKeys, profile);
-                    futures.add(f);
+                final Map<Integer, SimpleBlockInfo> dumps = profile.getDumps(disk.getDiskId());
+                for (final Entry<Integer, SimpleBlockInfo> entry : dumps.entrySet()) {
+                    // zero blocks have no object on the target
+                    if (!entry.getValue().isZero()) {
+                        final ExBlockInfo dumpFileInfo = new ExBlockInfo(entry.getValue(), dumps.size(),
+                                targetOperation.getDisksPath());
+                        blocks.putIfAbsent(dumpFileInfo.getSha1(), dumpFileInfo);
+                    }
                 }
-
             }
-            // A) Await all runnable to be done (blocking)
-            for (final Future<Boolean> future : futures) {
-                // get will block until the future is done
-                final Boolean itemResult = future.get();
-                if (itemResult != null) {
-
-                    result &= itemResult;
-                } else {
-                    result = false;
+            final Collection<ExBlockInfo> unreferenced = new ConcurrentLinkedQueue<>();
+            if (profile.isReferenceStore()) {
+                for (final String digest : targetOperation.removeReferences(profile, blocks.keySet())) {
+                    unreferenced.add(blocks.get(digest));
                 }
+            } else {
+                // generation saved before the reference store
+                result &= waitFutures(removeLegacyReferences(blocks.values(), unreferenced, updateKeys, profile));
+                final Set<String> referenced = targetOperation.getReferencedDigests(
+                        unreferenced.stream().map(ExBlockInfo::getSha1).collect(Collectors.toList()));
+                unreferenced.removeIf(block -> referenced.contains(block.getSha1()));
+            }
+            final Collection<ExBlockInfo> removable = new ConcurrentLinkedQueue<>();
+            final List<Future<Boolean>> futures = new ArrayList<>();
+            for (final ExBlockInfo dumpFileInfo : unreferenced) {
+                futures.add(submit(dumpFileInfo, removable, profile));
             }
+            result &= waitFutures(futures);
+            // the keys are deleted in batches
+            result &= targetOperation.removeDumps(removable);
+            removedKeys.addAndGet(removable.size());
 
             if (this.logger.isLoggable(Level.INFO)) {
                 final String msg = String.format("Total Removed:%d Updated:%d", removedKeys.get(), updateKeys.get());
@@ -1009,8 +1036,8 @@ public abstract class AbstractArchiveCommand extends AbstractCommandWithOptions
 
             // Restore interrupted state...
             Thread.currentThread().interrupt();
-        } catch (final ExecutionException e) {
-
+        } catch (final ExecutionException | IOException e) {
+            result = false;
             Utility.logWarning(this.logger, e);
         }
 
@@ -1018,6 +1045,82 @@ public abstract class AbstractArchiveCommand extends AbstractCommandWithOptions
         return result;
     }
 
+    /**
+     * Remove the generation from the json of the blocks. Blocks left without
+     * generations are added to unreferenced
+     *
+     * @param blocks
+     * @param unreferenced
+     * @param updateKeys
+     * @param profile
+     * @return
+     */
+    private List<Future<Boolean>> removeLegacyReferences(final Collection<ExBlockInfo> blocks,
+            final Collection<ExBlockInfo> unreferenced, final AtomicInteger updateKeys,
+            final GenerationProfile profile) {
+        final List<Future<Boolean>> futures = new ArrayList<>();
+        for (final ExBlockInfo dumpFileInfo : blocks) {
+            futures.add(ThreadsManager.executor(ThreadType.ARCHIVE).submit(() -> {
+                final ITargetOperation targetOperation = profile.getTargetOperation();
+                final String json = dumpFileInfo.getJsonKey();
+                if (targetOperation.doesKeyExist(dumpFileInfo) && !BlockLocker.isBlockLocked(dumpFileInfo)) {
+                    try {
+                        BlockLocker.lockBlock(dumpFileInfo);
+                        final String entities = targetOperation.getObjectAsString(json);
+                        final String newEntities = targetOperation.removeDedupEntities(profile.getGenerationId(),
+                                entities);
+                        if (StringUtils.isEmpty(newEntities)) {
+                            // keep the descriptor: the block can be owned on the reference store
+                            final Dedup descriptor = OBJECT_MAPPER.readValue(entities, Dedup.class);
+                            descriptor.getDedupList().clear();
+                            targetOperation.putObject(json, OBJECT_MAPPER.writeValueAsString(descriptor));
+                            unreferenced.add(dumpFileInfo);
+                        } else {
+                            final int updated = updateKeys.incrementAndGet();
+                            if (this.logger.isLoggable(Level.FINE)) {
+                                final String msg = String.format("Updating %s (%d):%s ", json, updated, newEntities);
+                                this.logger.fine(msg);
+                            }
+                            targetOperation.putObject(json, newEntities);
+                        }
+                    } catch (final JsonProcessingException e) {
+                        Utility.logWarning(this.logger, e);
+                        dumpFileInfo.failed(profile.getFcoEntity(), e);
+                    } finally {
+                        BlockLocker.releaseBlock(dumpFileInfo);
+                    }
+                } else {
+                    final String msg = String.format("Key %s doesn't exist", json);
+                    dumpFileInfo.failed(profile.getFcoEntity(), msg);
+                }
+                return !Boolean.TRUE.equals(dumpFileInfo.isFailed());
+            }));
+        }
+        return futures;
+    }
+
+    /**
+     * Await all runnable to be done (blocking)
+     *
+     * @param futures
+     * @return true if every item succeeded
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    private boolean waitFutures(final List<Future<Boolean>> futures) throws InterruptedException, ExecutionException {
+        boolean result = true;
+        for (final Future<Boolean> future : futures) {
+            // get will block until the future is done
+            final Boolean itemResult = future.get();
+            if (itemResult != null) {
+                result &= itemResult;
+            } else {
+                result = false;
+            }
+        }
+        return result;
+    }
+
     void removeProfileGeneration(final CoreResultActionArchiveRemoveGeneration resultAction,
             final FcoGenerationsCatalog fcoProfile, final AbstractRemoveGenerationsInteractive interactive)
             throws CoreResultActionException {
@@ -1221,47 +1324,33 @@ public abstract class AbstractArchiveCommand extends AbstractCommandWithOptions
         return generationId;
     }
 
-    protected Future<Boolean> submit(final ExBlockInfo dumpFileInfo, final AtomicInteger removedKeys,
-            final AtomicInteger updateKeys, final GenerationProfile profile) {
+    /**
+     * Check if an unreferenced block can be removed
+     *
+     * @param dumpFileInfo
+     * @param removable    blocks to remove
+     * @param profile
+     * @return
+     */
+    protected Future<Boolean> submit(final ExBlockInfo dumpFileInfo, final Collection<ExBlockInfo> removable,
+            final GenerationProfile profile) {
         return ThreadsManager.executor(ThreadType.ARCHIVE).submit(() -> {
             final ITargetOperation targetOperation = profile.getTargetOperation();
-            final String json = dumpFileInfo.getJsonKey();
-            if (targetOperation.doesKeyExist(dumpFileInfo) && !BlockLocker.isBlockLocked(dumpFileInfo)) {
-                try {
-                    BlockLocker.lockBlock(dumpFileInfo);
-                    final String entities = targetOperation.getObjectAsString(json);
-                    final String newEntities = targetOperation.removeDedupEntities(profile.getGenerationId(), entities);
-                    if (StringUtils.isEmpty(newEntities)) {
-                        final int removed = removedKeys.incrementAndGet();
-                        final String data = dumpFileInfo.getDataKey();
-                        if (this.logger.isLoggable(Level.FINE)) {
-                            final String msg = String.format("Removing %s %s keys(%d) ", json, data, removed);
-                            this.logger.fine(msg);
-                        }
-                        targetOperation.removeDump(dumpFileInfo);
-                        if (this.logger.isLoggable(Level.INFO)) {
-                            final String msg = String.format("Removed %s %s keys(%d) ", json, data, removed);
-                            this.logger.info(msg);
-                        }
-                    } else {
-                        final int updated = updateKeys.incrementAndGet();
-                        if (this.logger.isLoggable(Level.FINE)) {
-                            final String msg = String.format("Updating %s (%d):%s ", json, updated, newEntities);
-                            this.logger.fine(msg);
-                        }
-                        targetOperation.putObject(json, newEntities);
+            try {
+                // a generation saved before the reference store can still own the block
+                if (!targetOperation.hasLegacyReferences(dumpFileInfo)) {
+                    removable.add(dumpFileInfo);
+                    if (this.logger.isLoggable(Level.FINE)) {
+                        final String msg = String.format("Removing %s %s", dumpFileInfo.getJsonKey(),
+                                dumpFileInfo.getDataKey());
+                        this.logger.fine(msg);
                     }
-                } catch (final JsonProcessingException e) {
-                    Utility.logWarning(this.logger, e);
-                    dumpFileInfo.failed(profile.getFcoEntity(), e);
-                } finally {
-                    BlockLocker.releaseBlock(dumpFileInfo);
                 }
-            } else {
-                final String msg = String.format("Key %s doesn't exist", json);
-                dumpFileInfo.failed(profile.getFcoEntity(), msg);
+            } catch (final IOException e) {
+                Utility.logWarning(this.logger, e);
+                dumpFileInfo.failed(profile.getFcoEntity(), e);
             }
-            return dumpFileInfo.isFailed();
+            return !Boolean.TRUE.equals(dumpFileInfo.isFailed());
         });
     }
 
@@ -44,6 +44,8 @@ public class CoreArchiveOptions extends CoreBackupRestoreCommonOptions {
 
     private boolean list;
 
+    private boolean pack;
+
     private Long dateTimeFilter;
 
     private boolean profile;
@@ -98,6 +100,13 @@ public class CoreArchiveOptions extends CoreBackupRestoreCommonOptions {
         return this.list;
     }
 
+    /**
+     * @return the pack
+     */
+    public boolean isPack() {
+        return this.pack;
+    }
+
     /**
      * @return the prettyJason
      */
@@ -154,6 +163,13 @@ public class CoreArchiveOptions extends CoreBackupRestoreCommonOptions {
         this.list = list;
     }
 
+    /**
+     * @param pack the pack to set
+     */
+    public void setPack(final boolean pack) {
+        this.pack = pack;
+    }
+
     /**
      * @param prettyJason the prettyJason to set
      */
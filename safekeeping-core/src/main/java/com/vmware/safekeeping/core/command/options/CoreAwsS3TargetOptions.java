@@ -31,6 +31,10 @@ import com.vmware.vapi.internal.util.StringUtils;
 
 public class CoreAwsS3TargetOptions extends AbstractCoreTargetRepository {
 	public static final String DEFAULT_REGION_NAME = "us-west-2";
+	public static final int DEFAULT_MAX_CONNECTIONS = 128;
+	public static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 32;
+	public static final long DEFAULT_MULTIPART_THRESHOLD = 16L * 1024 * 1024;
+	public static final long DEFAULT_MULTIPART_PART_SIZE = 8L * 1024 * 1024;
 
 	private String accessKey;
 
@@ -42,6 +46,30 @@ public class CoreAwsS3TargetOptions extends AbstractCoreTargetRepository {
 
 	private boolean base64;
 
+	/**
+	 * Custom endpoint of an S3 compatible object store. Null for AWS
+	 */
+	private String endpoint;
+
+	private boolean pathStyleAccess;
+
+	/**
+	 * Max HTTP connections of the S3 client
+	 */
+	private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+	/**
+	 * Max concurrent PUT requests (objects and parts) of the target
+	 */
+	private int maxConcurrentUploads = DEFAULT_MAX_CONCURRENT_UPLOADS;
+
+	/**
+	 * Objects larger than this size are uploaded in parts
+	 */
+	private long multipartThreshold = DEFAULT_MULTIPART_THRESHOLD;
+
+	private long multipartPartSize = DEFAULT_MULTIPART_PART_SIZE;
+
 	public String getAccessKey() {
 		return this.accessKey;
 	}
@@ -50,6 +78,26 @@ public class CoreAwsS3TargetOptions extends AbstractCoreTargetRepository {
 		return this.backet;
 	}
 
+	public String getEndpoint() {
+		return this.endpoint;
+	}
+
+	public int getMaxConcurrentUploads() {
+		return this.maxConcurrentUploads;
+	}
+
+	public int getMaxConnections() {
+		return this.maxConnections;
+	}
+
+	public long getMultipartPartSize() {
+		return this.multipartPartSize;
+	}
+
+	public long getMultipartThreshold() {
+		return this.multipartThreshold;
+	}
+
 	public String getRegion() {
 		return this.region;
 	}
@@ -62,6 +110,10 @@ public class CoreAwsS3TargetOptions extends AbstractCoreTargetRepository {
 		return this.base64;
 	}
 
+	public boolean isPathStyleAccess() {
+		return this.pathStyleAccess;
+	}
+
 	public void setAccessKey(final String accessKey) {
 		this.accessKey = accessKey;
 	}
@@ -90,6 +142,35 @@ public class CoreAwsS3TargetOptions extends AbstractCoreTargetRepository {
 		this.base64 = base64;
 	}
 
+	public void setEndpoint(final String endpoint) {
+		if (StringUtils.isEmpty(endpoint)) {
+			this.endpoint = null;
+		} else {
+			this.endpoint = endpoint;
+		}
+	}
+
+	public void setMaxConcurrentUploads(final int maxConcurrentUploads) {
+		this.maxConcurrentUploads = (maxConcurrentUploads > 0) ? maxConcurrentUploads
+				: DEFAULT_MAX_CONCURRENT_UPLOADS;
+	}
+
+	public void setMaxConnections(final int maxConnections) {
+		this.maxConnections = (maxConnections > 0) ? maxConnections : DEFAULT_MAX_CONNECTIONS;
+	}
+
+	public void setMultipartPartSize(final long multipartPartSize) {
+		this.multipartPartSize = (multipartPartSize > 0) ? multipartPartSize : DEFAULT_MULTIPART_PART_SIZE;
+	}
+
+	public void setMultipartThreshold(final long multipartThreshold) {
+		this.multipartThreshold = (multipartThreshold > 0) ? multipartThreshold : DEFAULT_MULTIPART_THRESHOLD;
+	}
+
+	public void setPathStyleAccess(final boolean pathStyleAccess) {
+		this.pathStyleAccess = pathStyleAccess;
+	}
+
 	public void setRegion(final String region) {
 		if (StringUtils.isEmpty(region)) {
 			this.region = DEFAULT_REGION_NAME;
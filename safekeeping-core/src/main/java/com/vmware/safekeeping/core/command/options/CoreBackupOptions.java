@@ -29,6 +29,7 @@ package com.vmware.safekeeping.core.command.options;
 import com.vmware.safekeeping.common.Utility;
 import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
 import com.vmware.safekeeping.core.type.enums.BackupMode;
+import com.vmware.safekeeping.core.type.enums.CompressionCodec;
 import com.vmware.safekeeping.core.type.enums.QueryBlocksOption;
 
 public class CoreBackupOptions extends AbstractCoreBackupOptions {
@@ -40,6 +41,10 @@ public class CoreBackupOptions extends AbstractCoreBackupOptions {
 
     private Boolean compression;
 
+    private CompressionCodec compressionCodec;
+
+    private int compressionLevel;
+
     private Boolean cipher;
 
     private int maxBlockSize;
@@ -53,6 +58,8 @@ public class CoreBackupOptions extends AbstractCoreBackupOptions {
      */
     public CoreBackupOptions() {
         this.compression = CoreGlobalSettings.isCompressionEnable();
+        this.compressionCodec = CoreGlobalSettings.getCompressionCodec();
+        this.compressionLevel = CoreGlobalSettings.getCompressionLevel();
         this.cipher = CoreGlobalSettings.isCipherEnable();
         this.maxBlockSize = (CoreGlobalSettings.getMaxBlockSize() * (Utility.ONE_MBYTES));
         this.queryBlocksOption = CoreGlobalSettings.useQueryAllocatedBlocks() ? QueryBlocksOption.ALLOCATED
@@ -72,6 +79,23 @@ public class CoreBackupOptions extends AbstractCoreBackupOptions {
         this.requestedBackupMode = BackupMode.FULL;
     }
 
+    /**
+     * @return the codec used to compress the blocks
+     */
+    public CompressionCodec getCompressionCodec() {
+        if (this.compressionCodec == null) {
+            this.compressionCodec = CoreGlobalSettings.getCompressionCodec();
+        }
+        return this.compressionCodec;
+    }
+
+    /**
+     * @return the codec level, 0 for the codec default
+     */
+    public int getCompressionLevel() {
+        return this.compressionLevel;
+    }
+
     /**
      * @return the maxBlockSize
      */
@@ -112,6 +136,20 @@ public class CoreBackupOptions extends AbstractCoreBackupOptions {
         this.compression = compression;
     }
 
+    /**
+     * @param compressionCodec the compressionCodec to set
+     */
+    public void setCompressionCodec(final CompressionCodec compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
+    /**
+     * @param compressionLevel the compressionLevel to set
+     */
+    public void setCompressionLevel(final int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
     /**
      * @param maxBlockSize the maxBlockSize to set
      */
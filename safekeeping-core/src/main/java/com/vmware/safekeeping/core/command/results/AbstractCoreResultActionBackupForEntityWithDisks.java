@@ -29,6 +29,7 @@ package com.vmware.safekeeping.core.command.results;
 import com.vmware.safekeeping.common.AtomicEnum;
 import com.vmware.safekeeping.core.command.interactive.AbstractBackupInteractive;
 import com.vmware.safekeeping.core.command.options.CoreBackupOptions;
+import com.vmware.safekeeping.core.type.enums.CompressionCodec;
 import com.vmware.safekeeping.core.type.enums.phase.BackupPhases;
 import com.vmware.safekeeping.core.type.fco.IFirstClassObject;
 
@@ -41,6 +42,8 @@ public abstract class AbstractCoreResultActionBackupForEntityWithDisks extends A
     private static final long serialVersionUID = 8567373089754405344L;
     private final AtomicEnum<BackupPhases> phase;
     private boolean compressed;
+    private CompressionCodec compressionCodec;
+    private int compressionLevel;
     private volatile int numberOfDisk;
     private boolean cipher;
 
@@ -48,10 +51,26 @@ public abstract class AbstractCoreResultActionBackupForEntityWithDisks extends A
             final CoreBackupOptions options) {
         super(fco, options);
         setCompressed(options.isCompression());
+        setCompressionCodec(options.getCompressionCodec());
+        setCompressionLevel(options.getCompressionLevel());
         setCipher(options.isCipher());
         this.phase = new AtomicEnum<>(BackupPhases.NONE);
     }
 
+    /**
+     * @return the compressionCodec
+     */
+    public CompressionCodec getCompressionCodec() {
+        return this.compressionCodec;
+    }
+
+    /**
+     * @return the compressionLevel
+     */
+    public int getCompressionLevel() {
+        return this.compressionLevel;
+    }
+
     @Override
     public AbstractBackupInteractive getInteractive() {
         return (AbstractBackupInteractive) this.interactive;
@@ -97,6 +116,20 @@ public abstract class AbstractCoreResultActionBackupForEntityWithDisks extends A
         this.compressed = compressed;
     }
 
+    /**
+     * @param compressionCodec the compressionCodec to set
+     */
+    public void setCompressionCodec(final CompressionCodec compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
+    /**
+     * @param compressionLevel the compressionLevel to set
+     */
+    public void setCompressionLevel(final int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
     /**
      * @param numberOfDisk the numberOfDisk to set
      */
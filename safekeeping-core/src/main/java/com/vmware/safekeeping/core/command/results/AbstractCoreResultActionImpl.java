@@ -35,6 +35,7 @@ import org.apache.commons.lang.StringUtils;
 import com.vmware.safekeeping.common.AtomicFloat;
 import com.vmware.safekeeping.common.DateUtility;
 import com.vmware.safekeeping.common.Utility;
+import com.vmware.safekeeping.core.command.results.list.ResultActionUpdates;
 import com.vmware.safekeeping.core.command.results.list.ResultActionsList;
 import com.vmware.safekeeping.core.command.results.support.OperationState;
 import com.vmware.safekeeping.core.exception.CoreResultActionException;
@@ -121,7 +122,7 @@ public abstract class AbstractCoreResultActionImpl implements ICoreResultAction
             this.state = OperationState.ABORTED;
             setReason(reason);
             setEndTime();
-            this.done = true;
+            markDone();
             if (this.parent != null) {
                 this.parent.aborted(reason);
             }
@@ -141,7 +142,7 @@ public abstract class AbstractCoreResultActionImpl implements ICoreResultAction
                 } else if (isQueuing()) {
                     skip();
                 } else {
-                    this.done = true;
+                    markDone();
                 }
             } else {
                 if (logger.isLoggable(Level.FINER)) {
@@ -152,6 +153,7 @@ public abstract class AbstractCoreResultActionImpl implements ICoreResultAction
             Utility.logWarning(logger, e);
         } finally {
             this.progressPercent.set(Utility.ONE_HUNDRED_PER_CENT);
+            ResultActionUpdates.progressChanged(this, this.progressPercent.intValue());
         }
     }
 
@@ -180,7 +182,7 @@ public abstract class AbstractCoreResultActionImpl implements ICoreResultAction
             this.state = OperationState.FAILED;
             setReason(reason);
             setEndTime();
-            this.done = true;
+            markDone();
             if ((this.parent != null) && (!parent.isDone()) && effectParent) {
                 this.parent.failure(reason, effectParent);
             }
@@ -253,8 +255,8 @@ public abstract class AbstractCoreResultActionImpl implements ICoreResultAction
         this.state = OperationState.ABORTED;
         setReason(reason);
         setEndTime();
-        this.done = true;
         this.progressPercent.set(Utility.ONE_HUNDRED_PER_CENT);
+        markDone();
 
         if (logger.isLoggable(Level.CONFIG)) {
             logger.config("String - end"); //$NON-NLS-1$
@@ -274,8 +276,8 @@ public abstract class AbstractCoreResultActionImpl implements ICoreResultAction
         this.state = OperationState.FAILED;
         setReason(reason);
         setEndTime();
-        this.done = true;
         this.progressPercent.set(Utility.ONE_HUNDRED_PER_CENT);
+        markDone();
 
         if (logger.isLoggable(Level.CONFIG)) {
             logger.config("String - end"); //$NON-NLS-1$
@@ -295,8 +297,8 @@ public abstract class AbstractCoreResultActionImpl implements ICoreResultAction
         this.state = OperationState.SKIPPED;
         setReason(reason);
         setEndTime();
-        this.done = true;
         this.progressPercent.set(Utility.ONE_HUNDRED_PER_CENT);
+        markDone();
 
         if (logger.isLoggable(Level.CONFIG)) {
             logger.config("String - end"); //$NON-NLS-1$
@@ -690,6 +692,11 @@ public abstract class AbstractCoreResultActionImpl implements ICoreResultAction
         }
     }
 
+    private void markDone() {
+        this.done = true;
+        ResultActionUpdates.stateChanged(this);
+    }
+
     @Override
     public final float progressIncrease(final float increase) {
         if (logger.isLoggable(Level.CONFIG)) {
@@ -702,6 +709,7 @@ public abstract class AbstractCoreResultActionImpl implements ICoreResultAction
             this.progressPercent.set(Utility.ALMOST_ONE_HUNDRED_PER_CENT);
         }
         final float returnfloat = this.progressPercent.get();
+        ResultActionUpdates.progressChanged(this, (int) returnfloat);
         if (logger.isLoggable(Level.CONFIG)) {
             logger.config("float - end"); //$NON-NLS-1$
         }
@@ -833,7 +841,7 @@ public abstract class AbstractCoreResultActionImpl implements ICoreResultAction
                 this.startDate = this.endDate;
             }
             this.state = OperationState.SKIPPED;
-            this.done = true;
+            markDone();
         } else {
             final String msg = String.format("Action %s - Change to %s requires running or queue state ", toString(),
                     OperationState.FAILED.toString());
@@ -852,6 +860,7 @@ public abstract class AbstractCoreResultActionImpl implements ICoreResultAction
             this.startTime = System.nanoTime();
             this.startDate = new GregorianCalendar();
             this.state = OperationState.STARTED;
+            ResultActionUpdates.stateChanged(this);
         } else {
             final String msg = String.format("Action %s - Change to %s requires running or queue state ", toString(),
                     OperationState.FAILED.toString());
@@ -869,7 +878,7 @@ public abstract class AbstractCoreResultActionImpl implements ICoreResultAction
         if (isRunning()) {
             this.state = OperationState.SUCCESS;
             setEndTime();
-            this.done = true;
+            markDone();
         } else {
             final String msg = String.format("Action %s - Change to %s requires running or queue state ", toString(),
                     OperationState.FAILED.toString());
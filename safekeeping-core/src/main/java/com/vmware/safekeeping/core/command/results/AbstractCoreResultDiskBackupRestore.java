@@ -34,6 +34,7 @@ import java.util.logging.Logger;
 import com.vmware.jvix.jDiskLib.Connection;
 import com.vmware.jvix.jDiskLib.DiskHandle;
 import com.vmware.jvix.jDiskLibConst;
+import com.vmware.safekeeping.core.command.results.list.ResultActionUpdates;
 import com.vmware.safekeeping.core.control.info.ExBlockInfo;
 import com.vmware.safekeeping.core.profile.GenerationProfile;
 import com.vmware.safekeeping.core.profile.dataclass.DiskController;
@@ -154,6 +155,7 @@ public abstract class AbstractCoreResultDiskBackupRestore extends AbstractCoreRe
         }
 
         this.dumpMap.put(index, dumpFileInfo);
+        ResultActionUpdates.blockAdded(this, index);
 
         if (logger.isLoggable(Level.CONFIG)) {
             logger.config("int, DumpBlockInfo - end"); //$NON-NLS-1$
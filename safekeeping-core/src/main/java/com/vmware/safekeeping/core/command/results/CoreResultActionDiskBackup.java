@@ -32,6 +32,7 @@ import java.util.logging.Logger;
 import com.vmware.safekeeping.core.core.JVmdkInfo;
 import com.vmware.safekeeping.core.profile.GenerationProfile;
 import com.vmware.safekeeping.core.type.enums.BackupMode;
+import com.vmware.safekeeping.core.type.enums.CompressionCodec;
 import com.vmware.safekeeping.core.type.enums.QueryBlocksOption;
 import com.vmware.safekeeping.core.type.enums.phase.BackupDiskPhases;
 import com.vmware.safekeeping.core.type.fco.IFirstClassObject;
@@ -53,6 +54,8 @@ public class CoreResultActionDiskBackup extends AbstractCoreResultDiskBackupRest
     private BackupMode backupMode;
     private boolean noChanges;
     private boolean compressed;
+    private CompressionCodec compressionCodec;
+    private int compressionLevel;
     private boolean cbtHealth;
     private boolean cipher;
     private BackupDiskPhases phase;
@@ -68,6 +71,8 @@ public class CoreResultActionDiskBackup extends AbstractCoreResultDiskBackupRest
         parent.addResultActionOnDisk(this);
         setChangeId(profile.getDiskChangeId(0));
         setCompressed(parent.isCompressed());
+        setCompressionCodec(parent.getCompressionCodec());
+        setCompressionLevel(parent.getCompressionLevel());
         setCipher(parent.isCipher());
         setName(parent.getLocations().getVmdkFullPath());
         this.firstClassObject = parent.getFirstClassObject();
@@ -81,6 +86,8 @@ public class CoreResultActionDiskBackup extends AbstractCoreResultDiskBackupRest
         parent.addResultActionOnDisk(this);
         setChangeId(profile.getDiskChangeId(diskId));
         setCompressed(parent.isCompressed());
+        setCompressionCodec(parent.getCompressionCodec());
+        setCompressionLevel(parent.getCompressionLevel());
         setCipher(parent.isCipher());
         this.firstClassObject = parent.getFirstClassObject();
     }
@@ -93,6 +100,14 @@ public class CoreResultActionDiskBackup extends AbstractCoreResultDiskBackupRest
         return this.changeId;
     }
 
+    public CompressionCodec getCompressionCodec() {
+        return this.compressionCodec;
+    }
+
+    public int getCompressionLevel() {
+        return this.compressionLevel;
+    }
+
     public IFirstClassObject getFirstClassObject() {
         return this.firstClassObject;
     }
@@ -202,6 +217,14 @@ public class CoreResultActionDiskBackup extends AbstractCoreResultDiskBackupRest
         this.compressed = compressed;
     }
 
+    public void setCompressionCodec(final CompressionCodec compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
+    public void setCompressionLevel(final int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
     /**
      * @param generationId the generationId to set
      */
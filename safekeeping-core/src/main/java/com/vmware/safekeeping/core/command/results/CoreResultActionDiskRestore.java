@@ -36,6 +36,9 @@ public class CoreResultActionDiskRestore extends AbstractCoreResultActionDiskVir
      */
     private static final long serialVersionUID = -8116101104038764638L;
     private RestoreDiskPhases phase;
+    private long blockCacheHits;
+    private long blockCacheMisses;
+    private long blockCacheEvictions;
 
 	public CoreResultActionDiskRestore(final GenerationProfile profile, final CoreResultActionIvdRestore parent) {
 		super(profile, parent);
@@ -65,10 +68,45 @@ public class CoreResultActionDiskRestore extends AbstractCoreResultActionDiskVir
 
 	}
 
+	/**
+	 * @return number of blocks read from the decoded block cache
+	 */
+	public long getBlockCacheHits() {
+		return this.blockCacheHits;
+	}
+
+	/**
+	 * @return number of blocks read from the repository with the decoded block
+	 *         cache enabled
+	 */
+	public long getBlockCacheMisses() {
+		return this.blockCacheMisses;
+	}
+
+	/**
+	 * @return number of blocks evicted from the decoded block cache to store the
+	 *         blocks of this disk
+	 */
+	public long getBlockCacheEvictions() {
+		return this.blockCacheEvictions;
+	}
+
 	public RestoreDiskPhases getPhase() {
 		return this.phase;
 	}
 
+	public void setBlockCacheEvictions(final long blockCacheEvictions) {
+		this.blockCacheEvictions = blockCacheEvictions;
+	}
+
+	public void setBlockCacheHits(final long blockCacheHits) {
+		this.blockCacheHits = blockCacheHits;
+	}
+
+	public void setBlockCacheMisses(final long blockCacheMisses) {
+		this.blockCacheMisses = blockCacheMisses;
+	}
+
 	public void setPhase(final RestoreDiskPhases phase) {
 		this.phase = phase;
 	}
@@ -33,6 +33,7 @@ import com.vmware.safekeeping.core.profile.BasicBlockInfo;
 import com.vmware.safekeeping.core.profile.GenerationProfile;
 import com.vmware.safekeeping.core.profile.dataclass.DiskProfile;
 import com.vmware.safekeeping.core.type.enums.BackupMode;
+import com.vmware.safekeeping.core.type.enums.CompressionCodec;
 
 public class CoreResultActionGetGenerationProfile extends AbstractCoreResultActionImpl {
 	/**
@@ -51,6 +52,7 @@ public class CoreResultActionGetGenerationProfile extends AbstractCoreResultActi
 	private final long compressedSize;
 	private final Integer diskId;
 	private final boolean compressed;
+	private final CompressionCodec compressionCodec;
 	private final String targetName;
 	private final boolean ciphered;
 
@@ -71,6 +73,7 @@ public class CoreResultActionGetGenerationProfile extends AbstractCoreResultActi
 		this.profile = profile;
 		final DiskProfile disk = profile.getDisks().get(this.diskId);
 		this.compressed = disk.isCompression();
+		this.compressionCodec = disk.getCompressionCodec();
 		this.ciphered = disk.isCipher();
 		this.size = disk.getTotalUncompressedDumpSize();
 		this.compressedSize = disk.getTotalDumpSize();
@@ -89,6 +92,13 @@ public class CoreResultActionGetGenerationProfile extends AbstractCoreResultActi
 		return this.compressedSize;
 	}
 
+	/**
+	 * @return the codec of the generation blocks
+	 */
+	public CompressionCodec getCompressionCodec() {
+		return this.compressionCodec;
+	}
+
 	public Integer getDiskId() {
 		return this.diskId;
 	}
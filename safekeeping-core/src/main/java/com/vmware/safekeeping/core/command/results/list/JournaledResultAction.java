@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.command.results.list;
+
+import java.util.GregorianCalendar;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.vmware.safekeeping.core.command.results.ICoreResultAction;
+import com.vmware.safekeeping.core.command.results.support.OperationState;
+import com.vmware.safekeeping.core.type.ManagedFcoEntityInfo;
+import com.vmware.safekeeping.core.type.enums.EntityType;
+
+/**
+ * Summary of a result action evicted from {@link ResultActionsList}. Each
+ * summary is stored as a single tab separated line of the task journal
+ */
+public final class JournaledResultAction {
+    private static final char SEPARATOR = '\t';
+    private static final int FIELDS = 16;
+
+    private static String escape(final String value) {
+        if (value == null) {
+            return StringUtils.EMPTY;
+        }
+        final StringBuilder sb = new StringBuilder(value.length());
+        for (final char c : value.toCharArray()) {
+            switch (c) {
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parse a journal line
+     *
+     * @param line
+     * @return the summary or null if the line is not valid
+     */
+    static JournaledResultAction parse(final String line) {
+        final String[] fields = new String[FIELDS];
+        int field = 0;
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == SEPARATOR) {
+                if (field == (FIELDS - 1)) {
+                    return null;
+                }
+                fields[field++] = sb.toString();
+                sb.setLength(0);
+            } else if ((c == '\\') && ((i + 1) < line.length())) {
+                final char n = line.charAt(++i);
+                switch (n) {
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                default:
+                    sb.append(n);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        fields[field] = sb.toString();
+        if (field != (FIELDS - 1)) {
+            return null;
+        }
+        try {
+            final JournaledResultAction result = new JournaledResultAction();
+            result.resultActionId = fields[0];
+            result.parentId = StringUtils.defaultIfEmpty(fields[1], null);
+            result.className = fields[2];
+            result.state = OperationState.valueOf(fields[3]);
+            result.done = Boolean.parseBoolean(fields[4]);
+            result.progress = Integer.parseInt(fields[5]);
+            result.creationDate = toCalendar(fields[6]);
+            result.startDate = toCalendar(fields[7]);
+            result.endDate = toCalendar(fields[8]);
+            result.startTime = Long.parseLong(fields[9]);
+            result.endTime = Long.parseLong(fields[10]);
+            result.reason = StringUtils.defaultIfEmpty(fields[11], null);
+            if (StringUtils.isNotEmpty(fields[12])) {
+                result.fcoEntityInfo = new ManagedFcoEntityInfo(fields[13], EntityType.valueOf(fields[12]),
+                        fields[14], fields[15], null);
+            }
+            return result;
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static GregorianCalendar toCalendar(final String millis) {
+        if (StringUtils.isEmpty(millis)) {
+            return null;
+        }
+        final GregorianCalendar result = new GregorianCalendar();
+        result.setTimeInMillis(Long.parseLong(millis));
+        return result;
+    }
+
+    private static String toMillis(final GregorianCalendar date) {
+        return (date == null) ? StringUtils.EMPTY : Long.toString(date.getTimeInMillis());
+    }
+
+    private String resultActionId;
+    private String parentId;
+    private String className;
+    private OperationState state;
+    private boolean done;
+    private int progress;
+    private GregorianCalendar creationDate;
+    private GregorianCalendar startDate;
+    private GregorianCalendar endDate;
+    private long startTime;
+    private long endTime;
+    private String reason;
+    private ManagedFcoEntityInfo fcoEntityInfo;
+
+    private JournaledResultAction() {
+    }
+
+    JournaledResultAction(final ICoreResultAction src) {
+        this.resultActionId = src.getResultActionId();
+        this.parentId = (src.getParent() != null) ? src.getParent().getResultActionId() : null;
+        this.className = src.getClass().getName();
+        this.state = src.getState();
+        this.done = src.isDone();
+        this.progress = src.getProgress();
+        this.creationDate = src.getCreationDate();
+        this.startDate = src.getStartDate();
+        this.endDate = src.getEndDate();
+        this.startTime = src.getStartTime();
+        this.endTime = src.getEndTime();
+        this.reason = src.getReason();
+        this.fcoEntityInfo = src.getFcoEntityInfo();
+    }
+
+    /**
+     * @return the class name of the evicted result action
+     */
+    public String getClassName() {
+        return this.className;
+    }
+
+    public GregorianCalendar getCreationDate() {
+        return this.creationDate;
+    }
+
+    public GregorianCalendar getEndDate() {
+        return this.endDate;
+    }
+
+    public long getEndTime() {
+        return this.endTime;
+    }
+
+    /**
+     * The fco server uuid is not journaled
+     *
+     * @return the fco entity info or null
+     */
+    public ManagedFcoEntityInfo getFcoEntityInfo() {
+        return this.fcoEntityInfo;
+    }
+
+    /**
+     * @return the parent result action id or null
+     */
+    public String getParentId() {
+        return this.parentId;
+    }
+
+    public int getProgress() {
+        return this.progress;
+    }
+
+    public String getReason() {
+        return this.reason;
+    }
+
+    public String getResultActionId() {
+        return this.resultActionId;
+    }
+
+    public GregorianCalendar getStartDate() {
+        return this.startDate;
+    }
+
+    public long getStartTime() {
+        return this.startTime;
+    }
+
+    public OperationState getState() {
+        return this.state;
+    }
+
+    public boolean isDone() {
+        return this.done;
+    }
+
+    /**
+     * @return the journal line without the line separator
+     */
+    String toJournalLine() {
+        final StringBuilder sb = new StringBuilder(256);
+        sb.append(escape(this.resultActionId)).append(SEPARATOR);
+        sb.append(escape(this.parentId)).append(SEPARATOR);
+        sb.append(escape(this.className)).append(SEPARATOR);
+        sb.append(this.state).append(SEPARATOR);
+        sb.append(this.done).append(SEPARATOR);
+        sb.append(this.progress).append(SEPARATOR);
+        sb.append(toMillis(this.creationDate)).append(SEPARATOR);
+        sb.append(toMillis(this.startDate)).append(SEPARATOR);
+        sb.append(toMillis(this.endDate)).append(SEPARATOR);
+        sb.append(this.startTime).append(SEPARATOR);
+        sb.append(this.endTime).append(SEPARATOR);
+        sb.append(escape(this.reason)).append(SEPARATOR);
+        if ((this.fcoEntityInfo != null) && (this.fcoEntityInfo.getEntityType() != null)) {
+            sb.append(this.fcoEntityInfo.getEntityType().name()).append(SEPARATOR);
+            sb.append(escape(this.fcoEntityInfo.getName())).append(SEPARATOR);
+            sb.append(escape(this.fcoEntityInfo.getMorefValue())).append(SEPARATOR);
+            sb.append(escape(this.fcoEntityInfo.getUuid()));
+        } else {
+            sb.append(SEPARATOR).append(SEPARATOR).append(SEPARATOR);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s %s", this.resultActionId, this.state, this.className);
+    }
+}
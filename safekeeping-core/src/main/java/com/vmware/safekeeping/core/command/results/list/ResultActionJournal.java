@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.command.results.list;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vmware.safekeeping.common.Utility;
+
+/**
+ * Append only journal of the result actions evicted from
+ * {@link ResultActionsList}. Only the offset of each record is kept in memory.
+ * When the journal reaches half of the maximum size it is rolled over, the
+ * previous generation is still readable and the older one is deleted.
+ */
+final class ResultActionJournal {
+    private static final Logger logger = Logger.getLogger(ResultActionJournal.class.getName());
+
+    private static final String PREVIOUS_SUFFIX = ".1";
+    private static final int READ_BUFFER_SIZE = 512;
+
+    private final File file;
+    private final File previousFile;
+    private final long rollOverSize;
+    private Map<String, Long> index;
+    private Map<String, Long> previousIndex;
+    private RandomAccessFile writer;
+
+    /**
+     * Result action ids restart at every run, any existing journal is discarded
+     *
+     * @param file
+     * @param maxSize maximum size in bytes of the journal generations
+     * @throws IOException
+     */
+    ResultActionJournal(final File file, final long maxSize) throws IOException {
+        this.file = file;
+        this.previousFile = new File(file.getPath() + PREVIOUS_SUFFIX);
+        this.rollOverSize = Math.max(maxSize / 2, READ_BUFFER_SIZE);
+        this.index = new HashMap<>();
+        this.previousIndex = new HashMap<>();
+        final File parent = file.getParentFile();
+        if ((parent != null) && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent.getPath());
+        }
+        Files.deleteIfExists(this.previousFile.toPath());
+        Files.deleteIfExists(file.toPath());
+        this.writer = new RandomAccessFile(file, "rw");
+    }
+
+    /**
+     * Append the summaries to the journal
+     *
+     * @param entries
+     * @throws IOException
+     */
+    synchronized void append(final Collection<JournaledResultAction> entries) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final Map<String, Long> offsets = new HashMap<>();
+        long offset = this.writer.length();
+        for (final JournaledResultAction entry : entries) {
+            final byte[] line = (entry.toJournalLine() + '\n').getBytes(StandardCharsets.UTF_8);
+            offsets.put(entry.getResultActionId(), offset + buffer.size());
+            buffer.write(line, 0, line.length);
+        }
+        this.writer.seek(offset);
+        this.writer.write(buffer.toByteArray());
+        this.index.putAll(offsets);
+        offset += buffer.size();
+        if (offset >= this.rollOverSize) {
+            rollOver();
+        }
+    }
+
+    synchronized boolean contains(final String id) {
+        return this.index.containsKey(id) || this.previousIndex.containsKey(id);
+    }
+
+    /**
+     * Read a summary from the journal
+     *
+     * @param id result action id
+     * @return the summary or null if the id is not journaled
+     */
+    synchronized JournaledResultAction get(final String id) {
+        try {
+            Long offset = this.index.get(id);
+            if (offset != null) {
+                return read(this.writer, this.file, offset);
+            }
+            offset = this.previousIndex.get(id);
+            if (offset != null) {
+                try (RandomAccessFile reader = new RandomAccessFile(this.previousFile, "r")) {
+                    return read(reader, this.previousFile, offset);
+                }
+            }
+        } catch (final IOException e) {
+            Utility.logWarning(logger, e);
+        }
+        return null;
+    }
+
+    synchronized int getSize() {
+        return this.index.size() + this.previousIndex.size();
+    }
+
+    private JournaledResultAction read(final RandomAccessFile reader, final File source, final long offset)
+            throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+        final byte[] buffer = new byte[READ_BUFFER_SIZE];
+        long position = offset;
+        int read;
+        boolean endOfLine = false;
+        while (!endOfLine) {
+            reader.seek(position);
+            read = reader.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            int length = 0;
+            while ((length < read) && (buffer[length] != '\n')) {
+                ++length;
+            }
+            endOfLine = length < read;
+            line.write(buffer, 0, length);
+            position += read;
+        }
+        final JournaledResultAction result = JournaledResultAction
+                .parse(new String(line.toByteArray(), StandardCharsets.UTF_8));
+        if ((result == null) && logger.isLoggable(Level.WARNING)) {
+            logger.warning(String.format("Invalid record at offset %d of %s", offset, source.getPath()));
+        }
+        return result;
+    }
+
+    private void rollOver() throws IOException {
+        this.writer.close();
+        Files.move(this.file.toPath(), this.previousFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        this.previousIndex = this.index;
+        this.index = new HashMap<>();
+        this.writer = new RandomAccessFile(this.file, "rw");
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(String.format("Journal %s rolled over with %d records", this.file.getPath(),
+                    this.previousIndex.size()));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%d records)", this.file.getPath(), getSize());
+    }
+}
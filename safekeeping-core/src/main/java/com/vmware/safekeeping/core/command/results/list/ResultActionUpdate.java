@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.command.results.list;
+
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import com.vmware.safekeeping.core.command.results.support.OperationState;
+import com.vmware.safekeeping.core.control.info.ExBlockInfo;
+
+/**
+ * Changes of a result action after a given sequence number. State, reason and
+ * progress are set only when they changed, blocks contains only the blocks
+ * completed after the sequence number.
+ */
+public final class ResultActionUpdate {
+    private final String resultActionId;
+    private final long seq;
+    private final boolean done;
+    private OperationState state;
+    private String reason;
+    private GregorianCalendar endDate;
+    private Integer progress;
+    private final List<ExBlockInfo> blocks;
+
+    ResultActionUpdate(final String resultActionId, final long seq, final boolean done) {
+        this.resultActionId = resultActionId;
+        this.seq = seq;
+        this.done = done;
+        this.blocks = new ArrayList<>();
+    }
+
+    public List<ExBlockInfo> getBlocks() {
+        return this.blocks;
+    }
+
+    /**
+     * @return the end date or null if the state didn't change
+     */
+    public GregorianCalendar getEndDate() {
+        return this.endDate;
+    }
+
+    /**
+     * @return the progress or null if the progress didn't change
+     */
+    public Integer getProgress() {
+        return this.progress;
+    }
+
+    /**
+     * @return the reason or null if the state didn't change
+     */
+    public String getReason() {
+        return this.reason;
+    }
+
+    public String getResultActionId() {
+        return this.resultActionId;
+    }
+
+    /**
+     * @return the sequence number to use for the next request
+     */
+    public long getSeq() {
+        return this.seq;
+    }
+
+    /**
+     * @return the state or null if the state didn't change
+     */
+    public OperationState getState() {
+        return this.state;
+    }
+
+    public boolean hasChanges() {
+        return (this.state != null) || (this.progress != null) || !this.blocks.isEmpty();
+    }
+
+    public boolean isDone() {
+        return this.done;
+    }
+
+    void setEndDate(final GregorianCalendar endDate) {
+        this.endDate = endDate;
+    }
+
+    void setProgress(final Integer progress) {
+        this.progress = progress;
+    }
+
+    void setReason(final String reason) {
+        this.reason = reason;
+    }
+
+    void setState(final OperationState state) {
+        this.state = state;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s seq:%d done:%b state:%s progress:%s blocks:%d", this.resultActionId, this.seq,
+                this.done, this.state, this.progress, this.blocks.size());
+    }
+}
@@ -0,0 +1,372 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.command.results.list;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vmware.safekeeping.core.command.results.AbstractCoreResultDiskBackupRestore;
+import com.vmware.safekeeping.core.command.results.ICoreResultAction;
+import com.vmware.safekeeping.core.control.info.ExBlockInfo;
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
+
+/**
+ * Change feed of the result actions. A result action is tracked from the first
+ * request of its updates, every change (state, progress, completed block) gets
+ * a new sequence number, wakes up the waiting requests and runs the listeners.
+ * Result actions nobody asked for cost a map lookup on every change.
+ */
+public final class ResultActionUpdates {
+    private static final class BlockUpdate {
+        private final long seq;
+        private final int index;
+
+        private BlockUpdate(final long seq, final int index) {
+            this.seq = seq;
+            this.index = index;
+        }
+    }
+
+    private static final class Tracker {
+        private final ICoreResultAction resultAction;
+        private final List<BlockUpdate> blocks;
+        private final Set<Integer> blockIndexes;
+        private final List<Runnable> listeners;
+        private long seq;
+        private long stateSeq;
+        private long progressSeq;
+        private int progress;
+        private boolean closed;
+        private boolean initialized;
+
+        private Tracker(final ICoreResultAction resultAction) {
+            this.resultAction = resultAction;
+            this.blocks = new ArrayList<>();
+            this.blockIndexes = new HashSet<>();
+            this.listeners = new CopyOnWriteArrayList<>();
+        }
+
+        private synchronized boolean blockAdded(final int index) {
+            if (this.blockIndexes.add(index)) {
+                this.blocks.add(new BlockUpdate(++this.seq, index));
+                notifyAll();
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void close() {
+            this.closed = true;
+            notifyAll();
+        }
+
+        /**
+         * Listeners run outside the lock of the tracker on the thread that
+         * changed the result action, they must not block
+         */
+        private void fireListeners() {
+            for (final Runnable listener : this.listeners) {
+                listener.run();
+            }
+        }
+
+        /**
+         * Blocks completed before the first request get a sequence number each,
+         * in index order, so a truncated update can resume from any of them.
+         * Changes notified between the registration of the tracker and its
+         * initialization keep their own sequence number.
+         */
+        private synchronized void init() {
+            if (this.initialized) {
+                return;
+            }
+            this.initialized = true;
+            this.seq = Math.max(this.seq, 1);
+            this.stateSeq = Math.max(this.stateSeq, 1);
+            if (this.progressSeq == 0) {
+                this.progressSeq = 1;
+                this.progress = this.resultAction.getProgress();
+            }
+            if (this.resultAction instanceof AbstractCoreResultDiskBackupRestore) {
+                final Map<Integer, ExBlockInfo> dumpMap = ((AbstractCoreResultDiskBackupRestore) this.resultAction)
+                        .getDumpMap();
+                if (dumpMap != null) {
+                    for (final Integer index : new TreeSet<>(dumpMap.keySet())) {
+                        if (this.blockIndexes.add(index)) {
+                            this.blocks.add(new BlockUpdate(++this.seq, index));
+                        }
+                    }
+                }
+            }
+        }
+
+        private synchronized boolean progressChanged(final int value) {
+            if (value != this.progress) {
+                this.progress = value;
+                this.progressSeq = ++this.seq;
+                notifyAll();
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void stateChanged() {
+            this.stateSeq = ++this.seq;
+            this.progress = this.resultAction.getProgress();
+            this.progressSeq = this.stateSeq;
+            notifyAll();
+        }
+
+        private synchronized ResultActionUpdate toUpdate(final long sinceSeq, final int maxBlocks) {
+            long lastSeq = this.seq;
+            final List<ExBlockInfo> updatedBlocks = new ArrayList<>();
+            if ((sinceSeq < this.seq) && !this.blocks.isEmpty()) {
+                final Map<Integer, ExBlockInfo> dumpMap = ((AbstractCoreResultDiskBackupRestore) this.resultAction)
+                        .getDumpMap();
+                int low = 0;
+                int high = this.blocks.size();
+                while (low < high) {
+                    final int mid = (low + high) >>> 1;
+                    if (this.blocks.get(mid).seq <= sinceSeq) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                for (int i = low; i < this.blocks.size(); i++) {
+                    final BlockUpdate block = this.blocks.get(i);
+                    if (updatedBlocks.size() >= maxBlocks) {
+                        /*
+                         * the next request restarts from the last block sent
+                         */
+                        lastSeq = this.blocks.get(i - 1).seq;
+                        break;
+                    }
+                    final ExBlockInfo info = dumpMap.get(block.index);
+                    if (info != null) {
+                        updatedBlocks.add(info);
+                    }
+                }
+            }
+            final ResultActionUpdate result = new ResultActionUpdate(this.resultAction.getResultActionId(),
+                    Math.max(lastSeq, sinceSeq), this.resultAction.isDone() && (lastSeq == this.seq));
+            if (this.stateSeq > sinceSeq) {
+                result.setState(this.resultAction.getState());
+                result.setReason(this.resultAction.getReason());
+                result.setEndDate(this.resultAction.getEndDate());
+            }
+            if (this.progressSeq > sinceSeq) {
+                result.setProgress(this.resultAction.getProgress());
+            }
+            result.getBlocks().addAll(updatedBlocks);
+            return result;
+        }
+    }
+
+    private static final Logger logger = Logger.getLogger(ResultActionUpdates.class.getName());
+
+    private static final Map<String, Tracker> trackers = new ConcurrentHashMap<>();
+
+    /**
+     * Register a listener run on every change of a result action and when the
+     * result action is evicted. The listener should hand over the work (for
+     * example to an executor) and read the changes with
+     * {@link #getUpdate(String, long)}.
+     *
+     * @param id       result action id
+     * @param listener
+     * @return false if the result action is not in memory
+     */
+    public static boolean addListener(final String id, final Runnable listener) {
+        final ICoreResultAction resultAction = ResultActionsList.getResultAction(id);
+        if (resultAction == null) {
+            return false;
+        }
+        getTracker(resultAction).listeners.add(listener);
+        return true;
+    }
+
+    /**
+     * Wait up to timeoutMillis for changes of a result action after sinceSeq.
+     * A result action already done returns immediately.
+     *
+     * @param id            result action id
+     * @param sinceSeq      sequence number of the last update received (0 the
+     *                      first time)
+     * @param timeoutMillis
+     * @return the update (possibly without changes) or null if the id is unknown
+     */
+    public static ResultActionUpdate awaitUpdate(final String id, final long sinceSeq, final long timeoutMillis) {
+        final ICoreResultAction resultAction = ResultActionsList.getResultAction(id);
+        if (resultAction == null) {
+            return getJournaledUpdate(id, sinceSeq);
+        }
+        final Tracker tracker = getTracker(resultAction);
+        synchronized (tracker) {
+            final long deadline = System.currentTimeMillis() + timeoutMillis;
+            long remaining = timeoutMillis;
+            try {
+                while ((tracker.seq <= sinceSeq) && !tracker.closed && !resultAction.isDone() && (remaining > 0)) {
+                    tracker.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } catch (final InterruptedException e) {
+                logger.log(Level.WARNING, "Interrupted!", e);
+                // Restore interrupted state...
+                Thread.currentThread().interrupt();
+            }
+            return tracker.toUpdate(sinceSeq, Math.max(1, CoreGlobalSettings.getTaskUpdatesMaxBlocks()));
+        }
+    }
+
+    /**
+     * Notify a completed block
+     *
+     * @param resultAction
+     * @param index        index of the block in the dump map
+     */
+    public static void blockAdded(final ICoreResultAction resultAction, final int index) {
+        final Tracker tracker = trackers.get(resultAction.getResultActionId());
+        if ((tracker != null) && tracker.blockAdded(index)) {
+            tracker.fireListeners();
+        }
+    }
+
+    private static ResultActionUpdate getJournaledUpdate(final String id, final long sinceSeq) {
+        final JournaledResultAction journaled = ResultActionsList.getJournaledResultAction(id);
+        if (journaled == null) {
+            return null;
+        }
+        final ResultActionUpdate result = new ResultActionUpdate(id, sinceSeq, true);
+        result.setState(journaled.getState());
+        result.setReason(journaled.getReason());
+        result.setEndDate(journaled.getEndDate());
+        result.setProgress(journaled.getProgress());
+        return result;
+    }
+
+    private static Tracker getTracker(final ICoreResultAction resultAction) {
+        Tracker tracker = trackers.get(resultAction.getResultActionId());
+        if (tracker == null) {
+            final Tracker newTracker = new Tracker(resultAction);
+            tracker = trackers.putIfAbsent(resultAction.getResultActionId(), newTracker);
+            if (tracker == null) {
+                tracker = newTracker;
+            }
+        }
+        /*
+         * initialized after the registration so no completed block is lost
+         */
+        tracker.init();
+        return tracker;
+    }
+
+    /**
+     * Changes of a result action after sinceSeq without waiting
+     *
+     * @param id       result action id
+     * @param sinceSeq
+     * @return the update (possibly without changes) or null if the id is unknown
+     */
+    public static ResultActionUpdate getUpdate(final String id, final long sinceSeq) {
+        return awaitUpdate(id, sinceSeq, 0);
+    }
+
+    public static int getSize() {
+        return trackers.size();
+    }
+
+    /**
+     * @param id result action id
+     * @return true if the result action is in memory or in the task journal
+     */
+    public static boolean isKnown(final String id) {
+        return ResultActionsList.contains(id) || ResultActionsList.isJournaled(id);
+    }
+
+    /**
+     * Notify a progress change, only a change of the integer value is a new
+     * update
+     *
+     * @param resultAction
+     * @param progress
+     */
+    public static void progressChanged(final ICoreResultAction resultAction, final int progress) {
+        final Tracker tracker = trackers.get(resultAction.getResultActionId());
+        if ((tracker != null) && tracker.progressChanged(progress)) {
+            tracker.fireListeners();
+        }
+    }
+
+    /**
+     * @param id       result action id
+     * @param listener
+     */
+    public static void removeListener(final String id, final Runnable listener) {
+        final Tracker tracker = trackers.get(id);
+        if (tracker != null) {
+            tracker.listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Stop tracking an evicted result action
+     *
+     * @param id
+     */
+    static void remove(final String id) {
+        final Tracker tracker = trackers.remove(id);
+        if (tracker != null) {
+            tracker.close();
+            tracker.fireListeners();
+        }
+    }
+
+    /**
+     * Notify a change of state (reason and end date included)
+     *
+     * @param resultAction
+     */
+    public static void stateChanged(final ICoreResultAction resultAction) {
+        final Tracker tracker = trackers.get(resultAction.getResultActionId());
+        if (tracker != null) {
+            tracker.stateChanged();
+            tracker.fireListeners();
+        }
+    }
+
+    private ResultActionUpdates() {
+    }
+}
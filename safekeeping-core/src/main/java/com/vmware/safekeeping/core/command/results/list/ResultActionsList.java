@@ -26,35 +26,214 @@
  ******************************************************************************/
 package com.vmware.safekeeping.core.command.results.list;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import com.vmware.safekeeping.common.Utility;
 import com.vmware.safekeeping.core.command.results.ICoreResultAction;
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
+import com.vmware.safekeeping.core.type.VmbkThreadFactory;
 
+/**
+ * Registry of the result actions. Finished top level result actions (and
+ * their children) are evicted after taskRetentionSeconds or when more than
+ * taskRetentionCount are finished, a summary of the evicted results is kept in
+ * the task journal. The sweep runs on a daemon thread, never on the thread
+ * creating a result action.
+ */
 public final class ResultActionsList {
-    private static Integer index;
-    private static ConcurrentHashMap<String, ICoreResultAction> actionList;
+    private static final Logger logger = Logger.getLogger(ResultActionsList.class.getName());
+
+    private static final String RESULT_ID_PREFIX = "result-";
+    private static final String JOURNAL_FILE_NAME = "results.journal";
+    private static final int SWEEP_EVERY_NEW_RESULTS = 64;
+    private static final long SWEEP_INTERVAL_MILLIS = 10000;
+    private static final int ONE_MB = 1024 * 1024;
+
+    private static final AtomicLong index;
+    private static final ConcurrentHashMap<String, ICoreResultAction> actionList;
+    private static final ReentrantLock sweepLock;
+    private static final ScheduledExecutorService sweeper;
+    private static ResultActionJournal journal;
+    private static boolean journalUnavailable;
 
     static {
-        index = 0;
+        index = new AtomicLong();
         actionList = new ConcurrentHashMap<>();
+        sweepLock = new ReentrantLock();
+        sweeper = Executors.newSingleThreadScheduledExecutor(new VmbkThreadFactory("ResultActionsSweep", true));
+        sweeper.scheduleWithFixedDelay(ResultActionsList::sweep, SWEEP_INTERVAL_MILLIS, SWEEP_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
     }
 
     public static boolean contains(final String key) {
         return actionList.containsKey(key);
     }
 
+    private static long getCompletionTime(final ICoreResultAction res) {
+        final GregorianCalendar date = (res.getEndDate() != null) ? res.getEndDate() : res.getCreationDate();
+        return (date != null) ? date.getTimeInMillis() : 0;
+    }
+
+    /**
+     * @param key result action id
+     * @return the summary of an evicted result action or null
+     */
+    public static JournaledResultAction getJournaledResultAction(final String key) {
+        final ResultActionJournal j = getJournal();
+        return (j != null) ? j.get(key) : null;
+    }
+
+    private static synchronized ResultActionJournal getJournal() {
+        if ((journal == null) && !journalUnavailable) {
+            final File file = new File(CoreGlobalSettings.getTaskDirectory(), JOURNAL_FILE_NAME);
+            try {
+                journal = new ResultActionJournal(file,
+                        (long) CoreGlobalSettings.getTaskJournalMaxSizeMb() * ONE_MB);
+            } catch (final IOException e) {
+                Utility.logWarning(logger, e);
+                logger.warning("Task journal not available - evicted results will be discarded");
+                journalUnavailable = true;
+            }
+        }
+        return journal;
+    }
+
     public static ICoreResultAction getResultAction(final String key) {
         return actionList.get(key);
     }
 
+    private static ICoreResultAction getRoot(final ICoreResultAction res) {
+        ICoreResultAction root = res;
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        return root;
+    }
+
+    public static int getSize() {
+        return actionList.size();
+    }
+
+    /**
+     * @param key result action id
+     * @return true if the result action has been evicted to the task journal
+     */
+    public static boolean isJournaled(final String key) {
+        final ResultActionJournal j = getJournal();
+        return (j != null) && j.contains(key);
+    }
+
     public static String newResultActionId(final ICoreResultAction res) {
-        ++index;
-        final String result = "result-" + index.toString();
+        final long id = index.incrementAndGet();
+        final String result = RESULT_ID_PREFIX + id;
         actionList.put(result, res);
+        if ((id % SWEEP_EVERY_NEW_RESULTS) == 0) {
+            try {
+                sweeper.execute(ResultActionsList::sweep);
+            } catch (final RejectedExecutionException e) {
+                Utility.logWarning(logger, e);
+            }
+        }
         return result;
     }
 
-    private ResultActionsList() {
+    /**
+     * Replace the task journal
+     *
+     * @param j
+     */
+    static synchronized void setJournal(final ResultActionJournal j) {
+        journal = j;
+        journalUnavailable = j == null;
     }
 
+    /**
+     * Evict the finished result actions. Only one thread sweeps at a time, the
+     * others skip it. Result actions still under construction (without id) are
+     * left in place.
+     */
+    public static void sweep() {
+        if (!sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            final long expiration = System.currentTimeMillis()
+                    - TimeUnit.SECONDS.toMillis(CoreGlobalSettings.getTaskRetentionSeconds());
+            final int retentionCount = CoreGlobalSettings.getTaskRetentionCount();
+
+            final List<ICoreResultAction> finished = new ArrayList<>();
+            for (final ICoreResultAction res : actionList.values()) {
+                if ((res.getParent() == null) && res.isDone() && (res.getResultActionId() != null)) {
+                    finished.add(res);
+                }
+            }
+            finished.sort(Comparator.comparingLong(ResultActionsList::getCompletionTime));
+            final Set<String> evictedRoots = new HashSet<>();
+            final int exceeding = finished.size() - retentionCount;
+            for (int i = 0; i < finished.size(); i++) {
+                final ICoreResultAction res = finished.get(i);
+                if ((i < exceeding) || (getCompletionTime(res) < expiration)) {
+                    evictedRoots.add(res.getResultActionId());
+                } else {
+                    break;
+                }
+            }
+            if (evictedRoots.isEmpty()) {
+                return;
+            }
+            /*
+             * children follow their top level result, orphans of an already evicted
+             * result go too
+             */
+            final List<ICoreResultAction> evicted = new ArrayList<>();
+            for (final ICoreResultAction res : actionList.values()) {
+                final String rootId = getRoot(res).getResultActionId();
+                if ((res.getResultActionId() == null) || (rootId == null)) {
+                    continue;
+                }
+                if (evictedRoots.contains(rootId) || !actionList.containsKey(rootId)) {
+                    evicted.add(res);
+                }
+            }
+            final ResultActionJournal j = getJournal();
+            if (j != null) {
+                final List<JournaledResultAction> entries = new ArrayList<>(evicted.size());
+                for (final ICoreResultAction res : evicted) {
+                    entries.add(new JournaledResultAction(res));
+                }
+                j.append(entries);
+            }
+            for (final ICoreResultAction res : evicted) {
+                actionList.remove(res.getResultActionId(), res);
+                ResultActionUpdates.remove(res.getResultActionId());
+            }
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(String.format("Evicted %d result actions (%d top level) - %d in memory - journal %s",
+                        evicted.size(), evictedRoots.size(), actionList.size(), j));
+            }
+        } catch (final IOException | RuntimeException e) {
+            Utility.logWarning(logger, e);
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private ResultActionsList() {
+    }
 }
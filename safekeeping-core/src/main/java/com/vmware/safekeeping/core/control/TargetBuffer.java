@@ -28,8 +28,12 @@ package com.vmware.safekeeping.core.control;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -41,9 +45,15 @@ public class TargetBuffer {
      */
     private static final float BUFFER_SIZE_MULTIPLICATOR = 1.1F;
 
+    /**
+     * Words checked between two exits of the zero scan
+     */
+    private static final int ZERO_SCAN_STRIDE = 512;
+
     private final byte[] bufferCompressData;
     private final byte[] bufferCipher;
     private final byte[] inputBuffer;
+    private final LongBuffer inputWords;
     private final byte[] outputBuffer;
     private final AtomicBoolean available;
     private final MessageDigest md5;
@@ -61,6 +71,7 @@ public class TargetBuffer {
         this.bufferCompressData = new byte[(int) (bufferSize * BUFFER_SIZE_MULTIPLICATOR)];
         this.bufferCipher = new byte[(int) (bufferSize * BUFFER_SIZE_MULTIPLICATOR)];
         this.inputBuffer = new byte[(int) (bufferSize * BUFFER_SIZE_MULTIPLICATOR)];
+        this.inputWords = ByteBuffer.wrap(this.inputBuffer).order(ByteOrder.nativeOrder()).asLongBuffer();
         this.outputBuffer = new byte[(int) (bufferSize * BUFFER_SIZE_MULTIPLICATOR)];
         this.finalBuffer = new byte[(int) (bufferSize * BUFFER_SIZE_MULTIPLICATOR)];
         this.md5 = MessageDigest.getInstance(MessageDigestAlgoritmhs.MD5.toString());
@@ -101,6 +112,13 @@ public class TargetBuffer {
         return this.inputBuffer;
     }
 
+    /**
+     * @return the buffer behind the input stream, the content starts at offset 0
+     */
+    public byte[] getFinalBuffer() {
+        return this.finalBuffer;
+    }
+
     public ByteArrayInputStream getInputStream() {
         return this.inputStream;
     }
@@ -117,6 +135,52 @@ public class TargetBuffer {
         return this.outputBuffer;
     }
 
+    /**
+     * Check if a section of the input buffer contains only zeros. The buffer is
+     * scanned a word at the time and the scan stops at the first non-zero
+     * stride
+     *
+     * @param offset
+     * @param count
+     * @return true if all the bytes are zero
+     */
+    public boolean isInputZero(final int offset, final int count) {
+        int pos = offset;
+        final int end = offset + count;
+        while (((pos & (Long.BYTES - 1)) != 0) && (pos < end)) {
+            if (this.inputBuffer[pos++] != 0) {
+                return false;
+            }
+        }
+        int word = pos / Long.BYTES;
+        final int lastWord = end / Long.BYTES;
+        while (word < lastWord) {
+            final int strideEnd = Math.min(word + ZERO_SCAN_STRIDE, lastWord);
+            long bits = 0;
+            for (; word < strideEnd; word++) {
+                bits |= this.inputWords.get(word);
+            }
+            if (bits != 0) {
+                return false;
+            }
+        }
+        for (pos = Math.max(pos, lastWord * Long.BYTES); pos < end; pos++) {
+            if (this.inputBuffer[pos] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Clear the first count bytes of the output buffer
+     *
+     * @param count
+     */
+    public void zeroOutputBuffer(final int count) {
+        Arrays.fill(this.outputBuffer, 0, count, (byte) 0);
+    }
+
     /**
      * @return
      */
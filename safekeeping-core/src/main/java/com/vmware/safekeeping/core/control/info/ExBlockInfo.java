@@ -60,6 +60,8 @@ public class ExBlockInfo extends BasicBlockInfo implements IBlockInfoProperties
 
     private boolean duplicated;
 
+    private boolean reference;
+
     protected ExBlockInfo() {
         this.keyPath = null;
     }
@@ -78,6 +80,9 @@ public class ExBlockInfo extends BasicBlockInfo implements IBlockInfoProperties
 
         setMd5(value.getMd5());
         setCipherOffset(value.getCipherOffset());
+        setCipherNonce(value.getCipherNonce());
+        setCompressionCodec(value.getCompressionCodec());
+        setZero(value.isZero());
         setOffset(value.getOffset());
         setLastBlock((value.getOffset() + value.getLength()) - 1);
         setIndex(value.getIndex());
@@ -182,6 +187,14 @@ public class ExBlockInfo extends BasicBlockInfo implements IBlockInfoProperties
         return this.failed;
     }
 
+    /**
+     * @return true if the block is recorded by reference to the block stored by
+     *         a previous generation
+     */
+    public boolean isReference() {
+        return this.reference;
+    }
+
     public String separetorBar() {
         return MessagesTemplate.separatorBar(isCompress());
     }
@@ -228,6 +241,10 @@ public class ExBlockInfo extends BasicBlockInfo implements IBlockInfoProperties
         this.size = size;
     }
 
+    public void setReference(final boolean reference) {
+        this.reference = reference;
+    }
+
     /**
      * @param startTime the startTime to set
      */
@@ -252,10 +269,17 @@ public class ExBlockInfo extends BasicBlockInfo implements IBlockInfoProperties
     public SimpleBlockInfo toSimpleBlockInfo() {
         final SimpleBlockInfo block = new SimpleBlockInfo(getIndex());
         block.setCipherOffset(getCipherOffset());
+        block.setCipherNonce(getCipherNonce());
+        block.setCompressionCodec(getCompressionCodec());
+        block.setZero(isZero());
         block.setOffset(getOffset());
         block.setLength(getLength());
         block.setMd5(getMd5());
         block.setSha1(getSha1());
+        if (this.reference && isModified()) {
+            block.setStoredOffset(getOriginalOffset());
+            block.setStoredLength(getOriginalLenght());
+        }
         return block;
     }
 
@@ -29,6 +29,7 @@ package com.vmware.safekeeping.core.control.info;
 import java.io.Serializable;
 import java.util.Collection;
 
+import com.vmware.safekeeping.common.Utility;
 import com.vmware.safekeeping.core.type.enums.EntityType;
 
 public class TotalBlocksInfo extends ExBlockInfo implements Serializable {
@@ -40,6 +41,7 @@ public class TotalBlocksInfo extends ExBlockInfo implements Serializable {
     private final int diskId;
     private EntityType firstClassObjectType;
     private final int numberObject;
+    private long zeroSize;
 
     protected TotalBlocksInfo() {
         this.diskId = 0;
@@ -60,6 +62,9 @@ public class TotalBlocksInfo extends ExBlockInfo implements Serializable {
             if (info != null) {
                 setSize(getSize() + info.getSize());
                 this.streamSize += info.streamSize;
+                if (info.isZero()) {
+                    this.zeroSize += info.getSize();
+                }
                 setCompress(isCompress() || info.isCompress());
                 setCipher(isCipher() || info.isCipher());
             }
@@ -89,6 +94,9 @@ public class TotalBlocksInfo extends ExBlockInfo implements Serializable {
             if (info != null) {
                 setSize(getSize() + info.getSize());
                 this.streamSize += info.streamSize;
+                if (info.isZero()) {
+                    this.zeroSize += info.getSize();
+                }
             }
             ++index;
             if ((index == getTotalBlocks()) && (info != null)) {
@@ -112,8 +120,19 @@ public class TotalBlocksInfo extends ExBlockInfo implements Serializable {
         return this.numberObject;
     }
 
+    /**
+     * @return bytes of zero blocks neither stored nor written
+     */
+    public long getZeroSize() {
+        return this.zeroSize;
+    }
+
     @Override
     public String toString() {
+        if (this.zeroSize > 0) {
+            return String.format(Utility.LOCALE, "%s  zero:%dMB skipped", printSummary(),
+                    this.zeroSize / Utility.ONE_MBYTES);
+        }
         return printSummary();
     }
 }
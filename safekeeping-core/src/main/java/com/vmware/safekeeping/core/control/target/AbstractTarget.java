@@ -26,7 +26,13 @@
  ******************************************************************************/
 package com.vmware.safekeeping.core.control.target;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,12 +43,16 @@ import com.vmware.safekeeping.core.type.ByteArrayInOutStream;
 abstract class AbstractTarget implements ITarget {
     //
     public static final String ACTIVE_KEY = "active";
+    private static final String REFERENCE_LOCK_FOLDER = "refsLock";
     protected static final String MIME_BINARY_OCTECT_STREAM = "binary/octet-stream";
     protected static final String MIME_TEXT_PLAIN_STREAM = "text/plain";
     protected Logger logger;
     protected String targetType;
     protected AbstractCoreTargetRepository options;
     private Boolean enable;
+    private DedupIndex dedupIndex;
+    private BlockReferenceStore referenceStore;
+    private MetadataCache metadataCache;
 
     protected AbstractTarget(final AbstractCoreTargetRepository options) {
         this.options = options;
@@ -64,11 +74,90 @@ abstract class AbstractTarget implements ITarget {
         return result;
     }
 
+    /**
+     * Close the dedup index
+     */
+    protected void closeDedupIndex() {
+        if (this.dedupIndex != null) {
+            this.dedupIndex.close();
+            this.dedupIndex = null;
+        }
+    }
+
+    @Override
+    public DedupIndex getDedupIndex() {
+        return this.dedupIndex;
+    }
+
+    /**
+     * Delete an object of the reference store
+     *
+     * @param key path relative to the repository root
+     * @throws IOException
+     */
+    protected abstract void deleteReferenceObject(String key) throws IOException;
+
+    @Override
+    public synchronized MetadataCache getMetadataCache() {
+        if (this.metadataCache == null) {
+            this.metadataCache = new MetadataCache(getUri(getFullPath("")), this.logger);
+        }
+        return this.metadataCache;
+    }
+
+    /**
+     * Read a mutable metadata object through the metadata cache, its version is
+     * checked on every read
+     *
+     * @param key path relative to the repository root
+     * @return the content or null if the object doesn't exist
+     * @throws IOException
+     */
+    protected byte[] getMetadataObject(final String key) throws IOException {
+        return getMetadataCache().get(key, this::getObjectVersion, this::getReferenceObject, false);
+    }
+
     @Override
     public String getName() {
         return this.options.getName();
     }
 
+    /**
+     * Lock file serializing the processes that read or compact a shard of the
+     * reference store. The default lock file is on the local application data:
+     * it serializes only the processes of this host
+     *
+     * @param prefix folder of the shard relative to the repository root
+     * @return the lock file
+     * @throws IOException
+     */
+    protected File getReferenceLockFile(final String prefix) throws IOException {
+        try {
+            final String shard = getUri(getFullPath(prefix));
+            return new File(CoreGlobalSettings.getAppData() + File.separatorChar + REFERENCE_LOCK_FOLDER,
+                    UUID.nameUUIDFromBytes(shard.getBytes(StandardCharsets.UTF_8)).toString() + ".lock");
+        } catch (final URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Read an object of the reference store
+     *
+     * @param key path relative to the repository root
+     * @return the content or null if the object doesn't exist
+     * @throws IOException
+     */
+    protected abstract byte[] getReferenceObject(String key) throws IOException;
+
+    @Override
+    public synchronized BlockReferenceStore getReferenceStore() {
+        if (this.referenceStore == null) {
+            this.referenceStore = new BlockReferenceStore(this, this.logger);
+        }
+        return this.referenceStore;
+    }
+
     @Override
     public String getTargetType() {
         return this.targetType;
@@ -79,6 +168,15 @@ abstract class AbstractTarget implements ITarget {
         return this.enable;
     }
 
+    /**
+     * List the objects of the reference store in a folder
+     *
+     * @param prefix folder path relative to the repository root
+     * @return the names of the objects relative to prefix
+     * @throws IOException
+     */
+    protected abstract List<String> listReferenceObjects(String prefix) throws IOException;
+
     @Override
     public LinkedHashMap<String, String> manualConfiguration() {
         if (this.logger.isLoggable(Level.CONFIG)) {
@@ -94,9 +192,56 @@ abstract class AbstractTarget implements ITarget {
         return result;
     }
 
+    /**
+     * Open the dedup index of the repository. The index is warmed listing the
+     * repository if it doesn't exist or it was not closed cleanly. Without the
+     * index (disabled, failed or used by another process) every digest is
+     * probed on the target
+     */
+    protected void openDedupIndex() {
+        closeDedupIndex();
+        if (!CoreGlobalSettings.isDedupIndexEnabled()) {
+            return;
+        }
+        DedupIndex index = null;
+        try {
+            final String repository = getUri(getFullPath(CoreGlobalSettings.REPOSITORY_DATA_PATH));
+            final File indexFile = new File(CoreGlobalSettings.getDedupIndexPath(),
+                    UUID.nameUUIDFromBytes(repository.getBytes(StandardCharsets.UTF_8)).toString() + ".idx");
+            index = new DedupIndex(indexFile, this.logger);
+            if (!index.open()) {
+                final long startTime = System.nanoTime();
+                final int keys = warmDedupIndex(index);
+                if (this.logger.isLoggable(Level.INFO)) {
+                    final String msg = String.format("Dedup index of %s warmed with %d blocks in %dms", repository,
+                            keys, (System.nanoTime() - startTime) / 1000000);
+                    this.logger.info(msg);
+                }
+            }
+            this.dedupIndex = index;
+        } catch (final IOException | URISyntaxException e) {
+            if (this.logger.isLoggable(Level.WARNING)) {
+                this.logger.warning("Running without the dedup index - " + e.getMessage());
+            }
+            if (index != null) {
+                index.abandon();
+            }
+            this.dedupIndex = null;
+        }
+    }
+
     protected abstract boolean post(final String path, final ByteArrayInOutStream digestOutput,
             final String contentType);
 
+    /**
+     * Write an object of the reference store
+     *
+     * @param key     path relative to the repository root
+     * @param content
+     * @throws IOException
+     */
+    protected abstract void putReferenceObject(String key, byte[] content) throws IOException;
+
     @Override
     public boolean updateFcoProfileCatalog(final ByteArrayInOutStream byteArrayStream) {
         if (this.logger.isLoggable(Level.CONFIG)) {
@@ -108,6 +253,7 @@ abstract class AbstractTarget implements ITarget {
             final String msg = String.format("Post vmbk.profile:%s to %s", contentName, getTargetType());
             this.logger.info(msg);
         }
+        getMetadataCache().invalidate(contentName);
         final boolean result = post(contentName, byteArrayStream, MIME_TEXT_PLAIN_STREAM);
 
         if (this.logger.isLoggable(Level.CONFIG)) {
@@ -117,4 +263,12 @@ abstract class AbstractTarget implements ITarget {
         return result;
     }
 
+    /**
+     * Add to the dedup index every block stored on the repository
+     *
+     * @param index
+     * @return number of blocks added
+     * @throws IOException
+     */
+    protected abstract int warmDedupIndex(DedupIndex index) throws IOException;
 }
@@ -28,29 +28,42 @@ package com.vmware.safekeeping.core.control.target;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vmware.safekeeping.common.Utility;
 import com.vmware.safekeeping.core.control.info.ExBlockInfo;
 import com.vmware.safekeeping.core.core.Dedup;
-import com.vmware.safekeeping.core.core.DedupItem;
+import com.vmware.safekeeping.core.profile.BlockManifest;
 import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
 import com.vmware.safekeeping.core.profile.GenerationProfile;
+import com.vmware.safekeeping.core.profile.SimpleBlockInfo;
+import com.vmware.safekeeping.core.profile.dataclass.DiskProfile;
+import com.vmware.safekeeping.core.profile.dataclass.FcoGenerationProfile;
 import com.vmware.safekeeping.core.type.ByteArrayInOutStream;
 import com.vmware.safekeeping.core.type.ManagedFcoEntityInfo;
+import com.vmware.safekeeping.core.type.enums.CompressionCodec;
 
 abstract class AbstractTargetOperationImpl implements ITargetOperation {
 
     private static final String ACTIVE_KEY = "active";
+    /**
+     * User metadata holding the block descriptor
+     */
+    protected static final String DESCRIPTOR_METADATA = "dedup";
+    protected static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
     protected static final String MIME_BINARY_OCTECT_STREAM = "binary/octet-stream";
     protected static final String MIME_TEXT_PLAIN_STREAM = "text/plain";
     protected Logger logger;
@@ -67,6 +80,38 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
         this.entityInfo = entityInfo;
     }
 
+    /**
+     * Update the block with the attributes of the stored block
+     *
+     * @param block
+     * @param descriptor
+     */
+    protected void applyDescriptor(final ExBlockInfo block, final Dedup descriptor) {
+        if ((block.getMd5() == null) || !block.getMd5().equalsIgnoreCase(descriptor.getMd5())) {
+            block.setMd5(descriptor.getMd5());
+        }
+        // XOR operation
+        if (((block.isCipher() && !descriptor.isCipher()) || (!block.isCipher() && descriptor.isCipher()))) {
+            block.setCipher(descriptor.isCipher());
+        }
+        // the stored block keeps the cipher parameters it was written with
+        block.setCipherOffset(descriptor.getCipherOffset());
+        block.setCipherNonce(descriptor.getCipherNonce());
+        // XOR operation
+        if (((block.isCompress() && !descriptor.isCompress()) || (!block.isCompress() && descriptor.isCompress()))) {
+            block.setCompress(descriptor.isCompress());
+        }
+        // descriptors without codec were written by MiGz
+        block.setCompressionCodec(
+                (descriptor.getCompressionCodec() == null) ? CompressionCodec.MIGZ : descriptor.getCompressionCodec());
+        if (block.getSize() != descriptor.getSize()) {
+            block.setSize(descriptor.getSize());
+        }
+        if (block.getStreamSize() != descriptor.getStreamSize()) {
+            block.setStreamSize(descriptor.getStreamSize());
+        }
+    }
+
     @Override
     public LinkedHashMap<String, String> defaultConfigurations() {
         final LinkedHashMap<String, String> result = new LinkedHashMap<>();
@@ -74,6 +119,26 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
         return result;
     }
 
+    @Override
+    public boolean doesKeyExist(final ExBlockInfo block) {
+        final DedupIndex dedupIndex = this.parent.getDedupIndex();
+        if ((dedupIndex != null) && dedupIndex.contains(block.getSha1())) {
+            return true;
+        }
+        return doesKeyExistOnTarget(block);
+    }
+
+    @Override
+    public boolean doesKeyExistOnTarget(final ExBlockInfo block) {
+        final boolean result = probeKey(block);
+        if (result) {
+            indexDump(block);
+        } else {
+            unindexDump(block);
+        }
+        return result;
+    }
+
     @Override
     public boolean doesObjectExist(final String key) {
         return this.parent.doesObjectExist(key);
@@ -89,6 +154,18 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
         return this.entityInfo;
     }
 
+    @Override
+    public byte[] getBlockManifestToByteArray(final ManagedFcoEntityInfo fcoEntity, final int genId)
+            throws IOException {
+        final String contentName = String.format("%s/%d/%s", fcoEntity.getUuid(), genId,
+                CoreGlobalSettings.BLOCK_MANIFEST_FILENAME);
+        if (this.logger.isLoggable(Level.INFO)) {
+            final String msg = String.format("Get blockManifest:%s from %s", contentName, getTargetName());
+            this.logger.info(msg);
+        }
+        return getMetadataObject(contentName, true);
+    }
+
     @Override
     public byte[] getFcoProfileToByteArray(final ManagedFcoEntityInfo fco) throws IOException {
         final String contentName = CoreGlobalSettings.getDefaultProfileVmPath(fco.getUuid());
@@ -96,7 +173,7 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
             final String msg = String.format("Get profileVm:%s from %s", contentName, getTargetName());
             this.logger.info(msg);
         }
-        return getObject(contentName);
+        return getMetadataObject(contentName, false);
     }
 
     @Override
@@ -104,6 +181,16 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
         return this.parent.getFullPath(path);
     }
 
+    @Override
+    public FcoGenerationProfile getGenerationProfile(final ManagedFcoEntityInfo fcoEntity, final int genId)
+            throws IOException {
+        final String contentName = String.format("%s/%d/%s", fcoEntity.getUuid(), genId,
+                CoreGlobalSettings.GENERATION_PROFILE_FILENAME);
+        return this.parent.getMetadataCache().getDecoded(contentName, this.parent::getObjectVersion,
+                this::getObject, true, FcoGenerationProfile.class,
+                content -> OBJECT_MAPPER.readValue(content, FcoGenerationProfile.class));
+    }
+
     @Override
     public byte[] getGenerationProfileToByteArray(final ManagedFcoEntityInfo fcoEntity, final int genId)
             throws IOException {
@@ -115,7 +202,19 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
                     instanceFolder, genId, contentName, getTargetName());
             this.logger.info(msg);
         }
-        return getObject(contentName);
+        return getMetadataObject(contentName, true);
+    }
+
+    /**
+     * Read a metadata object through the metadata cache of the target
+     *
+     * @param key       path relative to the repository root
+     * @param immutable true if the object is never rewritten once created
+     * @return the content of the object
+     * @throws IOException
+     */
+    protected byte[] getMetadataObject(final String key, final boolean immutable) throws IOException {
+        return this.parent.getMetadataCache().get(key, this.parent::getObjectVersion, this::getObject, immutable);
     }
 
     @Override
@@ -141,6 +240,11 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
         return result;
     }
 
+    @Override
+    public Set<String> getReferencedDigests(final Collection<String> digests) throws IOException {
+        return this.parent.getReferenceStore().getReferenced(digests);
+    }
+
     @Override
     public String getTargetName() {
         return this.parent.getTargetType();
@@ -151,6 +255,26 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
         return this.parent.getUri(path);
     }
 
+    /**
+     * @param descriptor json block descriptor
+     * @return true if the descriptor records generations owning the block (saved
+     *         before the reference store)
+     * @throws IOException
+     */
+    static boolean hasDescriptorReferences(final byte[] descriptor) throws IOException {
+        final Dedup dedup = OBJECT_MAPPER.readValue(descriptor, Dedup.class);
+        return (dedup.getDedupList() != null) && !dedup.getDedupList().isEmpty();
+    }
+
+    @Override
+    public boolean hasLegacyReferences(final ExBlockInfo block) throws IOException {
+        if (!doesObjectExist(block.getJsonKey())) {
+            return false;
+        }
+        final Dedup dedup = OBJECT_MAPPER.readValue(getObjectAsString(block.getJsonKey()), Dedup.class);
+        return !dedup.getDedupList().isEmpty();
+    }
+
     @Override
     public boolean isMd5FileExist(final GenerationProfile profile) {
         return doesObjectExist(profile.getMd5ContentPath());
@@ -177,43 +301,16 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
 
     }
 
-    protected String manageDedupEntities(final ExBlockInfo block, final String entities)
-            throws JsonProcessingException {
-        final String uuid = getEntityInfo().getUuid();
-        final Dedup dedup = new ObjectMapper().readValue(entities, Dedup.class);
-        final Integer generationId = block.getGenerationId();
-        if ((block.getMd5() == null) || !block.getMd5().equalsIgnoreCase(dedup.getMd5())) {
-            block.setMd5(dedup.getMd5());
-        }
-        // XOR operation
-        if (((block.isCipher() && !dedup.isCipher()) || (!block.isCipher() && dedup.isCipher()))) {
-            block.setCipher(dedup.isCipher());
-        }
-        // XOR operation
-        if (((block.isCompress() && !dedup.isCompress()) || (!block.isCompress() && dedup.isCompress()))) {
-            block.setCompress(dedup.isCompress());
-        }
-        if (block.getSize() != dedup.getSize()) {
-            block.setSize(dedup.getSize());
-        }
-        if (block.getStreamSize() != dedup.getStreamSize()) {
-            block.setStreamSize(dedup.getStreamSize());
-        }
-        boolean found = false;
-        for (final DedupItem d : dedup.getDedupList()) {
-            if (d.getUuid().contains(uuid)) {
-                d.getGenerations().add(generationId);
-                found = true;
-                break;
-            }
-        }
-
-        if (!found) {
-            dedup.getDedupList().add(new DedupItem(uuid, block));
+    /**
+     * Record the block on the dedup index
+     *
+     * @param block
+     */
+    protected void indexDump(final ExBlockInfo block) {
+        final DedupIndex dedupIndex = this.parent.getDedupIndex();
+        if (dedupIndex != null) {
+            dedupIndex.add(block.getSha1());
         }
-
-        return new ObjectMapper().writeValueAsString(dedup);
-
     }
 
     protected abstract boolean post(GenerationProfile profile, final String path,
@@ -224,6 +321,14 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
         return post(null, path, digestOutput, contentType);
     }
 
+    /**
+     * Check on the target if the block data and json keys exist
+     *
+     * @param block
+     * @return
+     */
+    protected abstract boolean probeKey(ExBlockInfo block);
+
     @Override
     public boolean postGenerationProfile(final GenerationProfile profile) {
         if (this.logger.isLoggable(Level.INFO)) {
@@ -234,6 +339,28 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
         boolean result = false;
         ByteArrayInOutStream byteArrayStream;
         try {
+            final List<String> digests = new ArrayList<>();
+            for (final DiskProfile disk : profile.getDisks()) {
+                for (final SimpleBlockInfo dump : profile.getDumps(disk.getDiskId()).values()) {
+                    if (!dump.isZero()) {
+                        digests.add(dump.getSha1());
+                    }
+                }
+            }
+            if (!digests.isEmpty()) {
+                if ((profile.getReferenceToken() == null) && !profile.isReferenceStore()) {
+                    profile.setReferenceToken(UUID.randomUUID().toString());
+                }
+                this.parent.getReferenceStore().addReferences(profile.getUuid(), profile.getGenerationId(),
+                        profile.getReferenceToken(), digests);
+                profile.setReferenceStore(true);
+            }
+            this.parent.getMetadataCache().invalidate(profile.getBlockManifestPath());
+            this.parent.getMetadataCache().invalidate(profile.getGenerationProfileContentPath());
+            profile.setBlockManifestVersion(null);
+            if (CoreGlobalSettings.isBlockManifestEnabled()) {
+                postBlockManifest(profile);
+            }
             byteArrayStream = profile.toByteArrayInOutputStream();
             result = post(profile, profile.getGenerationProfileContentPath(), byteArrayStream, MIME_TEXT_PLAIN_STREAM);
         } catch (final IOException | NoSuchAlgorithmException e) {
@@ -243,6 +370,29 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
 
     }
 
+    /**
+     * Post the block table of the generation on the binary manifest. On failure
+     * the dumps stay inside the generation profile
+     *
+     * @param profile
+     */
+    private void postBlockManifest(final GenerationProfile profile) {
+        try {
+            final ByteArrayInOutStream manifest = profile
+                    .toBlockManifest(CoreGlobalSettings.isBlockManifestCompressionEnabled());
+            if (this.logger.isLoggable(Level.INFO)) {
+                final String msg = String.format("Post blockManifest:%s (%d bytes) to %s",
+                        profile.getBlockManifestPath(), manifest.size(), getTargetName());
+                this.logger.info(msg);
+            }
+            if (post(profile, profile.getBlockManifestPath(), manifest, MIME_BINARY_OCTECT_STREAM)) {
+                profile.setBlockManifestVersion((int) BlockManifest.VERSION);
+            }
+        } catch (final IOException | NoSuchAlgorithmException e) {
+            Utility.logWarning(this.logger, e);
+        }
+    }
+
     @Override
     public boolean postGenerationsCatalog(final ManagedFcoEntityInfo fco, final ByteArrayInOutStream byteArrayStream)
             throws IOException {
@@ -251,6 +401,7 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
             final String msg = String.format("Post postGenerationsCatalog:%s to %s", contentName, getTargetName());
             this.logger.info(msg);
         }
+        this.parent.getMetadataCache().invalidate(contentName);
         return post(contentName, byteArrayStream, MIME_TEXT_PLAIN_STREAM);
     }
 
@@ -308,11 +459,55 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
         return post(profile, contentName, byteArrayStream, MIME_TEXT_PLAIN_STREAM);
     }
 
+    @Override
+    public boolean referenceDump(final ExBlockInfo block) {
+        block.setReference(true);
+        block.setDuplicated(true);
+        // nothing is transferred
+        block.setStreamSize(0);
+        getMd5DiskList().put(block.getKey(), block.getMd5());
+        retainDump(block);
+        block.setEndTime(System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void removeDump(final ExBlockInfo dumpFileInfo) throws IOException {
+        unindexDump(dumpFileInfo);
+        ITargetOperation.super.removeDump(dumpFileInfo);
+    }
+
+    @Override
+    public Set<String> removeReferences(final GenerationProfile profile, final Collection<String> digests)
+            throws IOException {
+        return this.parent.getReferenceStore().removeReferences(profile.getUuid(), profile.getGenerationId(),
+                profile.getReferenceToken(), digests);
+    }
+
+    @Override
+    public boolean removeDumps(final Collection<ExBlockInfo> dumps) {
+        for (final ExBlockInfo dump : dumps) {
+            unindexDump(dump);
+        }
+        return ITargetOperation.super.removeDumps(dumps);
+    }
+
     @Override
     public boolean removeFcoProfile(final ManagedFcoEntityInfo fcoInfo) {
+        this.parent.getMetadataCache().invalidateFco(fcoInfo.getUuid());
         return deleteFolder(fcoInfo.getUuid());
     }
 
+    /**
+     * Protect the block from a generation removal until the generation profile
+     * records its references
+     *
+     * @param block
+     */
+    protected void retainDump(final ExBlockInfo block) {
+        this.parent.getReferenceStore().retain(block.getSha1());
+    }
+
     @Override
     public void saveStatus(final String key) {
         final TreeMap<String, String> prevMd5DiskList = new TreeMap<>();
@@ -321,4 +516,16 @@ abstract class AbstractTargetOperationImpl implements ITargetOperation {
         this.store.put(key, new Object[] { prevMd5DiskList });
     }
 
+    /**
+     * Remove the block from the dedup index
+     *
+     * @param block
+     */
+    protected void unindexDump(final ExBlockInfo block) {
+        final DedupIndex dedupIndex = this.parent.getDedupIndex();
+        if (dedupIndex != null) {
+            dedupIndex.remove(block.getSha1());
+        }
+    }
+
 }
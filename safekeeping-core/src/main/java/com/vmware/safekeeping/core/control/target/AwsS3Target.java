@@ -26,27 +26,48 @@
  ******************************************************************************/
 package com.vmware.safekeeping.core.control.target;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.xml.bind.DatatypeConverter;
+
 import org.apache.commons.codec.binary.Base64;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.Bucket;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
-import com.amazonaws.services.s3.model.PutObjectResult;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import com.amazonaws.services.s3.transfer.model.UploadResult;
 import com.amazonaws.util.IOUtils;
 import com.vmware.safekeeping.common.Utility;
 import com.vmware.safekeeping.core.command.options.CoreAwsS3TargetOptions;
@@ -54,6 +75,7 @@ import com.vmware.safekeeping.core.exception.SafekeepingConnectionException;
 import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
 import com.vmware.safekeeping.core.type.ByteArrayInOutStream;
 import com.vmware.safekeeping.core.type.ManagedFcoEntityInfo;
+import com.vmware.safekeeping.core.type.VmbkThreadFactory;
 
 public class AwsS3Target extends AbstractTarget {
 
@@ -64,7 +86,21 @@ public class AwsS3Target extends AbstractTarget {
     public static final String TARGET_TYPE_NAME = "amazonS3";
 
     public static final String S3_SECRET_KEY = "secretKey";
+    public static final String ENDPOINT = "endpoint";
+    public static final String PATH_STYLE_ACCESS = "pathStyleAccess";
+    public static final String MAX_CONNECTIONS = "maxConnections";
+    public static final String MAX_CONCURRENT_UPLOADS = "maxConcurrentUploads";
+    public static final String MULTIPART_THRESHOLD = "multipartThreshold";
+    public static final String MULTIPART_PART_SIZE = "multipartPartSize";
+    /**
+     * User metadata holding the md5 of the object. The ETag of a multipart
+     * upload is not the md5 of the content
+     */
+    static final String MD5_METADATA = "md5";
+
     private AmazonS3 s3;
+    private TransferManager transferManager;
+    private ExecutorService uploadExecutor;
 
     public AwsS3Target(final CoreAwsS3TargetOptions options) {
         super(options);
@@ -76,6 +112,12 @@ public class AwsS3Target extends AbstractTarget {
 
     @Override
     public void close() {
+        closeDedupIndex();
+        if (this.transferManager != null) {
+            this.transferManager.shutdownNow(false);
+            this.transferManager = null;
+            this.uploadExecutor = null;
+        }
         this.s3.shutdown();
     }
 
@@ -106,6 +148,15 @@ public class AwsS3Target extends AbstractTarget {
         return result;
     }
 
+    @Override
+    protected void deleteReferenceObject(final String key) throws IOException {
+        try {
+            this.s3.deleteObject(getBacketName(), getFullPath(key));
+        } catch (final AmazonClientException e) {
+            throw new IOException(e);
+        }
+    }
+
     @Override
     public boolean doesObjectExist(final String key) {
         return this.s3.doesObjectExist(getBacketName(), getFullPath(key));
@@ -123,16 +174,23 @@ public class AwsS3Target extends AbstractTarget {
             final String msg = String.format("Get %s from %s", contentName, getTargetType());
             this.logger.info(msg);
         }
-        byte[] result = null;
-        if (doesObjectExist(contentName)) {
-            final S3Object s3Object = this.s3
-                    .getObject(new GetObjectRequest(getBacketName(), getFullPath(contentName)));
+        return getMetadataObject(contentName);
+    }
 
-            try (S3ObjectInputStream objectInputStream = s3Object.getObjectContent()) {
-                result = IOUtils.toByteArray(objectInputStream);
+    @Override
+    public String getObjectVersion(final String key) throws IOException {
+        try {
+            final ObjectMetadata metadata = this.s3.getObjectMetadata(getBacketName(), getFullPath(key));
+            final String md5 = metadata.getUserMetaDataOf(MD5_METADATA);
+            return (md5 != null) ? md5 : metadata.getETag();
+        } catch (final AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return null;
             }
+            throw new IOException(e);
+        } catch (final AmazonClientException e) {
+            throw new IOException(e);
         }
-        return result;
     }
 
     @Override
@@ -140,6 +198,23 @@ public class AwsS3Target extends AbstractTarget {
         return (CoreAwsS3TargetOptions) this.options;
     }
 
+    @Override
+    protected byte[] getReferenceObject(final String key) throws IOException {
+        try {
+            final S3Object s3Object = this.s3.getObject(new GetObjectRequest(getBacketName(), getFullPath(key)));
+            try (S3ObjectInputStream objectInputStream = s3Object.getObjectContent()) {
+                return IOUtils.toByteArray(objectInputStream);
+            }
+        } catch (final AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw new IOException(e);
+        } catch (final AmazonClientException e) {
+            throw new IOException(e);
+        }
+    }
+
     /**
      * @return the s3
      */
@@ -157,12 +232,38 @@ public class AwsS3Target extends AbstractTarget {
         return String.format("s3://%s/%s", getOptions().getBacket(), path);
     }
 
+    @Override
+    public int getUploadConcurrency() {
+        return getOptions().getMaxConcurrentUploads();
+    }
+
     @Override
     public boolean isProfAllVmExist() {
         final String profAllFcoPath = getFullPath(CoreGlobalSettings.getGlobalProfileFileName());
         return this.s3.doesObjectExist(getOptions().getBacket(), profAllFcoPath);
     }
 
+    @Override
+    protected List<String> listReferenceObjects(final String prefix) throws IOException {
+        final String fullPrefix = getFullPath(prefix);
+        final ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(getBacketName())
+                .withPrefix(fullPrefix).withDelimiter(getSeparator());
+        final List<String> result = new ArrayList<>();
+        try {
+            ListObjectsV2Result listing;
+            do {
+                listing = this.s3.listObjectsV2(request);
+                for (final S3ObjectSummary summary : listing.getObjectSummaries()) {
+                    result.add(summary.getKey().substring(fullPrefix.length()));
+                }
+                request.setContinuationToken(listing.getNextContinuationToken());
+            } while (listing.isTruncated());
+        } catch (final AmazonClientException e) {
+            throw new IOException(e);
+        }
+        return result;
+    }
+
     @Override
     public LinkedHashMap<String, String> manualConfiguration() {
         final LinkedHashMap<String, String> result = super.manualConfiguration();
@@ -191,8 +292,27 @@ public class AwsS3Target extends AbstractTarget {
                         getOptions().getRegion());
                 this.logger.info(msg);
             }
-            this.s3 = AmazonS3ClientBuilder.standard().withCredentials(new AWSStaticCredentialsProvider(credentials))
-                    .withRegion(getOptions().getRegion()).build();
+            final ClientConfiguration clientConfiguration = new ClientConfiguration().withMaxConnections(
+                    Math.max(getOptions().getMaxConnections(), getOptions().getMaxConcurrentUploads()));
+            final AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard()
+                    .withCredentials(new AWSStaticCredentialsProvider(credentials))
+                    .withClientConfiguration(clientConfiguration)
+                    .withPathStyleAccessEnabled(getOptions().isPathStyleAccess());
+            if (getOptions().getEndpoint() == null) {
+                builder.withRegion(getOptions().getRegion());
+            } else {
+                builder.withEndpointConfiguration(
+                        new EndpointConfiguration(getOptions().getEndpoint(), getOptions().getRegion()));
+            }
+            this.s3 = builder.build();
+            // single PUTs and multipart parts share the pool of the transfer manager
+            this.uploadExecutor = Executors.newFixedThreadPool(getOptions().getMaxConcurrentUploads(),
+                    new VmbkThreadFactory("s3-upload-" + getName(), true, 0));
+            this.transferManager = TransferManagerBuilder.standard().withS3Client(this.s3)
+                    .withExecutorFactory(() -> this.uploadExecutor)
+                    .withMultipartUploadThreshold(getOptions().getMultipartThreshold())
+                    .withMinimumUploadPartSize(getOptions().getMultipartPartSize())
+                    .withShutDownThreadPools(true).build();
 
             result = (doesBucketExist(getOptions().getBacket()));
 
@@ -220,33 +340,154 @@ public class AwsS3Target extends AbstractTarget {
             throw new SafekeepingConnectionException(e);
 
         }
+        if (result) {
+            openDedupIndex();
+        }
         return result;
     }
 
+    /**
+     * Metadata of an object uploaded with
+     * {@link #upload(String, byte[], int, ObjectMetadata)}.
+     * Content-MD5 is checked only on single part uploads, the md5 is kept on the
+     * user metadata for every upload
+     *
+     * @param contentLength
+     * @param contentType
+     * @param md5Digest
+     * @return
+     */
+    ObjectMetadata newObjectMetadata(final long contentLength, final String contentType, final byte[] md5Digest) {
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(contentLength);
+        metadata.setContentType(contentType);
+        if (contentLength < getOptions().getMultipartThreshold()) {
+            metadata.setContentMD5(new String(Base64.encodeBase64(md5Digest), StandardCharsets.UTF_8));
+        }
+        metadata.addUserMetadata(MD5_METADATA, DatatypeConverter.printHexBinary(md5Digest));
+        return metadata;
+    }
+
     @Override
     protected boolean post(final String path, final ByteArrayInOutStream digestOutput, final String contentType) {
         boolean result = false;
-        byte[] md5Digest = null;
         try {
-            final String relativePath = getFullPath(path);
-            md5Digest = digestOutput.md5Digest();
-
-            final ObjectMetadata metadata = new ObjectMetadata();
-            metadata.setContentLength(digestOutput.size());
-            metadata.setContentType(contentType);
-            final String md5 = new String(Base64.encodeBase64(md5Digest), StandardCharsets.UTF_8);
-            metadata.setContentMD5(md5);
-            final InputStream content = digestOutput.getByteArrayInputStream();
-            final PutObjectRequest putObjectRequest = new PutObjectRequest(getOptions().getBacket(), relativePath,
-                    content, metadata);
-            final PutObjectResult ret = this.s3.putObject(putObjectRequest);
-            if (ret != null) {
-                result = true;
-            }
+            final ObjectMetadata metadata = newObjectMetadata(digestOutput.size(), contentType,
+                    digestOutput.md5Digest());
+            result = upload(getFullPath(path), digestOutput.toByteArray(), digestOutput.size(), metadata);
         } catch (final AmazonClientException e) {
             Utility.logWarning(this.logger, e);
+        } catch (final InterruptedException e) {
+            this.logger.log(Level.WARNING, "Interrupted!", e);
+            // Restore interrupted state...
+            Thread.currentThread().interrupt();
         }
         return result;
     }
 
+    @Override
+    protected void putReferenceObject(final String key, final byte[] content) throws IOException {
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        metadata.setContentType(MIME_BINARY_OCTECT_STREAM);
+        try {
+            this.s3.putObject(new PutObjectRequest(getBacketName(), getFullPath(key),
+                    new ByteArrayInputStream(content), metadata));
+        } catch (final AmazonClientException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Upload an object through the upload pool of the target, the PUT requests
+     * of the target never exceed maxConcurrentUploads. Objects smaller than the
+     * multipart threshold are sent by the transfer manager with a single PUT.
+     * The transfer manager sends the parts of a stream one after the other, so
+     * larger objects are split here in parts of multipartPartSize uploaded in
+     * parallel.
+     *
+     * @param key
+     * @param content  content of the object from offset 0
+     * @param length   size of the object
+     * @param metadata
+     * @return true if the object has been uploaded
+     * @throws InterruptedException
+     */
+    boolean upload(final String key, final byte[] content, final int length, final ObjectMetadata metadata)
+            throws InterruptedException {
+        if (length < getOptions().getMultipartThreshold()) {
+            final UploadResult result = this.transferManager.upload(new PutObjectRequest(getBacketName(), key,
+                    new ByteArrayInputStream(content, 0, length), metadata)).waitForUploadResult();
+            return result != null;
+        }
+        final String uploadId = this.s3
+                .initiateMultipartUpload(new InitiateMultipartUploadRequest(getBacketName(), key, metadata))
+                .getUploadId();
+        final int partSize = (int) Math.min(Integer.MAX_VALUE, getOptions().getMultipartPartSize());
+        final List<Future<PartETag>> parts = new ArrayList<>((length / partSize) + 1);
+        boolean result = false;
+        try {
+            int partNumber = 1;
+            for (int offset = 0; offset < length; offset += partSize) {
+                final int size = Math.min(partSize, length - offset);
+                final UploadPartRequest part = new UploadPartRequest().withBucketName(getBacketName()).withKey(key)
+                        .withUploadId(uploadId).withPartNumber(partNumber++)
+                        .withInputStream(new ByteArrayInputStream(content, offset, size)).withPartSize(size);
+                parts.add(this.uploadExecutor.submit(() -> this.s3.uploadPart(part).getPartETag()));
+            }
+            final List<PartETag> partETags = new ArrayList<>(parts.size());
+            for (final Future<PartETag> part : parts) {
+                partETags.add(part.get());
+            }
+            this.s3.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(getBacketName(), key, uploadId, partETags));
+            result = true;
+        } catch (final ExecutionException e) {
+            Utility.logWarning(this.logger, e);
+        } finally {
+            if (!result) {
+                abortMultipartUpload(key, uploadId, parts);
+            }
+        }
+        return result;
+    }
+
+    private void abortMultipartUpload(final String key, final String uploadId, final List<Future<PartETag>> parts) {
+        for (final Future<PartETag> part : parts) {
+            part.cancel(true);
+        }
+        try {
+            this.s3.abortMultipartUpload(new AbortMultipartUploadRequest(getBacketName(), key, uploadId));
+        } catch (final AmazonClientException e) {
+            Utility.logWarning(this.logger, e);
+        }
+    }
+
+    @Override
+    protected int warmDedupIndex(final DedupIndex index) throws IOException {
+        final String prefix = getFullPath(CoreGlobalSettings.REPOSITORY_DATA_PATH);
+        final ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(getBacketName())
+                .withPrefix(prefix);
+        int keys = 0;
+        try {
+            ListObjectsV2Result listing;
+            do {
+                listing = this.s3.listObjectsV2(request);
+                // the block descriptor is stored on the data object metadata
+                for (final S3ObjectSummary summary : listing.getObjectSummaries()) {
+                    final String key = summary.getKey().substring(prefix.length());
+                    final int separator = key.indexOf('/');
+                    if ((separator > 0) && "data".equals(key.substring(separator + 1))) {
+                        index.add(key.substring(0, separator));
+                        ++keys;
+                    }
+                }
+                request.setContinuationToken(listing.getNextContinuationToken());
+            } while (listing.isTruncated());
+        } catch (final AmazonClientException e) {
+            throw new IOException(e);
+        }
+        return keys;
+    }
+
 }
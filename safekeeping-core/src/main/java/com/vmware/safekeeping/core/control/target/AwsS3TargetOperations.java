@@ -27,31 +27,33 @@
 package com.vmware.safekeeping.core.control.target;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.bind.DatatypeConverter;
 
-import org.apache.commons.codec.binary.Base64;
-
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.SdkClientException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
 import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.model.PutObjectRequest;
-import com.amazonaws.services.s3.model.PutObjectResult;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.amazonaws.util.IOUtils;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vmware.safekeeping.common.Utility;
 import com.vmware.safekeeping.core.control.TargetBuffer;
 import com.vmware.safekeeping.core.control.info.ExBlockInfo;
@@ -63,6 +65,11 @@ import com.vmware.safekeeping.core.type.ManagedFcoEntityInfo;
 
 class AwsS3TargetOperations extends AbstractTargetOperationImpl {
 
+    /**
+     * Max keys of a DeleteObjects request
+     */
+    private static final int MAX_DELETE_KEYS = 1000;
+
     private final AmazonS3 s3;
 
     private final String backetName;
@@ -78,28 +85,28 @@ class AwsS3TargetOperations extends AbstractTargetOperationImpl {
     public boolean closePostDump(final ExBlockInfo block, final TargetBuffer targetBuffer) {
         boolean result = true;
         try {
-            final String uuid = getEntityInfo().getUuid();
-            final Dedup dedup = new Dedup(uuid, block);
-            final String entities = new ObjectMapper().writeValueAsString(dedup);
-            final ObjectMetadata s3ObjectMetadata = new ObjectMetadata();
-            s3ObjectMetadata.setContentMD5(block.getMd5EncodeBase64());
-            s3ObjectMetadata.setContentLength(block.getStreamSize());
-            s3ObjectMetadata.setContentType(MIME_BINARY_OCTECT_STREAM);
-
-            this.s3.putObject(getBacketname(), block.getJsonKey(), entities);
-            final PutObjectRequest putObjectRequest = new PutObjectRequest(getBacketname(), block.getDataKey(),
-                    targetBuffer.getInputStream(), s3ObjectMetadata);
-            final PutObjectResult putObjectResult = this.s3.putObject(putObjectRequest);
-            result = putObjectResult != null;
+            final ObjectMetadata s3ObjectMetadata = getParent().newObjectMetadata(block.getStreamSize(),
+                    MIME_BINARY_OCTECT_STREAM, DatatypeConverter.parseHexBinary(block.getMd5()));
+            s3ObjectMetadata.addUserMetadata(DESCRIPTOR_METADATA, OBJECT_MAPPER.writeValueAsString(new Dedup(block)));
+
+            result = getParent().upload(block.getDataKey(), targetBuffer.getFinalBuffer(),
+                    (int) block.getStreamSize(), s3ObjectMetadata);
             block.setDuplicated(false);
             if (result) {
                 getMd5DiskList().put(block.getKey(), block.getMd5());
+                retainDump(block);
+                indexDump(block);
             }
         } catch (final JsonProcessingException | SdkClientException e) {
             result = false;
             Utility.logWarning(this.logger, e);
             block.setReason(getEntityInfo(), e);
-
+        } catch (final InterruptedException e) {
+            result = false;
+            this.logger.log(Level.WARNING, "Interrupted!", e);
+            block.setReason(getEntityInfo(), e);
+            // Restore interrupted state...
+            Thread.currentThread().interrupt();
         } finally {
             final long postEndTime = System.nanoTime();
             block.setEndTime(postEndTime);
@@ -130,18 +137,17 @@ class AwsS3TargetOperations extends AbstractTargetOperationImpl {
     public boolean dedupDump(final ExBlockInfo block) {
         boolean result = true;
         try {
-            String entities;
-
-            entities = this.s3.getObjectAsString(getBacketname(), block.getJsonKey());
-            final String newEntities = manageDedupEntities(block, entities);
-            this.s3.putObject(getBacketname(), block.getJsonKey(), newEntities);
+            applyDescriptor(block, getDescriptor(block));
 
             block.setDuplicated(true);
 
             getMd5DiskList().put(block.getKey(), block.getMd5());
+            retainDump(block);
+            indexDump(block);
 
-        } catch (final JsonProcessingException e) {
+        } catch (final IOException | SdkClientException e) {
             result = false;
+            unindexDump(block);
             Utility.logWarning(this.logger, e);
             block.setReason(getEntityInfo(), e);
 
@@ -156,19 +162,24 @@ class AwsS3TargetOperations extends AbstractTargetOperationImpl {
     public boolean deleteFolder(final String folderName) {
         boolean result = false;
         final String absolutePath = getFullPath(folderName);
+        // the folder separator avoids to match the folders with the same prefix
+        final String prefix = absolutePath.endsWith("/") ? absolutePath : (absolutePath + "/");
+        final ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(getBacketname())
+                .withPrefix(prefix);
         try {
-            while (true) {
-                final List<S3ObjectSummary> fileList = this.s3.listObjects(getBacketname(), absolutePath)
-                        .getObjectSummaries();
-                if (fileList.isEmpty()) {
-                    break;
-                }
-                for (final S3ObjectSummary file : fileList) {
-                    this.s3.deleteObject(getBacketname(), file.getKey());
+            final List<String> failed = new ArrayList<>();
+            ListObjectsV2Result listing;
+            do {
+                listing = this.s3.listObjectsV2(request);
+                final List<String> keys = new ArrayList<>();
+                for (final S3ObjectSummary file : listing.getObjectSummaries()) {
+                    keys.add(file.getKey());
                 }
-            }
+                failed.addAll(deleteObjects(keys));
+                request.setContinuationToken(listing.getNextContinuationToken());
+            } while (listing.isTruncated());
             this.s3.deleteObject(getBacketname(), absolutePath);
-            result = true;
+            result = failed.isEmpty();
         } catch (final AmazonClientException e) {
             Utility.logWarning(this.logger, e);
         }
@@ -182,15 +193,76 @@ class AwsS3TargetOperations extends AbstractTargetOperationImpl {
     }
 
     @Override
-    public boolean doesKeyExist(final ExBlockInfo block) {
-        return this.s3.doesObjectExist(getBacketname(), block.getDataKey())
-                && this.s3.doesObjectExist(getBacketname(), block.getJsonKey());
+    public List<String> deleteObjects(final Collection<String> keys) {
+        final List<String> result = new ArrayList<>();
+        final List<String> batch = new ArrayList<>(MAX_DELETE_KEYS);
+        final Iterator<String> iterator = keys.iterator();
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            if ((batch.size() == MAX_DELETE_KEYS) || !iterator.hasNext()) {
+                final DeleteObjectsRequest request = new DeleteObjectsRequest(getBacketname())
+                        .withKeys(batch.toArray(new String[0])).withQuiet(true);
+                try {
+                    this.s3.deleteObjects(request);
+                } catch (final MultiObjectDeleteException e) {
+                    for (final DeleteError error : e.getErrors()) {
+                        result.add(error.getKey());
+                    }
+                    Utility.logWarning(this.logger, e);
+                } catch (final AmazonClientException e) {
+                    result.addAll(batch);
+                    Utility.logWarning(this.logger, e);
+                }
+                if (this.logger.isLoggable(Level.FINE)) {
+                    final String msg = String.format("Deleted %d keys", batch.size());
+                    this.logger.fine(msg);
+                }
+                batch.clear();
+            }
+        }
+        return result;
     }
 
     private String getBacketname() {
         return this.backetName;
     }
 
+    /**
+     * Read the descriptor of a stored block. Blocks saved before the reference
+     * store keep the descriptor on the json object
+     *
+     * @param block
+     * @return
+     * @throws IOException
+     */
+    private Dedup getDescriptor(final ExBlockInfo block) throws IOException {
+        final ObjectMetadata metadata = this.s3.getObjectMetadata(getBacketname(), block.getDataKey());
+        String descriptor = metadata.getUserMetaDataOf(DESCRIPTOR_METADATA);
+        if (descriptor == null) {
+            descriptor = this.s3.getObjectAsString(getBacketname(), block.getJsonKey());
+        }
+        return OBJECT_MAPPER.readValue(descriptor, Dedup.class);
+    }
+
+    @Override
+    public byte[] getDumpContent(final ExBlockInfo blockInfo) throws IOException {
+        try {
+            final S3Object s3Object = this.s3
+                    .getObject(new GetObjectRequest(getBacketname(), blockInfo.getDataKey()));
+            try (S3ObjectInputStream objectInputStream = s3Object.getObjectContent()) {
+                final String md5 = getMd5(s3Object.getObjectMetadata());
+                if (!blockInfo.getMd5().equalsIgnoreCase(md5)) {
+                    objectInputStream.abort();
+                    throw new IOException(String.format("md5 mismatch expected:%s found:%s", blockInfo.getMd5(),
+                            md5.toUpperCase(Utility.LOCALE)));
+                }
+                return IOUtils.toByteArray(objectInputStream);
+            }
+        } catch (final AmazonClientException e) {
+            throw new IOException(e);
+        }
+    }
+
     @Override
     public byte[] getObject(final String key) throws IOException {
         byte[] result = null;
@@ -207,10 +279,22 @@ class AwsS3TargetOperations extends AbstractTargetOperationImpl {
         return this.s3.getObjectAsString(getBacketname(), getFullPath(key));
     }
 
+    /**
+     * Md5 of an object. Objects uploaded in parts have the md5 only on the user
+     * metadata
+     *
+     * @param metadata
+     * @return
+     */
+    private String getMd5(final ObjectMetadata metadata) {
+        final String md5 = metadata.getUserMetaDataOf(AwsS3Target.MD5_METADATA);
+        return (md5 != null) ? md5 : metadata.getETag();
+    }
+
     @Override
     public byte[] getObjectMd5(final String fullPath) throws IOException {
         final ObjectMetadata s3ObjectMetadata = this.s3.getObjectMetadata(getBacketname(), getFullPath(fullPath));
-        final String md5 = s3ObjectMetadata.getETag();
+        final String md5 = getMd5(s3ObjectMetadata);
         return md5.getBytes(StandardCharsets.UTF_8);
     }
 
@@ -239,7 +323,8 @@ class AwsS3TargetOperations extends AbstractTargetOperationImpl {
             this.logger.fine(msg);
         }
         final S3Object s3Object = this.s3.getObject(new GetObjectRequest(getBacketname(), blockInfo.getDataKey()));
-        if (blockInfo.getMd5().equalsIgnoreCase(s3Object.getObjectMetadata().getETag())) {
+        final String md5 = getMd5(s3Object.getObjectMetadata());
+        if (blockInfo.getMd5().equalsIgnoreCase(md5)) {
             blockInfo.setStreamSize(s3Object.getObjectMetadata().getContentLength());
 
             final byte[] buffer = targetBuffer.getInputBuffer();
@@ -259,7 +344,7 @@ class AwsS3TargetOperations extends AbstractTargetOperationImpl {
         } else {
             result = false;
             final String msg = String.format("md5 mismatch expected:%s found:%s", blockInfo.getMd5(),
-                    s3Object.getObjectMetadata().getETag().toUpperCase(Utility.LOCALE));
+                    md5.toUpperCase(Utility.LOCALE));
             blockInfo.setReason(getEntityInfo(), msg);
             this.logger.warning(msg);
         }
@@ -275,24 +360,27 @@ class AwsS3TargetOperations extends AbstractTargetOperationImpl {
         final String relativePath = getFullPath(path);
         md5Digest = digestOutput.md5Digest();
 
-        final ObjectMetadata metadata = new ObjectMetadata();
-        metadata.setContentLength(digestOutput.size());
-        metadata.setContentType(contentType);
-        final String md5 = new String(Base64.encodeBase64(md5Digest), StandardCharsets.UTF_8);
-        metadata.setContentMD5(md5);
-        final InputStream content = digestOutput.getByteArrayInputStream();
-        final PutObjectRequest putObjectRequest = new PutObjectRequest(getBacketname(), relativePath, content,
-                metadata);
-        final PutObjectResult ret = this.s3.putObject(putObjectRequest);
-        if (ret != null) {
-            if ((profile != null) && path.startsWith(profile.getGenerationPath())) {
-                getMd5DiskList().put(path, DatatypeConverter.printHexBinary(md5Digest));
+        final ObjectMetadata metadata = getParent().newObjectMetadata(digestOutput.size(), contentType, md5Digest);
+        try {
+            if (getParent().upload(relativePath, digestOutput.toByteArray(), digestOutput.size(), metadata)) {
+                if ((profile != null) && path.startsWith(profile.getGenerationPath())) {
+                    getMd5DiskList().put(path, DatatypeConverter.printHexBinary(md5Digest));
+                }
+                result = true;
             }
-            result = true;
+        } catch (final InterruptedException e) {
+            this.logger.log(Level.WARNING, "Interrupted!", e);
+            // Restore interrupted state...
+            Thread.currentThread().interrupt();
         }
         return result;
     }
 
+    @Override
+    protected boolean probeKey(final ExBlockInfo block) {
+        return this.s3.doesObjectExist(getBacketname(), block.getDataKey());
+    }
+
     @Override
     public void putObject(final String key, final String content) throws IOException {
         this.s3.putObject(getBacketname(), key, content);
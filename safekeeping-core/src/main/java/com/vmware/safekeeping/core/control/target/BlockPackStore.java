@@ -0,0 +1,815 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.control.target;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vmware.safekeeping.common.Utility;
+
+/**
+ * Block storage of a file repository on pack segments.
+ *
+ * The blocks are appended to a pack segment (descriptor plus data) and every
+ * segment has a sidecar index recording the blocks written and removed. The
+ * indexes are loaded at open, a block is read with a positional read of its
+ * segment. A segment is never modified: a removed block is recorded on the
+ * index of its segment and the space is reclaimed by the compaction, copying
+ * the blocks still referenced to the active segment and deleting the old one.
+ *
+ * The store is written by a single process: open loads the indexes without
+ * any lock, so many processes can read the store, and the first append,
+ * removal or compaction takes the lock file of the store, reloading the
+ * indexes, and fails if another process holds it. A reader sees the blocks on
+ * the store when it was opened. An append reserves its space on the active
+ * segment and writes the block outside the append lock, the index record is
+ * written once the block is on disk.
+ */
+public class BlockPackStore implements Closeable {
+
+    /**
+     * Position of a block on a segment
+     */
+    private static final class Location {
+        private final int segment;
+        private final long offset;
+        private final int descriptorLength;
+        private final int length;
+
+        private Location(final int segment, final long offset, final int descriptorLength, final int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.descriptorLength = descriptorLength;
+            this.length = length;
+        }
+
+        private long getDataOffset() {
+            return this.offset + Integer.BYTES + this.descriptorLength + Integer.BYTES;
+        }
+
+        private boolean isSame(final Location other) {
+            return (other != null) && (this.segment == other.segment) && (this.offset == other.offset);
+        }
+
+        private long size() {
+            return Integer.BYTES + (long) this.descriptorLength + Integer.BYTES + this.length;
+        }
+    }
+
+    /**
+     * Result of a migration from the one folder per block layout
+     */
+    public static final class MigrationResult {
+        private int migrated;
+        private int skipped;
+        private int failed;
+        private long bytes;
+
+        public long getBytes() {
+            return this.bytes;
+        }
+
+        public int getFailed() {
+            return this.failed;
+        }
+
+        public int getMigrated() {
+            return this.migrated;
+        }
+
+        public int getSkipped() {
+            return this.skipped;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Utility.LOCALE, "migrated:%d (%d bytes) skipped:%d failed:%d", this.migrated,
+                    this.bytes, this.skipped, this.failed);
+        }
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final File pack;
+        private final File index;
+        private long size;
+        private long liveBytes;
+        /**
+         * channel used by the appends, closed by the last writer when the segment
+         * is no longer active
+         */
+        private FileChannel channel;
+        private int writers;
+
+        private Segment(final File folder, final int id) {
+            this.id = id;
+            this.pack = new File(folder, String.format("%08d%s", id, PACK_SUFFIX));
+            this.index = new File(folder, String.format("%08d%s", id, INDEX_SUFFIX));
+        }
+    }
+
+    public static final String PACKS_PATH = "packs";
+
+    private static final String PACK_SUFFIX = ".pack";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String LOCK_NAME = ".lock";
+
+    private static final int PACK_MAGIC = 0x534B5041;
+    private static final int INDEX_MAGIC = 0x534B5049;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+
+    private static final String DATA_NAME = "data";
+    private static final String JSON_NAME = "json";
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            final int n = channel.read(buffer, current);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            current += n;
+        }
+    }
+
+    private static void writeHeader(final File file, final int magic) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(magic);
+            out.writeInt(VERSION);
+        }
+    }
+
+    private final File folder;
+    private final Logger logger;
+    private final long maxSegmentSize;
+    private final Map<String, Location> locations;
+    private final TreeMap<Integer, Segment> segments;
+    /**
+     * Read lock for the readers, write lock to delete a segment
+     */
+    private final ReadWriteLock lock;
+    private final Object appendLock;
+    private Segment active;
+    private DataOutputStream activeIndex;
+    private FileChannel storeLockChannel;
+    private FileLock storeLock;
+
+    BlockPackStore(final File folder, final long maxSegmentSize, final Logger logger) {
+        this.folder = folder;
+        this.logger = logger;
+        this.maxSegmentSize = maxSegmentSize;
+        this.locations = new HashMap<>();
+        this.segments = new TreeMap<>();
+        this.lock = new ReentrantReadWriteLock();
+        this.appendLock = new Object();
+    }
+
+    /**
+     * Append a block. If expected is not null the block is written only if it is
+     * still on the expected location (compaction)
+     *
+     * @return true if the block has been written
+     */
+    private boolean append(final String digest, final byte[] descriptor, final ReadableByteChannel content,
+            final long length, final Location expected) throws IOException {
+        final Segment segment;
+        final Location location;
+        synchronized (this.appendLock) {
+            lockForWrite();
+            if ((expected != null) && !expected.isSame(getLocation(digest))) {
+                return false;
+            }
+            if ((this.active == null) || (this.active.size >= this.maxSegmentSize)) {
+                rollSegment();
+            }
+            segment = this.active;
+            location = new Location(segment.id, segment.size, descriptor.length, (int) length);
+            segment.size = location.offset + location.size();
+            ++segment.writers;
+        }
+        boolean written = false;
+        try {
+            write(segment.channel, digest, descriptor, content, location);
+            // the block must be on disk before the index records it
+            segment.channel.force(false);
+            written = true;
+        } finally {
+            synchronized (this.appendLock) {
+                --segment.writers;
+                try {
+                    if (written && ((expected == null) || expected.isSame(getLocation(digest)))) {
+                        appendPut(segment, digest, location);
+                        segment.liveBytes += location.size();
+                        final Location previous;
+                        synchronized (this.locations) {
+                            previous = this.locations.put(digest, location);
+                        }
+                        if (previous != null) {
+                            release(previous);
+                        }
+                    } else {
+                        written = false;
+                    }
+                } finally {
+                    if (segment != this.active) {
+                        releaseChannel(segment);
+                    }
+                }
+            }
+        }
+        return written;
+    }
+
+    private void appendPut(final Segment segment, final String digest, final Location location)
+            throws IOException {
+        if (segment == this.active) {
+            writePut(this.activeIndex, digest, location);
+            this.activeIndex.flush();
+        } else {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(segment.index, true))) {
+                writePut(out, digest, location);
+            }
+        }
+    }
+
+    private void appendRemove(final Segment segment, final String digest, final Location location)
+            throws IOException {
+        if (segment == this.active) {
+            writeRemove(this.activeIndex, digest, location);
+            this.activeIndex.flush();
+        } else {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(segment.index, true))) {
+                writeRemove(out, digest, location);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this.appendLock) {
+            closeActive();
+            try {
+                if (this.storeLock != null) {
+                    this.storeLock.release();
+                }
+                if (this.storeLockChannel != null) {
+                    this.storeLockChannel.close();
+                }
+            } catch (final IOException e) {
+                Utility.logWarning(this.logger, e);
+            } finally {
+                this.storeLock = null;
+                this.storeLockChannel = null;
+            }
+        }
+    }
+
+    private void closeActive() {
+        try {
+            if (this.activeIndex != null) {
+                this.activeIndex.close();
+            }
+        } catch (final IOException e) {
+            Utility.logWarning(this.logger, e);
+        } finally {
+            this.activeIndex = null;
+            if (this.active != null) {
+                releaseChannel(this.active);
+            }
+            this.active = null;
+        }
+    }
+
+    /**
+     * Rewrite the segments with more than threshold per cent of removed blocks
+     *
+     * @param threshold per cent of the segment size
+     * @return number of segments reclaimed
+     * @throws IOException
+     */
+    public int compact(final int threshold) throws IOException {
+        final List<Segment> victims = new ArrayList<>();
+        synchronized (this.appendLock) {
+            lockForWrite();
+            for (final Segment segment : this.segments.values()) {
+                if ((segment != this.active) && (segment.writers == 0) && (segment.size > HEADER_SIZE)
+                        && (((segment.size - HEADER_SIZE
+                        - segment.liveBytes) * 100) >= ((segment.size - HEADER_SIZE) * threshold))) {
+                    victims.add(segment);
+                }
+            }
+        }
+        if (victims.isEmpty()) {
+            return 0;
+        }
+        final Map<Integer, Map<String, Location>> live = new HashMap<>();
+        for (final Segment segment : victims) {
+            live.put(segment.id, new HashMap<>());
+        }
+        synchronized (this.locations) {
+            for (final Map.Entry<String, Location> entry : this.locations.entrySet()) {
+                final Map<String, Location> blocks = live.get(entry.getValue().segment);
+                if (blocks != null) {
+                    blocks.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        long moved = 0;
+        for (final Segment segment : victims) {
+            try (FileChannel channel = FileChannel.open(segment.pack.toPath(), StandardOpenOption.READ)) {
+                for (final Map.Entry<String, Location> entry : live.get(segment.id).entrySet()) {
+                    final Location location = entry.getValue();
+                    final byte[] descriptor = new byte[location.descriptorLength];
+                    readFully(channel, ByteBuffer.wrap(descriptor), location.offset + Integer.BYTES);
+                    channel.position(location.getDataOffset());
+                    if (append(entry.getKey(), descriptor, channel, location.length, location)) {
+                        moved += location.size();
+                    }
+                }
+            }
+            this.lock.writeLock().lock();
+            try {
+                synchronized (this.appendLock) {
+                    this.segments.remove(segment.id);
+                }
+                Files.deleteIfExists(segment.index.toPath());
+                Files.deleteIfExists(segment.pack.toPath());
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        }
+        if (this.logger.isLoggable(Level.INFO)) {
+            final String msg = String.format("Pack store %s compacted %d segments moving %d bytes", this.folder,
+                    victims.size(), moved);
+            this.logger.info(msg);
+        }
+        return victims.size();
+    }
+
+    /**
+     * @param digest
+     * @return true if the block is on the store
+     */
+    public boolean contains(final String digest) {
+        synchronized (this.locations) {
+            return this.locations.containsKey(digest);
+        }
+    }
+
+    /**
+     * @return the digests of every block on the store
+     */
+    public List<String> getDigests() {
+        synchronized (this.locations) {
+            return new ArrayList<>(this.locations.keySet());
+        }
+    }
+
+    private Location getLocation(final String digest) {
+        synchronized (this.locations) {
+            return this.locations.get(digest);
+        }
+    }
+
+    private void openActive(final Segment segment) throws IOException {
+        segment.channel = FileChannel.open(segment.pack.toPath(), StandardOpenOption.WRITE);
+        this.activeIndex = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(segment.index, true)));
+        this.active = segment;
+    }
+
+    /**
+     * Load the indexes of the segments. The lock file of the store is taken by
+     * the first write
+     *
+     * @throws IOException
+     */
+    void open() throws IOException {
+        if (!this.folder.isDirectory() && !this.folder.mkdirs()) {
+            throw new IOException("Cannot create " + this.folder);
+        }
+        synchronized (this.appendLock) {
+            loadSegments();
+        }
+    }
+
+    /**
+     * Take the lock file of the store before the first write and reload the
+     * indexes, the store may have been changed by another process since open.
+     * Called holding the append lock
+     *
+     * @throws IOException if another process holds the store
+     */
+    private void lockForWrite() throws IOException {
+        if (this.storeLock != null) {
+            return;
+        }
+        lockStore();
+        try {
+            synchronized (this.locations) {
+                this.locations.clear();
+                this.segments.clear();
+                loadSegments();
+            }
+        } catch (final IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void lockStore() throws IOException {
+        final FileChannel channel = FileChannel.open(new File(this.folder, LOCK_NAME).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock fileLock = null;
+        try {
+            fileLock = channel.tryLock();
+        } catch (final OverlappingFileLockException e) {
+            // held by another store of this process
+        } finally {
+            if (fileLock == null) {
+                channel.close();
+            }
+        }
+        if (fileLock == null) {
+            throw new IOException(String.format("Pack store %s is in use by another process", this.folder));
+        }
+        this.storeLockChannel = channel;
+        this.storeLock = fileLock;
+    }
+
+    private void loadSegments() throws IOException {
+        final File[] indexes = this.folder.listFiles((dir, name) -> name.endsWith(INDEX_SUFFIX));
+        if (indexes != null) {
+            Arrays.sort(indexes);
+            for (final File index : indexes) {
+                final String name = index.getName();
+                try {
+                    final int id = Integer.parseInt(name.substring(0, name.length() - INDEX_SUFFIX.length()));
+                    loadSegment(new Segment(this.folder, id));
+                } catch (final NumberFormatException e) {
+                    this.logger.warning(String.format("Pack store %s: unknown index %s", this.folder, name));
+                }
+            }
+        }
+        if ((this.storeLock != null) && !this.segments.isEmpty()) {
+            final Segment last = this.segments.lastEntry().getValue();
+            if (last.size < this.maxSegmentSize) {
+                synchronized (this.appendLock) {
+                    openActive(last);
+                }
+            }
+        }
+        if (this.logger.isLoggable(Level.INFO)) {
+            final String msg = String.format("Pack store %s opened%s: %d blocks on %d segments", this.folder,
+                    (this.storeLock != null) ? " for write" : "", this.locations.size(), this.segments.size());
+            this.logger.info(msg);
+        }
+    }
+
+    private void loadSegment(final Segment segment) throws IOException {
+        segment.size = segment.pack.length();
+        long good = HEADER_SIZE;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(segment.index)))) {
+            if ((in.readInt() != INDEX_MAGIC) || (in.readInt() != VERSION)) {
+                throw new IOException("Invalid pack index " + segment.index);
+            }
+            while (true) {
+                final byte type = in.readByte();
+                final String digest = in.readUTF();
+                final long offset = in.readLong();
+                if (type == RECORD_PUT) {
+                    final Location location = new Location(segment.id, offset, in.readInt(), in.readInt());
+                    if ((location.offset + location.size()) > segment.size) {
+                        // the block data has not been written
+                        break;
+                    }
+                    segment.liveBytes += location.size();
+                    final Location previous = this.locations.put(digest, location);
+                    if (previous != null) {
+                        release(previous);
+                    }
+                    good += 1 + 2 + digest.length() + Long.BYTES + Integer.BYTES * 2;
+                } else if (type == RECORD_REMOVE) {
+                    final Location location = this.locations.get(digest);
+                    if ((location != null) && (location.segment == segment.id) && (location.offset == offset)) {
+                        this.locations.remove(digest);
+                        segment.liveBytes -= location.size();
+                    }
+                    good += 1 + 2 + digest.length() + Long.BYTES;
+                } else {
+                    break;
+                }
+            }
+        } catch (final EOFException e) {
+            // truncated record
+        }
+        if ((this.storeLock != null) && (good < segment.index.length())) {
+            this.logger.warning(String.format("Pack index %s truncated to %d bytes", segment.index, good));
+            try (RandomAccessFile file = new RandomAccessFile(segment.index, "rw")) {
+                file.setLength(good);
+            }
+        }
+        this.segments.put(segment.id, segment);
+    }
+
+    /**
+     * Copy the blocks of a one folder per block layout in the store. Blocks still
+     * owned by a generation recorded on the block descriptor (saved before the
+     * reference store) are left on their folder
+     *
+     * @param dataFolder folder of the blocks
+     * @return the migration counters
+     */
+    public MigrationResult migrate(final File dataFolder) {
+        final MigrationResult result = new MigrationResult();
+        final File[] blocks = dataFolder.listFiles(File::isDirectory);
+        if (blocks == null) {
+            return result;
+        }
+        for (final File block : blocks) {
+            final File data = new File(block, DATA_NAME);
+            final File json = new File(block, JSON_NAME);
+            if (!data.isFile() || !json.isFile()) {
+                continue;
+            }
+            try {
+                final byte[] descriptor = Files.readAllBytes(json.toPath());
+                if (AbstractTargetOperationImpl.hasDescriptorReferences(descriptor)) {
+                    ++result.skipped;
+                    continue;
+                }
+                if (!contains(block.getName())) {
+                    try (InputStream in = new FileInputStream(data)) {
+                        put(block.getName(), descriptor, in, data.length());
+                    }
+                    result.bytes += data.length();
+                }
+                Files.delete(data.toPath());
+                Files.delete(json.toPath());
+                Files.deleteIfExists(block.toPath());
+                ++result.migrated;
+            } catch (final IOException e) {
+                Utility.logWarning(this.logger, e);
+                ++result.failed;
+            }
+        }
+        if (this.logger.isLoggable(Level.INFO)) {
+            final String msg = String.format("Pack store %s migration from %s %s", this.folder, dataFolder, result);
+            this.logger.info(msg);
+        }
+        return result;
+    }
+
+    /**
+     * Append a block to the active segment
+     *
+     * @param digest
+     * @param descriptor block descriptor
+     * @param content    block data
+     * @param length     length of the block data
+     * @throws IOException
+     */
+    public void put(final String digest, final byte[] descriptor, final InputStream content, final long length)
+            throws IOException {
+        append(digest, descriptor, Channels.newChannel(content), length, null);
+    }
+
+    /**
+     * Read the data of a block
+     *
+     * @param digest
+     * @return the block data or null if the block is not on the store
+     * @throws IOException
+     */
+    public byte[] read(final String digest) throws IOException {
+        this.lock.readLock().lock();
+        try {
+            final Location location = getLocation(digest);
+            if (location == null) {
+                return null;
+            }
+            final byte[] result = new byte[location.length];
+            read(location, ByteBuffer.wrap(result), location.getDataOffset());
+            return result;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private void read(final Location location, final ByteBuffer buffer, final long position) throws IOException {
+        final Segment segment;
+        synchronized (this.appendLock) {
+            segment = this.segments.get(location.segment);
+        }
+        if (segment == null) {
+            throw new IOException(String.format("Pack segment %d not found", location.segment));
+        }
+        try (FileChannel channel = FileChannel.open(segment.pack.toPath(), StandardOpenOption.READ)) {
+            readFully(channel, buffer, position);
+        }
+    }
+
+    /**
+     * Read the data of a block in a buffer
+     *
+     * @param digest
+     * @param buffer
+     * @return the length of the block or -1 if the block is not on the store
+     * @throws IOException
+     */
+    public int read(final String digest, final byte[] buffer) throws IOException {
+        this.lock.readLock().lock();
+        try {
+            final Location location = getLocation(digest);
+            if (location == null) {
+                return -1;
+            }
+            read(location, ByteBuffer.wrap(buffer, 0, location.length), location.getDataOffset());
+            return location.length;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Read the descriptor of a block
+     *
+     * @param digest
+     * @return the descriptor or null if the block is not on the store
+     * @throws IOException
+     */
+    public byte[] readDescriptor(final String digest) throws IOException {
+        this.lock.readLock().lock();
+        try {
+            final Location location = getLocation(digest);
+            if (location == null) {
+                return null;
+            }
+            final byte[] result = new byte[location.descriptorLength];
+            read(location, ByteBuffer.wrap(result), location.offset + Integer.BYTES);
+            return result;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Account a block no more referenced by the index
+     */
+    private void release(final Location location) {
+        synchronized (this.appendLock) {
+            final Segment segment = this.segments.get(location.segment);
+            if (segment != null) {
+                segment.liveBytes -= location.size();
+            }
+        }
+    }
+
+    /**
+     * Remove a block. The space is reclaimed by the compaction
+     *
+     * @param digest
+     * @return true if the block was on the store
+     * @throws IOException
+     */
+    public boolean remove(final String digest) throws IOException {
+        synchronized (this.appendLock) {
+            lockForWrite();
+            final Location location;
+            synchronized (this.locations) {
+                location = this.locations.remove(digest);
+            }
+            if (location == null) {
+                return false;
+            }
+            final Segment segment = this.segments.get(location.segment);
+            if (segment != null) {
+                appendRemove(segment, digest, location);
+                segment.liveBytes -= location.size();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Close the channel of a segment without pending appends
+     */
+    private void releaseChannel(final Segment segment) {
+        if ((segment.writers == 0) && (segment.channel != null)) {
+            try {
+                segment.channel.close();
+            } catch (final IOException e) {
+                Utility.logWarning(this.logger, e);
+            } finally {
+                segment.channel = null;
+            }
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        closeActive();
+        final int id = this.segments.isEmpty() ? 1 : (this.segments.lastKey() + 1);
+        final Segment segment = new Segment(this.folder, id);
+        writeHeader(segment.pack, PACK_MAGIC);
+        writeHeader(segment.index, INDEX_MAGIC);
+        segment.size = HEADER_SIZE;
+        this.segments.put(id, segment);
+        openActive(segment);
+        if (this.logger.isLoggable(Level.FINE)) {
+            this.logger.fine(String.format("Pack store %s new segment %d", this.folder, id));
+        }
+    }
+
+    private void write(final FileChannel channel, final String digest, final byte[] descriptor,
+            final ReadableByteChannel content, final Location location) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + descriptor.length + Integer.BYTES);
+        header.putInt(descriptor.length).put(descriptor).putInt(location.length).flip();
+        long position = location.offset;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+        long transferred = 0;
+        while (transferred < location.length) {
+            final long n = channel.transferFrom(content, position + transferred, location.length - transferred);
+            if (n <= 0) {
+                throw new EOFException(
+                        String.format("Block %s: %d of %d bytes", digest, transferred, location.length));
+            }
+            transferred += n;
+        }
+    }
+
+    private void writePut(final DataOutputStream out, final String digest, final Location location)
+            throws IOException {
+        out.writeByte(RECORD_PUT);
+        out.writeUTF(digest);
+        out.writeLong(location.offset);
+        out.writeInt(location.descriptorLength);
+        out.writeInt(location.length);
+    }
+
+    private void writeRemove(final DataOutputStream out, final String digest, final Location location)
+            throws IOException {
+        out.writeByte(RECORD_REMOVE);
+        out.writeUTF(digest);
+        out.writeLong(location.offset);
+    }
+}
@@ -0,0 +1,617 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.control.target;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.bind.DatatypeConverter;
+
+import com.vmware.safekeeping.common.Utility;
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
+
+/**
+ * Ownership store of the blocks saved on a repository.
+ *
+ * Every generation owning a block is recorded on append-only segments: a
+ * backup writes the blocks of the generation on add segments and a generation
+ * removal writes a remove marker. The store is split in 16 shards on the first
+ * digit of the block digest, and each shard is periodically compacted in a
+ * snapshot holding the owners of every block. A block without owners can be
+ * deleted from the repository.
+ *
+ * The owner of a generation carries the reference token of the generation
+ * profile: a new backup of the FCO reusing a removed generation id is a
+ * different owner. Readers and compaction of a shard hold the lock file of the
+ * shard.
+ *
+ * A running backup records the blocks it stores or references on pending
+ * segments of its session before the generation owns them, so a generation
+ * removal on another host doesn't delete them. The first block of a shard is
+ * written at once, the next ones every blockReferencePendingFlushSeconds. A
+ * pending segment older than blockReferencePendingLeaseHours (left by a
+ * process that died) is ignored and removed by the compaction.
+ */
+public class BlockReferenceStore {
+
+    /**
+     * Content of a shard: snapshot plus every segment
+     */
+    private static class ShardState {
+        private final Map<String, Set<String>> owners = new HashMap<>();
+        private final Set<String> removedOwners = new LinkedHashSet<>();
+        private final Set<String> merged = new HashSet<>();
+        private final List<String> segments = new ArrayList<>();
+        private final Set<String> pending = new HashSet<>();
+        private final List<String> expiredPending = new ArrayList<>();
+    }
+
+    /**
+     * Pending segments of this session on a shard
+     */
+    private static class PendingShard {
+        private final Set<String> unflushed = new HashSet<>();
+        private final List<String> segments = new ArrayList<>();
+        private long firstUnflushedAt;
+    }
+
+    public static final String REFERENCES_PATH = "refs";
+
+    private static final int SHARDS = 16;
+    private static final String SNAPSHOT_NAME = "snapshot";
+    private static final String ADD_SUFFIX = ".add";
+    private static final String REMOVE_SUFFIX = ".remove";
+    private static final String PENDING_SUFFIX = ".pending";
+
+    private static final int SEGMENT_MAGIC = 0x534B5253;
+    private static final int SNAPSHOT_MAGIC = 0x534B5243;
+    private static final int VERSION = 1;
+
+    /**
+     * Monitors of the lock files, the threads of this process don't overlap on a
+     * file lock
+     */
+    private static final Map<String, Object> shardMonitors = new ConcurrentHashMap<>();
+
+    private static String getOwner(final String uuid, final int generationId, final String token) {
+        return (token == null) ? String.format("%s.%d", uuid, generationId)
+                : String.format("%s.%d.%s", uuid, generationId, token);
+    }
+
+    private static String normalize(final String digest) {
+        return digest.toUpperCase(Utility.LOCALE);
+    }
+
+    private static int shardOf(final String digest) {
+        final int shard = Character.digit(digest.charAt(0), SHARDS);
+        return (shard < 0) ? 0 : shard;
+    }
+
+    private final AbstractTarget target;
+    private final Logger logger;
+    private final Map<String, Integer> retained;
+    private final Map<Integer, PendingShard> pending;
+    private final String session;
+    private final AtomicInteger pendingSequence;
+
+    BlockReferenceStore(final AbstractTarget target, final Logger logger) {
+        this.target = target;
+        this.logger = logger;
+        this.retained = new ConcurrentHashMap<>();
+        this.pending = new ConcurrentHashMap<>();
+        this.session = UUID.randomUUID().toString();
+        this.pendingSequence = new AtomicInteger();
+    }
+
+    /**
+     * Record the blocks owned by a generation. Every shard gets one add segment
+     * with the blocks of the generation. Writing the same references again
+     * doesn't change the owners
+     *
+     * @param uuid
+     * @param generationId
+     * @param referenceToken token of the generation profile
+     * @param digests
+     * @throws IOException
+     */
+    public void addReferences(final String uuid, final int generationId, final String referenceToken,
+            final Collection<String> digests) throws IOException {
+        final String owner = getOwner(uuid, generationId, referenceToken);
+        final String token = UUID.randomUUID().toString();
+        for (final Entry<Integer, Set<String>> entry : splitByShard(digests).entrySet()) {
+            final String name = String.format("%s%s.%s%s", getShardPath(entry.getKey()), owner, token, ADD_SUFFIX);
+            this.target.putReferenceObject(name, toSegment(entry.getValue()));
+        }
+        for (final String digest : digests) {
+            this.retained.computeIfPresent(normalize(digest), (k, v) -> (v > 1) ? (v - 1) : null);
+        }
+        releasePending();
+        if (this.logger.isLoggable(Level.FINE)) {
+            final String msg = String.format("Recorded %d references of %s", digests.size(), owner);
+            this.logger.fine(msg);
+        }
+    }
+
+    /**
+     * Record a block retained by this process on the pending segments of its
+     * shard
+     *
+     * @param digest
+     */
+    private void addPending(final String digest) {
+        final int shard = shardOf(digest);
+        final PendingShard pendingShard = this.pending.computeIfAbsent(shard, k -> new PendingShard());
+        synchronized (pendingShard) {
+            final long now = System.currentTimeMillis();
+            if (pendingShard.unflushed.isEmpty()) {
+                pendingShard.firstUnflushedAt = now;
+            }
+            pendingShard.unflushed.add(digest);
+            if (pendingShard.segments.isEmpty() || ((now - pendingShard.firstUnflushedAt) >= TimeUnit.SECONDS
+                    .toMillis(CoreGlobalSettings.getBlockReferencePendingFlushSeconds()))) {
+                flushPending(shard, pendingShard);
+            }
+        }
+    }
+
+    /**
+     * Compact a shard in a new snapshot. Merged segments are removed from the
+     * repository. The caller holds the shard lock
+     *
+     * @param shard
+     * @throws IOException
+     */
+    private void compact(final int shard) throws IOException {
+        final long startTime = System.nanoTime();
+        final String prefix = getShardPath(shard);
+        final List<String> names = this.target.listReferenceObjects(prefix);
+        final ShardState state = load(shard, names, null);
+        /*
+         * the add segments of the removed owners are merged (and dropped) with
+         * their remove markers, the snapshot doesn't need them anymore
+         */
+        state.removedOwners.clear();
+        final List<String> merged = new ArrayList<>(state.segments);
+        // segments merged by a previous compaction but not yet removed
+        for (final String name : names) {
+            if (state.merged.contains(name)) {
+                merged.add(name);
+            }
+        }
+        this.target.putReferenceObject(prefix + SNAPSHOT_NAME, toSnapshot(state, merged));
+        merged.addAll(state.expiredPending);
+        for (final String name : merged) {
+            try {
+                this.target.deleteReferenceObject(prefix + name);
+            } catch (final IOException e) {
+                Utility.logWarning(this.logger, e);
+            }
+        }
+        if (this.logger.isLoggable(Level.INFO)) {
+            final String msg = String.format("Reference shard %x compacted: %d blocks %d segments merged in %dms",
+                    shard, state.owners.size(), merged.size(), (System.nanoTime() - startTime) / 1000000);
+            this.logger.info(msg);
+        }
+    }
+
+    /**
+     * Return the blocks owned by at least one generation
+     *
+     * @param digests
+     * @return
+     * @throws IOException
+     */
+    public Set<String> getReferenced(final Collection<String> digests) throws IOException {
+        final Set<String> result = new HashSet<>();
+        for (final Entry<Integer, Set<String>> entry : splitByShard(digests).entrySet()) {
+            final int shard = entry.getKey();
+            final File lockFile = this.target.getReferenceLockFile(getShardPath(shard));
+            synchronized (getShardMonitor(lockFile)) {
+                try (FileChannel lock = lockShard(lockFile)) {
+                    final ShardState state = load(shard, this.target.listReferenceObjects(getShardPath(shard)),
+                            entry.getValue());
+                    for (final String digest : entry.getValue()) {
+                        final Set<String> owners = state.owners.get(digest);
+                        if ((owners != null) && !owners.isEmpty()) {
+                            result.add(digest);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write the blocks retained since the last flush on a new pending segment.
+     * The caller holds the monitor of pendingShard
+     *
+     * @param shard
+     * @param pendingShard
+     */
+    private void flushPending(final int shard, final PendingShard pendingShard) {
+        final String name = String.format("%d.%s.%d%s", System.currentTimeMillis(), this.session,
+                this.pendingSequence.incrementAndGet(), PENDING_SUFFIX);
+        try {
+            this.target.putReferenceObject(getShardPath(shard) + name, toSegment(pendingShard.unflushed));
+            pendingShard.segments.add(name);
+            pendingShard.unflushed.clear();
+        } catch (final IOException e) {
+            Utility.logWarning(this.logger, e);
+        }
+    }
+
+    private Object getShardMonitor(final File lockFile) {
+        return shardMonitors.computeIfAbsent(lockFile.getAbsolutePath(), k -> new Object());
+    }
+
+    private String getShardPath(final int shard) {
+        return String.format("%s%s%x%s", REFERENCES_PATH, this.target.getSeparator(), shard,
+                this.target.getSeparator());
+    }
+
+    /**
+     * @param name pending segment
+     * @return true if the segment is older than the pending lease
+     */
+    private boolean isExpiredPending(final String name) {
+        try {
+            final long createdAt = Long.parseLong(name.substring(0, name.indexOf('.')));
+            return (System.currentTimeMillis() - createdAt) > TimeUnit.HOURS
+                    .toMillis(CoreGlobalSettings.getBlockReferencePendingLeaseHours());
+        } catch (final NumberFormatException | IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Load the owners of a shard
+     *
+     * @param shard
+     * @param names   objects of the shard
+     * @param digests blocks to load or null for every block
+     * @return
+     * @throws IOException
+     */
+    private ShardState load(final int shard, final List<String> names, final Set<String> digests)
+            throws IOException {
+        final String prefix = getShardPath(shard);
+        final ShardState state = new ShardState();
+        final byte[] snapshot = this.target.getReferenceObject(prefix + SNAPSHOT_NAME);
+        if (snapshot != null) {
+            readSnapshot(snapshot, state, digests);
+        }
+        final List<String> addSegments = new ArrayList<>();
+        for (final String name : names) {
+            if (SNAPSHOT_NAME.equals(name) || state.merged.contains(name)) {
+                continue;
+            }
+            if (name.endsWith(REMOVE_SUFFIX)) {
+                state.removedOwners.add(name.substring(0, name.length() - REMOVE_SUFFIX.length()));
+                state.segments.add(name);
+            } else if (name.endsWith(ADD_SUFFIX)) {
+                addSegments.add(name);
+                state.segments.add(name);
+            } else if (name.endsWith(PENDING_SUFFIX)) {
+                if (isExpiredPending(name)) {
+                    state.expiredPending.add(name);
+                } else if (digests != null) {
+                    final byte[] content = this.target.getReferenceObject(prefix + name);
+                    if (content != null) {
+                        state.pending.addAll(readSegment(content, name, digests));
+                    }
+                }
+            }
+        }
+        for (final String name : addSegments) {
+            final String owner = name.substring(0, name.lastIndexOf('.', name.length() - ADD_SUFFIX.length() - 1));
+            if (state.removedOwners.contains(owner)) {
+                continue;
+            }
+            final byte[] content = this.target.getReferenceObject(prefix + name);
+            if (content != null) {
+                for (final String digest : readSegment(content, name, digests)) {
+                    state.owners.computeIfAbsent(digest, k -> new HashSet<>()).add(owner);
+                }
+            }
+        }
+        for (final Set<String> owners : state.owners.values()) {
+            owners.removeAll(state.removedOwners);
+        }
+        return state;
+    }
+
+    /**
+     * Take the lock file of a shard, the lock is released closing the channel
+     *
+     * @param lockFile
+     * @return
+     * @throws IOException
+     */
+    private FileChannel lockShard(final File lockFile) throws IOException {
+        final File parent = lockFile.getParentFile();
+        if ((parent != null) && !parent.exists() && !parent.mkdirs() && !parent.exists()) {
+            throw new IOException("Cannot create directory " + parent.getPath());
+        }
+        final FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        try {
+            channel.lock();
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * @param content segment
+     * @param name    name of the segment
+     * @param digests blocks to read or null for every block
+     * @return the blocks of the segment
+     * @throws IOException
+     */
+    private List<String> readSegment(final byte[] content, final String name, final Set<String> digests)
+            throws IOException {
+        final List<String> result = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+            if ((in.readInt() != SEGMENT_MAGIC) || (in.readInt() != VERSION)) {
+                throw new IOException("Invalid reference segment " + name);
+            }
+            final int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                final byte[] key = new byte[in.readUnsignedByte()];
+                in.readFully(key);
+                final String digest = DatatypeConverter.printHexBinary(key);
+                if ((digests == null) || digests.contains(digest)) {
+                    result.add(digest);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Remove the pending segments of the shards without blocks retained by this
+     * process and write the blocks not yet flushed of the other shards
+     */
+    private void releasePending() {
+        final Set<Integer> retainedShards = new HashSet<>();
+        for (final String digest : this.retained.keySet()) {
+            retainedShards.add(shardOf(digest));
+        }
+        for (final Entry<Integer, PendingShard> entry : this.pending.entrySet()) {
+            final PendingShard pendingShard = entry.getValue();
+            synchronized (pendingShard) {
+                pendingShard.unflushed.removeIf(digest -> !this.retained.containsKey(digest));
+                if (!pendingShard.unflushed.isEmpty()) {
+                    flushPending(entry.getKey(), pendingShard);
+                } else if (!retainedShards.contains(entry.getKey())) {
+                    for (final String name : pendingShard.segments) {
+                        try {
+                            this.target.deleteReferenceObject(getShardPath(entry.getKey()) + name);
+                        } catch (final IOException e) {
+                            Utility.logWarning(this.logger, e);
+                        }
+                    }
+                    pendingShard.segments.clear();
+                }
+            }
+        }
+    }
+
+    private void readSnapshot(final byte[] content, final ShardState state, final Set<String> digests)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+            if ((in.readInt() != SNAPSHOT_MAGIC) || (in.readInt() != VERSION)) {
+                throw new IOException("Invalid reference snapshot");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                state.removedOwners.add(in.readUTF());
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                state.merged.add(in.readUTF());
+            }
+            count = in.readInt();
+            final String[] ownersTable = new String[count];
+            for (int i = 0; i < count; i++) {
+                ownersTable[i] = in.readUTF();
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final byte[] key = new byte[in.readUnsignedByte()];
+                in.readFully(key);
+                final String digest = DatatypeConverter.printHexBinary(key);
+                final int ownersCount = in.readInt();
+                final boolean load = (digests == null) || digests.contains(digest);
+                final Set<String> owners = load ? state.owners.computeIfAbsent(digest, k -> new HashSet<>()) : null;
+                for (int j = 0; j < ownersCount; j++) {
+                    final int owner = in.readInt();
+                    if (load) {
+                        owners.add(ownersTable[owner]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove every reference of a generation
+     *
+     * @param uuid
+     * @param generationId
+     * @param referenceToken token of the generation profile
+     * @param digests        blocks of the generation
+     * @return blocks of the generation without any other owner
+     * @throws IOException
+     */
+    public Set<String> removeReferences(final String uuid, final int generationId, final String referenceToken,
+            final Collection<String> digests) throws IOException {
+        final String owner = getOwner(uuid, generationId, referenceToken);
+        final byte[] marker = toSegment(new ArrayList<>());
+        for (int shard = 0; shard < SHARDS; shard++) {
+            this.target.putReferenceObject(getShardPath(shard) + owner + REMOVE_SUFFIX, marker);
+        }
+        final Set<String> result = new HashSet<>();
+        final Map<Integer, Set<String>> shards = splitByShard(digests);
+        for (int shard = 0; shard < SHARDS; shard++) {
+            final File lockFile = this.target.getReferenceLockFile(getShardPath(shard));
+            synchronized (getShardMonitor(lockFile)) {
+                try (FileChannel lock = lockShard(lockFile)) {
+                    final List<String> names = this.target.listReferenceObjects(getShardPath(shard));
+                    final Set<String> shardDigests = shards.get(shard);
+                    if (shardDigests != null) {
+                        final ShardState state = load(shard, names, shardDigests);
+                        for (final String digest : shardDigests) {
+                            final Set<String> owners = state.owners.get(digest);
+                            if (((owners == null) || owners.isEmpty()) && !this.retained.containsKey(digest)
+                                    && !state.pending.contains(digest)) {
+                                result.add(digest);
+                            }
+                        }
+                    }
+                    if (names.size() > CoreGlobalSettings.getBlockReferenceCompactionThreshold()) {
+                        compact(shard);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Protect a block stored by a running backup from removal until its
+     * generation records the references. The first time the block is retained
+     * it is recorded on the pending segments
+     *
+     * @param digest
+     */
+    public void retain(final String digest) {
+        final String key = normalize(digest);
+        if (this.retained.merge(key, 1, Integer::sum) == 1) {
+            addPending(key);
+        }
+    }
+
+    private Map<Integer, Set<String>> splitByShard(final Collection<String> digests) {
+        final Map<Integer, Set<String>> result = new HashMap<>();
+        for (final String digest : digests) {
+            final String key = normalize(digest);
+            result.computeIfAbsent(shardOf(key), k -> new HashSet<>()).add(key);
+        }
+        return result;
+    }
+
+    private byte[] toSegment(final Collection<String> digests) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SEGMENT_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(digests.size());
+            for (final String digest : digests) {
+                final byte[] key = DatatypeConverter.parseHexBinary(digest);
+                out.writeByte(key.length);
+                out.write(key);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] toSnapshot(final ShardState state, final List<String> merged) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Map<String, Integer> ownersTable = new HashMap<>();
+        final List<String> owners = new ArrayList<>();
+        for (final Set<String> digestOwners : state.owners.values()) {
+            for (final String owner : digestOwners) {
+                if (!ownersTable.containsKey(owner)) {
+                    ownersTable.put(owner, owners.size());
+                    owners.add(owner);
+                }
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(state.removedOwners.size());
+            for (final String owner : state.removedOwners) {
+                out.writeUTF(owner);
+            }
+            out.writeInt(merged.size());
+            for (final String name : merged) {
+                out.writeUTF(name);
+            }
+            out.writeInt(owners.size());
+            for (final String owner : owners) {
+                out.writeUTF(owner);
+            }
+            int blocks = 0;
+            for (final Set<String> digestOwners : state.owners.values()) {
+                if (!digestOwners.isEmpty()) {
+                    ++blocks;
+                }
+            }
+            out.writeInt(blocks);
+            for (final Entry<String, Set<String>> entry : state.owners.entrySet()) {
+                if (entry.getValue().isEmpty()) {
+                    continue;
+                }
+                final byte[] key = DatatypeConverter.parseHexBinary(entry.getKey());
+                out.writeByte(key.length);
+                out.write(key);
+                out.writeInt(entry.getValue().size());
+                for (final String owner : entry.getValue()) {
+                    out.writeInt(ownersTable.get(owner));
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+}
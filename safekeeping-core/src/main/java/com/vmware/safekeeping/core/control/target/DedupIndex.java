@@ -0,0 +1,405 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.control.target;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Local persistent index of the block digests stored on a repository.
+ *
+ * The index is an open addressing hash table on a memory mapped file. The table
+ * never rehashes: when a level is full a new level with twice the slots is
+ * appended to the file and the lookups check every level. A digest found in the
+ * index is on the repository, a digest not found has to be checked on the
+ * target. The file is locked by the process using it, another process sharing
+ * the same index folder runs without the index.
+ */
+public class DedupIndex implements Closeable {
+
+    private static final int MAGIC = 0x534B4449;
+    private static final int VERSION = 1;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_LEVELS = 8;
+    private static final int OFFSET_ENTRIES = 12;
+    private static final int OFFSET_CLEAN = 16;
+    private static final int OFFSET_OCCUPIED = 32;
+    private static final int HEADER_SIZE = 128;
+
+    /**
+     * Digests longer than 256 bits are truncated, shorter ones are zero padded
+     */
+    private static final int KEY_LONGS = 4;
+    private static final int KEY_LENGTH = KEY_LONGS * Long.BYTES;
+    private static final int SLOT_SIZE = KEY_LENGTH + 1;
+
+    private static final byte SLOT_EMPTY = 0;
+    private static final byte SLOT_USED = 1;
+    private static final byte SLOT_DELETED = 2;
+
+    private static final int LEVEL0_SLOTS = 1 << 16;
+    /**
+     * 10 levels keep every mapping below 2GB and hold up to 67M slots
+     */
+    private static final int MAX_LEVELS = 10;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    private static long levelOffset(final int level) {
+        return HEADER_SIZE + ((long) SLOT_SIZE * LEVEL0_SLOTS * ((1L << level) - 1));
+    }
+
+    private static int levelSlots(final int level) {
+        return LEVEL0_SLOTS << level;
+    }
+
+    /**
+     * Convert an hex digest to the slot key
+     *
+     * @param digest
+     * @return the key or null if digest is empty or not an hex string
+     */
+    private static long[] toKey(final String digest) {
+        if (StringUtils.isEmpty(digest)) {
+            return null;
+        }
+        final byte[] bytes;
+        try {
+            bytes = DatatypeConverter.parseHexBinary(digest);
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+        final long[] key = new long[KEY_LONGS];
+        for (int i = 0; i < Math.min(bytes.length, KEY_LENGTH); i++) {
+            key[i / Long.BYTES] |= (bytes[i] & 0xFFL) << (Long.SIZE - (Byte.SIZE * ((i % Long.BYTES) + 1)));
+        }
+        return key;
+    }
+
+    private final File file;
+    private final Logger logger;
+    private final ReadWriteLock lock;
+    private final List<MappedByteBuffer> levels;
+    private RandomAccessFile randomAccessFile;
+    private FileLock fileLock;
+    private MappedByteBuffer header;
+    private boolean full;
+
+    DedupIndex(final File file, final Logger logger) {
+        this.file = file;
+        this.logger = logger;
+        this.lock = new ReentrantReadWriteLock();
+        this.levels = new ArrayList<>();
+    }
+
+    /**
+     * Add a digest to the index
+     *
+     * @param digest
+     */
+    public void add(final String digest) {
+        final long[] key = toKey(digest);
+        if (key == null) {
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            if ((this.header == null) || (find(key) != null)) {
+                return;
+            }
+            int level = this.levels.size() - 1;
+            if ((this.header.getInt(OFFSET_OCCUPIED + (level * Integer.BYTES)) + 1) > (levelSlots(level)
+                    * MAX_LOAD_FACTOR)) {
+                if ((this.levels.size() == MAX_LEVELS) || this.full) {
+                    return;
+                }
+                try {
+                    addLevel();
+                } catch (final IOException e) {
+                    this.logger.log(Level.WARNING, "Dedup index extension failed", e);
+                    this.full = true;
+                    return;
+                }
+                ++level;
+                if (level == (MAX_LEVELS - 1)) {
+                    this.logger.warning(String.format("Dedup index %s reached the last level", this.file.getPath()));
+                }
+            }
+            final MappedByteBuffer slots = this.levels.get(level);
+            final int mask = levelSlots(level) - 1;
+            int slot = (int) (key[0] & mask);
+            while (slots.get(slot * SLOT_SIZE) == SLOT_USED) {
+                slot = (slot + 1) & mask;
+            }
+            final int position = slot * SLOT_SIZE;
+            for (int i = 0; i < KEY_LONGS; i++) {
+                slots.putLong(position + 1 + (i * Long.BYTES), key[i]);
+            }
+            if (slots.get(position) == SLOT_EMPTY) {
+                final int occupiedOffset = OFFSET_OCCUPIED + (level * Integer.BYTES);
+                this.header.putInt(occupiedOffset, this.header.getInt(occupiedOffset) + 1);
+            }
+            slots.put(position, SLOT_USED);
+            this.header.putInt(OFFSET_ENTRIES, this.header.getInt(OFFSET_ENTRIES) + 1);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void addLevel() throws IOException {
+        final int level = this.levels.size();
+        final long size = (long) levelSlots(level) * SLOT_SIZE;
+        this.randomAccessFile.setLength(levelOffset(level) + size);
+        this.levels.add(this.randomAccessFile.getChannel().map(MapMode.READ_WRITE, levelOffset(level), size));
+        this.header.putInt(OFFSET_LEVELS, this.levels.size());
+    }
+
+    /**
+     * Close the index without marking it clean, the next open recreates it
+     */
+    void abandon() {
+        close(false);
+    }
+
+    /**
+     * Flush the index and mark it clean
+     */
+    @Override
+    public void close() {
+        close(true);
+    }
+
+    private void close(final boolean clean) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.header != null) {
+                for (final MappedByteBuffer slots : this.levels) {
+                    slots.force();
+                }
+                if (clean) {
+                    this.header.put(OFFSET_CLEAN, (byte) 1);
+                }
+                this.header.force();
+                this.header = null;
+                this.levels.clear();
+            }
+            if (this.randomAccessFile != null) {
+                // release the file lock too
+                this.randomAccessFile.close();
+                this.randomAccessFile = null;
+                this.fileLock = null;
+            }
+        } catch (final IOException e) {
+            this.logger.log(Level.WARNING, "Dedup index close failed", e);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Check if a digest is in the index
+     *
+     * @param digest
+     * @return true if the block is on the repository
+     */
+    public boolean contains(final String digest) {
+        final long[] key = toKey(digest);
+        if (key == null) {
+            return false;
+        }
+        this.lock.readLock().lock();
+        try {
+            return (this.header != null) && (find(key) != null);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Look for the key on every level
+     *
+     * @param key
+     * @return level and slot of the key or null
+     */
+    private int[] find(final long[] key) {
+        for (int level = this.levels.size() - 1; level >= 0; level--) {
+            final MappedByteBuffer slots = this.levels.get(level);
+            final int mask = levelSlots(level) - 1;
+            int slot = (int) (key[0] & mask);
+            byte state;
+            while ((state = slots.get(slot * SLOT_SIZE)) != SLOT_EMPTY) {
+                if ((state == SLOT_USED) && matches(slots, slot * SLOT_SIZE, key)) {
+                    return new int[] { level, slot };
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of digests in the index
+     */
+    public int getEntries() {
+        this.lock.readLock().lock();
+        try {
+            return (this.header == null) ? 0 : this.header.getInt(OFFSET_ENTRIES);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private boolean matches(final MappedByteBuffer slots, final int position, final long[] key) {
+        for (int i = 0; i < KEY_LONGS; i++) {
+            if (slots.getLong(position + 1 + (i * Long.BYTES)) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lock the index file. The lock is released when the file is closed
+     *
+     * @throws IOException if the index is used by another process
+     */
+    private void lockFile() throws IOException {
+        try {
+            this.fileLock = this.randomAccessFile.getChannel().tryLock();
+        } catch (final OverlappingFileLockException e) {
+            // held by another target of this process
+        }
+        if (this.fileLock == null) {
+            this.randomAccessFile.close();
+            this.randomAccessFile = null;
+            throw new IOException(String.format("Dedup index %s is in use by another process", this.file.getPath()));
+        }
+    }
+
+    /**
+     * Open and lock the index file. An index not closed cleanly or with a
+     * different layout is recreated empty
+     *
+     * @return true if the index content is valid, false if the index has to be
+     *         warmed from the repository
+     * @throws IOException if the index cannot be opened or is used by another
+     *                     process
+     */
+    boolean open() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            final File folder = this.file.getParentFile();
+            if ((folder != null) && !folder.exists()) {
+                folder.mkdirs();
+            }
+            this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+            lockFile();
+            final FileChannel channel = this.randomAccessFile.getChannel();
+            boolean valid = false;
+            if (this.randomAccessFile.length() >= HEADER_SIZE) {
+                this.header = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE);
+                final int numberOfLevels = this.header.getInt(OFFSET_LEVELS);
+                valid = (this.header.getInt(OFFSET_MAGIC) == MAGIC) && (this.header.getInt(OFFSET_VERSION) == VERSION)
+                        && (this.header.get(OFFSET_CLEAN) == 1) && (numberOfLevels > 0)
+                        && (numberOfLevels <= MAX_LEVELS)
+                        && (this.randomAccessFile.length() == levelOffset(numberOfLevels));
+                if (valid) {
+                    for (int level = 0; level < numberOfLevels; level++) {
+                        this.levels.add(channel.map(MapMode.READ_WRITE, levelOffset(level),
+                                (long) levelSlots(level) * SLOT_SIZE));
+                    }
+                }
+            }
+            if (!valid) {
+                if (this.logger.isLoggable(Level.INFO)) {
+                    this.logger.info(String.format("Dedup index %s not valid - recreated", this.file.getPath()));
+                }
+                this.randomAccessFile.setLength(0);
+                this.randomAccessFile.setLength(HEADER_SIZE);
+                this.header = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE);
+                this.header.putInt(OFFSET_MAGIC, MAGIC);
+                this.header.putInt(OFFSET_VERSION, VERSION);
+                addLevel();
+            }
+            this.full = false;
+            // Any crash from now on invalidates the index
+            this.header.put(OFFSET_CLEAN, (byte) 0);
+            this.header.force();
+            return valid;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a digest from the index
+     *
+     * @param digest
+     */
+    public void remove(final String digest) {
+        final long[] key = toKey(digest);
+        if (key == null) {
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            if (this.header != null) {
+                final int[] found = find(key);
+                if (found != null) {
+                    this.levels.get(found[0]).put(found[1] * SLOT_SIZE, SLOT_DELETED);
+                    this.header.putInt(OFFSET_ENTRIES, this.header.getInt(OFFSET_ENTRIES) - 1);
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Dedup index %s entries:%d levels:%d", this.file.getPath(), getEntries(),
+                this.levels.size());
+    }
+}
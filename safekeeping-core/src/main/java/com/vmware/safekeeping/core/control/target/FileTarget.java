@@ -29,13 +29,24 @@ package com.vmware.safekeeping.core.control.target;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.vmware.safekeeping.common.IOUtils;
 import com.vmware.safekeeping.common.Utility;
 import com.vmware.safekeeping.core.command.options.CoreFileTargetOptions;
+import com.vmware.safekeeping.core.core.Dedup;
+import com.vmware.safekeeping.core.core.DedupItem;
 import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
 import com.vmware.safekeeping.core.type.ByteArrayInOutStream;
 import com.vmware.safekeeping.core.type.ManagedFcoEntityInfo;
@@ -45,6 +56,11 @@ public class FileTarget extends AbstractTarget {
 	public static final String ROOT_FOLDER = "root";
 	public static final String TARGET_TYPE_NAME = "fileStorage";
 	public static final String DEFAULT_ARCHIVE_FOLDER = "archive";
+	private static final String REFERENCE_LOCK_NAME = ".lock";
+	private static final String JSON_NAME = "json";
+	private static final String REFERENCE_STORE_PROPERTY = "referenceStore";
+
+	private BlockPackStore packStore;
 
 	public static String getDefaultPathFileArchive() throws URISyntaxException {
 		return CoreGlobalSettings.getAppData() + File.separator + "archive";
@@ -59,7 +75,105 @@ public class FileTarget extends AbstractTarget {
 
 	@Override
 	public void close() {
-		// No need
+		closeDedupIndex();
+		closePackStore();
+	}
+
+	private synchronized void closePackStore() {
+		if (this.packStore != null) {
+			this.packStore.close();
+			this.packStore = null;
+		}
+	}
+
+	/**
+	 * Rewrite the pack segments holding mostly removed blocks
+	 *
+	 * @return number of segments reclaimed
+	 */
+	public int compactPackStore() {
+		final BlockPackStore store = getPackStore();
+		if (store == null) {
+			return 0;
+		}
+		try {
+			return store.compact(CoreGlobalSettings.getFilePackCompactionThreshold());
+		} catch (final IOException e) {
+			Utility.logWarning(this.logger, e);
+			return 0;
+		}
+	}
+
+	/**
+	 * Move the generations recorded on the json descriptors of the blocks (saved
+	 * before the reference store) to the reference store. The generation profiles
+	 * are flagged to use the store, then the owners are cleared from the
+	 * descriptors. Owners without a generation profile are dropped
+	 *
+	 * @param dataFolder folder of the blocks
+	 * @return number of generations moved to the reference store
+	 * @throws IOException
+	 */
+	private int convertLegacyReferences(final File dataFolder) throws IOException {
+		final File[] blocks = dataFolder.listFiles(File::isDirectory);
+		if (blocks == null) {
+			return 0;
+		}
+		final Map<String, Map<Integer, List<String>>> owners = new HashMap<>();
+		final List<File> descriptors = new ArrayList<>();
+		for (final File block : blocks) {
+			final File json = new File(block, JSON_NAME);
+			if (!json.isFile()) {
+				continue;
+			}
+			try {
+				final Dedup dedup = AbstractTargetOperationImpl.OBJECT_MAPPER.readValue(json, Dedup.class);
+				if ((dedup.getDedupList() != null) && !dedup.getDedupList().isEmpty()) {
+					for (final DedupItem item : dedup.getDedupList()) {
+						for (final Integer generationId : item.getGenerations()) {
+							owners.computeIfAbsent(item.getUuid(), k -> new HashMap<>())
+									.computeIfAbsent(generationId, k -> new ArrayList<>()).add(block.getName());
+						}
+					}
+					descriptors.add(json);
+				}
+			} catch (final IOException e) {
+				Utility.logWarning(this.logger, e);
+			}
+		}
+		int generations = 0;
+		for (final Entry<String, Map<Integer, List<String>>> fco : owners.entrySet()) {
+			for (final Entry<Integer, List<String>> generation : fco.getValue().entrySet()) {
+				final String profilePath = String.format("%s/%d/%s", fco.getKey(), generation.getKey(),
+						CoreGlobalSettings.GENERATION_PROFILE_FILENAME);
+				final File profileFile = new File(getFullPath(profilePath));
+				if (!profileFile.isFile()) {
+					// removed generation still listed on the descriptors
+					continue;
+				}
+				getReferenceStore().addReferences(fco.getKey(), generation.getKey(), null, generation.getValue());
+				final ObjectNode profile = (ObjectNode) AbstractTargetOperationImpl.OBJECT_MAPPER
+						.readTree(profileFile);
+				if (!profile.path(REFERENCE_STORE_PROPERTY).asBoolean()) {
+					profile.put(REFERENCE_STORE_PROPERTY, true);
+					IOUtils.writeTextFile(profileFile.getPath(),
+							AbstractTargetOperationImpl.OBJECT_MAPPER.writeValueAsString(profile));
+					getMetadataCache().invalidate(profilePath);
+				}
+				++generations;
+			}
+		}
+		for (final File json : descriptors) {
+			final Dedup dedup = AbstractTargetOperationImpl.OBJECT_MAPPER.readValue(json, Dedup.class);
+			dedup.getDedupList().clear();
+			IOUtils.writeTextFile(json.getPath(), AbstractTargetOperationImpl.OBJECT_MAPPER.writeValueAsString(dedup));
+		}
+		if (this.logger.isLoggable(Level.INFO)) {
+			final String msg = String.format("%d generations of %d blocks moved to the reference store", generations,
+					descriptors.size());
+			this.logger.info(msg);
+		}
+		return generations;
 	}
 
 	@Override
@@ -73,6 +187,11 @@ public class FileTarget extends AbstractTarget {
 		return result;
 	}
 
+	@Override
+	protected void deleteReferenceObject(final String key) throws IOException {
+		Files.deleteIfExists(new File(getFullPath(key)).toPath());
+	}
+
 	@Override
 	public boolean doesObjectExist(final String key) {
 		final File keyFile = new File(getFullPath(key));
@@ -87,11 +206,20 @@ public class FileTarget extends AbstractTarget {
 			final String msg = String.format("Get %s from %s", contentName, getTargetType());
 			this.logger.info(msg);
 		}
-		byte[] result = null;
-		if (doesObjectExist(contentName)) {
-			result = IOUtils.readBinaryFile(contentName);
+		return getMetadataObject(CoreGlobalSettings.getGlobalProfileFileName());
+	}
+
+	/**
+	 * The md5 of a file costs a full read: size and modification time are used as
+	 * version
+	 */
+	@Override
+	public String getObjectVersion(final String key) throws IOException {
+		final File file = new File(getFullPath(key));
+		if (!file.isFile()) {
+			return null;
 		}
-		return result;
+		return String.format("%d-%d", file.length(), Files.getLastModifiedTime(file.toPath()).toMillis());
 	}
 
 	@Override
@@ -99,6 +227,29 @@ public class FileTarget extends AbstractTarget {
 		return (CoreFileTargetOptions) this.options;
 	}
 
+	/**
+	 * The lock file is inside the shard folder, so the processes of every host
+	 * mounting the repository take the same lock
+	 */
+	@Override
+	protected File getReferenceLockFile(final String prefix) {
+		return new File(getFullPath(prefix), REFERENCE_LOCK_NAME);
+	}
+
+	@Override
+	protected byte[] getReferenceObject(final String key) throws IOException {
+		final File file = new File(getFullPath(key));
+		return file.exists() ? Files.readAllBytes(file.toPath()) : null;
+	}
+
+	/**
+	 * @return the pack store of the repository or null if the blocks are stored
+	 *         one folder per block
+	 */
+	public synchronized BlockPackStore getPackStore() {
+		return this.packStore;
+	}
+
 	@Override
 	public String getSeparator() {
 		return File.separator;
@@ -118,6 +269,16 @@ public class FileTarget extends AbstractTarget {
 
 	}
 
+	@Override
+	protected List<String> listReferenceObjects(final String prefix) {
+		final List<String> result = new ArrayList<>();
+		final File[] files = new File(getFullPath(prefix)).listFiles(File::isFile);
+		if (files != null) {
+			Arrays.stream(files).forEach(file -> result.add(file.getName()));
+		}
+		return result;
+	}
+
 	@Override
 	public LinkedHashMap<String, String> manualConfiguration() {
 		final LinkedHashMap<String, String> result = super.manualConfiguration();
@@ -126,6 +287,28 @@ public class FileTarget extends AbstractTarget {
 		return result;
 	}
 
+	/**
+	 * Move the blocks stored one folder per block to the pack store and compact
+	 * the segments. The pack store is created if the repository doesn't have one.
+	 * The generations recorded on the block descriptors are first moved to the
+	 * reference store
+	 *
+	 * @return the migration counters
+	 * @throws IOException
+	 */
+	public BlockPackStore.MigrationResult migrateToPackStore() throws IOException {
+		synchronized (this) {
+			if (this.packStore == null) {
+				openPackStore(true);
+			}
+		}
+		final File dataFolder = new File(getFullPath(CoreGlobalSettings.REPOSITORY_DATA_PATH));
+		convertLegacyReferences(dataFolder);
+		final BlockPackStore.MigrationResult result = getPackStore().migrate(dataFolder);
+		compactPackStore();
+		return result;
+	}
+
 	@Override
 	public ITargetOperation newTargetOperation(final ManagedFcoEntityInfo entityInfo, final Logger logger) {
 		return new FileTargetOperations(this, entityInfo, logger);
@@ -140,11 +323,37 @@ public class FileTarget extends AbstractTarget {
 				root.mkdirs();
 			}
 			result = root.exists();
+			if (result) {
+				try {
+					openPackStore(CoreGlobalSettings.isFilePackEnabled());
+				} catch (final IOException e) {
+					Utility.logWarning(this.logger, e);
+					return false;
+				}
+				openDedupIndex();
+			}
 			return result;
 		} else
 			return false;
 	}
 
+	/**
+	 * Open the pack store. A repository with pack segments always uses them
+	 *
+	 * @param create create the store if the repository doesn't have one
+	 * @throws IOException
+	 */
+	private synchronized void openPackStore(final boolean create) throws IOException {
+		closePackStore();
+		final File folder = new File(getFullPath(BlockPackStore.PACKS_PATH));
+		if (create || folder.isDirectory()) {
+			final BlockPackStore store = new BlockPackStore(folder,
+					CoreGlobalSettings.getFilePackSegmentSizeMb() * (long) Utility.ONE_MBYTES, this.logger);
+			store.open();
+			this.packStore = store;
+		}
+	}
+
 	@Override
 	protected boolean post(final String path, final ByteArrayInOutStream digestOutput, final String contentType) {
 		boolean result = false;
@@ -159,4 +368,38 @@ public class FileTarget extends AbstractTarget {
 		return result;
 	}
 
+	@Override
+	protected void putReferenceObject(final String key, final byte[] content) throws IOException {
+		final File file = new File(getFullPath(key));
+		file.getParentFile().mkdirs();
+		// the snapshot is replaced atomically
+		final File temp = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+		Files.write(temp.toPath(), content);
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@Override
+	protected int warmDedupIndex(final DedupIndex index) {
+		int keys = 0;
+		final BlockPackStore store = getPackStore();
+		if (store != null) {
+			for (final String digest : store.getDigests()) {
+				index.add(digest);
+				++keys;
+			}
+		}
+		final File[] blocks = new File(getFullPath(CoreGlobalSettings.REPOSITORY_DATA_PATH))
+				.listFiles(File::isDirectory);
+		if (blocks != null) {
+			for (final File block : blocks) {
+				if (new File(block, "data").exists() && new File(block, "json").exists()) {
+					index.add(block.getName());
+					++keys;
+				}
+			}
+		}
+		return keys;
+	}
+
 }
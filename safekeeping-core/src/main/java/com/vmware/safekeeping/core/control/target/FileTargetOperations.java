@@ -30,17 +30,18 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.bind.DatatypeConverter;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vmware.safekeeping.common.IOUtils;
 import com.vmware.safekeeping.common.Utility;
 import com.vmware.safekeeping.core.control.TargetBuffer;
@@ -58,20 +59,34 @@ class FileTargetOperations extends AbstractTargetOperationImpl {
         this.logger = logger;
     }
 
+    /**
+     * Without the pack store every block keeps its json descriptor next to the
+     * data, also for the generations using the reference store: the descriptor
+     * no longer records owners but it is the only copy of the md5, cipher nonce
+     * and offset, codec and stream size the block was written with, read by
+     * {@link #dedupDump} when a later generation references the block. The pack
+     * store keeps the descriptor in front of the data
+     */
     @Override
     public boolean closePostDump(final ExBlockInfo block, final TargetBuffer targetBuffer) {
         boolean result = true;
         try {
-            final String uuid = getEntityInfo().getUuid();
-            final Dedup dedup = new Dedup(uuid, block);
-            final String entities = new ObjectMapper().writeValueAsString(dedup);
-            new File(getFullPath(block.getKey())).mkdirs();
-            IOUtils.writeTextFile(getFullPath(block.getJsonKey()), entities);
-            IOUtils.inputStreamToFile(targetBuffer.getInputStream(), block.getDataKey());
+            final String entities = OBJECT_MAPPER.writeValueAsString(new Dedup(block));
+            final BlockPackStore packStore = getParent().getPackStore();
+            if (packStore != null) {
+                packStore.put(block.getSha1(), entities.getBytes(StandardCharsets.UTF_8),
+                        targetBuffer.getInputStream(), targetBuffer.getInputStreamSize());
+            } else {
+                new File(getFullPath(block.getKey())).mkdirs();
+                IOUtils.writeTextFile(getFullPath(block.getJsonKey()), entities);
+                IOUtils.inputStreamToFile(targetBuffer.getInputStream(), block.getDataKey());
+            }
 
             block.setDuplicated(false);
 
             getMd5DiskList().put(block.getKey(), block.getMd5());
+            retainDump(block);
+            indexDump(block);
 
         } catch (final IOException e) {
             result = false;
@@ -129,17 +144,24 @@ class FileTargetOperations extends AbstractTargetOperationImpl {
     public boolean dedupDump(final ExBlockInfo block) {
         boolean result = true;
         try {
-            final String entities = IOUtils.readTextFile(block.getJsonKey());
-
-            final String newEntities = manageDedupEntities(block, entities);
-            IOUtils.writeTextFile(block.getJsonKey(), newEntities);
+            final BlockPackStore packStore = getParent().getPackStore();
+            final byte[] descriptor = (packStore != null) ? packStore.readDescriptor(block.getSha1()) : null;
+            if (descriptor != null) {
+                applyDescriptor(block, OBJECT_MAPPER.readValue(descriptor, Dedup.class));
+            } else {
+                final String entities = IOUtils.readTextFile(block.getJsonKey());
+                applyDescriptor(block, OBJECT_MAPPER.readValue(entities, Dedup.class));
+            }
 
             block.setDuplicated(true);
 
             getMd5DiskList().put(block.getKey(), block.getMd5());
+            retainDump(block);
+            indexDump(block);
 
         } catch (final IOException e) {
             result = false;
+            unindexDump(block);
             Utility.logWarning(this.logger, e);
             block.setReason(getEntityInfo(), e);
 
@@ -169,10 +191,32 @@ class FileTargetOperations extends AbstractTargetOperationImpl {
     }
 
     @Override
-    public boolean doesKeyExist(final ExBlockInfo block) {
-        final File dataKeyFile = new File(block.getDataKey());
-        final File jsonKey = new File(block.getJsonKey());
-        return jsonKey.exists() && dataKeyFile.exists();
+    public byte[] getDumpContent(final ExBlockInfo blockInfo) throws IOException {
+        final BlockPackStore packStore = getParent().getPackStore();
+        final byte[] content = (packStore != null) ? packStore.read(blockInfo.getSha1()) : null;
+        if (content != null) {
+            return content;
+        }
+        return Files.readAllBytes(new File(blockInfo.getDataKey()).toPath());
+    }
+
+    /**
+     * A packed block is read from its pack segment
+     */
+    @Override
+    public byte[] getDumpMd5(final ExBlockInfo blockInfo) throws IOException {
+        final BlockPackStore packStore = getParent().getPackStore();
+        final byte[] content = (packStore != null) ? packStore.read(blockInfo.getSha1()) : null;
+        if (content == null) {
+            return getObjectMd5(blockInfo.getDataKey());
+        }
+        try {
+            return DatatypeConverter.printHexBinary(MessageDigest.getInstance("MD5").digest(content))
+                    .getBytes(StandardCharsets.UTF_8);
+        } catch (final NoSuchAlgorithmException e) {
+            Utility.logWarning(this.logger, e);
+            return new byte[0];
+        }
     }
 
     @Override
@@ -189,7 +233,9 @@ class FileTargetOperations extends AbstractTargetOperationImpl {
     public byte[] getObjectMd5(final String path) throws IOException {
 
         try {
-            return IOUtils.getFileChecksum(MessageDigest.getInstance("MD5"), getFullPath(path));
+            return DatatypeConverter
+                    .printHexBinary(IOUtils.getFileChecksum(MessageDigest.getInstance("MD5"), getFullPath(path)))
+                    .getBytes(StandardCharsets.UTF_8);
         } catch (NoSuchAlgorithmException | IOException e) {
             Utility.logWarning(this.logger, e);
             return new byte[0];
@@ -217,8 +263,13 @@ class FileTargetOperations extends AbstractTargetOperationImpl {
             this.logger.fine(msg);
         }
         try {
-            final FileInputStream is = new FileInputStream(blockInfo.getDataKey());
-            final int count = IOUtils.copyToByteArray(is, targetBuffer.getInputBuffer());
+            final BlockPackStore packStore = getParent().getPackStore();
+            int count = (packStore != null) ? packStore.read(blockInfo.getSha1(), targetBuffer.getInputBuffer())
+                    : -1;
+            if (count < 0) {
+                final FileInputStream is = new FileInputStream(blockInfo.getDataKey());
+                count = IOUtils.copyToByteArray(is, targetBuffer.getInputBuffer());
+            }
             blockInfo.setStreamSize(count);
         } catch (final IOException e) {
             Utility.logWarning(this.logger, e);
@@ -246,10 +297,54 @@ class FileTargetOperations extends AbstractTargetOperationImpl {
         return result;
     }
 
+    @Override
+    protected boolean probeKey(final ExBlockInfo block) {
+        final BlockPackStore packStore = getParent().getPackStore();
+        if ((packStore != null) && packStore.contains(block.getSha1())) {
+            return true;
+        }
+        final File dataKeyFile = new File(block.getDataKey());
+        final File jsonKey = new File(block.getJsonKey());
+        return jsonKey.exists() && dataKeyFile.exists();
+    }
+
     @Override
     public void putObject(final String key, final String content) throws IOException {
         IOUtils.writeTextFile(key, content);
 
     }
 
+    /**
+     * A block moved to the pack store can still have its folder: both are removed
+     */
+    @Override
+    public void removeDump(final ExBlockInfo dumpFileInfo) throws IOException {
+        final BlockPackStore packStore = getParent().getPackStore();
+        if (packStore != null) {
+            packStore.remove(dumpFileInfo.getSha1());
+        }
+        super.removeDump(dumpFileInfo);
+    }
+
+    @Override
+    public boolean removeDumps(final Collection<ExBlockInfo> dumps) {
+        final BlockPackStore packStore = getParent().getPackStore();
+        boolean result = true;
+        if (packStore != null) {
+            for (final ExBlockInfo dump : dumps) {
+                try {
+                    packStore.remove(dump.getSha1());
+                } catch (final IOException e) {
+                    Utility.logWarning(this.logger, e);
+                    result = false;
+                }
+            }
+        }
+        result &= super.removeDumps(dumps);
+        if ((packStore != null) && !dumps.isEmpty()) {
+            getParent().compactPackStore();
+        }
+        return result;
+    }
+
 }
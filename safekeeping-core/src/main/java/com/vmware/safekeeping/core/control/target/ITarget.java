@@ -45,6 +45,12 @@ public interface ITarget {
 
 	boolean doesObjectExist(String key);
 
+	/**
+	 * @return the local index of the blocks on the repository or null if not
+	 *         available
+	 */
+	DedupIndex getDedupIndex();
+
 	default String getFullPath(final String path) {
 		if (StringUtils.isEmpty(getRoot())) {
 			return path;
@@ -57,6 +63,25 @@ public interface ITarget {
 
 	byte[] getGlobalProfileToByteArray() throws IOException;
 
+	/**
+	 * @return the cache of the metadata objects of the repository
+	 */
+	MetadataCache getMetadataCache();
+
+	/**
+	 * Version of an object used to validate the metadata cache
+	 *
+	 * @param key path relative to the repository root
+	 * @return the md5 or ETag of the object, null if the object doesn't exist
+	 * @throws IOException
+	 */
+	String getObjectVersion(String key) throws IOException;
+
+	/**
+	 * @return the owners store of the blocks on the repository
+	 */
+	BlockReferenceStore getReferenceStore();
+
 	String getName();
 
 	AbstractCoreTargetRepository getOptions();
@@ -74,6 +99,14 @@ public interface ITarget {
 	 */
 	String getTargetType();
 
+	/**
+	 * @return concurrent uploads the target can sustain, 0 if the target has no
+	 *         preference
+	 */
+	default int getUploadConcurrency() {
+		return 0;
+	}
+
 	String getUri(String path);
 
 	boolean isEnable();
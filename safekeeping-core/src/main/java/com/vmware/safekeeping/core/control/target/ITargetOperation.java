@@ -28,7 +28,11 @@ package com.vmware.safekeeping.core.control.target;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -39,6 +43,7 @@ import com.vmware.safekeeping.core.core.Dedup;
 import com.vmware.safekeeping.core.core.DedupItem;
 import com.vmware.safekeeping.core.profile.FcoGenerationsCatalog;
 import com.vmware.safekeeping.core.profile.GenerationProfile;
+import com.vmware.safekeeping.core.profile.dataclass.FcoGenerationProfile;
 import com.vmware.safekeeping.core.type.ByteArrayInOutStream;
 import com.vmware.safekeeping.core.type.ManagedFcoEntityInfo;
 import com.vmware.vapi.internal.util.StringUtils;
@@ -66,18 +71,86 @@ public interface ITargetOperation {
 
 	void deleteObject(String key) throws IOException;
 
+	/**
+	 * Delete a set of objects. Targets supporting bulk deletion remove them in
+	 * batches
+	 *
+	 * @param keys
+	 * @return the keys not deleted
+	 */
+	default List<String> deleteObjects(final Collection<String> keys) {
+		final List<String> result = new ArrayList<>();
+		for (final String key : keys) {
+			try {
+				deleteObject(key);
+			} catch (final IOException e) {
+				result.add(key);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Check if the block is on the repository. The local dedup index is consulted
+	 * first
+	 *
+	 * @param dumpFileInfo
+	 * @return
+	 */
 	boolean doesKeyExist(ExBlockInfo dumpFileInfo);
 
+	/**
+	 * Check if the block is on the repository skipping the local dedup index
+	 *
+	 * @param dumpFileInfo
+	 * @return
+	 */
+	boolean doesKeyExistOnTarget(ExBlockInfo dumpFileInfo);
+
 	boolean doesObjectExist(String json);
 
 	String getDisksPath();
 
+	/**
+	 * Read the stored (compressed and ciphered) object of a block
+	 *
+	 * @param blockInfo
+	 * @return the object content
+	 * @throws IOException if the object can't be read or doesn't match the block
+	 *                     md5
+	 */
+	byte[] getDumpContent(ExBlockInfo blockInfo) throws IOException;
+
+	/**
+	 * Md5 of the stored object of a block, as an hex string
+	 *
+	 * @param blockInfo
+	 * @return
+	 * @throws IOException
+	 */
+	default byte[] getDumpMd5(final ExBlockInfo blockInfo) throws IOException {
+		return getObjectMd5(blockInfo.getDataKey());
+	}
+
 	ManagedFcoEntityInfo getEntityInfo();
 
+	byte[] getBlockManifestToByteArray(ManagedFcoEntityInfo fcoEntity, int genId) throws IOException;
+
 	byte[] getFcoProfileToByteArray(ManagedFcoEntityInfo fco) throws IOException;
 
 	String getFullPath(final String path);
 
+	/**
+	 * Generation profile decoded once and shared through the metadata cache. The
+	 * profile must not be modified
+	 *
+	 * @param fcoEntity
+	 * @param genId
+	 * @return the profile or null if the generation has no profile
+	 * @throws IOException
+	 */
+	FcoGenerationProfile getGenerationProfile(ManagedFcoEntityInfo fcoEntity, int genId) throws IOException;
+
 	byte[] getGenerationProfileToByteArray(ManagedFcoEntityInfo fcoEntity, int genId) throws IOException;
 
 	Map<String, String> getMd5DiskList();
@@ -90,10 +163,29 @@ public interface ITargetOperation {
 
 	ITarget getParent();
 
+	/**
+	 * Return the blocks owned by at least one generation on the reference store
+	 *
+	 * @param digests
+	 * @return
+	 * @throws IOException
+	 */
+	Set<String> getReferencedDigests(Collection<String> digests) throws IOException;
+
 	String getTargetName();
 
 	String getUri(String path);
 
+	/**
+	 * Check if the block is still owned by a generation saved before the
+	 * reference store
+	 *
+	 * @param block
+	 * @return
+	 * @throws IOException
+	 */
+	boolean hasLegacyReferences(ExBlockInfo block) throws IOException;
+
 	boolean isMd5FileExist(final GenerationProfile profile);
 
 	boolean isProfileVmExist(ManagedFcoEntityInfo fco);
@@ -128,6 +220,16 @@ public interface ITargetOperation {
 
 	void putObject(String key, String content) throws IOException;
 
+	/**
+	 * Record a block stored by a previous generation without reading its
+	 * descriptor. The block keeps the attributes recorded by the source
+	 * generation
+	 *
+	 * @param block
+	 * @return true if succeed
+	 */
+	boolean referenceDump(ExBlockInfo block);
+
 	default String removeDedupEntities(final Integer generationId, final String entities)
 			throws JsonProcessingException {
 		final String uuid = getEntityInfo().getUuid();
@@ -158,7 +260,32 @@ public interface ITargetOperation {
 		deleteObject(dumpFileInfo.getDataKey());
 	}
 
+	/**
+	 * Remove a set of blocks
+	 *
+	 * @param dumps
+	 * @return true if every block has been removed
+	 */
+	default boolean removeDumps(final Collection<ExBlockInfo> dumps) {
+		final List<String> keys = new ArrayList<>();
+		for (final ExBlockInfo dump : dumps) {
+			keys.add(dump.getJsonKey());
+			keys.add(dump.getDataKey());
+		}
+		return deleteObjects(keys).isEmpty();
+	}
+
 	boolean removeFcoProfile(ManagedFcoEntityInfo fcoInfo);
 
+	/**
+	 * Remove every reference of the generation from the reference store
+	 *
+	 * @param profile
+	 * @param digests blocks of the generation
+	 * @return the blocks of the generation not owned by any other generation
+	 * @throws IOException
+	 */
+	Set<String> removeReferences(GenerationProfile profile, Collection<String> digests) throws IOException;
+
 	void saveStatus(String key);
 }
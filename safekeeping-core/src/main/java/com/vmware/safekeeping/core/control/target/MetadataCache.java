@@ -0,0 +1,488 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.control.target;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vmware.safekeeping.common.Utility;
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
+
+/**
+ * Cache of the metadata objects of a repository (fco profiles, generation
+ * profiles and block manifests).
+ *
+ * Every entry records the version of the object (md5 or ETag on S3, size and
+ * modification time on a file system). An entry is returned only if the object
+ * on the target still has the same version, otherwise the object is read again.
+ * A memory entry of an immutable object (generation profile, block manifest)
+ * validated less than metadataCacheValidationSeconds ago is returned without
+ * reading the version, the changes made by this process invalidate the entries
+ * directly. The catalogs (global profile, fco profiles) are updated by other
+ * processes too, their version is read on every lookup. A memory entry keeps
+ * also the decoded object, see {@link #getDecoded}.
+ * The entries are kept in a memory LRU bounded by size and, optionally, on a
+ * local folder that survives the process. The folder has a subfolder for every
+ * Fco so the entries of an Fco can be removed together.
+ */
+public class MetadataCache {
+
+    /**
+     * Read an object of the repository
+     */
+    @FunctionalInterface
+    public interface ObjectReader {
+        byte[] read(String key) throws IOException;
+    }
+
+    /**
+     * Decode the content of an object
+     */
+    @FunctionalInterface
+    public interface ObjectDecoder<T> {
+        T decode(byte[] content) throws IOException;
+    }
+
+    /**
+     * Version of an object of the repository
+     */
+    @FunctionalInterface
+    public interface ObjectVersion {
+        /**
+         * @param key
+         * @return the version or null if the object cannot be cached
+         * @throws IOException
+         */
+        String get(String key) throws IOException;
+    }
+
+    private static final class Entry {
+        private final String version;
+        private final byte[] content;
+        private volatile long validatedAt;
+        private Object decoded;
+
+        private Entry(final String version, final byte[] content) {
+            this.version = version;
+            this.content = content;
+            this.validatedAt = System.currentTimeMillis();
+        }
+    }
+
+    private static final int ONE_MB = 1024 * 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Logger logger;
+    private final LinkedHashMap<String, Entry> entries;
+    private final long maxMemorySize;
+    private final long validationMillis;
+    private long memorySize;
+    private final File folder;
+    private final long maxDiskSize;
+    private long diskSize;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param repository uri of the repository
+     * @param logger
+     */
+    public MetadataCache(final String repository, final Logger logger) {
+        this.logger = logger;
+        this.entries = new LinkedHashMap<>(16, 0.75F, true);
+        this.maxMemorySize = (long) Math.max(0, CoreGlobalSettings.getMetadataCacheSizeMb()) * ONE_MB;
+        this.validationMillis = TimeUnit.SECONDS
+                .toMillis(Math.max(0, CoreGlobalSettings.getMetadataCacheValidationSeconds()));
+        this.maxDiskSize = (long) Math.max(0, CoreGlobalSettings.getMetadataCacheDiskSizeMb()) * ONE_MB;
+        this.folder = (this.maxDiskSize > 0) ? openFolder(repository) : null;
+    }
+
+    private static String toName(final String value) {
+        return UUID.nameUUIDFromBytes(value.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private File getEntryFile(final String key) {
+        final int separator = key.indexOf('/');
+        final String fco = (separator > 0) ? key.substring(0, separator) : "";
+        return new File(new File(this.folder, toName(fco)), toName(key));
+    }
+
+    /**
+     * Return the content of an object. The object is read from the repository if
+     * it is not in the cache or its version changed
+     *
+     * @param key       path of the object relative to the repository root
+     * @param version   version of the object on the repository
+     * @param reader    reader of the object
+     * @param immutable true if the object is never rewritten once created
+     * @return the content of the object
+     * @throws IOException
+     */
+    public byte[] get(final String key, final ObjectVersion version, final ObjectReader reader,
+            final boolean immutable) throws IOException {
+        if (!isEnable()) {
+            return reader.read(key);
+        }
+        final Entry entry = getEntry(key, version, reader, immutable);
+        return (entry != null) ? entry.content.clone() : null;
+    }
+
+    /**
+     * Return the decoded content of an object. The decoded object is kept with
+     * the memory entry and shared by every caller, it must not be modified
+     *
+     * @param key       path of the object relative to the repository root
+     * @param version   version of the object on the repository
+     * @param reader    reader of the object
+     * @param immutable true if the object is never rewritten once created
+     * @param type      class of the decoded object
+     * @param decoder   decoder of the content
+     * @return the decoded object or null if the object is empty
+     * @throws IOException
+     */
+    public <T> T getDecoded(final String key, final ObjectVersion version, final ObjectReader reader,
+            final boolean immutable, final Class<T> type, final ObjectDecoder<T> decoder) throws IOException {
+        final Entry entry = isEnable() ? getEntry(key, version, reader, immutable) : null;
+        if (entry == null) {
+            final byte[] content = isEnable() ? null : reader.read(key);
+            return ((content != null) && (content.length > 0)) ? decoder.decode(content) : null;
+        }
+        if (entry.content.length == 0) {
+            return null;
+        }
+        synchronized (entry) {
+            if (!type.isInstance(entry.decoded)) {
+                entry.decoded = decoder.decode(entry.content);
+            }
+            return type.cast(entry.decoded);
+        }
+    }
+
+    /**
+     * Look up the entry of an object. The version of an immutable object is read
+     * from the repository only if the memory entry has not been validated
+     * recently, the version of any other object is always read
+     *
+     * @return the entry or null if the object doesn't exist
+     * @throws IOException
+     */
+    private Entry getEntry(final String key, final ObjectVersion version, final ObjectReader reader,
+            final boolean immutable) throws IOException {
+        Entry entry = immutable ? getValidated(key) : null;
+        if (entry != null) {
+            hit(key, entry.version);
+            return entry;
+        }
+        String currentVersion;
+        try {
+            currentVersion = version.get(key);
+        } catch (final IOException | RuntimeException e) {
+            currentVersion = null;
+        }
+        if (currentVersion == null) {
+            invalidate(key);
+            final byte[] content = reader.read(key);
+            return (content != null) ? new Entry(null, content) : null;
+        }
+        entry = getFromMemory(key, currentVersion);
+        if (entry == null) {
+            final byte[] content = getFromDisk(key, currentVersion);
+            if (content != null) {
+                entry = new Entry(currentVersion, content);
+                putInMemory(key, entry);
+            }
+        }
+        if (entry != null) {
+            hit(key, currentVersion);
+            return entry;
+        }
+        synchronized (this) {
+            ++this.misses;
+        }
+        final byte[] content = reader.read(key);
+        if (content == null) {
+            return null;
+        }
+        entry = new Entry(currentVersion, content);
+        putInMemory(key, entry);
+        putOnDisk(key, currentVersion, content);
+        return entry;
+    }
+
+    private byte[] getFromDisk(final String key, final String version) {
+        if (this.folder == null) {
+            return null;
+        }
+        final File file = getEntryFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            if (key.equals(input.readUTF()) && version.equals(input.readUTF())) {
+                final byte[] content = new byte[input.readInt()];
+                input.readFully(content);
+                if (!file.setLastModified(System.currentTimeMillis()) && this.logger.isLoggable(Level.FINE)) {
+                    this.logger.fine("Cannot update the access time of " + file);
+                }
+                return content;
+            }
+        } catch (final IOException e) {
+            Utility.logWarning(this.logger, e);
+        }
+        return null;
+    }
+
+    private synchronized Entry getFromMemory(final String key, final String version) {
+        final Entry entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.version.equals(version)) {
+            removeFromMemory(key);
+            return null;
+        }
+        entry.validatedAt = System.currentTimeMillis();
+        return entry;
+    }
+
+    /**
+     * @return the memory entry if it has been validated recently
+     */
+    private synchronized Entry getValidated(final String key) {
+        final Entry entry = this.entries.get(key);
+        if ((entry != null) && ((System.currentTimeMillis() - entry.validatedAt) < this.validationMillis)) {
+            return entry;
+        }
+        return null;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    private void hit(final String key, final String version) {
+        synchronized (this) {
+            ++this.hits;
+        }
+        if (this.logger.isLoggable(Level.FINE)) {
+            this.logger.fine(String.format("Metadata cache hit %s version %s", key, version));
+        }
+    }
+
+    /**
+     * Remove an object from the cache
+     *
+     * @param key path of the object relative to the repository root
+     */
+    public void invalidate(final String key) {
+        if (!isEnable()) {
+            return;
+        }
+        removeFromMemory(key);
+        if (this.folder != null) {
+            final File file = getEntryFile(key);
+            final long length = file.length();
+            try {
+                if (Files.deleteIfExists(file.toPath())) {
+                    synchronized (this) {
+                        this.diskSize -= length;
+                    }
+                }
+            } catch (final IOException e) {
+                Utility.logWarning(this.logger, e);
+            }
+        }
+    }
+
+    /**
+     * Remove every object of an Fco from the cache
+     *
+     * @param fco uuid of the Fco
+     */
+    public void invalidateFco(final String fco) {
+        if (!isEnable()) {
+            return;
+        }
+        final String prefix = fco + "/";
+        synchronized (this) {
+            final Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<String, Entry> entry = it.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    this.memorySize -= entry.getValue().content.length;
+                    it.remove();
+                }
+            }
+        }
+        if (this.folder != null) {
+            final File fcoFolder = new File(this.folder, toName(fco));
+            final long length = sizeOf(fcoFolder);
+            try {
+                Utility.deleteDirectoryRecursive(fcoFolder, true);
+                synchronized (this) {
+                    this.diskSize -= length;
+                }
+            } catch (final IOException e) {
+                Utility.logWarning(this.logger, e);
+            }
+        }
+    }
+
+    public boolean isEnable() {
+        return (this.maxMemorySize > 0) || (this.folder != null);
+    }
+
+    private File openFolder(final String repository) {
+        try {
+            final File result = new File(CoreGlobalSettings.getMetadataCachePath(), toName(repository));
+            if (!result.isDirectory() && !result.mkdirs()) {
+                this.logger.warning("Cannot create the metadata cache folder " + result);
+                return null;
+            }
+            this.diskSize = sizeOf(result);
+            return result;
+        } catch (final URISyntaxException e) {
+            Utility.logWarning(this.logger, e);
+            return null;
+        }
+    }
+
+    private synchronized void putInMemory(final String key, final Entry entry) {
+        if (entry.content.length > (this.maxMemorySize / 4)) {
+            return;
+        }
+        removeFromMemory(key);
+        this.entries.put(key, entry);
+        this.memorySize += entry.content.length;
+        final Iterator<Entry> it = this.entries.values().iterator();
+        while ((this.memorySize > this.maxMemorySize) && it.hasNext()) {
+            this.memorySize -= it.next().content.length;
+            it.remove();
+        }
+    }
+
+    private void putOnDisk(final String key, final String version, final byte[] content) {
+        if (this.folder == null) {
+            return;
+        }
+        final File file = getEntryFile(key);
+        try {
+            if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+                return;
+            }
+            final File temp = File.createTempFile(file.getName(), TEMP_SUFFIX, file.getParentFile());
+            final long previousLength = file.length();
+            try (DataOutputStream output = new DataOutputStream(new FileOutputStream(temp))) {
+                output.writeUTF(key);
+                output.writeUTF(version);
+                output.writeInt(content.length);
+                output.write(content);
+            }
+            final long length = temp.length();
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            final boolean trim;
+            synchronized (this) {
+                this.diskSize += length - previousLength;
+                trim = this.diskSize > this.maxDiskSize;
+            }
+            if (trim) {
+                trimDisk();
+            }
+        } catch (final IOException e) {
+            Utility.logWarning(this.logger, e);
+        }
+    }
+
+    private synchronized void removeFromMemory(final String key) {
+        final Entry entry = this.entries.remove(key);
+        if (entry != null) {
+            this.memorySize -= entry.content.length;
+        }
+    }
+
+    private static long sizeOf(final File directory) {
+        long result = 0;
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                result += file.isDirectory() ? sizeOf(file) : file.length();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("MetadataCache entries:%d memory:%d disk:%d hits:%d misses:%d", this.entries.size(),
+                this.memorySize, this.diskSize, this.hits, this.misses);
+    }
+
+    /**
+     * Remove the least recently used entries of the folder until the folder is
+     * below 3/4 of its size
+     */
+    private synchronized void trimDisk() {
+        final File[] fcoFolders = this.folder.listFiles(File::isDirectory);
+        if (fcoFolders == null) {
+            return;
+        }
+        final File[] files = Arrays.stream(fcoFolders).map(File::listFiles).filter(f -> f != null)
+                .flatMap(Arrays::stream).sorted(Comparator.comparingLong(File::lastModified)).toArray(File[]::new);
+        final long limit = (this.maxDiskSize / 4) * 3;
+        for (int i = 0; (i < files.length) && (this.diskSize > limit); i++) {
+            final long length = files[i].length();
+            if (files[i].delete()) {
+                this.diskSize -= length;
+            }
+        }
+        if (this.logger.isLoggable(Level.FINE)) {
+            this.logger.fine("Metadata cache trimmed " + toString());
+        }
+    }
+}
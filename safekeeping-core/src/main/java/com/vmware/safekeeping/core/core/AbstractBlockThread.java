@@ -33,16 +33,12 @@ import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.Deflater;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.xml.bind.DatatypeConverter;
 
-import com.linkedin.migz.MiGzOutputStream;
-import com.vmware.safekeeping.common.ExtendedByteArrayOutputStream;
-import com.vmware.safekeeping.common.Utility;
 import com.vmware.safekeeping.core.command.interactive.InteractiveDisk;
 import com.vmware.safekeeping.core.control.TargetBuffer;
 import com.vmware.safekeeping.core.control.info.ExBlockInfo;
@@ -52,10 +48,10 @@ import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
 import com.vmware.safekeeping.core.type.EncryptResult;
 import com.vmware.safekeeping.core.type.ManagedFcoEntityInfo;
 import com.vmware.safekeeping.core.util.AESEncryptionManager;
+import com.vmware.safekeeping.core.util.BlockCodec;
 
 abstract class AbstractBlockThread {
 
-    private static final int DUMP_BUFFER_SIZE = 20000;
     protected final Logger logger;
     protected final Buffers buffers;
     private final String[] report;
@@ -93,23 +89,43 @@ abstract class AbstractBlockThread {
         this.maxBlockOperationRetries = CoreGlobalSettings.getMaxBlockOperationRetries();
     }
 
+    /**
+     * Digest of the block data at the beginning of the input buffer
+     *
+     * @param blockInfo
+     * @param targetBuffer
+     * @return
+     */
     protected boolean calculateSha1(final ExBlockInfo blockInfo, final TargetBuffer targetBuffer) {
-        targetBuffer.shaUpdate(targetBuffer.getInputBuffer(), blockInfo.getStreamOffset(), blockInfo.getSizeInBytes());
+        targetBuffer.shaUpdate(targetBuffer.getInputBuffer(), 0, blockInfo.getSizeInBytes());
         final byte[] digest = targetBuffer.shaDigest();
         blockInfo.setSha1(DatatypeConverter.printHexBinary(digest));
         return true;
     }
 
     protected boolean checkResult(final boolean result) throws InterruptedException {
+        if (countTentative(result)) {
+            return true;
+        }
+        Thread.sleep(CoreGlobalSettings.getWaitingTimeAfterBlockThreadFailureInMilliSeconds());
+        return false;
+    }
+
+    /**
+     * Count the tentative like {@link #checkResult(boolean)} without waiting
+     * before the next one
+     *
+     * @param result
+     * @return true if the operation is over: succeeded, stopped or out of retries
+     */
+    protected boolean countTentative(final boolean result) {
         try {
             if (!result && this.buffers.isRunning()) {
                 final String msg = String.format("Block n:%d Tentative %d/%d failed", this.blockInfo.getIndex(),
                         this.tentative, this.maxBlockOperationRetries);
                 this.logger.warning(msg);
-                // Check if this is not the last tentative
-                if (this.tentative < (this.maxBlockOperationRetries)) {
-                    Thread.sleep(CoreGlobalSettings.getWaitingTimeAfterBlockThreadFailureInMilliSeconds());
-                } else {
+                // Check if this is the last tentative
+                if (this.tentative >= (this.maxBlockOperationRetries)) {
                     final String msg1 = String.format("Block %d Max number of retries", this.blockInfo.getIndex());
                     this.logger.warning(msg1);
                     final String errMsg = String.format("%s Error(%s) - Check logs for more information", msg1,
@@ -146,26 +162,8 @@ abstract class AbstractBlockThread {
         int count = blockInfo.getSizeInBytes();
         boolean released = false;
         if (blockInfo.isCompress()) {
-
-            final int blockSize = MiGzOutputStream.DEFAULT_BLOCK_SIZE;
-            final ExtendedByteArrayOutputStream b = new ExtendedByteArrayOutputStream(
-                    targetBuffer.getBufferCompressData());
-            try (final MiGzOutputStream mzos = new MiGzOutputStream(b, 5, blockSize)) {
-                mzos.setCompressionLevel(Deflater.BEST_SPEED);
-                int readCount = DUMP_BUFFER_SIZE;
-                int base = 0;
-                while (true) {
-                    if ((base + readCount) > count) {
-                        readCount = count - base;
-                    }
-                    mzos.write(buffer, base, readCount);
-                    base += readCount;
-                    if (base == count) {
-                        break;
-                    }
-                }
-            }
-            count = b.size();
+            count = BlockCodec.getInstance(blockInfo.getCompressionCodec()).compress(buffer, count,
+                    targetBuffer.getBufferCompressData(), blockInfo.getCompressionLevel());
             buffer = targetBuffer.getBufferCompressData();
             // release input buffer
             targetBuffer.releaseInputStream();
@@ -174,8 +172,9 @@ abstract class AbstractBlockThread {
         if (blockInfo.isCipher()) {
             final EncryptResult er = AESEncryptionManager.encryptData(buffer, 0, count, targetBuffer.getBufferCipher());
             count = er.getLength();
-            // Set the block offset for encryption
+            // Set the block offset and nonce for encryption
             blockInfo.setCipherOffset(er.getOffset());
+            blockInfo.setCipherNonce(er.getNonce());
             buffer = targetBuffer.getBufferCipher();
             if (!released) {
                 targetBuffer.releaseInputStream();
@@ -215,26 +214,10 @@ abstract class AbstractBlockThread {
         if (this.logger.isLoggable(Level.CONFIG)) {
             this.logger.config("<no args> - start"); //$NON-NLS-1$
         }
-        Integer bufferIndex = null;
-        boolean bufferAvailable = false;
-        while (!bufferAvailable) {
-            if (this.buffers.isRunning()) {
-                for (bufferIndex = 0; bufferIndex < this.buffers.getLength(); ++bufferIndex) {
-                    if (this.buffers.getBuffer(bufferIndex).getAvailable().compareAndSet(true, false)) {
-                        bufferAvailable = true;
-                        blockInfo.setStartTime(System.nanoTime());
-                        break;
-                    }
-                }
-                if (!bufferAvailable) {
-                    Thread.sleep(Utility.ONE_SECOND_IN_MILLIS);
-                }
-            } else {
-                bufferIndex = null;
-                break;
-            }
+        final Integer bufferIndex = this.buffers.acquireBuffer();
+        if (bufferIndex != null) {
+            blockInfo.setStartTime(System.nanoTime());
         }
-
         if (this.logger.isLoggable(Level.CONFIG)) {
             this.logger.config("<no args> - end"); //$NON-NLS-1$
         }
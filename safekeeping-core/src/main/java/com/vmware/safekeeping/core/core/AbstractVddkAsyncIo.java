@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vmware.jvix.JVixException;
+import com.vmware.jvix.jDiskLib.DiskHandle;
+import com.vmware.jvix.jDiskLibConst;
+
+/**
+ * Base class of the VDDK asynchronous I/O engines.
+ *
+ * Owns a pool of native aligned buffers allocated with jDiskLib.allocateBuffer.
+ * The pool size is the queue depth: a request can be issued only when a buffer
+ * is free, so no more than queueDepth requests are in flight on the
+ * DiskHandle.
+ *
+ * VDDK doesn't allow to mix synchronous and asynchronous I/O on the same
+ * handle, so once an engine is attached to a disk every read or write must go
+ * through it.
+ */
+abstract class AbstractVddkAsyncIo implements AutoCloseable {
+
+    private static final int BUFFER_ALIGNMENT = jDiskLibConst.SECTOR_SIZE;
+
+    protected final DiskHandle diskHandle;
+
+    protected final BlockingQueue<ByteBuffer> freeBuffers;
+
+    private final List<ByteBuffer> allocatedBuffers;
+
+    private final int bufferSize;
+
+    protected final Logger logger;
+
+    private boolean closed;
+
+    /**
+     *
+     * @param diskHandle
+     * @param queueDepth max number of requests in flight on the disk
+     * @param bufferSize size in bytes of every aligned buffer (max block size)
+     * @param logger
+     * @throws JVixException if the native buffers cannot be allocated
+     */
+    protected AbstractVddkAsyncIo(final DiskHandle diskHandle, final int queueDepth, final int bufferSize,
+            final Logger logger) throws JVixException {
+        this.diskHandle = diskHandle;
+        this.bufferSize = bufferSize;
+        this.logger = logger;
+        this.freeBuffers = new ArrayBlockingQueue<>(queueDepth);
+        this.allocatedBuffers = new ArrayList<>(queueDepth);
+        for (int i = 0; i < queueDepth; i++) {
+            final ByteBuffer buffer = SJvddk.dli.allocateBuffer(bufferSize, BUFFER_ALIGNMENT);
+            if (buffer == null) {
+                freeAllocatedBuffers();
+                throw new JVixException(String.format("Unable to allocate %d aligned buffers of %d bytes", queueDepth,
+                        bufferSize));
+            }
+            this.allocatedBuffers.add(buffer);
+            this.freeBuffers.add(buffer);
+        }
+        if (this.logger.isLoggable(Level.FINE)) {
+            this.logger.fine(String.format("%s on handle %d queue depth:%d buffer size:%d",
+                    getClass().getSimpleName(), diskHandle.getHandle(), queueDepth, bufferSize));
+        }
+    }
+
+    /**
+     * Check the request fits in the aligned buffers
+     *
+     * @param sizeInBytes
+     */
+    protected void checkRequestSize(final int sizeInBytes) {
+        if (sizeInBytes > this.bufferSize) {
+            throw new IllegalArgumentException(String.format("Request of %d bytes exceeds the aligned buffer size %d",
+                    sizeInBytes, this.bufferSize));
+        }
+    }
+
+    /**
+     * Wait for any pending request and release the native buffers
+     */
+    @Override
+    public void close() {
+        if (!this.closed) {
+            this.closed = true;
+            waitPendingRequests();
+            freeAllocatedBuffers();
+        }
+    }
+
+    private void freeAllocatedBuffers() {
+        for (final ByteBuffer buffer : this.allocatedBuffers) {
+            SJvddk.dli.freeBuffer(buffer);
+        }
+        this.allocatedBuffers.clear();
+        this.freeBuffers.clear();
+    }
+
+    /**
+     * @return the number of requests in flight
+     */
+    int getInFlight() {
+        return this.allocatedBuffers.size() - this.freeBuffers.size();
+    }
+
+    /**
+     * @return the queue depth
+     */
+    int getQueueDepth() {
+        return this.allocatedBuffers.size();
+    }
+
+    protected boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Wait for the completion of every request issued on the DiskHandle
+     *
+     * @return VDDK error code
+     */
+    protected long waitPendingRequests() {
+        long vddkCallResult = jDiskLibConst.VIX_OK;
+        if (this.diskHandle.isValid()) {
+            vddkCallResult = SJvddk.dli.wait(this.diskHandle);
+            if (vddkCallResult != jDiskLibConst.VIX_OK) {
+                this.logger.warning(SJvddk.dli.getErrorText(vddkCallResult, null));
+            }
+        }
+        return vddkCallResult;
+    }
+}
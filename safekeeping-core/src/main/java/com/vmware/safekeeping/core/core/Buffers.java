@@ -43,12 +43,23 @@ public class Buffers {
     private final int length;
 
     private final TargetBuffer[] buffer;
+    private final TargetBufferPool pool;
     private final Semaphore semaphore;
     private final ExecutorService executor;
     private final AtomicBoolean running;
 
     private final ITargetOperation target;
 
+    private VddkAsyncReader asyncReader;
+
+    private VddkAsyncWriter asyncWriter;
+
+    private DecodedBlockCache.Session blockCache;
+
+    private RestorePrefetcher prefetcher;
+
+    private RestoreWriteOrder writeOrder;
+
     /**
      * @param target
      * @param readOnly
@@ -69,14 +80,46 @@ public class Buffers {
         for (int i = 0; i < length; i++) {
             this.buffer[i] = new TargetBuffer(maxBlockSizeInBytes, managedFcoEntityInfo, digestAlgorithm);
         }
+        this.pool = new TargetBufferPool(this.buffer);
         this.executor = Executors.newCachedThreadPool();
         this.running = new AtomicBoolean(false);
     }
 
+    /**
+     * Take a free buffer, waiting for a release if none is available
+     *
+     * @return the buffer index or null if the operation has been stopped
+     * @throws InterruptedException
+     */
+    Integer acquireBuffer() throws InterruptedException {
+        return this.pool.acquire(this::isRunning);
+    }
+
     public void executeSubTask(final Runnable runnable) {
         this.executor.execute(runnable);
     }
 
+    /**
+     * @return the asynchronous reader or null if the synchronous read is used
+     */
+    VddkAsyncReader getAsyncReader() {
+        return this.asyncReader;
+    }
+
+    /**
+     * @return the asynchronous writer or null if the synchronous write is used
+     */
+    VddkAsyncWriter getAsyncWriter() {
+        return this.asyncWriter;
+    }
+
+    /**
+     * @return the decoded block cache session or null if the cache is disabled
+     */
+    DecodedBlockCache.Session getBlockCache() {
+        return this.blockCache;
+    }
+
     public TargetBuffer getBuffer(final Integer bufferIndex) {
         return this.buffer[bufferIndex];
     }
@@ -88,6 +131,20 @@ public class Buffers {
         return this.length;
     }
 
+    /**
+     * @return the buffer pool (wait time and occupancy metrics)
+     */
+    TargetBufferPool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * @return the restore read ahead or null if disabled
+     */
+    RestorePrefetcher getPrefetcher() {
+        return this.prefetcher;
+    }
+
     public Semaphore getSemaphore() {
         return this.semaphore;
     }
@@ -96,10 +153,61 @@ public class Buffers {
         return this.target;
     }
 
+    /**
+     * @return the reorder buffer of the restore writes or null if disabled
+     */
+    RestoreWriteOrder getWriteOrder() {
+        return this.writeOrder;
+    }
+
     public boolean isRunning() {
         return this.running.get();
     }
 
+    /**
+     * @param asyncReader the asynchronous reader to set
+     */
+    void setAsyncReader(final VddkAsyncReader asyncReader) {
+        this.asyncReader = asyncReader;
+    }
+
+    /**
+     * @param asyncWriter the asynchronous writer to set
+     */
+    void setAsyncWriter(final VddkAsyncWriter asyncWriter) {
+        this.asyncWriter = asyncWriter;
+    }
+
+    /**
+     * @param blockCache the decoded block cache session to set
+     */
+    void setBlockCache(final DecodedBlockCache.Session blockCache) {
+        this.blockCache = blockCache;
+    }
+
+    /**
+     * @param prefetcher the restore read ahead to set
+     */
+    void setPrefetcher(final RestorePrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
+    /**
+     * @param writeOrder the reorder buffer of the restore writes to set
+     */
+    void setWriteOrder(final RestoreWriteOrder writeOrder) {
+        this.writeOrder = writeOrder;
+    }
+
+    /**
+     * Give back a buffer to the pool
+     *
+     * @param bufferIndex
+     */
+    void releaseBuffer(final int bufferIndex) {
+        this.pool.release(bufferIndex);
+    }
+
     public void start() {
         this.running.set(true);
 
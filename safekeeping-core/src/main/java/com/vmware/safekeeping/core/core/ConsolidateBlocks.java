@@ -28,14 +28,17 @@ package com.vmware.safekeeping.core.core;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.function.IntToLongFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -47,268 +50,126 @@ import com.vmware.safekeeping.core.profile.BasicBlockInfo;
 
 public class ConsolidateBlocks {
     /**
-     * Logger for this class
+     * Binary heap of block indexes ordered by a key
      */
-    private static final Logger logger = Logger.getLogger(ConsolidateBlocks.class.getName());
-    private final AbstractCoreResultActionDiskVirtualBackupAndRestore radr;
-    private int checkTotalBlocks;
-    private final TreeMap<Long, BasicBlockInfo> vixBlocks;
-    private boolean sortByGenerations;
-    private final ConsolidateStatistic statistic;
-
-    public ConsolidateBlocks(final AbstractCoreResultActionDiskVirtualBackupAndRestore radr) {
-        this.radr = radr;
-        this.checkTotalBlocks = 0;
-        this.vixBlocks = new TreeMap<>();
-        this.statistic = new ConsolidateStatistic();
-    }
-
-    private void addBlock(final BasicBlockInfo newBlock) {
-        if (logger.isLoggable(Level.CONFIG)) {
-            logger.config("RestoreBlock - start"); //$NON-NLS-1$
+    private static final class IntHeap {
+        private int[] heap;
+        private int size;
+        private final IntToLongFunction key;
+        private final boolean max;
+
+        IntHeap(final IntToLongFunction key, final boolean max) {
+            this.heap = new int[DEFAULT_HEAP_CAPACITY];
+            this.size = 0;
+            this.key = key;
+            this.max = max;
         }
 
-        this.vixBlocks.put(newBlock.getOffset(), newBlock);
-        if (logger.isLoggable(Level.FINE)) {
-            final String msg = "New Entry " + newBlock.toString();
-            logger.log(Level.FINE, msg);
+        private boolean before(final int a, final int b) {
+            final long ka = this.key.applyAsLong(a);
+            final long kb = this.key.applyAsLong(b);
+            return this.max ? ka > kb : ka < kb;
         }
-        this.statistic.incTotalSize(newBlock.getLength());
 
-        if (logger.isLoggable(Level.CONFIG)) {
-            logger.config("RestoreBlock - end"); //$NON-NLS-1$
+        boolean isEmpty() {
+            return this.size == 0;
         }
-    }
 
-    private void blockSplit(final BasicBlockInfo block1, final BasicBlockInfo newBlock) {
-        if (logger.isLoggable(Level.CONFIG)) {
-            logger.config("RestoreBlock, RestoreBlock - start"); //$NON-NLS-1$
-        }
-        if (logger.isLoggable(Level.FINE)) {
-            logger.log(Level.FINE,
-                    "block1.getOffset() < newBlock.getOffset() && block1.getLastBlock() > newBlock.getLastBlock()");
-        }
-        final BasicBlockInfo block3 = new BasicBlockInfo(block1);
-        this.statistic.decTotalSize(block1.getLength());
-        block1.setLastBlock(newBlock.getOffset() - 1);
-
-        this.statistic.incTotalSize(block1.getLength());
-        block3.setStartBlock(newBlock.getLastBlock() + 1);
-//	block3.setInternalIndex((block3.getGenerationId() * 10000) + (this.statistic.incIndex()));
-        this.statistic.incResizedByOverlap();
-        addBlock(newBlock);
-        if (this.vixBlocks.containsKey(block3.getOffset())) {
-            logger.log(Level.WARNING, () -> "Something is wrong");
-            check(block3);
-        } else {
-            this.vixBlocks.put(block3.getOffset(), block3);
-            this.statistic.incTotalSize(block3.getLength());
-        }
-
-        if (logger.isLoggable(Level.CONFIG)) {
-            logger.config("RestoreBlock, RestoreBlock - end"); //$NON-NLS-1$
-        }
-    }
-
-    private void check(final BasicBlockInfo newBlock) {
-        if (logger.isLoggable(Level.CONFIG)) {
-            logger.config("RestoreBlock - start"); //$NON-NLS-1$
+        int peek() {
+            return this.heap[0];
         }
 
-        Long relCeilingOffset = newBlock.getOffset();
-        Long relFloorOffset = newBlock.getOffset();
-
-        while ((relFloorOffset != null) || (relCeilingOffset != null)) {
-            if (relCeilingOffset != null) {
-                final Entry<Long, BasicBlockInfo> block1CeilingEntry = this.vixBlocks.ceilingEntry(relCeilingOffset);
-                if (block1CeilingEntry == null) {
-                    relCeilingOffset = null;
-                } else {
-                    final BasicBlockInfo block1 = block1CeilingEntry.getValue();
-                    if (newBlock.equals(block1) || checkCeiling(newBlock, block1)) {
-                        ++relCeilingOffset;
-                    } else {
-                        relCeilingOffset = null;
+        int poll() {
+            final int result = this.heap[0];
+            --this.size;
+            if (this.size > 0) {
+                final int value = this.heap[this.size];
+                int pos = 0;
+                int child;
+                while ((child = (pos * 2) + 1) < this.size) {
+                    if (((child + 1) < this.size) && before(this.heap[child + 1], this.heap[child])) {
+                        ++child;
                     }
-                }
-            }
-            if (relFloorOffset != null) {
-                final Entry<Long, BasicBlockInfo> block1FloorEntry = this.vixBlocks.floorEntry(relFloorOffset);
-                if (block1FloorEntry == null) {
-                    relFloorOffset = null;
-                } else {
-                    final BasicBlockInfo block1 = block1FloorEntry.getValue();
-                    if (newBlock.equals(block1) || checkFloor(newBlock, block1)) {
-                        --relFloorOffset;
-                    } else {
-                        relFloorOffset = null;
+                    if (!before(this.heap[child], value)) {
+                        break;
                     }
+                    this.heap[pos] = this.heap[child];
+                    pos = child;
                 }
+                this.heap[pos] = value;
             }
+            return result;
         }
 
-        /*
-         * Block doens't exist
-         */
-        if (this.vixBlocks.containsKey(newBlock.getOffset())) {
-            if (this.vixBlocks.get(newBlock.getOffset()).equals(newBlock)) {
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("Block already in the list: " + newBlock.toString());
+        void push(final int value) {
+            if (this.size == this.heap.length) {
+                this.heap = Arrays.copyOf(this.heap, this.size * 2);
+            }
+            int pos = this.size++;
+            while (pos > 0) {
+                final int parent = (pos - 1) / 2;
+                if (!before(value, this.heap[parent])) {
+                    break;
                 }
-            } else {
-                logger.log(Level.WARNING, () -> "Block who are you?: " + newBlock.toString());
+                this.heap[pos] = this.heap[parent];
+                pos = parent;
             }
-        } else {
-            addBlock(newBlock);
+            this.heap[pos] = value;
         }
+    }
 
-        if (logger.isLoggable(Level.CONFIG)) {
-            logger.config("RestoreBlock - end"); //$NON-NLS-1$
-        }
+    /**
+     * Output of the sweep of a region of the disk
+     */
+    private static final class RegionResult {
+        private final List<BasicBlockInfo> blocks = new ArrayList<>();
+        private long totalSize;
+        private int numberReplacement;
+        private int resizedByOverlap;
     }
 
-    private boolean checkCeiling(final BasicBlockInfo newBlock, final BasicBlockInfo block1) {
-        if (logger.isLoggable(Level.CONFIG)) {
-            logger.config("RestoreBlock, RestoreBlock - start"); //$NON-NLS-1$
-        }
-        boolean result = false;
-        if (block1.getOffset() == newBlock.getOffset()) {
-            logger.log(Level.INFO, () -> "Duplicated entry :" + newBlock.getOffset());
-            if (block1.getLastBlock() > newBlock.getLastBlock()) {
-                // block1.offset ==newBlock.offset. && block1.lastBlock >newBlock.lastBlock.
-                // block1.offset=newBlock.lastBlock+1
-                // Block1.lastBlock=block1.lastBlock
-                // Block2.offset=newBlock.offset
-                // Block2.lastBlock=newBlock.lastBlock
-                this.vixBlocks.remove(block1.getOffset());
-                this.statistic.decTotalSize(block1.getLength());
-                block1.setStartBlock(newBlock.getLastBlock() + 1);
-                addBlock(newBlock);
-                if (this.vixBlocks.containsKey(block1.getOffset())) {
-                    logger.log(Level.WARNING,
-                            () -> String.format("Block1 offset already present:%s", block1.toString()));
-                    check(block1);
-                } else {
-                    addBlock(block1);
-                }
-                result = true;
-            } else if (block1.getLastBlock() <= newBlock.getLastBlock()) {
-                // block1.offset ==newBlock.offset. && block1.lastBlock <=newBlock.lastBlock.
-                // block1=null
-                // Block2.offset=newBlock.offset
-                // Block2.lastBlock=newBlock.lastBlock
-                this.vixBlocks.remove(block1.getOffset());
-                this.statistic.decTotalSize(block1.getLength());
-                this.statistic.incNumberReplacement();
-                addBlock(newBlock);
-
-                result = true;
-            } else {
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("Nothing to do :" + newBlock.getOffset());
-                }
-            }
-        } else if ((block1.getOffset() > newBlock.getOffset()) && (block1.getLastBlock() <= newBlock.getLastBlock())) {
-            // block1.offset > newBlock.offset. && block1.lastBlock <=newBlock.lastBlock.
-            // block1=null
-            // Block2.offset=newBlock.offset
-            // Block2.lastBlock=newBlock.lastBlock
-            this.vixBlocks.remove(block1.getOffset());
-            this.statistic.decTotalSize(block1.getLength());
-            this.statistic.incNumberReplacement();
-            addBlock(newBlock);
-
-            result = true;
-        } else if ((block1.getOffset() > newBlock.getOffset()) && (block1.getLastBlock() >= newBlock.getLastBlock())
-                && (block1.getOffset() <= newBlock.getLastBlock())) {
-            // block1.offset > newBlock.offset. and
-            // block1.lastBlock > newBlock.lastBlock and block1.offset<newBlock.lastBlock
-            // block1.offset=newBlock.lastBlock+1
-            // Block1.lastBlock=block1.lastBlock
-            // Block2.offset=newBlock.offset
-            // Block2.lastBlock=newBlock.lastBlock
-            this.vixBlocks.remove(block1.getOffset());
-            this.statistic.decTotalSize(block1.getLength());
-            block1.setStartBlock(newBlock.getLastBlock() + 1);
-            addBlock(newBlock);
-            if (this.vixBlocks.containsKey(block1.getOffset())) {
-                logger.log(Level.WARNING, () -> String.format("Block1 offset already present:%s", block1.toString()));
-                check(block1);
-            } else {
-                addBlock(block1);
-            }
-            result = true;
-        } else {
-            if (logger.isLoggable(Level.FINE)) {
-                logger.fine("Nothing to do :" + block1.getOffset());
-            }
-        }
+    /**
+     * Logger for this class
+     */
+    private static final Logger logger = Logger.getLogger(ConsolidateBlocks.class.getName());
 
-        if (logger.isLoggable(Level.CONFIG)) {
-            logger.config("RestoreBlock, RestoreBlock - end"); //$NON-NLS-1$
-        }
-        return result;
-    }
+    private static final int DEFAULT_HEAP_CAPACITY = 64;
 
-    private boolean checkFloor(final BasicBlockInfo newBlock, final BasicBlockInfo block1) {
-        if (logger.isLoggable(Level.CONFIG)) {
-            logger.config("RestoreBlock, RestoreBlock - start"); //$NON-NLS-1$
-        }
-        boolean result = false;
-        if (block1.getOffset() < newBlock.getOffset()) {
-            if (((block1.getOffset() < newBlock.getLastBlock()) && (block1.getLastBlock() > newBlock.getLastBlock()))
-                    || (block1.getLastBlock() > newBlock.getLastBlock())) {
-                blockSplit(block1, newBlock);
-                result = true;
-            } else if ((block1.getLastBlock() < newBlock.getLastBlock())
-                    && (block1.getLastBlock() > newBlock.getOffset())) {
-                // block1.offset <newBlock.offset. and
-                // block1.lastBlock <newBlock.lastBlock and block1.lastBlock>newBlock.offset
-                // block1.offset=block1.offset
-                // Block1.lastBlock=newBlock.offset-1
-                // Block2.offset=newBlock.offset
-                // Block2.lastBlock=newBlock.lastBlock
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.log(Level.FINE,
-                            () -> "block1.getOffset() < newBlock.getOffset() && (block1.getLastBlock() < newBlock.getLastBlock())"
-                                    + " && (block1.getLastBlock() > newBlock.getOffset())");
-                }
-                this.statistic.decTotalSize(block1.getLength());
-                block1.setLastBlock(newBlock.getOffset() - 1);
-                this.statistic.incTotalSize(block1.getLength());
-                addBlock(newBlock);
-
-                result = true;
-            } else if (block1.getLastBlock() == newBlock.getLastBlock()) {
-                // block1.offset <newBlock.offset. && block1.lastBlock ==newBlock.lastBlock.
-                // block1.offset=block1.offset
-                // Block1.lastBlock=newBlock.offset-1
-                // Block2.offset=newBlock.offset
-                // Block2.lastBlock=newBlock.lastBlock
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.log(Level.FINE,
-                            () -> "block1.getOffset() < newBlock.getOffset() && block1.getLastBlock() == newBlock.getLastBlock()");
-                }
-                this.statistic.decTotalSize(block1.getLength());
-                block1.setLastBlock(newBlock.getOffset() - 1);
-                this.statistic.incTotalSize(block1.getLength());
-                addBlock(newBlock);
+    /**
+     * Minimum number of blocks before the disk is split in regions consolidated
+     * in parallel
+     */
+    private static final int MIN_BLOCKS_PER_REGION = 65536;
 
-                result = true;
-            }
-        } else if (block1.getOffset() == newBlock.getOffset()) {
-            logger.log(Level.WARNING, () -> "block1.getOffset() == newBlock.getOffset()");
-        } else {
-            if (logger.isLoggable(Level.FINE)) {
-                logger.log(Level.FINE,
-                        "block1.getOffset() <newBlock.getOffset() && newBlock.getLastBlock()<block1.getOffset() )");
-            }
-        }
+    private final AbstractCoreResultActionDiskVirtualBackupAndRestore radr;
+    private int checkTotalBlocks;
+    /**
+     * All the blocks of all the generations. The position is the priority: the
+     * oldest generation comes first, a block wins over all the blocks before it
+     */
+    private final List<BasicBlockInfo> blocks;
+    private long[] starts;
+    private long[] ends;
+    private int[] pieces;
+    private boolean sortByGenerations;
+    private final ConsolidateStatistic statistic;
 
-        if (logger.isLoggable(Level.CONFIG)) {
-            logger.config("RestoreBlock, RestoreBlock - end"); //$NON-NLS-1$
-        }
-        return result;
+    public ConsolidateBlocks(final AbstractCoreResultActionDiskVirtualBackupAndRestore radr) {
+        this.radr = radr;
+        this.checkTotalBlocks = 0;
+        this.blocks = new ArrayList<>();
+        this.statistic = new ConsolidateStatistic();
+    }
+
+    /**
+     * Add the blocks of a generation. The generations are added from the oldest
+     * to the newest
+     *
+     * @param generationBlocks
+     */
+    void addGeneration(final List<BasicBlockInfo> generationBlocks) {
+        this.checkTotalBlocks += generationBlocks.size();
+        this.blocks.addAll(generationBlocks);
     }
 
     /**
@@ -344,31 +205,73 @@ public class ConsolidateBlocks {
                             raggp.getVixBlocks().size()));
                 }
             }
-            this.checkTotalBlocks += raggp.getVixBlocks().size();
-            for (final BasicBlockInfo newBlock : raggp.getVixBlocks()) {
-                this.statistic.incTotalBlocks();
-                check(newBlock);
-
-            }
+            addGeneration(raggp.getVixBlocks());
         }
-        final List<BasicBlockInfo> result = getResult(this.vixBlocks);
+        final List<BasicBlockInfo> result = getResult(sweep());
         summarize(result);
         return result;
     }
 
+    /**
+     * Emit a visible piece of a block. The first piece reuse the block, the
+     * following ones are copies
+     *
+     * @param region
+     * @param index  block index
+     * @param start  first sector
+     * @param end    sector after the last one
+     */
+    private void emitPiece(final RegionResult region, final int index, final long start, final long end) {
+        final BasicBlockInfo original = this.blocks.get(index);
+        final BasicBlockInfo piece = (this.pieces[index] == 0) ? original : new BasicBlockInfo(original);
+        ++this.pieces[index];
+        piece.setStartBlock(start);
+        piece.setLastBlock(end - 1);
+        region.blocks.add(piece);
+        region.totalSize += end - start;
+    }
+
+    /**
+     * Split the blocks sorted by offset in regions that can be consolidated
+     * independently. A region never starts inside a block
+     *
+     * @param order blocks sorted by offset
+     * @return the first position in order of each region plus the end
+     */
+    private int[] getRegions(final int[] order) {
+        final int numberOfRegions = Math.min(Runtime.getRuntime().availableProcessors(),
+                order.length / MIN_BLOCKS_PER_REGION);
+        if (numberOfRegions < 2) {
+            return new int[] { 0, order.length };
+        }
+        final int regionSize = order.length / numberOfRegions;
+        final int[] bounds = new int[numberOfRegions + 1];
+        int count = 1;
+        long maxEnd = Long.MIN_VALUE;
+        for (int i = 0; (i < order.length) && (count < numberOfRegions); i++) {
+            final int index = order[i];
+            if ((i >= (count * regionSize)) && (this.starts[index] >= maxEnd)) {
+                bounds[count++] = i;
+            }
+            maxEnd = Math.max(maxEnd, this.ends[index]);
+        }
+        bounds[count] = order.length;
+        return Arrays.copyOf(bounds, count + 1);
+    }
+
     /**
      *
-     * @param vixBlocks
+     * @param vixBlocks consolidated blocks sorted by offset
      * @return
      * @throws CoreResultActionException
      */
-    private List<BasicBlockInfo> getResult(final Map<Long, BasicBlockInfo> vixBlocks) throws CoreResultActionException {
+    private List<BasicBlockInfo> getResult(final List<BasicBlockInfo> vixBlocks) throws CoreResultActionException {
 
         final List<BasicBlockInfo> result = new ArrayList<>();
         int index = 0;
         BasicBlockInfo prev = null;
         final TreeMap<Integer, List<BasicBlockInfo>> sortByGenerationsTreeMap = new TreeMap<>();
-        for (final BasicBlockInfo value : vixBlocks.values()) {
+        for (final BasicBlockInfo value : vixBlocks) {
             value.setIndex(index++);
             this.radr.increaseNumberOfBlocksForGeneration(value.getGenerationId());
             if ((prev != null) && (value.getOffset() <= prev.getLastBlock()) && logger.isLoggable(Level.WARNING)) {
@@ -432,6 +335,32 @@ public class ConsolidateBlocks {
         return result;
     }
 
+    /**
+     * Merge sort of the block indexes by offset. Blocks with the same offset
+     * keep the priority order
+     */
+    private void sortByOffset(final int[] order, final int[] tmp, final int from, final int to) {
+        if ((to - from) < 2) {
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        sortByOffset(order, tmp, from, middle);
+        sortByOffset(order, tmp, middle, to);
+        if (this.starts[order[middle - 1]] <= this.starts[order[middle]]) {
+            return;
+        }
+        System.arraycopy(order, from, tmp, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int k = from; k < to; k++) {
+            if ((right >= to) || ((left < middle) && (this.starts[tmp[left]] <= this.starts[tmp[right]]))) {
+                order[k] = tmp[left++];
+            } else {
+                order[k] = tmp[right++];
+            }
+        }
+    }
+
     public ConsolidateBlocks sortByGeneration() {
         if (logger.isLoggable(Level.CONFIG)) {
             logger.config("<no args> - start"); //$NON-NLS-1$
@@ -453,7 +382,7 @@ public class ConsolidateBlocks {
         if (this.checkTotalBlocks != ((result.size() + this.statistic.getNumberReplacement())
                 - this.statistic.getResizedByOverlap())) {
             this.radr.failure(String.format("Blocks check number mismatch %d vs %d", this.checkTotalBlocks,
-                    this.vixBlocks.size() + this.statistic.getNumberReplacement()));
+                    result.size() + this.statistic.getNumberReplacement()));
         } else {
             if (logger.isLoggable(Level.INFO)) {
                 final String msg = String.format(
@@ -478,4 +407,104 @@ public class ConsolidateBlocks {
         }
     }
 
+    /**
+     * Compute the "latest generation wins" map of all the generations with a
+     * sweep line over the block boundaries. Disks with many blocks are split in
+     * independent regions swept in parallel
+     *
+     * @return the visible pieces of the blocks sorted by offset
+     */
+    List<BasicBlockInfo> sweep() {
+        final int size = this.blocks.size();
+        this.starts = new long[size];
+        this.ends = new long[size];
+        this.pieces = new int[size];
+        final int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            final BasicBlockInfo block = this.blocks.get(i);
+            this.starts[i] = block.getOffset();
+            this.ends[i] = block.getLastBlock() + 1;
+            order[i] = i;
+        }
+        sortByOffset(order, new int[size], 0, size);
+        final int[] bounds = getRegions(order);
+        final int numberOfRegions = bounds.length - 1;
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info(String.format("Consolidate %d blocks in %d region(s)", size, numberOfRegions));
+        }
+        final List<RegionResult> regions = IntStream.range(0, numberOfRegions)
+                .parallel()
+                .mapToObj(r -> sweepRegion(order, bounds[r], bounds[r + 1]))
+                .collect(Collectors.toList());
+
+        final List<BasicBlockInfo> result = new ArrayList<>(size);
+        for (final RegionResult region : regions) {
+            result.addAll(region.blocks);
+            this.statistic.incTotalSize(region.totalSize);
+            this.statistic.setNumberReplacement(this.statistic.getNumberReplacement() + region.numberReplacement);
+            this.statistic.setResizedByOverlap(this.statistic.getResizedByOverlap() + region.resizedByOverlap);
+        }
+        this.statistic.setTotalBlocks(size);
+        return result;
+    }
+
+    /**
+     * Sweep a region. The owner of a sector is the active block with the highest
+     * priority; consecutive sectors with the same owner make a single piece
+     *
+     * @param order blocks sorted by offset
+     * @param from  first position in order
+     * @param to    end position in order
+     * @return the pieces of the region and its statistics
+     */
+    private RegionResult sweepRegion(final int[] order, final int from, final int to) {
+        final RegionResult region = new RegionResult();
+        final IntHeap byPriority = new IntHeap(index -> index, true);
+        final IntHeap byEnd = new IntHeap(index -> this.ends[index], false);
+        int next = from;
+        int owner = -1;
+        long pieceStart = 0;
+        long position = (from < to) ? this.starts[order[from]] : 0;
+        while ((next < to) || !byEnd.isEmpty()) {
+            while ((next < to) && (this.starts[order[next]] <= position)) {
+                byPriority.push(order[next]);
+                byEnd.push(order[next]);
+                ++next;
+            }
+            while (!byEnd.isEmpty() && (this.ends[byEnd.peek()] <= position)) {
+                byEnd.poll();
+            }
+            while (!byPriority.isEmpty() && (this.ends[byPriority.peek()] <= position)) {
+                byPriority.poll();
+            }
+            final int current = byPriority.isEmpty() ? -1 : byPriority.peek();
+            if (current != owner) {
+                if (owner >= 0) {
+                    emitPiece(region, owner, pieceStart, position);
+                }
+                owner = current;
+                pieceStart = position;
+            }
+            long nextPosition = Long.MAX_VALUE;
+            if (next < to) {
+                nextPosition = this.starts[order[next]];
+            }
+            if (!byEnd.isEmpty()) {
+                nextPosition = Math.min(nextPosition, this.ends[byEnd.peek()]);
+            }
+            position = nextPosition;
+        }
+        if (owner >= 0) {
+            emitPiece(region, owner, pieceStart, position);
+        }
+        for (int i = from; i < to; i++) {
+            final int count = this.pieces[order[i]];
+            if (count == 0) {
+                ++region.numberReplacement;
+            } else {
+                region.resizedByOverlap += count - 1;
+            }
+        }
+        return region;
+    }
 }
@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
+import com.vmware.safekeeping.core.profile.SimpleBlockInfo;
+
+/**
+ * Process wide cache of the decoded (deciphered and decompressed) blocks read
+ * from the repository, keyed by the block digest.
+ *
+ * The blocks are kept off heap. Every restore opens a {@link Session} declaring
+ * the digests it is going to read: a block still expected by a running restore
+ * is admitted and evicted last, a block nobody expects is kept only while there
+ * is free space. Two threads missing the same digest don't download it twice,
+ * the second one waits for the first.
+ */
+final class DecodedBlockCache {
+
+    private static final class Entry {
+        private final ByteBuffer content;
+
+        private Entry(final ByteBuffer content) {
+            this.content = content;
+        }
+
+        private int size() {
+            return this.content.capacity();
+        }
+    }
+
+    /**
+     * Blocks read by a single disk restore
+     */
+    final class Session implements AutoCloseable {
+        private final Map<String, int[]> expected;
+        private long hits;
+        private long misses;
+        private long hitBytes;
+        private long missBytes;
+        private long evictions;
+
+        private Session() {
+            this.expected = new HashMap<>();
+        }
+
+        /**
+         * Give back the uses still expected
+         */
+        @Override
+        public void close() {
+            synchronized (DecodedBlockCache.this) {
+                for (final Map.Entry<String, int[]> entry : this.expected.entrySet()) {
+                    removePending(entry.getKey(), entry.getValue()[0]);
+                }
+                this.expected.clear();
+            }
+        }
+
+        private void consume(final String digest) {
+            final int[] count = this.expected.get(digest);
+            if ((count != null) && (count[0] > 0)) {
+                --count[0];
+                removePending(digest, 1);
+            }
+        }
+
+        /**
+         * The block has not been stored
+         *
+         * @param digest
+         */
+        void abort(final String digest) {
+            synchronized (DecodedBlockCache.this) {
+                releaseLoad(digest);
+            }
+        }
+
+        /**
+         * @return number of blocks evicted to store the blocks of this session
+         */
+        public long getEvictions() {
+            return this.evictions;
+        }
+
+        public long getHitBytes() {
+            return this.hitBytes;
+        }
+
+        public long getHits() {
+            return this.hits;
+        }
+
+        public long getMissBytes() {
+            return this.missBytes;
+        }
+
+        public long getMisses() {
+            return this.misses;
+        }
+
+        /**
+         * Store the decoded block. The caller is the thread that had the miss
+         *
+         * @param digest
+         * @param content decoded block
+         * @param length  length of the decoded block
+         */
+        void put(final String digest, final byte[] content, final int length) {
+            synchronized (DecodedBlockCache.this) {
+                this.missBytes += length;
+                consume(digest);
+            }
+            int evicted = 0;
+            try {
+                // the readers waiting for the block find it in the cache
+                evicted = admit(digest, content, length);
+            } finally {
+                synchronized (DecodedBlockCache.this) {
+                    this.evictions += evicted;
+                    releaseLoad(digest);
+                }
+            }
+        }
+
+        /**
+         * Copy a range of a decoded block. On a miss the caller has to read the
+         * block and call {@link #put} or {@link #abort}
+         *
+         * @param digest
+         * @param offset      offset in the decoded block
+         * @param destination
+         * @param length
+         * @return true if the block was in the cache
+         * @throws InterruptedException
+         */
+        boolean read(final String digest, final int offset, final byte[] destination, final int length)
+                throws InterruptedException {
+            for (;;) {
+                final ByteBuffer content;
+                final CountDownLatch loading;
+                synchronized (DecodedBlockCache.this) {
+                    final Entry entry = DecodedBlockCache.this.entries.get(digest);
+                    if (entry != null) {
+                        content = entry.content.duplicate();
+                        ++this.hits;
+                        this.hitBytes += length;
+                        ++DecodedBlockCache.this.hits;
+                        consume(digest);
+                        loading = null;
+                    } else {
+                        content = null;
+                        loading = DecodedBlockCache.this.loading.get(digest);
+                        if (loading == null) {
+                            DecodedBlockCache.this.loading.put(digest, new CountDownLatch(1));
+                            ++this.misses;
+                            ++DecodedBlockCache.this.misses;
+                            return false;
+                        }
+                    }
+                }
+                if (content != null) {
+                    // evicted buffers stay valid until the last duplicate is collected
+                    content.position(offset);
+                    content.get(destination, 0, length);
+                    return true;
+                }
+                if (!loading.await(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    // the other reader is too slow, read the block again
+                    synchronized (DecodedBlockCache.this) {
+                        ++this.misses;
+                        ++DecodedBlockCache.this.misses;
+                    }
+                    return false;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Block cache hits:%d (%d bytes) misses:%d (%d bytes) evictions:%d", this.hits,
+                    this.hitBytes, this.misses, this.missBytes, this.evictions);
+        }
+    }
+
+    private static final int ONE_MB = 1024 * 1024;
+
+    private static final long LOAD_TIMEOUT_SECONDS = 60;
+
+    private static DecodedBlockCache instance;
+
+    /**
+     * @return the cache or null if the cache is disabled
+     */
+    static synchronized DecodedBlockCache getInstance() {
+        if (instance == null) {
+            final long size = (long) CoreGlobalSettings.getRestoreBlockCacheSizeMb() * ONE_MB;
+            if (size <= 0) {
+                return null;
+            }
+            instance = new DecodedBlockCache(size);
+        }
+        return instance;
+    }
+
+    private final long maxSize;
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private final LinkedHashMap<String, Entry> entries;
+    private final Map<String, Integer> pending;
+    private final Map<String, CountDownLatch> loading;
+
+    private DecodedBlockCache(final long maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75F, true);
+        this.pending = new HashMap<>();
+        this.loading = new HashMap<>();
+    }
+
+    /**
+     * Store a decoded block
+     *
+     * @return number of blocks evicted
+     */
+    private int admit(final String digest, final byte[] content, final int length) {
+        if (length > (this.maxSize / 4)) {
+            return 0;
+        }
+        int evicted = 0;
+        synchronized (this) {
+            if (this.entries.containsKey(digest)) {
+                return 0;
+            }
+            final boolean expected = this.pending.containsKey(digest);
+            if (!expected && ((this.size + length) > this.maxSize)) {
+                evicted = evict(length, false);
+                if ((this.size + length) > this.maxSize) {
+                    return evicted;
+                }
+            }
+        }
+        // the copy is done outside the lock
+        final ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.allocateDirect(length);
+        } catch (final OutOfMemoryError e) {
+            // direct memory limit reached, the block is not cached
+            return evicted;
+        }
+        buffer.put(content, 0, length);
+        synchronized (this) {
+            if (!this.entries.containsKey(digest)) {
+                evicted += evict(length, true);
+                this.entries.put(digest, new Entry(buffer));
+                this.size += length;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Make room for a new block. The blocks not expected by any restore go first
+     *
+     * @param length
+     * @param expected evict also the blocks expected by a restore
+     * @return number of blocks evicted
+     */
+    private int evict(final long length, final boolean expected) {
+        int evicted = 0;
+        final Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator();
+        while (((this.size + length) > this.maxSize) && it.hasNext()) {
+            final Map.Entry<String, Entry> entry = it.next();
+            if (!this.pending.containsKey(entry.getKey())) {
+                this.size -= entry.getValue().size();
+                it.remove();
+                ++evicted;
+            }
+        }
+        if (expected) {
+            final Iterator<Entry> itExpected = this.entries.values().iterator();
+            while (((this.size + length) > this.maxSize) && itExpected.hasNext()) {
+                this.size -= itExpected.next().size();
+                itExpected.remove();
+                ++evicted;
+            }
+        }
+        this.evictions += evicted;
+        return evicted;
+    }
+
+    /**
+     * Open a session for a restore
+     *
+     * @param blocks blocks the restore is going to read
+     * @return the session
+     */
+    Session open(final Iterable<? extends SimpleBlockInfo> blocks) {
+        final Session session = new Session();
+        synchronized (this) {
+            for (final SimpleBlockInfo block : blocks) {
+                if (!block.isZero() && StringUtils.isNotEmpty(block.getSha1())) {
+                    ++session.expected.computeIfAbsent(block.getSha1(), k -> new int[1])[0];
+                    this.pending.merge(block.getSha1(), 1, Integer::sum);
+                }
+            }
+        }
+        return session;
+    }
+
+    private void releaseLoad(final String digest) {
+        final CountDownLatch latch = this.loading.remove(digest);
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    private void removePending(final String digest, final int count) {
+        if (count > 0) {
+            this.pending.computeIfPresent(digest, (k, v) -> (v > count) ? (v - count) : null);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("DecodedBlockCache blocks:%d size:%dMB/%dMB hits:%d misses:%d evictions:%d",
+                this.entries.size(), this.size / ONE_MB, this.maxSize / ONE_MB, this.hits, this.misses,
+                this.evictions);
+    }
+}
@@ -30,14 +30,21 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.vmware.safekeeping.core.control.info.ExBlockInfo;
+import com.vmware.safekeeping.core.type.enums.CompressionCodec;
 
 public class Dedup {
 	private List<DedupItem> dedupList;
 
 	private boolean compress;
 
+	private CompressionCodec compressionCodec;
+
 	private boolean cipher;
 
+	private byte cipherOffset;
+
+	private String cipherNonce;
+
 	private String md5;
 
 	private String sha1;
@@ -48,12 +55,34 @@ public class Dedup {
 		this.dedupList = new ArrayList<>();
 	}
 
+	/**
+	 * Block descriptor without references. The references are kept on the
+	 * repository reference store
+	 *
+	 * @param block
+	 */
+	public Dedup(final ExBlockInfo block) {
+		this.dedupList = new ArrayList<>();
+		this.cipher = block.isCipher();
+		this.cipherOffset = block.getCipherOffset();
+		this.cipherNonce = block.getCipherNonce();
+		this.compress = block.isCompress();
+		this.compressionCodec = block.getCompressionCodec();
+		this.md5 = block.getMd5();
+		this.sha1 = block.getSha1();
+		this.streamSize = block.getStreamSize();
+		this.size = block.getSize();
+	}
+
 	public Dedup(final String uuid, final ExBlockInfo block) {
 		this.dedupList = new ArrayList<>();
 		this.dedupList.add(new DedupItem(uuid, block));
 
 		this.cipher = block.isCipher();
+		this.cipherOffset = block.getCipherOffset();
+		this.cipherNonce = block.getCipherNonce();
 		this.compress = block.isCompress();
+		this.compressionCodec = block.getCompressionCodec();
 		this.md5 = block.getMd5();
 		this.sha1 = block.getSha1();
 		this.streamSize = block.getStreamSize();
@@ -61,6 +90,18 @@ public class Dedup {
 
 	}
 
+	public String getCipherNonce() {
+		return this.cipherNonce;
+	}
+
+	public byte getCipherOffset() {
+		return this.cipherOffset;
+	}
+
+	public CompressionCodec getCompressionCodec() {
+		return this.compressionCodec;
+	}
+
 	public List<DedupItem> getDedupList() {
 		return this.dedupList;
 	}
@@ -93,10 +134,22 @@ public class Dedup {
 		this.cipher = cipher;
 	}
 
+	public void setCipherNonce(final String cipherNonce) {
+		this.cipherNonce = cipherNonce;
+	}
+
+	public void setCipherOffset(final byte cipherOffset) {
+		this.cipherOffset = cipherOffset;
+	}
+
 	public void setCompress(final boolean compress) {
 		this.compress = compress;
 	}
 
+	public void setCompressionCodec(final CompressionCodec compressionCodec) {
+		this.compressionCodec = compressionCodec;
+	}
+
 	public void setDedupList(final List<DedupItem> dedupList) {
 		this.dedupList = dedupList;
 	}
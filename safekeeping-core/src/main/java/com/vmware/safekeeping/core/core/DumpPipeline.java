@@ -0,0 +1,370 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vmware.safekeeping.common.Utility;
+import com.vmware.safekeeping.core.command.interactive.AbstractBackupDiskInteractive;
+import com.vmware.safekeeping.core.command.results.CoreResultActionDiskBackup;
+import com.vmware.safekeeping.core.control.info.ExBlockInfo;
+import com.vmware.safekeeping.core.profile.BasicBlockInfo;
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
+import com.vmware.safekeeping.core.type.VmbkThreadFactory;
+
+/**
+ * Streaming dump of a disk.
+ *
+ * The blocks flow through four stages (read, digest/dedup, compress/cipher,
+ * upload), each one with its own thread pool. A block containing only zeros
+ * leaves the pipeline right after the read. A block holds its TargetBuffer
+ * from the read to the upload, so the number of blocks in flight never exceeds
+ * the buffers pool size whatever the size of the disk. The producer creates the
+ * block only when there is room in the read queue.
+ */
+class DumpPipeline {
+
+    @FunctionalInterface
+    private interface Stage {
+        void process(DumpThread block);
+    }
+
+    /**
+     * Max time an idle stage thread waits before checking if the dump is
+     * completed
+     */
+    private static final long POLL_INTERVAL_MILLIS = 200;
+
+    private static int stageThreads(final int configured, final int defaultThreads) {
+        return (configured > 0) ? configured : defaultThreads;
+    }
+
+    private final CoreResultActionDiskBackup radb;
+    private final Buffers buffers;
+    private final List<BasicBlockInfo> blocks;
+    private final String keyPath;
+    private final AbstractBackupDiskInteractive interactive;
+    private final Logger logger;
+    private final boolean zeroBlockDetection;
+
+    private final BlockingQueue<DumpThread> readQueue;
+    private final Queue<DumpThread> retryQueue;
+    private final BlockingQueue<DumpThread> digestQueue;
+    private final BlockingQueue<DumpThread> compressQueue;
+    private final BlockingQueue<DumpThread> uploadQueue;
+
+    private final CountDownLatch pending;
+    private final NavigableSet<Integer> failedBlocks;
+    private final List<ExecutorService> stages;
+    /**
+     * Send the failed blocks back to the read stage after the retry wait, the
+     * stage threads never sleep
+     */
+    private final ScheduledExecutorService retryScheduler;
+    private volatile boolean closed;
+
+    DumpPipeline(final CoreResultActionDiskBackup radb, final Buffers buffers, final List<BasicBlockInfo> blocks,
+            final String keyPath, final AbstractBackupDiskInteractive interactive,
+            final Logger logger) {
+        this.radb = radb;
+        this.buffers = buffers;
+        this.blocks = blocks;
+        this.keyPath = keyPath;
+        this.interactive = interactive;
+        this.logger = logger;
+        this.zeroBlockDetection = CoreGlobalSettings.isZeroBlockDetectionEnabled();
+        /*
+         * Only a block holding a buffer can be past the read stage, the queues never
+         * fill up
+         */
+        final int capacity = buffers.getPool().getLength();
+        this.readQueue = new ArrayBlockingQueue<>(capacity);
+        this.retryQueue = new ConcurrentLinkedQueue<>();
+        this.digestQueue = new ArrayBlockingQueue<>(capacity);
+        this.compressQueue = new ArrayBlockingQueue<>(capacity);
+        this.uploadQueue = new ArrayBlockingQueue<>(capacity);
+        this.pending = new CountDownLatch(blocks.size());
+        this.failedBlocks = new ConcurrentSkipListSet<>();
+        this.stages = new ArrayList<>();
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(new VmbkThreadFactory(String.format(
+                "dump-retry-%s-disk:%d", radb.getFcoEntityInfo().getName(), radb.getDiskId()), true));
+        this.stages.add(this.retryScheduler);
+    }
+
+    private void compress(final DumpThread block) {
+        if (!isRunning()) {
+            discard(block);
+        } else if (block.compress()) {
+            this.uploadQueue.add(block);
+        } else {
+            block.complete(false);
+            this.failedBlocks.add(block.getBlockInfo().getIndex());
+            this.pending.countDown();
+        }
+    }
+
+    private void digest(final DumpThread block) {
+        if (!isRunning()) {
+            discard(block);
+            return;
+        }
+        boolean duplicate;
+        try {
+            duplicate = block.digest();
+        } catch (final Exception e) {
+            block.getBlockInfo().setReason(this.radb.getFcoEntityInfo(), "Server error - Check Logs");
+            Utility.logWarning(this.logger, e);
+            retry(block);
+            return;
+        }
+        if (duplicate) {
+            // the dedup subtask reports the result or sends the block back to the read stage
+            block.cloneDump(this.retryQueue::add, this.pending::countDown);
+        } else {
+            this.compressQueue.add(block);
+        }
+    }
+
+    /**
+     * Remove the block from the pipeline without dumping it
+     *
+     * @param block
+     */
+    private void discard(final DumpThread block) {
+        block.releaseBuffer();
+        this.failedBlocks.add(block.getBlockInfo().getIndex());
+        this.pending.countDown();
+    }
+
+    /**
+     * Dump all the blocks. Return when every block has been dumped, deduped or
+     * discarded
+     *
+     * @throws InterruptedException
+     */
+    void execute() throws InterruptedException {
+        if (this.logger.isLoggable(Level.CONFIG)) {
+            this.logger.config("<no args> - start"); //$NON-NLS-1$
+        }
+        final int threads = this.radb.getNumberOfThreads();
+        final VddkAsyncReader asyncReader = this.buffers.getAsyncReader();
+        final int readThreads = stageThreads(CoreGlobalSettings.getDumpPipelineReadThreads(),
+                (asyncReader != null) ? asyncReader.getQueueDepth() : 1);
+        final int digestThreads = stageThreads(CoreGlobalSettings.getDumpPipelineDigestThreads(), threads);
+        final int compressThreads = stageThreads(CoreGlobalSettings.getDumpPipelineCompressThreads(), threads);
+        // the upload stage follows the target concurrency when it is higher than the disk threads
+        final int targetThreads = Math.min(this.buffers.getTarget().getParent().getUploadConcurrency(),
+                this.buffers.getPool().getLength());
+        final int uploadThreads = stageThreads(CoreGlobalSettings.getDumpPipelineUploadThreads(),
+                Math.max(threads, targetThreads));
+        final String msg = String.format("Dump pipeline buffers:%d threads read:%d digest:%d compress:%d upload:%d",
+                this.buffers.getPool().getLength(), readThreads, digestThreads, compressThreads, uploadThreads);
+        this.logger.info(msg);
+
+        startStage("read", readThreads, this::read, this.readQueue, this.retryQueue);
+        startStage("digest", digestThreads, this::digest, this.digestQueue, null);
+        startStage("compress", compressThreads, this::compress, this.compressQueue, null);
+        startStage("upload", uploadThreads, this::upload, this.uploadQueue, null);
+        boolean completed = false;
+        try {
+            produce();
+            this.pending.await();
+            completed = true;
+        } finally {
+            this.closed = true;
+            if (!completed) {
+                this.buffers.stop();
+            }
+            for (final ExecutorService stage : this.stages) {
+                if (completed) {
+                    stage.shutdown();
+                } else {
+                    stage.shutdownNow();
+                }
+            }
+        }
+        if (this.logger.isLoggable(Level.CONFIG)) {
+            this.logger.config("<no args> - end"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * @return indexes of the blocks not dumped
+     */
+    NavigableSet<Integer> getFailedBlocks() {
+        return this.failedBlocks;
+    }
+
+    private boolean isRunning() {
+        return this.buffers.isRunning() && !this.radb.isAbortedOrFailed();
+    }
+
+    private void process(final Stage stage, final DumpThread block) {
+        try {
+            stage.process(block);
+        } catch (final RuntimeException e) {
+            block.getBlockInfo().setReason(this.radb.getFcoEntityInfo(), "Server error - Check Logs");
+            Utility.logWarning(this.logger, e);
+            discard(block);
+        }
+    }
+
+    /**
+     * Feed the read stage. Wait when the read queue is full
+     *
+     * @throws InterruptedException
+     */
+    private void produce() throws InterruptedException {
+        final int totalBlocks = this.blocks.size();
+        int produced = 0;
+        for (final BasicBlockInfo block : this.blocks) {
+            if (!isRunning()) {
+                break;
+            }
+            final ExBlockInfo blockInfo = new ExBlockInfo(block, totalBlocks, this.keyPath);
+            this.readQueue.put(
+                    new DumpThread(blockInfo, this.buffers, this.radb, this.interactive, this.logger));
+            ++produced;
+        }
+        for (; produced < totalBlocks; ++produced) {
+            this.pending.countDown();
+        }
+    }
+
+    private void read(final DumpThread block) {
+        try {
+            if (isRunning() && block.acquireBuffer()) {
+                if (block.read()) {
+                    if (this.zeroBlockDetection && block.isZero()) {
+                        block.recordZero();
+                        this.pending.countDown();
+                    } else {
+                        this.digestQueue.add(block);
+                    }
+                } else {
+                    retry(block);
+                }
+                return;
+            }
+        } catch (final InterruptedException e) {
+            this.logger.log(Level.WARNING, "Interrupted!", e);
+            // Restore interrupted state...
+            Thread.currentThread().interrupt();
+        }
+        discard(block);
+    }
+
+    /**
+     * Give back the buffer and send the block again to the read stage after the
+     * retry wait if another tentative is allowed
+     *
+     * @param block
+     */
+    private void retry(final DumpThread block) {
+        block.releaseBuffer();
+        if (block.canRetry()) {
+            try {
+                this.retryScheduler.schedule(() -> this.retryQueue.add(block),
+                        CoreGlobalSettings.getWaitingTimeAfterBlockThreadFailureInMilliSeconds(),
+                        TimeUnit.MILLISECONDS);
+                return;
+            } catch (final RejectedExecutionException e) {
+                // the dump is closing
+            }
+        }
+        discard(block);
+    }
+
+    private void startStage(final String name, final int numberOfThreads, final Stage stage,
+            final BlockingQueue<DumpThread> queue, final Queue<DumpThread> priorityQueue) {
+        final VmbkThreadFactory threadFactory = new VmbkThreadFactory(String.format("dump-%s-%s-disk:%d", name,
+                this.radb.getFcoEntityInfo().getName(), this.radb.getDiskId()), false, 0);
+        final ExecutorService es = Executors.newFixedThreadPool(numberOfThreads, threadFactory);
+        this.stages.add(es);
+        for (int i = 0; i < numberOfThreads; i++) {
+            es.execute(() -> work(stage, queue, priorityQueue));
+        }
+    }
+
+    private void upload(final DumpThread block) {
+        final boolean result = block.upload();
+        block.complete(result);
+        if (!result) {
+            this.failedBlocks.add(block.getBlockInfo().getIndex());
+        }
+        this.pending.countDown();
+    }
+
+    /**
+     * Stage thread loop. The blocks in priorityQueue are processed before the
+     * ones in queue
+     *
+     * @param stage
+     * @param queue
+     * @param priorityQueue
+     */
+    private void work(final Stage stage, final BlockingQueue<DumpThread> queue,
+            final Queue<DumpThread> priorityQueue) {
+        while (!this.closed && (this.pending.getCount() > 0)) {
+            try {
+                DumpThread block = (priorityQueue != null) ? priorityQueue.poll() : null;
+                if (block == null) {
+                    block = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (block != null) {
+                    process(stage, block);
+                }
+            } catch (final InterruptedException e) {
+                if (this.closed) {
+                    // Restore interrupted state...
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                /*
+                 * A block operation has been interrupted. Stop the dump, the remaining
+                 * blocks are discarded
+                 */
+                this.buffers.stop();
+            }
+        }
+    }
+}
@@ -26,14 +26,11 @@
  ******************************************************************************/
 package com.vmware.safekeeping.core.core;
 
-import java.io.IOException;
 import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.IllegalBlockSizeException;
-
 import com.vmware.jvix.jDiskLib.DiskHandle;
 import com.vmware.jvix.jDiskLibConst;
 import com.vmware.safekeeping.common.Utility;
@@ -43,54 +40,67 @@ import com.vmware.safekeeping.core.control.TargetBuffer;
 import com.vmware.safekeeping.core.control.info.ExBlockInfo;
 import com.vmware.safekeeping.core.type.ManagedFcoEntityInfo;
 
-class DumpThread extends AbstractBlockThread implements IDumpThread {
+/**
+ * Dump of a single block. Every step is executed by a different stage of the
+ * {@link DumpPipeline}, the TargetBuffer acquired by {@link #acquireBuffer()}
+ * travels with the block until {@link #complete(boolean)} or
+ * {@link #cloneDump(Consumer, Runnable)} gives it back
+ */
+class DumpThread extends AbstractBlockThread {
 
     private final DiskHandle diskHandle;
     private final CoreResultActionDiskBackup radb;
     private final Semaphore semaphore;
+    private Integer bufferIndex;
+    private boolean redumped;
 
     DumpThread(final ExBlockInfo blockInfo, final Buffers buffers, final CoreResultActionDiskBackup radb,
-            final String[] report, final AbstractBackupDiskInteractive interactive, final Logger logger) {
-        super(blockInfo, buffers, report, interactive, logger);
+            final AbstractBackupDiskInteractive interactive, final Logger logger) {
+        super(blockInfo, buffers, interactive, logger);
         this.diskHandle = radb.getDiskHandle();
         this.radb = radb;
         this.semaphore = buffers.getSemaphore();
     }
 
-    @Override
-    public Boolean call() {
-        for (;;) {
-            try {
-                final Integer bufferIndex = waitForBuffer(this.blockInfo);
-                final boolean result = run(bufferIndex);
-                if (checkResult(result)) {
-                    return result;
-                }
-            } catch (final InterruptedException e) {
-                this.logger.severe("<no args> - exception: " + e); //$NON-NLS-1$
-                this.blockInfo.failed(getEntity(), e);
-                // Restore interrupted state...
-                Thread.currentThread().interrupt();
-                return false;
-            } catch (final Exception e) {
-                Utility.logWarning(this.logger, e);
-                this.blockInfo.setReason(getEntity(), "Server error - Check Logs");
-                return false;
-            }
-        }
+    /**
+     * Wait for a free TargetBuffer
+     *
+     * @return false if the dump has been stopped
+     * @throws InterruptedException
+     */
+    boolean acquireBuffer() throws InterruptedException {
+        this.bufferIndex = waitForBuffer(this.blockInfo);
+        return this.bufferIndex != null;
     }
 
-    @Override
-    protected ManagedFcoEntityInfo getEntity() {
-        return radb.getFcoEntityInfo();
+    /**
+     * Check if the block can be dumped again after a failure. The TargetBuffer
+     * has to be released before. The caller waits before the new tentative
+     *
+     * @return true if a new tentative is allowed
+     */
+    boolean canRetry() {
+        return !countTentative(false);
     }
 
-    private boolean cloneDump(final ExBlockInfo blockInfoOut, final TargetBuffer buffer) {
+    /**
+     * The block is already on the target. Give back the buffer and dedup the
+     * block on a subtask. A block found through a stale dedup index entry fails
+     * the dedup: the entry is removed and the block is given back once to be
+     * read and stored again
+     *
+     * @param redump receive the block to dump again
+     * @param done   called once the result has been reported
+     */
+    void cloneDump(final Consumer<DumpThread> redump, final Runnable done) {
+        final ExBlockInfo blockInfoOut = this.blockInfo;
         final Runnable runnable = () -> {
             boolean result1 = false;
+            boolean again = false;
             try {
                 BlockLocker.lockBlock(blockInfoOut);
                 result1 = this.target.dedupDump(blockInfoOut);
+                again = !result1 && !this.redumped;
             } catch (final InterruptedException e) {
                 blockInfoOut.setReason(getEntity(), e);
                 this.logger.log(Level.WARNING, "Interrupted!", e);
@@ -98,85 +108,148 @@ class DumpThread extends AbstractBlockThread implements IDumpThread {
                 Thread.currentThread().interrupt();
             } finally {
                 BlockLocker.releaseBlock(blockInfoOut);
-                blockInfoOut.setFailed(!result1);
-                this.radb.addDumpInfo(blockInfoOut.getIndex(), blockInfoOut);
-                reportResult(blockInfoOut, result1);
+                if (again) {
+                    this.redumped = true;
+                    blockInfoOut.setDuplicated(false);
+                    redump.accept(this);
+                } else {
+                    blockInfoOut.setFailed(!result1);
+                    this.radb.addDumpInfo(blockInfoOut.getIndex(), blockInfoOut);
+                    reportResult(blockInfoOut, result1);
+                    done.run();
+                }
             }
         };
-        buffer.getAvailable().set(true);
+        releaseBuffer();
         this.buffers.executeSubTask(runnable);
-        return true;
     }
 
-    @Override
+    /**
+     * Final step of the block: record and report the result and give back the
+     * buffer
+     *
+     * @param result
+     */
+    void complete(final boolean result) {
+        this.blockInfo.setFailed(!result);
+        this.radb.addDumpInfo(this.blockInfo.getIndex(), this.blockInfo);
+        reportResult(this.blockInfo, result);
+        releaseBuffer();
+    }
+
+    /**
+     * Compress and cipher the block into the TargetBuffer
+     *
+     * @return true if succeed
+     */
+    boolean compress() {
+        try {
+            this.target.openPostDump(this.blockInfo);
+            processDump(this.blockInfo, this.buffers.getBuffer(this.bufferIndex));
+            return true;
+        } catch (final Exception e) {
+            handleException(e);
+        }
+        return false;
+    }
+
+    /**
+     * Calculate the digest of the block and check if the block is already on the
+     * target
+     *
+     * @return true if the block is a duplicate
+     */
+    boolean digest() {
+        calculateSha1(this.blockInfo, this.buffers.getBuffer(this.bufferIndex));
+        return this.target.doesKeyExist(this.blockInfo) || BlockLocker.isBlockLocked(this.blockInfo);
+    }
+
     public ExBlockInfo getBlockInfo() {
         return this.blockInfo;
     }
 
-    private boolean postDump(final ExBlockInfo blockInfo, final TargetBuffer buffer)
-            throws BadPaddingException, IllegalBlockSizeException {
-        boolean result = false;
-        try {
-            this.target.openPostDump(blockInfo);
-            processDump(blockInfo, buffer);
-            try {
-                BlockLocker.lockBlock(blockInfo);
-                result = this.target.closePostDump(blockInfo, buffer);
-            } finally {
-                BlockLocker.releaseBlock(blockInfo);
-            }
-        } catch (final IOException e) {
-            Utility.logWarning(this.logger, e);
-            blockInfo.setReason(getEntity(), e);
-        } catch (final InterruptedException e) {
-            blockInfo.setReason(getEntity(), e);
+    /**
+     * Check if the block read in the TargetBuffer contains only zeros
+     *
+     * @return true if the block is a zero block
+     */
+    boolean isZero() {
+        return this.buffers.getBuffer(this.bufferIndex).isInputZero(this.blockInfo.getStreamOffset(),
+                this.blockInfo.getSizeInBytes());
+    }
+
+    @Override
+    protected ManagedFcoEntityInfo getEntity() {
+        return this.radb.getFcoEntityInfo();
+    }
+
+    private void handleException(final Exception e) {
+        this.blockInfo.setReason(getEntity(), e);
+        if (e instanceof InterruptedException) {
             this.logger.log(Level.WARNING, "Interrupted!", e);
             // Restore interrupted state...
             Thread.currentThread().interrupt();
-        } catch (final Exception e) {
-            blockInfo.setReason(getEntity(), e);
+        } else {
             Utility.logWarning(this.logger, e);
-        } finally {
-            blockInfo.setFailed(!result);
-            this.radb.addDumpInfo(blockInfo.getIndex(), blockInfo);
-            reportResult(blockInfo, result);
-            buffer.getAvailable().set(true);
+        }
+    }
+
+    /**
+     * Read the block from the disk into the TargetBuffer
+     *
+     * @return true if succeed
+     */
+    boolean read() {
+        final boolean result = vddkRead(this.bufferIndex);
+        if (result && this.logger.isLoggable(Level.FINE)) {
+            final String msg = String.format("Index:%d Buffer:%d  size:%d  Read on handle %d start:%d nSectors:%d",
+                    this.blockInfo.getIndex(), this.bufferIndex, this.blockInfo.getSizeInBytes(),
+                    this.diskHandle.getHandle(), this.blockInfo.getOffset(), this.blockInfo.getLength());
+            this.logger.fine(msg);
         }
         return result;
     }
 
-    private boolean run(final Integer bufferIndex) {
-        boolean result = false;
-        if (bufferIndex != null) {
+    /**
+     * Record the block as a zero block. Nothing is stored on the target
+     */
+    void recordZero() {
+        this.blockInfo.setZero(true);
+        this.blockInfo.setCompress(false);
+        this.blockInfo.setCipher(false);
+        this.blockInfo.setStreamSize(0);
+        this.blockInfo.setEndTime(System.nanoTime());
+        complete(true);
+    }
+
+    /**
+     * Give back the TargetBuffer. Does nothing if the buffer is not held
+     */
+    void releaseBuffer() {
+        if (this.bufferIndex != null) {
+            this.buffers.releaseBuffer(this.bufferIndex);
+            this.bufferIndex = null;
+        }
+    }
+
+    /**
+     * Post the content of the TargetBuffer to the target
+     *
+     * @return true if succeed
+     */
+    boolean upload() {
+        final TargetBuffer buffer = this.buffers.getBuffer(this.bufferIndex);
+        try {
+            BlockLocker.lockBlock(this.blockInfo);
             try {
-                final TargetBuffer buffer = this.buffers.getBuffer(bufferIndex);
-
-                if (vddkRead(bufferIndex)) {
-                    if (this.logger.isLoggable(Level.FINE)) {
-                        final String msg = String.format(
-                                "Index:%d Buffer:%d  size:%d  Write on handle %d start:%d nSectors:%d",
-                                this.blockInfo.getIndex(), bufferIndex, this.blockInfo.getSizeInBytes(),
-                                this.diskHandle.getHandle(), this.blockInfo.getOffset(), this.blockInfo.getLength());
-                        this.logger.fine(msg);
-                    }
-                    calculateSha1(this.blockInfo, buffer);
-                    if (this.target.doesKeyExist(this.blockInfo) || BlockLocker.isBlockLocked(this.blockInfo)) {
-                        result = cloneDump(this.blockInfo, buffer);
-                    } else {
-                        result = postDump(this.blockInfo, buffer);
-                    }
-                }
-            } catch (BadPaddingException | IllegalBlockSizeException e) {
-                result = false;
-                this.blockInfo.setReason(getEntity(), e);
-                Utility.logWarning(this.logger, e);
-            } catch (final Exception e) {
-                result = false;
-                this.blockInfo.setReason(getEntity(), "Server error - Check Logs");
-                Utility.logWarning(this.logger, e);
+                return this.target.closePostDump(this.blockInfo, buffer);
+            } finally {
+                BlockLocker.releaseBlock(this.blockInfo);
             }
+        } catch (final Exception e) {
+            handleException(e);
         }
-        return result;
+        return false;
     }
 
     private boolean vddkRead(final int bufferIndex) {
@@ -187,32 +260,19 @@ class DumpThread extends AbstractBlockThread implements IDumpThread {
         boolean result = false;
         if (this.buffers.isRunning()) {
             long dliResult = jDiskLibConst.VIX_OK;
-            try {
-                if (this.logger.isLoggable(Level.FINEST)) {
-                    this.logger.finest(String.format("Index %d Sector %d - Semaphore ready to acquire",
-                            this.blockInfo.getIndex(), this.blockInfo.getOffset())); // $NON-NLS-1$
-                }
-                this.semaphore.acquire();
-                if (this.logger.isLoggable(Level.FINEST)) {
-                    this.logger.finest(String.format("Index %d Sector %d - Semaphore acquired",
-                            this.blockInfo.getIndex(), this.blockInfo.getOffset())); // $NON-NLS-1$
-                }
-                dliResult = SJvddk.dli.read(this.diskHandle, this.blockInfo.getOffset(), this.blockInfo.getLength(),
-                        this.buffers.getBuffer(bufferIndex).getInputBuffer());
-            } catch (final InterruptedException e) {
-                this.blockInfo.setReason(getEntity(), e);
-                // Restore interrupted state...
-                Thread.currentThread().interrupt();
-            } finally {
-                if (this.logger.isLoggable(Level.FINEST)) {
-                    this.logger.finest(String.format("Index %d Sector %d - Semaphore ready to release",
-                            this.blockInfo.getIndex(), this.blockInfo.getOffset()));
-                }
-                this.semaphore.release();
-                if (this.logger.isLoggable(Level.FINEST)) {
-                    this.logger.finest(String.format("Index %d Sector %d - Semaphore released",
-                            this.blockInfo.getIndex(), this.blockInfo.getOffset()));
+            final VddkAsyncReader asyncReader = this.buffers.getAsyncReader();
+            if (asyncReader != null) {
+                try {
+                    dliResult = asyncReader.read(this.blockInfo.getOffset(), this.blockInfo.getLength(),
+                            this.buffers.getBuffer(bufferIndex).getInputBuffer());
+                } catch (final InterruptedException e) {
+                    this.blockInfo.setReason(getEntity(), e);
+                    // Restore interrupted state...
+                    Thread.currentThread().interrupt();
+                    return false;
                 }
+            } else {
+                dliResult = vddkSyncRead(bufferIndex);
             }
             if (dliResult == jDiskLibConst.VIX_OK) {
                 result = true;
@@ -229,4 +289,43 @@ class DumpThread extends AbstractBlockThread implements IDumpThread {
         }
         return result;
     }
+
+    /**
+     * Read the block with the blocking VDDK call. Only one read at the time is
+     * executed on the disk
+     *
+     * @param bufferIndex
+     * @return VDDK error code
+     */
+    private long vddkSyncRead(final int bufferIndex) {
+        long dliResult = jDiskLibConst.VIX_OK;
+        try {
+            if (this.logger.isLoggable(Level.FINEST)) {
+                this.logger.finest(String.format("Index %d Sector %d - Semaphore ready to acquire",
+                        this.blockInfo.getIndex(), this.blockInfo.getOffset())); // $NON-NLS-1$
+            }
+            this.semaphore.acquire();
+            if (this.logger.isLoggable(Level.FINEST)) {
+                this.logger.finest(String.format("Index %d Sector %d - Semaphore acquired",
+                        this.blockInfo.getIndex(), this.blockInfo.getOffset())); // $NON-NLS-1$
+            }
+            dliResult = SJvddk.dli.read(this.diskHandle, this.blockInfo.getOffset(), this.blockInfo.getLength(),
+                    this.buffers.getBuffer(bufferIndex).getInputBuffer());
+        } catch (final InterruptedException e) {
+            this.blockInfo.setReason(getEntity(), e);
+            // Restore interrupted state...
+            Thread.currentThread().interrupt();
+        } finally {
+            if (this.logger.isLoggable(Level.FINEST)) {
+                this.logger.finest(String.format("Index %d Sector %d - Semaphore ready to release",
+                        this.blockInfo.getIndex(), this.blockInfo.getOffset()));
+            }
+            this.semaphore.release();
+            if (this.logger.isLoggable(Level.FINEST)) {
+                this.logger.finest(String.format("Index %d Sector %d - Semaphore released",
+                        this.blockInfo.getIndex(), this.blockInfo.getOffset()));
+            }
+        }
+        return dliResult;
+    }
 }
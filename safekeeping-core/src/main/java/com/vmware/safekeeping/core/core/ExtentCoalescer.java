@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import com.vmware.jvix.jDiskLibConst;
+import com.vmware.safekeeping.common.PrettyNumber;
+import com.vmware.safekeeping.common.Utility;
+
+/**
+ * Merge the changed extents returned by the Changed Block Tracking (or by the
+ * allocated blocks query) in fewer larger extents. Adjacent extents and
+ * extents separated by a gap not larger than gapSectors are merged reading
+ * again the unchanged sectors in the gap. A merged extent never grows over
+ * targetSectors.
+ */
+class ExtentCoalescer {
+
+    private final long gapSectors;
+
+    private final long targetSectors;
+
+    private int originalExtents;
+
+    private int coalescedExtents;
+
+    private long requestedSectors;
+
+    private long filledSectors;
+
+    /**
+     * @param gapSectors    maximum number of unchanged sectors read to join two
+     *                      extents
+     * @param targetSectors maximum size of a coalesced extent in sectors
+     */
+    ExtentCoalescer(final long gapSectors, final long targetSectors) {
+        this.gapSectors = Math.max(0, gapSectors);
+        this.targetSectors = targetSectors;
+    }
+
+    /**
+     * Coalesce the extents. The source set is not modified
+     *
+     * @param src extents
+     * @return coalesced extents
+     */
+    ExtentSet coalesce(final ExtentSet src) {
+        this.originalExtents = src.size();
+        this.requestedSectors = src.getTotalLength();
+        this.filledSectors = 0;
+
+        final ExtentSet result = new ExtentSet(src.size());
+        long currentStart = 0;
+        long currentEnd = 0;
+        for (int i = 0; i < this.originalExtents; i++) {
+            final long start = src.getStart(i);
+            final long end = start + src.getLength(i);
+            if (i == 0) {
+                currentStart = start;
+                currentEnd = end;
+            } else {
+                final long gap = start - currentEnd;
+                if ((gap <= this.gapSectors) && ((end - currentStart) <= this.targetSectors)) {
+                    currentEnd = end;
+                    this.filledSectors += gap;
+                } else {
+                    result.add(currentStart, currentEnd - currentStart);
+                    currentStart = start;
+                    currentEnd = end;
+                }
+            }
+        }
+        if (this.originalExtents > 0) {
+            result.add(currentStart, currentEnd - currentStart);
+        }
+        this.coalescedExtents = result.size();
+        return result;
+    }
+
+    /**
+     * @return extra sectors read over the requested ones as a percentage
+     */
+    float getAmplification() {
+        if (this.requestedSectors == 0) {
+            return 0F;
+        }
+        return (this.filledSectors * 100F) / this.requestedSectors;
+    }
+
+    int getCoalescedExtents() {
+        return this.coalescedExtents;
+    }
+
+    long getFilledSectors() {
+        return this.filledSectors;
+    }
+
+    int getOriginalExtents() {
+        return this.originalExtents;
+    }
+
+    long getRequestedSectors() {
+        return this.requestedSectors;
+    }
+
+    String getReport() {
+        return String.format(Utility.LOCALE,
+                "Coalesced extents:%d into:%d (gap fill %s target %s) requested:%s gap filled:%s amplification:%.2f%%",
+                this.originalExtents, this.coalescedExtents,
+                PrettyNumber.toString(this.gapSectors * jDiskLibConst.SECTOR_SIZE),
+                PrettyNumber.toString(this.targetSectors * jDiskLibConst.SECTOR_SIZE),
+                PrettyNumber.toString(this.requestedSectors * jDiskLibConst.SECTOR_SIZE),
+                PrettyNumber.toString(this.filledSectors * jDiskLibConst.SECTOR_SIZE), getAmplification());
+    }
+}
@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import com.vmware.jvix.jDiskLib.Block;
+
+/**
+ * Set of disk extents (in sectors) stored as two primitive arrays of start and
+ * length. Once normalized the extents are sorted by start and don't overlap;
+ * adjacent extents are kept as they are.
+ *
+ * Block lists of multi-TB disks reach millions of entries, this avoids one
+ * object per extent and the boxing of the sorted maps.
+ */
+public final class ExtentSet {
+
+    @FunctionalInterface
+    public interface ExtentConsumer {
+        void accept(long start, long length);
+    }
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Build a normalized set from a block list
+     *
+     * @param blocks blocks in any order
+     * @return the extents of the blocks
+     */
+    public static ExtentSet fromBlocks(final Collection<Block> blocks) {
+        final ExtentSet result = new ExtentSet(blocks.size());
+        for (final Block block : blocks) {
+            result.add(block.offset, block.length);
+        }
+        result.normalize();
+        return result;
+    }
+
+    private long[] starts;
+
+    private long[] lengths;
+
+    private int size;
+
+    private boolean normalized;
+
+    public ExtentSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ExtentSet(final int capacity) {
+        this.starts = new long[Math.max(1, capacity)];
+        this.lengths = new long[Math.max(1, capacity)];
+        this.size = 0;
+        this.normalized = true;
+    }
+
+    /**
+     * Append an extent. Empty extents are ignored. Appending out of order is
+     * allowed, the set is sorted again by the next operation
+     *
+     * @param start  first sector
+     * @param length number of sectors
+     */
+    public void add(final long start, final long length) {
+        if (length <= 0) {
+            return;
+        }
+        if (this.size == this.starts.length) {
+            final int capacity = this.size + (this.size >> 1) + 1;
+            this.starts = Arrays.copyOf(this.starts, capacity);
+            this.lengths = Arrays.copyOf(this.lengths, capacity);
+        }
+        if ((this.size > 0) && (start < (this.starts[this.size - 1] + this.lengths[this.size - 1]))) {
+            this.normalized = false;
+        }
+        this.starts[this.size] = start;
+        this.lengths[this.size] = length;
+        ++this.size;
+    }
+
+    public void forEach(final ExtentConsumer consumer) {
+        normalize();
+        for (int i = 0; i < this.size; i++) {
+            consumer.accept(this.starts[i], this.lengths[i]);
+        }
+    }
+
+    public long getLength(final int index) {
+        normalize();
+        return this.lengths[index];
+    }
+
+    public long getStart(final int index) {
+        normalize();
+        return this.starts[index];
+    }
+
+    /**
+     * @return the number of sectors in the set
+     */
+    public long getTotalLength() {
+        normalize();
+        long total = 0;
+        for (int i = 0; i < this.size; i++) {
+            total += this.lengths[i];
+        }
+        return total;
+    }
+
+    /**
+     * Sectors present in both sets
+     *
+     * @param other
+     * @return a new set
+     */
+    public ExtentSet intersect(final ExtentSet other) {
+        normalize();
+        other.normalize();
+        final ExtentSet result = new ExtentSet(Math.max(this.size, other.size));
+        int i = 0;
+        int j = 0;
+        while ((i < this.size) && (j < other.size)) {
+            final long end = this.starts[i] + this.lengths[i];
+            final long otherEnd = other.starts[j] + other.lengths[j];
+            final long begin = Math.max(this.starts[i], other.starts[j]);
+            final long last = Math.min(end, otherEnd);
+            if (begin < last) {
+                result.add(begin, last - begin);
+            }
+            if (end < otherEnd) {
+                ++i;
+            } else {
+                ++j;
+            }
+        }
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Sort the extents and merge the overlapping ones
+     */
+    private void normalize() {
+        if (this.normalized) {
+            return;
+        }
+        sort(0, this.size, new long[this.size], new long[this.size]);
+        int last = 0;
+        for (int i = 1; i < this.size; i++) {
+            final long lastEnd = this.starts[last] + this.lengths[last];
+            if (this.starts[i] < lastEnd) {
+                final long end = this.starts[i] + this.lengths[i];
+                if (end > lastEnd) {
+                    this.lengths[last] = end - this.starts[last];
+                }
+            } else {
+                ++last;
+                this.starts[last] = this.starts[i];
+                this.lengths[last] = this.lengths[i];
+            }
+        }
+        this.size = (this.size == 0) ? 0 : (last + 1);
+        this.normalized = true;
+    }
+
+    public int size() {
+        normalize();
+        return this.size;
+    }
+
+    /**
+     * Merge sort by start of the range [from,to) on both arrays
+     */
+    private void sort(final int from, final int to, final long[] tmpStarts, final long[] tmpLengths) {
+        if ((to - from) < 2) {
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        sort(from, middle, tmpStarts, tmpLengths);
+        sort(middle, to, tmpStarts, tmpLengths);
+        if (this.starts[middle - 1] <= this.starts[middle]) {
+            return;
+        }
+        System.arraycopy(this.starts, from, tmpStarts, from, to - from);
+        System.arraycopy(this.lengths, from, tmpLengths, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int k = from; k < to; k++) {
+            if ((right >= to) || ((left < middle) && (tmpStarts[left] <= tmpStarts[right]))) {
+                this.starts[k] = tmpStarts[left];
+                this.lengths[k] = tmpLengths[left];
+                ++left;
+            } else {
+                this.starts[k] = tmpStarts[right];
+                this.lengths[k] = tmpLengths[right];
+                ++right;
+            }
+        }
+    }
+
+    /**
+     * Split every extent longer than maxLength in pieces of maxLength sectors
+     * (the last one can be shorter)
+     *
+     * @param maxLength max number of sectors of an extent
+     * @return a new set
+     */
+    public ExtentSet split(final long maxLength) {
+        normalize();
+        final ExtentSet result = new ExtentSet(this.size);
+        for (int i = 0; i < this.size; i++) {
+            long start = this.starts[i];
+            long length = this.lengths[i];
+            while (length > 0) {
+                final long pieceLength = Math.min(length, maxLength);
+                result.add(start, pieceLength);
+                start += pieceLength;
+                length -= pieceLength;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sectors of this set not present in the other one
+     *
+     * @param other
+     * @return a new set
+     */
+    public ExtentSet subtract(final ExtentSet other) {
+        normalize();
+        other.normalize();
+        final ExtentSet result = new ExtentSet(this.size);
+        int j = 0;
+        for (int i = 0; i < this.size; i++) {
+            long start = this.starts[i];
+            final long end = start + this.lengths[i];
+            while ((j < other.size) && ((other.starts[j] + other.lengths[j]) <= start)) {
+                ++j;
+            }
+            int k = j;
+            while ((k < other.size) && (other.starts[k] < end)) {
+                if (other.starts[k] > start) {
+                    result.add(start, other.starts[k] - start);
+                }
+                start = Math.max(start, other.starts[k] + other.lengths[k]);
+                ++k;
+            }
+            if (start < end) {
+                result.add(start, end - start);
+            }
+        }
+        return result;
+    }
+
+    public List<Block> toBlockList() {
+        normalize();
+        final List<Block> result = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            final Block block = new Block();
+            block.offset = this.starts[i];
+            block.length = this.lengths[i];
+            result.add(block);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ExtentSet extents:%d sectors:%d", size(), getTotalLength());
+    }
+
+    /**
+     * Sectors present in any of the two sets
+     *
+     * @param other
+     * @return a new set
+     */
+    public ExtentSet union(final ExtentSet other) {
+        normalize();
+        other.normalize();
+        final ExtentSet result = new ExtentSet(this.size + other.size);
+        int i = 0;
+        int j = 0;
+        while ((i < this.size) || (j < other.size)) {
+            if ((j >= other.size) || ((i < this.size) && (this.starts[i] <= other.starts[j]))) {
+                result.add(this.starts[i], this.lengths[i]);
+                ++i;
+            } else {
+                result.add(other.starts[j], other.lengths[j]);
+                ++j;
+            }
+        }
+        result.normalize();
+        return result;
+    }
+}
@@ -157,10 +157,20 @@ public interface IJvddkBasic {
             radr.getProfiles().put(drg.getGenerationId(), profGen);
             radr.getBlocksPerGeneration().put(drg.getGenerationId(), 0);
             if (drg.isRunning()) {
-                final Map<Integer, SimpleBlockInfo> dumps = profGen.getDisks().get(radr.getDiskId()).getDumps();
-                for (final Entry<Integer, SimpleBlockInfo> entry : dumps.entrySet()) {
-                    drg.getVixBlocks().add(new BasicBlockInfo(entry.getValue(), radr.getDiskId(), drg.getGenerationId(),
-                            drg.isCompressed(), drg.isCiphered()));
+                try {
+                    final Map<Integer, SimpleBlockInfo> dumps = profGen.getDumps(radr.getDiskId());
+                    for (final Entry<Integer, SimpleBlockInfo> entry : dumps.entrySet()) {
+                        final BasicBlockInfo block = new BasicBlockInfo(entry.getValue(), radr.getDiskId(),
+                                drg.getGenerationId(), drg.isCompressed(), drg.isCiphered());
+                        if (block.getCompressionCodec() == null) {
+                            block.setCompressionCodec(drg.getCompressionCodec());
+                        }
+                        drg.getVixBlocks().add(block);
+                    }
+                } catch (final IOException e) {
+                    drg.failure(String.format("Archive Error- Block manifest of generation %d unreadable",
+                            profGen.getGenerationId()));
+                    Utility.logWarning(getLogger(), e);
                 }
             }
 
@@ -174,7 +184,7 @@ public interface IJvddkBasic {
     Logger getLogger();
 
     default TotalBlocksInfo restoreAndConsolidateThreads(final AbstractCoreResultDiskBackupRestore radr,
-            final InteractiveDisk interactive, final List<IRestoreThread> futureThreads)
+            final InteractiveDisk interactive, final List<IRestoreThread> futureThreads, final Buffers buffers)
             throws CoreResultActionException {
         TotalBlocksInfo totalDumpInfo = null;
         final int threadPool = radr.getNumberOfThreads();
@@ -183,6 +193,13 @@ public interface IJvddkBasic {
             getLogger().log(Level.INFO, () -> MessagesTemplate.header(true));
             final long startTime = System.nanoTime();
             final List<Future<Boolean>> answers = es.invokeAll(futureThreads);
+            final VddkAsyncWriter asyncWriter = buffers.getAsyncWriter();
+            if ((asyncWriter != null) && !asyncWriter.drain()) {
+                final String msg = String.format("Operation disk:%d - %d blocks failed on asynchronous write",
+                        radr.getDiskId(), asyncWriter.getFailedWrites());
+                getLogger().warning(msg);
+                radr.failure(msg);
+            }
             final long endTime = System.nanoTime();
             int index = 0;
             for (final Future<Boolean> answer : answers) {
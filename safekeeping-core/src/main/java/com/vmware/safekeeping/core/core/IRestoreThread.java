@@ -26,54 +26,137 @@
  ******************************************************************************/
 package com.vmware.safekeeping.core.core;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.concurrent.Callable;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 
-import com.linkedin.migz.MiGzInputStream;
+import org.apache.commons.lang.StringUtils;
+
+import com.vmware.jvix.jDiskLibConst;
 import com.vmware.safekeeping.core.control.TargetBuffer;
 import com.vmware.safekeeping.core.control.info.ExBlockInfo;
+import com.vmware.safekeeping.core.control.target.ITargetOperation;
 import com.vmware.safekeeping.core.util.AESEncryptionManager;
+import com.vmware.safekeeping.core.util.BlockCodec;
 
 interface IRestoreThread extends Callable<Boolean> {
-	int GZIP_READ_BUFFER_SIZE = 4096;
 
 	default boolean computeOpenGetDump(final ExBlockInfo blockInfo, final TargetBuffer targetBuffer,
 			final boolean destinationOutputBuffer) throws IOException, IllegalBlockSizeException, BadPaddingException {
+		final byte[] buffer = decodeDump(blockInfo, targetBuffer);
+		if (destinationOutputBuffer) {
+			System.arraycopy(buffer, blockInfo.getStreamOffset(), targetBuffer.getOutputBuffer(), 0,
+					blockInfo.getStreamLength());
+		} else {
+			System.arraycopy(buffer, blockInfo.getStreamOffset(), targetBuffer.getInputBuffer(), 0,
+					blockInfo.getStreamLength());
+		}
+
+		return true;
+	}
+
+	/**
+	 * Decipher and decompress the block read by openGetDump
+	 *
+	 * @param blockInfo
+	 * @param targetBuffer
+	 * @return the buffer holding the whole stored block
+	 * @throws IOException
+	 * @throws IllegalBlockSizeException
+	 * @throws BadPaddingException
+	 */
+	default byte[] decodeDump(final ExBlockInfo blockInfo, final TargetBuffer targetBuffer)
+			throws IOException, IllegalBlockSizeException, BadPaddingException {
 		byte[] buffer = targetBuffer.getInputBuffer();
 		int bufferSize = blockInfo.getStreamSizeAsInteger();
 		if (blockInfo.isCipher()) {
 			bufferSize = AESEncryptionManager.decryptData(buffer, 0, bufferSize, targetBuffer.getBufferCipher(),
-					blockInfo.getCipherOffset());
+					blockInfo.getCipherOffset(), blockInfo.getCipherNonce());
 			buffer = targetBuffer.getBufferCipher();
 		}
 
 		if (blockInfo.isCompress()) {
-			final ByteArrayInputStream b = new ByteArrayInputStream(buffer, 0, bufferSize);
-			final byte[] buffer2 = targetBuffer.getBufferCompressData();
-			try (MiGzInputStream mgzip = new MiGzInputStream(b)) {
-				int count = 0;
-				int n = 0;
-				while ((n = mgzip.read(buffer2, count, count + GZIP_READ_BUFFER_SIZE)) > -1) {
-					count += n;
-				}
-			}
+			BlockCodec.getInstance(blockInfo.getCompressionCodec()).decompress(buffer, bufferSize,
+					targetBuffer.getBufferCompressData());
 			buffer = targetBuffer.getBufferCompressData();
 		}
-		if (destinationOutputBuffer) {
-			System.arraycopy(buffer, blockInfo.getStreamOffset(), targetBuffer.getOutputBuffer(), 0,
-					blockInfo.getStreamLength());
-		} else {
-			System.arraycopy(buffer, blockInfo.getStreamOffset(), targetBuffer.getInputBuffer(), 0,
-					blockInfo.getStreamLength());
-		}
-
-		return true;
+		return buffer;
 	}
 
 	ExBlockInfo getBlockInfo();
 
+	/**
+	 * Get the block from the decoded block cache, from the read ahead or from the
+	 * target
+	 *
+	 * @param buffers                 buffers of the restore (target, block cache
+	 *                                and read ahead)
+	 * @param blockInfo
+	 * @param targetBuffer
+	 * @param destinationOutputBuffer
+	 * @return true if succeed
+	 * @throws IOException
+	 * @throws IllegalBlockSizeException
+	 * @throws BadPaddingException
+	 * @throws InterruptedException
+	 */
+	default boolean getDump(final Buffers buffers, final ExBlockInfo blockInfo, final TargetBuffer targetBuffer,
+			final boolean destinationOutputBuffer)
+			throws IOException, IllegalBlockSizeException, BadPaddingException, InterruptedException {
+		final DecodedBlockCache.Session cache = buffers.getBlockCache();
+		final RestorePrefetcher prefetcher = buffers.getPrefetcher();
+		final String digest = blockInfo.getSha1();
+		if ((cache == null) || StringUtils.isEmpty(digest)) {
+			return readDump(buffers.getTarget(), prefetcher, blockInfo, targetBuffer)
+					&& computeOpenGetDump(blockInfo, targetBuffer, destinationOutputBuffer);
+		}
+		final byte[] destination = destinationOutputBuffer ? targetBuffer.getOutputBuffer()
+				: targetBuffer.getInputBuffer();
+		if (cache.read(digest, blockInfo.getStreamOffset(), destination, blockInfo.getStreamLength())) {
+			if (prefetcher != null) {
+				prefetcher.discard(blockInfo);
+			}
+			return true;
+		}
+		boolean result = false;
+		try {
+			if (readDump(buffers.getTarget(), prefetcher, blockInfo, targetBuffer)) {
+				final byte[] buffer = decodeDump(blockInfo, targetBuffer);
+				cache.put(digest, buffer, (int) blockInfo.getOriginalLenght() * jDiskLibConst.SECTOR_SIZE);
+				System.arraycopy(buffer, blockInfo.getStreamOffset(), destination, 0, blockInfo.getStreamLength());
+				result = true;
+			}
+		} finally {
+			if (!result) {
+				cache.abort(digest);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Load the stored block in the input buffer, from the read ahead if available
+	 *
+	 * @param target
+	 * @param prefetcher   read ahead of the restore, null if disabled
+	 * @param blockInfo
+	 * @param targetBuffer
+	 * @return true if succeed
+	 * @throws InterruptedException
+	 */
+	default boolean readDump(final ITargetOperation target, final RestorePrefetcher prefetcher,
+			final ExBlockInfo blockInfo, final TargetBuffer targetBuffer) throws InterruptedException {
+		if (prefetcher != null) {
+			final byte[] content = prefetcher.take(blockInfo);
+			if ((content != null) && (content.length <= targetBuffer.getInputBuffer().length)) {
+				System.arraycopy(content, 0, targetBuffer.getInputBuffer(), 0, content.length);
+				blockInfo.setStreamSize(content.length);
+				return true;
+			}
+		}
+		return target.openGetDump(blockInfo, targetBuffer);
+	}
+
 }
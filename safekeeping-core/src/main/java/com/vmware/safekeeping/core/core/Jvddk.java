@@ -30,15 +30,9 @@ import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -73,7 +67,6 @@ import com.vmware.safekeeping.core.profile.GenerationProfile;
 import com.vmware.safekeeping.core.soap.VimConnection;
 import com.vmware.safekeeping.core.soap.managers.PrivilegesList;
 import com.vmware.safekeeping.core.type.ByteArrayInOutStream;
-import com.vmware.safekeeping.core.type.VmbkThreadFactory;
 import com.vmware.safekeeping.core.type.enums.BackupMode;
 import com.vmware.safekeeping.core.type.enums.EntityType;
 import com.vmware.safekeeping.core.type.enums.QueryBlocksOption;
@@ -205,6 +198,58 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
         }
     }
 
+    /**
+     * Attach an asynchronous reader to the disk if enabled. On failure the dump
+     * continue with the synchronous read
+     *
+     * @param radb
+     * @param buffers
+     * @param threadPool
+     * @param maxBlockSizeInBytes
+     */
+    private void attachAsyncReader(final CoreResultActionDiskBackup radb, final Buffers buffers, final int threadPool,
+            final int maxBlockSizeInBytes) {
+        // more requests than buffers cannot be in flight
+        final int queueDepth = Math.min(CoreGlobalSettings.getVddkAsyncReadQueueDepth(), threadPool);
+        if (queueDepth > 0) {
+            try {
+                buffers.setAsyncReader(
+                        new VddkAsyncReader(radb.getDiskHandle(), queueDepth, maxBlockSizeInBytes, this.logger));
+                this.logger.info(String.format("Disk:%d asynchronous read with queue depth %d", radb.getDiskId(),
+                        queueDepth));
+            } catch (final JVixException e) {
+                this.logger.warning(
+                        String.format("Disk:%d asynchronous read not available (%s) - synchronous read used",
+                                radb.getDiskId(), e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Attach an asynchronous write-behind writer to the disk if enabled. On
+     * failure the restore continue with the synchronous write
+     *
+     * @param radr
+     * @param buffers
+     * @param maxBlockSizeInBytes
+     */
+    private void attachAsyncWriter(final CoreResultActionDiskRestore radr, final Buffers buffers,
+            final int maxBlockSizeInBytes) {
+        final int queueDepth = CoreGlobalSettings.getVddkAsyncWriteQueueDepth();
+        if (queueDepth > 0) {
+            try {
+                buffers.setAsyncWriter(
+                        new VddkAsyncWriter(radr.getDiskHandle(), queueDepth, maxBlockSizeInBytes, this.logger));
+                this.logger.info(String.format("Disk:%d asynchronous write with queue depth %d", radr.getDiskId(),
+                        queueDepth));
+            } catch (final JVixException e) {
+                this.logger.warning(
+                        String.format("Disk:%d asynchronous write not available (%s) - synchronous write used",
+                                radr.getDiskId(), e.getMessage()));
+            }
+        }
+    }
+
     private Connection connect(final boolean readOnly, final String snapshotRef, final String requestedTransportModes)
             throws JVixException {
 
@@ -312,7 +357,7 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
                     profile.setDiskMetadata(radb.getDiskId(), radb.getJVmdkInfo().getMetadata());
                     msg = radb.getJVmdkInfo().toString();
                     this.logger.info(msg);
-                    final List<Block> blockList = queryBlock(radb, blockListQueryChangedDiskAreas);
+                    final ExtentSet blockList = queryBlock(radb, blockListQueryChangedDiskAreas);
                     if (blockList.isEmpty()) {
                         manageEmptyBlocksList(radb);
                         interactive.endDumpThreads(radb.getState());
@@ -389,7 +434,7 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
                 final int threadPool = radr.getNumberOfThreads();
                 final int maxBlockSizeInBytes = radr.getMaxBlockSizeInBytes();
                 buffers = new Buffers(target, threadPool, maxBlockSizeInBytes, radr.getFcoEntityInfo());
-
+                attachAsyncWriter(radr, buffers, maxBlockSizeInBytes);
                 /*
                  * end buffer initializations
                  */
@@ -410,11 +455,44 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
                             this.logger);
                     futureThreads.add(callableThread);
                 }
+                final DecodedBlockCache blockCache = DecodedBlockCache.getInstance();
+                if (blockCache != null) {
+                    buffers.setBlockCache(blockCache.open(vixBlocks));
+                }
+                final List<ExBlockInfo> restoreBlocks = new ArrayList<>(futureThreads.size());
+                for (final IRestoreThread thread : futureThreads) {
+                    restoreBlocks.add(thread.getBlockInfo());
+                }
+                buffers.setPrefetcher(RestorePrefetcher.create(target, restoreBlocks, blockCache != null, this.logger));
+                buffers.setWriteOrder(RestoreWriteOrder.create(restoreBlocks, buffers.getLength()));
                 buffers.start();
+                if (buffers.getPrefetcher() != null) {
+                    buffers.getPrefetcher().start();
+                }
                 try {
-                    restoreAndConsolidateThreads(radr, interactive, futureThreads);
+                    restoreAndConsolidateThreads(radr, interactive, futureThreads, buffers);
                 } finally {
                     buffers.stop();
+                    if (buffers.getWriteOrder() != null) {
+                        buffers.getWriteOrder().close();
+                        this.logger.info(String.format("Disk %d %s", radr.getDiskId(), buffers.getWriteOrder()));
+                    }
+                    if (buffers.getPrefetcher() != null) {
+                        buffers.getPrefetcher().close();
+                        this.logger.info(String.format("Disk %d %s", radr.getDiskId(), buffers.getPrefetcher()));
+                    }
+                    this.logger.info(buffers.getPool().toString());
+                    if (buffers.getAsyncWriter() != null) {
+                        buffers.getAsyncWriter().close();
+                    }
+                    if (buffers.getBlockCache() != null) {
+                        buffers.getBlockCache().close();
+                        radr.setBlockCacheHits(buffers.getBlockCache().getHits());
+                        radr.setBlockCacheMisses(buffers.getBlockCache().getMisses());
+                        radr.setBlockCacheEvictions(buffers.getBlockCache().getEvictions());
+                        this.logger.info(String.format("Disk %d %s - %s", radr.getDiskId(), buffers.getBlockCache(),
+                                blockCache));
+                    }
                 }
             } else {
                 final String msg = "No blocks to restore";
@@ -530,10 +608,10 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
     }
 
     private String dump(final CoreResultActionDiskBackup radb, final AbstractBackupDiskInteractive interactive,
-            final List<Block> blockList, final ITargetOperation target) throws CoreResultActionException {
+            final ExtentSet blockList, final ITargetOperation target) throws CoreResultActionException {
         if (this.logger.isLoggable(Level.CONFIG)) {
             this.logger.config(
-                    "CoreResultActionDiskBackup, AbstractBackupInteractive, List<Block>, DiskHandle, TargetOperation - start"); //$NON-NLS-1$
+                    "CoreResultActionDiskBackup, AbstractBackupInteractive, ExtentSet, DiskHandle, TargetOperation - start"); //$NON-NLS-1$
         }
         String msg;
         final List<BasicBlockInfo> vixBlocks = new ArrayList<>();
@@ -548,7 +626,7 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
              */
             final int threadPool = radb.getNumberOfThreads();
             final Buffers buffers = new Buffers(target, threadPool, maxBlockSizeInBytes, radb.getFcoEntityInfo());
-
+            attachAsyncReader(radb, buffers, threadPool, maxBlockSizeInBytes);
             /*
              * end buffer initializations
              */
@@ -557,12 +635,16 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
              * Start Section Normalize Blocks
              */
             interactive.startNormalizeVmdkBlocks();
+            final ExtentCoalescer coalescer = newExtentCoalescer(maxSectorsXBlock);
+            final ExtentSet coalescedBlocks = coalescer.coalesce(blockList);
+            final String coalesceReport = coalescer.getReport();
+            this.logger.info(coalesceReport);
             msg = String.format("Normalize the block list to the Max block size of %d Sectors (%s)", maxSectorsXBlock,
                     PrettyNumber.toString(profile.getMaxBlockSize(), MetricPrefix.MEGA));
             this.logger.info(msg);
-            final int newEntry = normalizeBlocks(radb, blockList, vixBlocks, maxSectorsXBlock);
-            msg = String.format("Original blocks:%d New added blocks:%d Total blocks:%d ", blockList.size(), newEntry,
-                    vixBlocks.size());
+            final int newEntry = normalizeBlocks(radb, coalescedBlocks, vixBlocks, maxSectorsXBlock);
+            msg = String.format("Original blocks:%d New added blocks:%d Total blocks:%d ", coalescedBlocks.size(),
+                    newEntry, vixBlocks.size());
             this.logger.info(msg);
 
             radb.setNumberOfBlocks(vixBlocks.size());
@@ -571,30 +653,24 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
             /**
              * End Section Normalize Blocks
              */
-            final List<DumpThread> futureThreads = new ArrayList<>(vixBlocks.size());
-            /**
-             * set semaphore for 1 single VDDK read operation at the time
-             */
-            final String[] report = new String[vixBlocks.size()];
-
-            for (final BasicBlockInfo block : vixBlocks) {
-                final ExBlockInfo dumpFilesInfo = new ExBlockInfo(block, vixBlocks.size(), target.getDisksPath());
-                final DumpThread r = new DumpThread(dumpFilesInfo, buffers, radb, report, interactive, this.logger);
-
-                futureThreads.add(r);
-            }
+            final DumpPipeline pipeline = new DumpPipeline(radb, buffers, vixBlocks, target.getDisksPath(),
+                    interactive, this.logger);
             msg = MessagesTemplate.diskHeaderInfo(radb);
             finalReport.append(msg);
             this.logger.info(msg);
             finalReport.append('\n');
+            finalReport.append(coalesceReport);
+            finalReport.append('\n');
             msg = MessagesTemplate.diskDumpHeaderInfo(radb);
             this.logger.info(msg);
             finalReport.append(msg);
             finalReport.append('\n');
             msg = MessagesTemplate.header(radb.isCompressed());
             this.logger.info(msg);
-            finalReport.append(msg);
-            finalReport.append('\n');
+            if (CoreGlobalSettings.isDumpReportBlockLinesEnabled()) {
+                finalReport.append(msg);
+                finalReport.append('\n');
+            }
             /**
              * Start Section DumpThreads
              */
@@ -602,7 +678,7 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
             buffers.start();
             TotalBlocksInfo totalDumpInfo;
             try {
-                totalDumpInfo = dumpThreads(radb, futureThreads);
+                totalDumpInfo = dumpThreads(radb, pipeline);
                 // wait for subtask to finish
                 buffers.waitSubTasks();
             } finally {
@@ -611,16 +687,29 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
                  * End Section DumpThreads
                  */
                 buffers.stop();
+                this.logger.info(buffers.getPool().toString());
+                if (buffers.getAsyncReader() != null) {
+                    buffers.getAsyncReader().close();
+                }
             }
-            for (final DumpThread s : futureThreads) {
-                profile.addDumpInfo(radb.getDiskId(), s.getBlockInfo());
+            for (final ExBlockInfo blockInfo : radb.getDumpMap().values()) {
+                profile.addDumpInfo(radb.getDiskId(), blockInfo);
             }
             /**
              * Start Section DumpsTotalCalculation
              */
             interactive.startDumpsTotalCalculation();
-            finalReport.append(String.join("\n", report));
-            finalReport.append('\n');
+            if (CoreGlobalSettings.isDumpReportBlockLinesEnabled()) {
+                // the block lines are built from the dump results, in block order
+                final Map<Integer, ExBlockInfo> dumpMap = radb.getDumpMap();
+                for (int index = 0; index < vixBlocks.size(); index++) {
+                    final ExBlockInfo blockInfo = dumpMap.get(index);
+                    if (blockInfo != null) {
+                        finalReport.append(MessagesTemplate.dumpInfo(radb.getFcoEntityInfo(), blockInfo));
+                        finalReport.append('\n');
+                    }
+                }
+            }
             finalReport.append(totalDumpInfo.separetorBar());
             finalReport.append('\n');
             msg = totalDumpInfo.toString();
@@ -634,7 +723,7 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
             profile.setDiskTotalUncompressedDumpSize(radb.getDiskId(), totalDumpInfo.getSize());
         } catch (final NoSuchAlgorithmException e) {
             this.logger.severe(
-                    "CoreResultActionDiskBackup, AbstractBackupInteractive, List<Block>, DiskHandle, TargetOperation - exception: " //$NON-NLS-1$
+                    "CoreResultActionDiskBackup, AbstractBackupInteractive, ExtentSet, DiskHandle, TargetOperation - exception: " //$NON-NLS-1$
                             + e);
 
             msg = String.format("Dump disk:%d fails - see log for more details", radb.getDiskId());
@@ -659,81 +748,52 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
         final String returnString = finalReport.toString();
         if (this.logger.isLoggable(Level.CONFIG)) {
             this.logger.config(
-                    "CoreResultActionDiskBackup, AbstractBackupInteractive, List<Block>, DiskHandle, TargetOperation - end"); //$NON-NLS-1$
+                    "CoreResultActionDiskBackup, AbstractBackupInteractive, ExtentSet, DiskHandle, TargetOperation - end"); //$NON-NLS-1$
         }
         return returnString;
 
     }
 
     /**
-     * Execute the dump threads
+     * Execute the dump pipeline
      *
      * @param radb
-     * @param buffers
-     * @param futureThreads
+     * @param pipeline
      * @return
      * @throws CoreResultActionException
      */
-    private TotalBlocksInfo dumpThreads(final CoreResultActionDiskBackup radb, final List<DumpThread> futureThreads)
+    private TotalBlocksInfo dumpThreads(final CoreResultActionDiskBackup radb, final DumpPipeline pipeline)
             throws CoreResultActionException {
         if (this.logger.isLoggable(Level.CONFIG)) {
-            this.logger.config("CoreResultActionDiskBackup, List<AbstractDumpThread> - start"); //$NON-NLS-1$
+            this.logger.config("CoreResultActionDiskBackup, DumpPipeline - start"); //$NON-NLS-1$
         }
         TotalBlocksInfo returnTotalDumpFileInfo = null;
         final long startTime = System.nanoTime();
-        final int threadPool = (int) Math.ceil(radb.getNumberOfThreads() * 1.3);
-        final VmbkThreadFactory threadFactory = new VmbkThreadFactory(
-                String.format("dump-%s-disk:%d", radb.getFcoEntityInfo().getName(), radb.getDiskId()), false, 0);
-
-        final ExecutorService es = Executors.newFixedThreadPool(threadPool, threadFactory);
         try {
-
-            final List<Future<Boolean>> answers = es.invokeAll(futureThreads);
+            pipeline.execute();
 
             final long endTime = System.nanoTime();
-            int index = 0;
-            for (final Future<Boolean> answer : answers) {
-                if (answer.get() == null) {
-                    final String msg = String.format("Dump disk:%d block:%d - Aborted by user", radb.getDiskId(),
-                            index);
-                    radb.aborted(msg);
-                    this.logger.warning(msg);
-                } else if (Boolean.FALSE.equals(answer.get())) {
-                    final String msg = String.format("Dump disk:%d block:%d - fails - see log for more details",
-                            radb.getDiskId(), index);
-                    radb.failure(msg);
-                    this.logger.warning(msg);
-                } else {
-                    if (this.logger.isLoggable(Level.FINE)) {
-                        final String msg = String.format("Dump disk:%d block:%d - success", radb.getDiskId(), index);
-                        this.logger.fine(msg);
-                    }
-                }
-                if (radb.isAbortedOrFailed()) {
-                    break;
-                }
-                ++index;
+            if (!pipeline.getFailedBlocks().isEmpty()) {
+                final String msg = String.format("Dump disk:%d block:%d - fails - see log for more details",
+                        radb.getDiskId(), pipeline.getFailedBlocks().first());
+                radb.failure(msg);
+                this.logger.warning(msg);
+            } else if (this.logger.isLoggable(Level.FINE)) {
+                final String msg = String.format("Dump disk:%d - success", radb.getDiskId());
+                this.logger.fine(msg);
             }
 
             returnTotalDumpFileInfo = new TotalBlocksInfo(radb.getEntityType(), radb.getDiskId(),
                     radb.getDumpMap().values(), startTime, endTime);
 
         } catch (final InterruptedException e) {
-            this.logger.severe("CoreResultActionDiskBackup, List<AbstractDumpThread> - exception: " + e); //$NON-NLS-1$
+            this.logger.severe("CoreResultActionDiskBackup, DumpPipeline - exception: " + e); //$NON-NLS-1$
             radb.failure(e);
             Thread.currentThread().interrupt();
-
-        } catch (final ExecutionException e) {
-            Utility.logWarning(this.logger, e);
-            radb.failure(e);
-        } finally {
-            if (es != null) {
-                es.shutdown();
-            }
         }
 
         if (this.logger.isLoggable(Level.CONFIG)) {
-            this.logger.config("CoreResultActionDiskBackup, List<AbstractDumpThread> - end"); //$NON-NLS-1$
+            this.logger.config("CoreResultActionDiskBackup, DumpPipeline - end"); //$NON-NLS-1$
         }
         return returnTotalDumpFileInfo;
     }
@@ -764,23 +824,23 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
         return this.basicVimConnection;
     }
 
-    private List<Block> getBlockList(final CoreResultActionDiskBackup radb)
+    private ExtentSet getBlockList(final CoreResultActionDiskBackup radb)
             throws FileFaultFaultMsg, NotFoundFaultMsg, RuntimeFaultFaultMsg, com.vmware.vslm.FileFaultFaultMsg,
             InvalidArgumentFaultMsg, InvalidDatastoreFaultMsg, InvalidStateFaultMsg, com.vmware.vslm.NotFoundFaultMsg,
             com.vmware.vslm.RuntimeFaultFaultMsg, VslmFaultFaultMsg, com.vmware.vim25.InvalidDatastoreFaultMsg,
             com.vmware.vim25.InvalidStateFaultMsg, JVixException {
-        final List<Block> blockList = new ArrayList<>();
+        final ExtentSet blockList;
         switch (radb.getQueryBlocksOption()) {
         case ALLOCATED:
-            blockList.addAll(queryAllocatedBlock(radb.getDiskHandle(), radb.getJVmdkInfo()));
+            blockList = queryAllocatedBlock(radb.getDiskHandle(), radb.getJVmdkInfo());
             break;
         case CHANGED_AREAS:
-            blockList.addAll(radb.getFirstClassObject().queryChangedDiskAreas(radb.getProfile(), radb.getDiskId(),
-                    radb.getBackupMode()));
+            blockList = ExtentSet.fromBlocks(radb.getFirstClassObject().queryChangedDiskAreas(radb.getProfile(),
+                    radb.getDiskId(), radb.getBackupMode()));
             break;
         case FULL:
         default:
-            blockList.addAll(radb.getFirstClassObject().getFullDiskAreas(radb.getDiskId()));
+            blockList = ExtentSet.fromBlocks(radb.getFirstClassObject().getFullDiskAreas(radb.getDiskId()));
             break;
 
         }
@@ -791,34 +851,14 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
         return SJvddk.dli.getErrorText(vddkCallResult, null);
     }
 
-    private LinkedList<Block> getIncrementalSectorsRange(final List<Block> changedRangesList,
-            final List<Block> allocatedRangesList) {
+    private ExtentSet getIncrementalSectorsRange(final List<Block> changedRangesList,
+            final ExtentSet allocatedRanges) {
         if (this.logger.isLoggable(Level.CONFIG)) {
-            this.logger.config("List<Block>, List<Block> - start"); //$NON-NLS-1$
+            this.logger.config("List<Block>, ExtentSet - start"); //$NON-NLS-1$
         }
-
-        // changed ranges should be ordered or in priority queue
-        final LinkedList<Block> changedRanges = new LinkedList<>(changedRangesList);
-        final LinkedList<Block> allocatedRanges = new LinkedList<>(allocatedRangesList);
-        final LinkedList<Block> backupRanges = new LinkedList<>();
-        while (!allocatedRanges.isEmpty() && !changedRanges.isEmpty()) {
-            // get the first range
-            final Block changedRange = changedRanges.peekFirst();
-            final Block allocatedRange = allocatedRanges.peekFirst();
-            final Block backupRange = getOverlap(changedRange, allocatedRange);
-            if (backupRange != null) {
-                backupRanges.push(backupRange);
-            }
-            // pop the least one
-            if (changedRange.getLastBlock() < allocatedRange.getLastBlock()) {
-                changedRanges.removeFirst();
-            } else {
-                allocatedRanges.removeFirst();
-            }
-        }
-
+        final ExtentSet backupRanges = ExtentSet.fromBlocks(changedRangesList).intersect(allocatedRanges);
         if (this.logger.isLoggable(Level.CONFIG)) {
-            this.logger.config("List<Block>, List<Block> - end"); //$NON-NLS-1$
+            this.logger.config("List<Block>, ExtentSet - end"); //$NON-NLS-1$
         }
         return backupRanges;
     }
@@ -832,34 +872,6 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
         return this.logger;
     }
 
-    private Block getOverlap(final Block changedRange, final Block allocatedRanges) {
-        if (this.logger.isLoggable(Level.CONFIG)) {
-            this.logger.config("Block, Block - start"); //$NON-NLS-1$
-        }
-        Block returnBlock = null;
-        if (changedRange.getBegin() < allocatedRanges.getBegin()) {
-            if (changedRange.getLastBlock() <= allocatedRanges.getBegin()) {
-                // no overlap
-
-            } else {
-                returnBlock = new Block(allocatedRanges.getBegin(),
-                        Math.min(changedRange.getLastBlock(), allocatedRanges.getLastBlock()));
-
-            }
-        } else {
-            if (changedRange.getBegin() < allocatedRanges.getLastBlock()) {
-                returnBlock = new Block(Math.max(changedRange.getBegin(), allocatedRanges.getBegin()),
-                        Math.min(changedRange.getLastBlock(), allocatedRanges.getLastBlock()));
-
-            }
-        }
-
-        if (this.logger.isLoggable(Level.CONFIG)) {
-            this.logger.config("Block, Block - end"); //$NON-NLS-1$
-        }
-        return returnBlock;
-    }
-
     private void manageEmptyBlocksList(final CoreResultActionDiskBackup radb) throws CoreResultActionException {
         if (this.logger.isLoggable(Level.CONFIG)) {
             this.logger.config("CoreResultActionDiskBackup - start"); //$NON-NLS-1$
@@ -900,39 +912,33 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
         }
     }
 
-    private int normalizeBlocks(final CoreResultActionDiskBackup radb, final List<Block> src,
-            final List<BasicBlockInfo> dst, final int maxBlockSize) {
-        if (this.logger.isLoggable(Level.CONFIG)) {
-            this.logger.config("CoreResultActionDiskBackup, List<Block>, List<RestoreBlock>, int - start"); //$NON-NLS-1$
+    /**
+     * Create the extent coalescer using the global settings. The target size is
+     * capped to the profile max block size
+     *
+     * @param maxSectorsXBlock max block size in sectors
+     * @return the coalescer
+     */
+    private ExtentCoalescer newExtentCoalescer(final int maxSectorsXBlock) {
+        final long gapSectors = (CoreGlobalSettings.getExtentCoalesceGapKb() * 1024L) / jDiskLibConst.SECTOR_SIZE;
+        long targetSectors = (CoreGlobalSettings.getExtentCoalesceTargetSizeMb() * 1024L * 1024L)
+                / jDiskLibConst.SECTOR_SIZE;
+        if ((targetSectors <= 0) || (targetSectors > maxSectorsXBlock)) {
+            targetSectors = maxSectorsXBlock;
         }
-        final TreeMap<Long, Block> d = new TreeMap<>();
-        for (final Block originalBlock : src) {
-            if (originalBlock.length > maxBlockSize) {
-                long len = originalBlock.length;
-                long offset = originalBlock.offset;
-
-                while (len > 0) {
-                    final Block b = new Block();
-                    b.length = Math.min(len, maxBlockSize);
-                    b.offset = offset;
-                    d.put(offset, b);
-                    len -= maxBlockSize;
-                    offset = b.getLastBlock() + 1;
-                }
-
-            } else {
-                d.put(originalBlock.offset, originalBlock);
-            }
+        return new ExtentCoalescer(gapSectors, targetSectors);
+    }
 
+    private int normalizeBlocks(final CoreResultActionDiskBackup radb, final ExtentSet src,
+            final List<BasicBlockInfo> dst, final int maxBlockSize) {
+        if (this.logger.isLoggable(Level.CONFIG)) {
+            this.logger.config("CoreResultActionDiskBackup, ExtentSet, List<RestoreBlock>, int - start"); //$NON-NLS-1$
         }
+        final ExtentSet d = src.split(maxBlockSize);
         final int extension = d.size() - src.size();
-        int index = 0;
-        for (final Entry<Long, Block> entry : d.entrySet()) {
-            dst.add(new BasicBlockInfo(entry.getValue(), radb, index));
-            ++index;
-        }
+        d.forEach((start, length) -> dst.add(new BasicBlockInfo(start, length, radb, dst.size())));
         if (this.logger.isLoggable(Level.CONFIG)) {
-            this.logger.config("CoreResultActionDiskBackup, List<Block>, List<RestoreBlock>, int - end"); //$NON-NLS-1$
+            this.logger.config("CoreResultActionDiskBackup, ExtentSet, List<RestoreBlock>, int - end"); //$NON-NLS-1$
         }
         return extension;
 
@@ -1006,13 +1012,13 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
         }
     }
 
-    private ArrayList<Block> queryAllocatedBlock(final DiskHandle diskHandle, final JVmdkInfo vmdkInfo)
+    private ExtentSet queryAllocatedBlock(final DiskHandle diskHandle, final JVmdkInfo vmdkInfo)
             throws JVixException {
         if (this.logger.isLoggable(Level.CONFIG)) {
             this.logger.config("DiskHandle, JVmdkInfo - start"); //$NON-NLS-1$
         }
 
-        final ArrayList<Block> vixBlocks = new ArrayList<>();
+        final ExtentSet vixBlocks = new ExtentSet();
         long offset = 0;
         final long chunkSize = jDiskLibConst.MIN_CHUNK_SIZE;
         final long capacity = vmdkInfo.getCapacityInSectors();
@@ -1036,7 +1042,9 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
                 throw new JVixException(vddkCallResult, msg);
             }
 
-            vixBlocks.addAll(blockList);
+            for (final Block block : blockList) {
+                vixBlocks.add(block.offset, block.length);
+            }
 
             numChunk -= numChunkToQuery;
             offset += numChunkToQuery * chunkSize;
@@ -1047,10 +1055,7 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
          */
         final long unalignedPart = capacity % chunkSize;
         if (unalignedPart > 0) {
-            final Block block = new Block();
-            block.offset = offset;
-            block.length = unalignedPart;
-            vixBlocks.add(block);
+            vixBlocks.add(offset, unalignedPart);
         }
 
         if (this.logger.isLoggable(Level.CONFIG)) {
@@ -1080,7 +1085,7 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
      * @throws com.vmware.vim25.InvalidStateFaultMsg
      * @throws JVixException
      */
-    private List<Block> queryBlock(final CoreResultActionDiskBackup radb,
+    private ExtentSet queryBlock(final CoreResultActionDiskBackup radb,
             final List<Block> blockListQueryChangedDiskAreas)
             throws FileFaultFaultMsg, NotFoundFaultMsg, RuntimeFaultFaultMsg, com.vmware.vslm.FileFaultFaultMsg,
             InvalidArgumentFaultMsg, InvalidDatastoreFaultMsg, InvalidStateFaultMsg, com.vmware.vslm.NotFoundFaultMsg,
@@ -1089,18 +1094,15 @@ public class Jvddk extends SJvddk implements IJvddkBasic {
         if (radb.getBackupMode() == BackupMode.INCREMENTAL) {
 
             if ((blockListQueryChangedDiskAreas != null)) {
-                final List<Block> blockList = new ArrayList<>();
                 if (isNoNfcSession() || "san".equalsIgnoreCase(radb.getUsedTransportModes())
                         || (!blockListQueryChangedDiskAreas.isEmpty())
                         || !CoreGlobalSettings.useQueryAllocatedBlocksForIncremental()) {
-                    blockList.addAll(blockListQueryChangedDiskAreas);
+                    return ExtentSet.fromBlocks(blockListQueryChangedDiskAreas);
                 } else {
-                    final List<Block> blockListQueryAllocatedBlock = queryAllocatedBlock(radb.getDiskHandle(),
+                    final ExtentSet blockListQueryAllocatedBlock = queryAllocatedBlock(radb.getDiskHandle(),
                             radb.getJVmdkInfo());
-                    blockList.addAll(
-                            getIncrementalSectorsRange(blockListQueryChangedDiskAreas, blockListQueryAllocatedBlock));
+                    return getIncrementalSectorsRange(blockListQueryChangedDiskAreas, blockListQueryAllocatedBlock);
                 }
-                return blockList;
             } else {
                 radb.setQueryBlocksOption(QueryBlocksOption.CHANGED_AREAS);
             }
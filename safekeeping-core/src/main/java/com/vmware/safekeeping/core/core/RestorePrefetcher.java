@@ -0,0 +1,344 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.vmware.safekeeping.common.IBlockInfoProperties;
+import com.vmware.safekeeping.common.Utility;
+import com.vmware.safekeeping.core.control.info.ExBlockInfo;
+import com.vmware.safekeeping.core.control.target.ITargetOperation;
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
+import com.vmware.safekeeping.core.type.VmbkThreadFactory;
+
+/**
+ * Read ahead of the blocks of a disk restore.
+ *
+ * The blocks are fetched from the target in disk offset order (the order of
+ * the consolidated block list) by a small pool of threads, ahead of the restore
+ * threads consuming them. At most {@code depth} blocks are in flight or waiting
+ * to be taken and the content waiting to be taken is bounded in bytes, so a
+ * slow writer stops the read ahead instead of filling the heap. A block not yet
+ * fetched when its restore thread asks for it is dropped from the read ahead
+ * and read directly by the restore thread.
+ */
+final class RestorePrefetcher implements AutoCloseable {
+
+    private enum State {
+        PENDING, FETCHING, READY, FAILED, TAKEN, SKIPPED
+    }
+
+    private static final class Slot {
+        private final ExBlockInfo blockInfo;
+        private State state;
+        private byte[] content;
+
+        private Slot(final ExBlockInfo blockInfo) {
+            this.blockInfo = blockInfo;
+            this.state = State.PENDING;
+        }
+    }
+
+    private static final long TAKE_TIMEOUT_MS = 60000L;
+
+    private final Logger logger;
+    private final ITargetOperation target;
+    private final Slot[] slots;
+    private final Map<ExBlockInfo, Slot> index;
+    private final int threads;
+    private final int depth;
+    private final long maxBufferedBytes;
+    private ExecutorService executor;
+    private int next;
+    private int inFlight;
+    private long bufferedBytes;
+    private boolean closed;
+    private long used;
+    private long missed;
+    private long failed;
+    private long waitTime;
+
+    /**
+     * @param target
+     * @param blocks    blocks to restore sorted by offset
+     * @param dedup     plan only the first block of every digest (the following
+     *                  ones are served by the decoded block cache)
+     * @param threads   number of concurrent fetches
+     * @param depth     maximum number of blocks fetched ahead of the restore
+     *                  threads
+     * @param bufferMb  maximum size of the content fetched and not yet taken
+     * @param logger
+     */
+    RestorePrefetcher(final ITargetOperation target, final List<ExBlockInfo> blocks, final boolean dedup,
+            final int threads, final int depth, final int bufferMb, final Logger logger) {
+        this.logger = logger;
+        this.target = target;
+        this.threads = Math.max(1, threads);
+        this.depth = Math.max(this.threads, depth);
+        this.maxBufferedBytes = Math.max(1L, bufferMb) * Utility.ONE_MBYTES;
+        final List<Slot> plan = new ArrayList<>(blocks.size());
+        final Set<String> planned = new HashSet<>();
+        this.index = new IdentityHashMap<>();
+        for (final ExBlockInfo blockInfo : blocks) {
+            if (blockInfo.isZero() || StringUtils.isEmpty(blockInfo.getSha1())
+                    || (dedup && !planned.add(blockInfo.getSha1()))) {
+                continue;
+            }
+            final Slot slot = new Slot(blockInfo);
+            plan.add(slot);
+            this.index.put(blockInfo, slot);
+        }
+        this.slots = plan.toArray(new Slot[0]);
+    }
+
+    /**
+     * Create a prefetcher using the global settings
+     *
+     * @param target
+     * @param blocks blocks to restore sorted by offset
+     * @param dedup  plan only the first block of every digest
+     * @param logger
+     * @return the prefetcher or null if the read ahead is disabled
+     */
+    static RestorePrefetcher create(final ITargetOperation target, final List<ExBlockInfo> blocks,
+            final boolean dedup, final Logger logger) {
+        final int threads = CoreGlobalSettings.getRestorePrefetchThreads();
+        if ((threads <= 0) || blocks.isEmpty()) {
+            return null;
+        }
+        return new RestorePrefetcher(target, blocks, dedup, threads, CoreGlobalSettings.getRestorePrefetchDepth(),
+                CoreGlobalSettings.getRestorePrefetchBufferMb(), logger);
+    }
+
+    /**
+     * Stop the read ahead and drop the content not yet taken
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            for (final Slot slot : this.slots) {
+                if (slot.state == State.READY) {
+                    slot.state = State.SKIPPED;
+                }
+                slot.content = null;
+            }
+            this.bufferedBytes = 0;
+            notifyAll();
+        }
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The block has been obtained somewhere else: release its read ahead
+     *
+     * @param blockInfo
+     */
+    void discard(final ExBlockInfo blockInfo) {
+        final Slot slot = this.index.get(blockInfo);
+        if (slot != null) {
+            synchronized (this) {
+                release(slot, State.SKIPPED);
+            }
+        }
+    }
+
+    private void fetch() {
+        while (true) {
+            final Slot slot;
+            synchronized (this) {
+                try {
+                    while (!this.closed && (this.next < this.slots.length)
+                            && ((this.inFlight >= this.depth) || (this.bufferedBytes >= this.maxBufferedBytes))) {
+                        wait();
+                    }
+                } catch (final InterruptedException e) {
+                    // closed - Restore interrupted state...
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                slot = nextPending();
+                if (slot == null) {
+                    return;
+                }
+                slot.state = State.FETCHING;
+                ++this.inFlight;
+            }
+            byte[] content = null;
+            try {
+                content = this.target.getDumpContent(slot.blockInfo);
+            } catch (final IOException e) {
+                if (this.logger.isLoggable(Level.FINE)) {
+                    this.logger.fine(String.format("Read ahead of block %s failed: %s", slot.blockInfo.getKey(),
+                            e.getMessage()));
+                }
+            }
+            synchronized (this) {
+                if (this.closed || (slot.state != State.FETCHING)) {
+                    // closed or skipped while fetching
+                    --this.inFlight;
+                } else if (content != null) {
+                    slot.state = State.READY;
+                    slot.content = content;
+                    this.bufferedBytes += content.length;
+                } else {
+                    slot.state = State.FAILED;
+                    --this.inFlight;
+                    ++this.failed;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    public synchronized long getFailed() {
+        return this.failed;
+    }
+
+    public synchronized long getMissed() {
+        return this.missed;
+    }
+
+    public int getPlanned() {
+        return this.slots.length;
+    }
+
+    public synchronized long getUsed() {
+        return this.used;
+    }
+
+    /**
+     * @return time spent by the restore threads waiting for a block in flight
+     *         (nanoseconds)
+     */
+    public synchronized long getWaitTime() {
+        return this.waitTime;
+    }
+
+    private Slot nextPending() {
+        while (!this.closed && (this.next < this.slots.length)) {
+            final Slot slot = this.slots[this.next++];
+            if (slot.state == State.PENDING) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    private void release(final Slot slot, final State state) {
+        switch (slot.state) {
+        case PENDING:
+            ++this.missed;
+            slot.state = state;
+            break;
+        case READY:
+            this.bufferedBytes -= slot.content.length;
+            slot.content = null;
+            --this.inFlight;
+            slot.state = state;
+            notifyAll();
+            break;
+        case FETCHING:
+            slot.state = state;
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Start the read ahead
+     */
+    void start() {
+        if (this.slots.length > 0) {
+            final int size = Math.min(this.threads, this.slots.length);
+            this.executor = Executors.newFixedThreadPool(size, new VmbkThreadFactory("restore-prefetch", true, 0));
+            for (int i = 0; i < size; i++) {
+                this.executor.execute(this::fetch);
+            }
+        }
+    }
+
+    /**
+     * Take the stored content of a block. If the block is in flight wait for it.
+     *
+     * @param blockInfo
+     * @return the content as stored on the target or null if the block has to be
+     *         read directly
+     * @throws InterruptedException
+     */
+    byte[] take(final ExBlockInfo blockInfo) throws InterruptedException {
+        final Slot slot = this.index.get(blockInfo);
+        if (slot == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (slot.state == State.FETCHING) {
+                final long start = System.nanoTime();
+                final long deadline = start + TimeUnit.MILLISECONDS.toNanos(TAKE_TIMEOUT_MS);
+                long remaining = deadline - start;
+                while ((slot.state == State.FETCHING) && !this.closed && (remaining > 0)) {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    remaining = deadline - System.nanoTime();
+                }
+                this.waitTime += System.nanoTime() - start;
+            }
+            if (slot.state == State.READY) {
+                final byte[] content = slot.content;
+                release(slot, State.TAKEN);
+                ++this.used;
+                return content;
+            }
+            release(slot, State.SKIPPED);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Utility.LOCALE,
+                "Read ahead planned:%d used:%d missed:%d failed:%d wait:%.2fs threads:%d depth:%d buffer:%dMB",
+                this.slots.length, this.used, this.missed, this.failed,
+                this.waitTime * IBlockInfoProperties.NANO_TO_SEC_MULTIPLIER, this.threads, this.depth,
+                this.maxBufferedBytes / Utility.ONE_MBYTES);
+    }
+}
@@ -41,6 +41,7 @@ import com.vmware.safekeeping.core.command.interactive.AbstractRestoreDiskIntera
 import com.vmware.safekeeping.core.command.results.CoreResultActionDiskRestore;
 import com.vmware.safekeeping.core.control.TargetBuffer;
 import com.vmware.safekeeping.core.control.info.ExBlockInfo;
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
 import com.vmware.safekeeping.core.type.ManagedFcoEntityInfo;
 
 class RestoreThread extends AbstractBlockThread implements IRestoreThread {
@@ -59,6 +60,9 @@ class RestoreThread extends AbstractBlockThread implements IRestoreThread {
 
     @Override
     public Boolean call() {
+        if (this.blockInfo.isZero() && CoreGlobalSettings.isSkipZeroBlocksOnRestore()) {
+            return skipZeroBlock();
+        }
         for (;;) {
             try {
                 final Integer bufferIndex = waitForBuffer(this.blockInfo);
@@ -87,25 +91,126 @@ class RestoreThread extends AbstractBlockThread implements IRestoreThread {
 
     private boolean run(final Integer bufferIndex) {
         boolean result = false;
+        boolean writeBehind = false;
         if (bufferIndex != null) {
             final TargetBuffer buffer = this.buffers.getBuffer(bufferIndex);
+            final VddkAsyncWriter asyncWriter = this.buffers.getAsyncWriter();
+            final RestoreWriteOrder writeOrder = this.buffers.getWriteOrder();
             try {
-                result = (this.target.openGetDump(this.blockInfo, buffer)
-                        && computeOpenGetDump(this.blockInfo, buffer, true) && vddkWrite(bufferIndex, this.tentative));
+                if (this.blockInfo.isZero()) {
+                    buffer.zeroOutputBuffer(this.blockInfo.getStreamLength());
+                    result = true;
+                } else {
+                    result = getDump(this.buffers, this.blockInfo, buffer, true);
+                }
+                if (result) {
+                    if (writeOrder != null) {
+                        writeOrder.awaitTurn(this.blockInfo);
+                    }
+                    if (asyncWriter != null) {
+                        final long dliResult = vddkWriteBehind(asyncWriter, bufferIndex);
+                        writeBehind = dliResult == jDiskLibConst.VIX_ASYNC;
+                        result = writeBehind || (dliResult == jDiskLibConst.VIX_OK);
+                    } else {
+                        result = vddkWrite(bufferIndex, this.tentative);
+                    }
+                }
             } catch (final BadPaddingException | IllegalBlockSizeException | IOException e) {
                 Utility.logWarning(this.logger, e);
                 this.blockInfo.setReason(getEntity(), e);
+            } catch (final InterruptedException e) {
+                this.blockInfo.setReason(getEntity(), e);
+                this.logger.log(Level.WARNING, "Interrupted!", e);
+                // Restore interrupted state...
+                Thread.currentThread().interrupt();
             } finally {
+                if (writeOrder != null) {
+                    writeOrder.written(this.blockInfo);
+                }
                 result &= this.target.closeGetDump(this.blockInfo, bufferIndex);
-                this.buffers.getBuffer(bufferIndex).getAvailable().set(true);
-                this.blockInfo.setFailed(!result);
-                this.radr.addDumpInfo(this.blockInfo.getIndex(), this.blockInfo);
-                reportResult(this.blockInfo, result);
+                this.buffers.releaseBuffer(bufferIndex);
+                if (!writeBehind) {
+                    this.blockInfo.setFailed(!result);
+                    this.radr.addDumpInfo(this.blockInfo.getIndex(), this.blockInfo);
+                    reportResult(this.blockInfo, result);
+                }
             }
         }
         return result;
     }
 
+    /**
+     * The disk is created by the restore and reads zeros where nothing has been
+     * written, a zero block doesn't need any write
+     *
+     * @return always true
+     */
+    private boolean skipZeroBlock() {
+        this.blockInfo.setStartTime(System.nanoTime());
+        this.blockInfo.setEndTime(this.blockInfo.getStartTime());
+        this.blockInfo.setFailed(false);
+        if (this.buffers.getWriteOrder() != null) {
+            this.buffers.getWriteOrder().written(this.blockInfo);
+        }
+        this.radr.addDumpInfo(this.blockInfo.getIndex(), this.blockInfo);
+        reportResult(this.blockInfo, true);
+        return true;
+    }
+
+    /**
+     * Queue the block to the write-behind stage. The TargetBuffer is free as soon
+     * as the data are copied in the aligned buffer. The block result is reported
+     * by {@link #writeCompleted(ExBlockInfo, long)}
+     *
+     * @param asyncWriter
+     * @param bufferIndex
+     * @return VDDK error code, VIX_ASYNC if the write is queued
+     * @throws InterruptedException
+     */
+    private long vddkWriteBehind(final VddkAsyncWriter asyncWriter, final int bufferIndex)
+            throws InterruptedException {
+        long dliResult = jDiskLibConst.VIX_OK;
+        if (this.buffers.isRunning()) {
+            dliResult = asyncWriter.write(this.blockInfo, this.buffers.getBuffer(bufferIndex).getOutputBuffer(),
+                    this::writeCompleted);
+            if ((dliResult != jDiskLibConst.VIX_ASYNC) && (dliResult != jDiskLibConst.VIX_OK)) {
+                this.blockInfo.setReason(getEntity(), SJvddk.dli.getErrorText(dliResult, null));
+                final String msg = String.format("Index:%d Buffer:%d Tentative:%d  Error:%s",
+                        this.blockInfo.getIndex(), bufferIndex, this.tentative, this.blockInfo.getReason());
+                this.logger.warning(msg);
+            }
+        }
+        return dliResult;
+    }
+
+    /**
+     * Called on the VDDK callback thread when a block written behind completes,
+     * after the tentatives of {@link VddkAsyncWriter}. Completions arrive out of
+     * order.
+     *
+     * @param blockInfoOut
+     * @param dliResult
+     */
+    private void writeCompleted(final ExBlockInfo blockInfoOut, final long dliResult) {
+        final boolean result = dliResult == jDiskLibConst.VIX_OK;
+        if (result) {
+            if (this.logger.isLoggable(Level.FINE)) {
+                final String msg = String.format("Index:%d size:%d  Write behind on handle %d start:%d nSectors:%d",
+                        blockInfoOut.getIndex(), blockInfoOut.getSizeInBytes(), this.diskHandle.getHandle(),
+                        blockInfoOut.getOffset(), blockInfoOut.getLength());
+                this.logger.fine(msg);
+            }
+        } else {
+            blockInfoOut.setReason(getEntity(), SJvddk.dli.getErrorText(dliResult, null));
+            final String msg = String.format("Index:%d Write behind Error:%s", blockInfoOut.getIndex(),
+                    blockInfoOut.getReason());
+            this.logger.warning(msg);
+        }
+        blockInfoOut.setFailed(!result);
+        this.radr.addDumpInfo(blockInfoOut.getIndex(), blockInfoOut);
+        reportResult(blockInfoOut, result);
+    }
+
     private boolean vddkWrite(final int bufferIndex, final int tentative) {
         if (this.logger.isLoggable(Level.CONFIG)) {
             this.logger.config("int - start"); //$NON-NLS-1$
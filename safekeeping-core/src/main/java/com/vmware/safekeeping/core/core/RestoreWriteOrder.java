@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.safekeeping.common.IBlockInfoProperties;
+import com.vmware.safekeeping.common.Utility;
+import com.vmware.safekeeping.core.control.info.ExBlockInfo;
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
+
+/**
+ * Bounded reorder buffer of the restore writes.
+ *
+ * The restore threads get their blocks out of order (read ahead, block cache,
+ * target latency). A block ready to be written waits until the blocks before it
+ * in disk offset order have been written, so the writes reach VDDK
+ * sequentially. At most {@code window} blocks wait at the same time, each one
+ * holding its TargetBuffer, and none of them longer than the timeout: a block
+ * finding the window full or timing out is written out of order. A block before
+ * it that fails, retries or never gets a buffer cannot stall the restore.
+ */
+final class RestoreWriteOrder implements AutoCloseable {
+
+    private final Map<ExBlockInfo, Integer> positions;
+    private final boolean[] written;
+    private final int window;
+    private final long timeoutNanos;
+    private int next;
+    private int waiting;
+    private boolean closed;
+    private long inOrder;
+    private long outOfOrder;
+    private long waitTime;
+
+    /**
+     * @param blocks    blocks to restore sorted by offset
+     * @param window    maximum number of blocks waiting for their turn
+     * @param timeoutMs maximum wait of a block
+     */
+    RestoreWriteOrder(final List<ExBlockInfo> blocks, final int window, final long timeoutMs) {
+        this.positions = new IdentityHashMap<>(blocks.size());
+        for (final ExBlockInfo blockInfo : blocks) {
+            this.positions.put(blockInfo, this.positions.size());
+        }
+        this.written = new boolean[blocks.size()];
+        this.window = window;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    }
+
+    /**
+     * Create the reorder buffer using the global settings
+     *
+     * @param blocks  blocks to restore sorted by offset
+     * @param buffers number of TargetBuffers of the restore, the window leaves
+     *                at least one of them to the block expected next
+     * @return the reorder buffer or null if disabled
+     */
+    static RestoreWriteOrder create(final List<ExBlockInfo> blocks, final int buffers) {
+        final int window = Math.min(CoreGlobalSettings.getRestoreWriteReorderWindow(), buffers - 1);
+        if ((window <= 0) || (blocks.size() < 2)) {
+            return null;
+        }
+        return new RestoreWriteOrder(blocks, window, CoreGlobalSettings.getRestoreWriteReorderTimeoutMs());
+    }
+
+    /**
+     * Wait for the blocks before this one to be written. Return immediately if
+     * the window is full, return on timeout or when closed.
+     *
+     * @param blockInfo
+     * @throws InterruptedException
+     */
+    void awaitTurn(final ExBlockInfo blockInfo) throws InterruptedException {
+        final Integer position = this.positions.get(blockInfo);
+        if (position == null) {
+            return;
+        }
+        synchronized (this) {
+            if ((position > this.next) && !this.closed && (this.waiting < this.window)) {
+                ++this.waiting;
+                final long start = System.nanoTime();
+                final long deadline = start + this.timeoutNanos;
+                try {
+                    long remaining = this.timeoutNanos;
+                    while ((position > this.next) && !this.closed && (remaining > 0)) {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                        remaining = deadline - System.nanoTime();
+                    }
+                } finally {
+                    --this.waiting;
+                    this.waitTime += System.nanoTime() - start;
+                }
+            }
+            if (position > this.next) {
+                ++this.outOfOrder;
+            } else {
+                ++this.inOrder;
+            }
+        }
+    }
+
+    /**
+     * Wake up the blocks still waiting, they are written out of order
+     */
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        notifyAll();
+    }
+
+    public synchronized long getInOrder() {
+        return this.inOrder;
+    }
+
+    public synchronized long getOutOfOrder() {
+        return this.outOfOrder;
+    }
+
+    /**
+     * @return time spent by the restore threads waiting for their turn
+     *         (nanoseconds)
+     */
+    public synchronized long getWaitTime() {
+        return this.waitTime;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Utility.LOCALE, "Write order in order:%d out of order:%d wait:%.2fs window:%d",
+                this.inOrder, this.outOfOrder, this.waitTime * IBlockInfoProperties.NANO_TO_SEC_MULTIPLIER,
+                this.window);
+    }
+
+    /**
+     * The block has been written, skipped or has failed: the blocks after it
+     * don't have to wait for it anymore
+     *
+     * @param blockInfo
+     */
+    void written(final ExBlockInfo blockInfo) {
+        final Integer position = this.positions.get(blockInfo);
+        if (position == null) {
+            return;
+        }
+        synchronized (this) {
+            this.written[position] = true;
+            final int previous = this.next;
+            while ((this.next < this.written.length) && this.written[this.next]) {
+                ++this.next;
+            }
+            if (this.next != previous) {
+                notifyAll();
+            }
+        }
+    }
+}
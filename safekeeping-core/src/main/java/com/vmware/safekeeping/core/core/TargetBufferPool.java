@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import com.vmware.safekeeping.core.control.TargetBuffer;
+
+/**
+ * Blocking pool of TargetBuffer.
+ *
+ * Free buffers are kept as indexes in a bounded blocking queue: a thread
+ * waiting for a buffer is signalled as soon as another one releases a buffer,
+ * no polling involved. The pool keeps wait time and occupancy counters for the
+ * final report.
+ */
+class TargetBufferPool {
+
+    /**
+     * Max time a waiting thread sleeps before checking if the operation is still
+     * running. A release wakes up the waiting thread immediately.
+     */
+    private static final long RUNNING_CHECK_INTERVAL_MILLIS = 200;
+
+    private final TargetBuffer[] buffers;
+
+    private final BlockingQueue<Integer> freeIndexes;
+
+    private final AtomicLong acquisitions;
+
+    private final AtomicLong contendedAcquisitions;
+
+    private final AtomicLong totalWaitNanos;
+
+    private final AtomicLong maxWaitNanos;
+
+    private final AtomicInteger inUse;
+
+    private final AtomicInteger peakInUse;
+
+    TargetBufferPool(final TargetBuffer[] buffers) {
+        this.buffers = buffers;
+        this.freeIndexes = new ArrayBlockingQueue<>(buffers.length);
+        for (int i = 0; i < buffers.length; i++) {
+            this.freeIndexes.add(i);
+        }
+        this.acquisitions = new AtomicLong();
+        this.contendedAcquisitions = new AtomicLong();
+        this.totalWaitNanos = new AtomicLong();
+        this.maxWaitNanos = new AtomicLong();
+        this.inUse = new AtomicInteger();
+        this.peakInUse = new AtomicInteger();
+    }
+
+    /**
+     * Take a free buffer. Wait until a buffer is released or running returns
+     * false
+     *
+     * @param running
+     * @return the buffer index or null if the operation is not running anymore
+     * @throws InterruptedException
+     */
+    Integer acquire(final BooleanSupplier running) throws InterruptedException {
+        final long startTime = System.nanoTime();
+        Integer index = this.freeIndexes.poll();
+        if (index == null) {
+            this.contendedAcquisitions.incrementAndGet();
+            while ((index == null) && running.getAsBoolean()) {
+                index = this.freeIndexes.poll(RUNNING_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (index != null) {
+            if (!running.getAsBoolean()) {
+                this.freeIndexes.add(index);
+                return null;
+            }
+            this.buffers[index].getAvailable().set(false);
+            final long waitNanos = System.nanoTime() - startTime;
+            this.acquisitions.incrementAndGet();
+            this.totalWaitNanos.addAndGet(waitNanos);
+            this.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            this.peakInUse.accumulateAndGet(this.inUse.incrementAndGet(), Math::max);
+        }
+        return index;
+    }
+
+    /**
+     * @return number of acquisitions
+     */
+    long getAcquisitions() {
+        return this.acquisitions.get();
+    }
+
+    /**
+     * @return average wait time in nanoseconds
+     */
+    long getAverageWaitNanos() {
+        final long count = this.acquisitions.get();
+        return (count == 0) ? 0 : (this.totalWaitNanos.get() / count);
+    }
+
+    TargetBuffer getBuffer(final int index) {
+        return this.buffers[index];
+    }
+
+    /**
+     * @return number of acquisitions that found the pool empty
+     */
+    long getContendedAcquisitions() {
+        return this.contendedAcquisitions.get();
+    }
+
+    /**
+     * @return buffers currently in use
+     */
+    int getInUse() {
+        return this.inUse.get();
+    }
+
+    int getLength() {
+        return this.buffers.length;
+    }
+
+    /**
+     * @return max wait time in nanoseconds
+     */
+    long getMaxWaitNanos() {
+        return this.maxWaitNanos.get();
+    }
+
+    /**
+     * @return max number of buffers in use at the same time
+     */
+    int getPeakInUse() {
+        return this.peakInUse.get();
+    }
+
+    /**
+     * @return total wait time in nanoseconds
+     */
+    long getTotalWaitNanos() {
+        return this.totalWaitNanos.get();
+    }
+
+    /**
+     * Give back a buffer. Releasing a buffer already free has no effect
+     *
+     * @param index
+     */
+    void release(final int index) {
+        if (this.buffers[index].getAvailable().compareAndSet(false, true)) {
+            this.inUse.decrementAndGet();
+            this.freeIndexes.add(index);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "Buffers pool size:%d acquisitions:%d contended:%d wait total:%dms avg:%dus max:%dms peak in use:%d",
+                this.buffers.length, getAcquisitions(), getContendedAcquisitions(),
+                TimeUnit.NANOSECONDS.toMillis(getTotalWaitNanos()),
+                TimeUnit.NANOSECONDS.toMicros(getAverageWaitNanos()), TimeUnit.NANOSECONDS.toMillis(getMaxWaitNanos()),
+                getPeakInUse());
+    }
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+import com.vmware.jvix.AsyncIOListener;
+import com.vmware.jvix.JVixException;
+import com.vmware.jvix.jDiskLib.DiskHandle;
+import com.vmware.jvix.jDiskLibConst;
+
+/**
+ * Asynchronous VDDK reader for a single DiskHandle.
+ *
+ * Keeps up to queueDepth readAsync requests in flight on the disk, each one on
+ * its own aligned buffer and completed through an AsyncIOListener. The calling
+ * thread gets the data back in its TargetBuffer input buffer and goes on with
+ * the hash/compress/upload stages while the other slots keep the transport
+ * busy.
+ */
+class VddkAsyncReader extends AbstractVddkAsyncIo {
+
+    /**
+     * Completion of a single readAsync request
+     */
+    private static class AsyncReadRequest implements AsyncIOListener {
+        private final CountDownLatch done;
+        private volatile long errCode;
+
+        AsyncReadRequest() {
+            this.done = new CountDownLatch(1);
+            this.errCode = jDiskLibConst.VIX_OK;
+        }
+
+        long await() throws InterruptedException {
+            this.done.await();
+            return this.errCode;
+        }
+
+        /**
+         * Wait the completion ignoring interruptions. Used when the native layer
+         * still owns the buffer and the request cannot be abandoned.
+         */
+        long awaitUninterruptibly() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        this.done.await();
+                        return this.errCode;
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void onComplete(final long errCode) {
+            this.errCode = errCode;
+            this.done.countDown();
+        }
+    }
+
+    /**
+     *
+     * @param diskHandle
+     * @param queueDepth max number of readAsync in flight on the disk
+     * @param bufferSize size in bytes of every aligned buffer (max block size)
+     * @param logger
+     * @throws JVixException if the native buffers cannot be allocated
+     */
+    VddkAsyncReader(final DiskHandle diskHandle, final int queueDepth, final int bufferSize, final Logger logger)
+            throws JVixException {
+        super(diskHandle, queueDepth, bufferSize, logger);
+    }
+
+    /**
+     * Read numSectors starting from startSector into destination. The call
+     * blocks until one of the aligned buffers is free and the request is
+     * completed by VDDK.
+     *
+     * @param startSector
+     * @param numSectors
+     * @param destination
+     * @return VDDK error code
+     * @throws InterruptedException
+     */
+    long read(final long startSector, final long numSectors, final byte[] destination) throws InterruptedException {
+        final int sizeInBytes = (int) (numSectors * jDiskLibConst.SECTOR_SIZE);
+        checkRequestSize(sizeInBytes);
+        final ByteBuffer buffer = this.freeBuffers.take();
+        try {
+            buffer.clear();
+            final AsyncReadRequest request = new AsyncReadRequest();
+            long vddkCallResult = SJvddk.dli.readAsync(this.diskHandle, startSector, buffer, (int) numSectors,
+                    request);
+            if (vddkCallResult == jDiskLibConst.VIX_ASYNC) {
+                try {
+                    vddkCallResult = request.await();
+                } catch (final InterruptedException e) {
+                    // the buffer is still owned by VDDK
+                    request.awaitUninterruptibly();
+                    throw e;
+                }
+            }
+            if (vddkCallResult == jDiskLibConst.VIX_OK) {
+                buffer.position(0);
+                buffer.limit(sizeInBytes);
+                buffer.get(destination, 0, sizeInBytes);
+            }
+            return vddkCallResult;
+        } finally {
+            this.freeBuffers.add(buffer);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vmware.jvix.AsyncIOListener;
+import com.vmware.jvix.JVixException;
+import com.vmware.jvix.jDiskLib.DiskHandle;
+import com.vmware.jvix.jDiskLibConst;
+import com.vmware.safekeeping.core.control.info.ExBlockInfo;
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
+import com.vmware.safekeeping.core.type.VmbkThreadFactory;
+
+/**
+ * Write-behind stage of the restore.
+ *
+ * A decoded block is copied in one of the aligned buffers and queued with
+ * writeAsync, then the TargetBuffer is immediately given back so the restore
+ * thread can fetch and decode the next block while VDDK writes the previous
+ * one. At most queueDepth writes are in flight; a new write waits for a free
+ * aligned buffer.
+ *
+ * Writes complete out of order. The pending blocks are tracked by block index
+ * and the result of every block is notified through a WriteCompletion on the
+ * VDDK callback thread. A failed write keeps its aligned buffer and is queued
+ * again, after the retry wait, up to maxBlockOperationRetries tentatives: the
+ * synchronous write cannot be used on the same handle. {@link #drain()} waits
+ * for every pending write and retry and flushes the disk.
+ */
+class VddkAsyncWriter extends AbstractVddkAsyncIo {
+
+    /**
+     * Completion of a block written behind
+     */
+    interface WriteCompletion {
+        void onComplete(ExBlockInfo blockInfo, long errCode);
+    }
+
+    /**
+     * Completion of a single writeAsync request
+     */
+    private class AsyncWriteRequest implements AsyncIOListener {
+        private final ExBlockInfo blockInfo;
+        private final ByteBuffer buffer;
+        private final WriteCompletion completion;
+        private final AtomicBoolean completed;
+        private int tentative;
+
+        AsyncWriteRequest(final ExBlockInfo blockInfo, final ByteBuffer buffer, final WriteCompletion completion) {
+            this.blockInfo = blockInfo;
+            this.buffer = buffer;
+            this.completion = completion;
+            this.completed = new AtomicBoolean(false);
+            this.tentative = 1;
+        }
+
+        /**
+         * Complete the request once. Buffer and pending slot are released before
+         * the notification
+         *
+         * @param errCode
+         * @param notify
+         */
+        void complete(final long errCode, final boolean notify) {
+            if (this.completed.compareAndSet(false, true)) {
+                VddkAsyncWriter.this.pending.remove(this.blockInfo.getIndex());
+                VddkAsyncWriter.this.freeBuffers.add(this.buffer);
+                if (notify) {
+                    if (errCode != jDiskLibConst.VIX_OK) {
+                        VddkAsyncWriter.this.failedWrites.incrementAndGet();
+                    }
+                    this.completion.onComplete(this.blockInfo, errCode);
+                }
+            }
+        }
+
+        @Override
+        public void onComplete(final long errCode) {
+            if ((errCode == jDiskLibConst.VIX_OK) || !retry(errCode)) {
+                complete(errCode, true);
+            }
+        }
+
+        /**
+         * Queue the write again, the aligned buffer still holds the data
+         */
+        private void resubmit() {
+            try {
+                this.buffer.position(0);
+                final long vddkCallResult = SJvddk.dli.writeAsync(VddkAsyncWriter.this.diskHandle,
+                        this.blockInfo.getOffset(), this.buffer, (int) this.blockInfo.getLength(), this);
+                if (vddkCallResult != jDiskLibConst.VIX_ASYNC) {
+                    onComplete(vddkCallResult);
+                }
+            } finally {
+                retryDone();
+            }
+        }
+
+        /**
+         * Schedule a new tentative of a failed write
+         *
+         * @param errCode
+         * @return false if no more tentatives are allowed
+         */
+        private boolean retry(final long errCode) {
+            if ((this.tentative >= VddkAsyncWriter.this.maxRetries) || isClosed()) {
+                return false;
+            }
+            final String msg = String.format("Index:%d Write behind Tentative %d/%d failed Error:%s",
+                    this.blockInfo.getIndex(), this.tentative, VddkAsyncWriter.this.maxRetries,
+                    SJvddk.dli.getErrorText(errCode, null));
+            VddkAsyncWriter.this.logger.warning(msg);
+            ++this.tentative;
+            VddkAsyncWriter.this.retrying.incrementAndGet();
+            try {
+                VddkAsyncWriter.this.retryScheduler.schedule(this::resubmit,
+                        CoreGlobalSettings.getWaitingTimeAfterBlockThreadFailureInMilliSeconds(),
+                        TimeUnit.MILLISECONDS);
+                return true;
+            } catch (final RejectedExecutionException e) {
+                // the writer is closing
+                retryDone();
+                return false;
+            }
+        }
+    }
+
+    private final ConcurrentMap<Integer, ExBlockInfo> pending;
+
+    private final AtomicInteger failedWrites;
+
+    /**
+     * Failed writes waiting for the retry wait before being queued again
+     */
+    private final AtomicInteger retrying;
+
+    private final ScheduledExecutorService retryScheduler;
+
+    private final int maxRetries;
+
+    /**
+     *
+     * @param diskHandle
+     * @param queueDepth max number of writeAsync in flight on the disk
+     * @param bufferSize size in bytes of every aligned buffer (max block size)
+     * @param logger
+     * @throws JVixException if the native buffers cannot be allocated
+     */
+    VddkAsyncWriter(final DiskHandle diskHandle, final int queueDepth, final int bufferSize, final Logger logger)
+            throws JVixException {
+        super(diskHandle, queueDepth, bufferSize, logger);
+        this.pending = new ConcurrentHashMap<>();
+        this.failedWrites = new AtomicInteger();
+        this.retrying = new AtomicInteger();
+        this.maxRetries = CoreGlobalSettings.getMaxBlockOperationRetries();
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                new VmbkThreadFactory(String.format("write-retry-handle:%d", diskHandle.getHandle()), true));
+    }
+
+    /**
+     * Wait until no failed write is waiting to be queued again
+     *
+     * @return true if there was at least one retry to wait for
+     */
+    private boolean awaitRetries() {
+        boolean waited = false;
+        synchronized (this.retrying) {
+            while (this.retrying.get() > 0) {
+                waited = true;
+                try {
+                    this.retrying.wait();
+                } catch (final InterruptedException e) {
+                    this.logger.log(Level.WARNING, "Interrupted!", e);
+                    // Restore interrupted state...
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return waited;
+    }
+
+    @Override
+    public void close() {
+        if (!isClosed()) {
+            drain();
+            this.retryScheduler.shutdownNow();
+            super.close();
+        }
+    }
+
+    /**
+     * Wait for every write in flight or waiting for a retry and flush the disk
+     *
+     * @return true if every write queued so far succeeded
+     */
+    boolean drain() {
+        long vddkCallResult = waitPendingRequests();
+        // a retry queued again can fail and be retried during the wait
+        while (awaitRetries()) {
+            vddkCallResult = waitPendingRequests();
+        }
+        if (!this.pending.isEmpty()) {
+            final String msg = String.format("%d writes still pending after wait on handle %d", this.pending.size(),
+                    this.diskHandle.getHandle());
+            this.logger.warning(msg);
+        }
+        if (this.diskHandle.isValid()) {
+            final long flushResult = SJvddk.dli.flush(this.diskHandle);
+            if (flushResult != jDiskLibConst.VIX_OK) {
+                this.logger.warning(SJvddk.dli.getErrorText(flushResult, null));
+                vddkCallResult = flushResult;
+            }
+        }
+        return (vddkCallResult == jDiskLibConst.VIX_OK) && this.pending.isEmpty() && (this.failedWrites.get() == 0);
+    }
+
+    /**
+     * @return the number of blocks failed on completion
+     */
+    int getFailedWrites() {
+        return this.failedWrites.get();
+    }
+
+    /**
+     * @return the number of blocks queued and not yet completed
+     */
+    int getPendingWrites() {
+        return this.pending.size();
+    }
+
+    private void retryDone() {
+        synchronized (this.retrying) {
+            if (this.retrying.decrementAndGet() == 0) {
+                this.retrying.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Queue the write of the block. The call blocks only if queueDepth writes are
+     * already in flight.
+     *
+     * @param blockInfo  block to write (offset and length in sectors)
+     * @param source     decoded data
+     * @param completion notified when the write queued completes
+     * @return VIX_ASYNC if the write is queued and the result will be notified
+     *         to completion, otherwise the VDDK result of the call and completion
+     *         is not invoked
+     * @throws InterruptedException
+     */
+    long write(final ExBlockInfo blockInfo, final byte[] source, final WriteCompletion completion)
+            throws InterruptedException {
+        final int sizeInBytes = blockInfo.getSizeInBytes();
+        checkRequestSize(sizeInBytes);
+        final ByteBuffer buffer = this.freeBuffers.take();
+        buffer.clear();
+        buffer.put(source, 0, sizeInBytes);
+        buffer.position(0);
+        final AsyncWriteRequest request = new AsyncWriteRequest(blockInfo, buffer, completion);
+        this.pending.put(blockInfo.getIndex(), blockInfo);
+        final long vddkCallResult = SJvddk.dli.writeAsync(this.diskHandle, blockInfo.getOffset(), buffer,
+                (int) blockInfo.getLength(), request);
+        if (vddkCallResult != jDiskLibConst.VIX_ASYNC) {
+            // completed or refused synchronously - the caller handles the result
+            request.complete(vddkCallResult, false);
+        } else if (this.logger.isLoggable(Level.FINEST)) {
+            this.logger.finest(String.format("Index %d Sector %d - write queued (in flight:%d)", blockInfo.getIndex(),
+                    blockInfo.getOffset(), getInFlight()));
+        }
+        return vddkCallResult;
+    }
+}
@@ -44,15 +44,32 @@ class VirtualBackupThread extends AbstractBlockThread implements IRestoreThread
 
     private final CoreResultActionDiskVirtualBackup radr;
 
+    private final boolean reference;
+
+    /**
+     *
+     * @param blockInfo
+     * @param buffers
+     * @param radr
+     * @param reference   record the block by reference to the stored block
+     *                    without moving any data
+     * @param report
+     * @param interactive
+     * @param logger
+     */
     VirtualBackupThread(final ExBlockInfo blockInfo, final Buffers buffers,
-            final CoreResultActionDiskVirtualBackup radr, final String[] report,
+            final CoreResultActionDiskVirtualBackup radr, final boolean reference, final String[] report,
             final AbstractVirtualBackupDiskInteractive interactive, final Logger logger) {
         super(blockInfo, buffers, report, interactive, logger);
         this.radr = radr;
+        this.reference = reference;
     }
 
     @Override
     public Boolean call() {
+        if (this.reference) {
+            return referenceDump();
+        }
         for (;;) {
             try {
                 final Integer bufferIndex = waitForBuffer(this.blockInfo);
@@ -74,7 +91,7 @@ class VirtualBackupThread extends AbstractBlockThread implements IRestoreThread
         }
     }
 
-    private boolean cloneDump(final ExBlockInfo blockInfoOut, final TargetBuffer buffer) {
+    private boolean cloneDump(final ExBlockInfo blockInfoOut) {
         boolean result = false;
         try {
             BlockLocker.lockBlock(blockInfoOut);
@@ -89,8 +106,6 @@ class VirtualBackupThread extends AbstractBlockThread implements IRestoreThread
             blockInfoOut.setFailed(!result);
             this.radr.addDumpInfo(blockInfoOut.getIndex(), blockInfoOut);
             reportResult(blockInfoOut, result);
-
-            buffer.getAvailable().set(true);
         }
         return result;
     }
@@ -125,20 +140,51 @@ class VirtualBackupThread extends AbstractBlockThread implements IRestoreThread
         return result;
     }
 
+    /**
+     * Record the block without a buffer: zero blocks and stored blocks, whole or
+     * trimmed, need only metadata
+     *
+     * @return
+     */
+    private boolean referenceDump() {
+        boolean result = false;
+        try {
+            this.blockInfo.setStartTime(System.nanoTime());
+            if (this.blockInfo.isZero()) {
+                this.blockInfo.setEndTime(System.nanoTime());
+                result = true;
+            } else {
+                result = this.target.referenceDump(this.blockInfo);
+            }
+        } finally {
+            this.blockInfo.setFailed(!result);
+            this.radr.addDumpInfo(this.blockInfo.getIndex(), this.blockInfo);
+            reportResult(this.blockInfo, result);
+        }
+        return result;
+    }
+
     private boolean run(final Integer bufferIndex) {
         boolean result = false;
         if (bufferIndex != null) {
             final TargetBuffer buffer = this.buffers.getBuffer(bufferIndex);
 
-            if (this.blockInfo.isModified()) {
+            if (this.blockInfo.isZero()) {
+                // a zero block is still a zero block once trimmed, nothing to copy
+                this.buffers.releaseBuffer(bufferIndex);
+                this.blockInfo.setEndTime(System.nanoTime());
+                this.blockInfo.setFailed(false);
+                this.radr.addDumpInfo(this.blockInfo.getIndex(), this.blockInfo);
+                reportResult(this.blockInfo, true);
+                result = true;
+            } else if (this.blockInfo.isModified()) {
                 try {
-                    result = (this.target.openGetDump(this.blockInfo, buffer)
-                            && computeOpenGetDump(this.blockInfo, buffer, false)
+                    result = (getDump(this.buffers, this.blockInfo, buffer, false)
                             && this.target.closeGetDump(this.blockInfo, bufferIndex)
                             && calculateSha1(this.blockInfo, buffer));
                     if (result) {
                         if (this.target.doesKeyExist(this.blockInfo) || BlockLocker.isBlockLocked(this.blockInfo)) {
-                            result = cloneDump(this.blockInfo, buffer);
+                            result = cloneDump(this.blockInfo);
                         } else {
                             result = postDump(this.blockInfo, buffer);
                         }
@@ -146,14 +192,23 @@ class VirtualBackupThread extends AbstractBlockThread implements IRestoreThread
                 } catch (IllegalBlockSizeException | IOException | BadPaddingException e) {
                     this.blockInfo.setReason(getEntity(), e);
                     Utility.logWarning(this.logger, e);
+                } catch (final InterruptedException e) {
+                    this.blockInfo.setReason(getEntity(), e);
+                    this.logger.log(Level.WARNING, "Interrupted!", e);
+                    // Restore interrupted state...
+                    Thread.currentThread().interrupt();
                 } finally {
                     this.blockInfo.setFailed(!result);
-                    buffer.getAvailable().set(true);
+                    this.buffers.releaseBuffer(bufferIndex);
                     this.radr.addDumpInfo(this.blockInfo.getIndex(), this.blockInfo);
                     reportResult(this.blockInfo, result);
                 }
             } else {
-                result = cloneDump(this.blockInfo, buffer);
+                try {
+                    result = cloneDump(this.blockInfo);
+                } finally {
+                    this.buffers.releaseBuffer(bufferIndex);
+                }
             }
 
         }
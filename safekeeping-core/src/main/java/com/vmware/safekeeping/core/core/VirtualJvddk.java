@@ -44,7 +44,9 @@ import com.vmware.safekeeping.core.control.target.ITargetOperation;
 import com.vmware.safekeeping.core.exception.CoreResultActionException;
 import com.vmware.safekeeping.core.logger.MessagesTemplate;
 import com.vmware.safekeeping.core.profile.BasicBlockInfo;
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
 import com.vmware.safekeeping.core.profile.GenerationProfile;
+import com.vmware.safekeeping.core.profile.dataclass.DiskProfile;
 import com.vmware.safekeeping.core.soap.VimConnection;
 import com.vmware.safekeeping.core.type.fco.ImprovedVirtualDisk;
 import com.vmware.safekeeping.core.type.fco.VirtualMachineManager;
@@ -119,14 +121,32 @@ public class VirtualJvddk implements IJvddkBasic {
 				interactive.startDumpThreads();
 
 				final String[] report = new String[vixBlocks.size()];
+				final boolean byReference = CoreGlobalSettings.isVirtualBackupByReference();
+				final DiskProfile disk = profile.getDisks().get(radc.getDiskId());
+				final List<BasicBlockInfo> rewrittenBlocks = new ArrayList<>();
+				int references = 0;
 				for (final BasicBlockInfo blockIn : vixBlocks) {
 
 					final ExBlockInfo exBlockInfo = new ExBlockInfo(blockIn, vixBlocks.size(), target.getDisksPath());
 					exBlockInfo.setGenerationId(radc.getProfile().getGenerationId());
-					final VirtualBackupThread callableThread = new VirtualBackupThread(exBlockInfo, buffers, radc, report,
-							interactive, this.logger);
+					// compression and cipher are recorded per disk: a stored block written
+					// with different settings has to be rewritten
+					final boolean reference = byReference && (blockIn.isZero()
+							|| ((blockIn.isCompress() == disk.isCompression()) && (blockIn.isCipher() == disk.isCipher())));
+					if (reference) {
+						++references;
+					} else if (blockIn.isModified()) {
+						rewrittenBlocks.add(blockIn);
+					}
+					final VirtualBackupThread callableThread = new VirtualBackupThread(exBlockInfo, buffers, radc,
+							reference, report, interactive, this.logger);
 					futureThreads.add(callableThread);
 				}
+				if (this.logger.isLoggable(Level.INFO)) {
+					msg = String.format("Disk %d: %d blocks recorded by reference, %d blocks rewritten",
+							radc.getDiskId(), references, vixBlocks.size() - references);
+					this.logger.info(msg);
+				}
 				msg = MessagesTemplate.diskHeaderInfo(radc);
 				this.logger.info(msg);
 				finalReport.append(msg);
@@ -139,14 +159,26 @@ public class VirtualJvddk implements IJvddkBasic {
 				this.logger.info(msg);
 				finalReport.append(msg);
 				finalReport.append('\n');
+				final DecodedBlockCache blockCache = DecodedBlockCache.getInstance();
+				if ((blockCache != null) && !rewrittenBlocks.isEmpty()) {
+					buffers.setBlockCache(blockCache.open(rewrittenBlocks));
+				}
 				buffers.start();
 				TotalBlocksInfo totalDumpInfo;
 				try {
-					totalDumpInfo = restoreAndConsolidateThreads(radc, interactive, futureThreads);
+					totalDumpInfo = restoreAndConsolidateThreads(radc, interactive, futureThreads, buffers);
 					// wait for subtask to finish
 					buffers.waitSubTasks();
 				} finally {
 					buffers.stop();
+					this.logger.info(buffers.getPool().toString());
+					if (buffers.getBlockCache() != null) {
+						buffers.getBlockCache().close();
+						msg = buffers.getBlockCache().toString();
+						this.logger.info(msg);
+						finalReport.append(msg);
+						finalReport.append('\n');
+					}
 				}
 				for (final IRestoreThread s : futureThreads) {
 					profile.addDumpInfo(radc.getDiskId(), s.getBlockInfo());
@@ -152,7 +152,7 @@ public final class MessagesTemplate {
             final String realSpeed;
             final char openParenthesis;
             final char closeParenthesis;
-            if (dump.isDuplicated()) {
+            if (dump.isDuplicated() || dump.isZero()) {
                 nominalSpeed = "          -";
                 realSpeed = "          -";
                 openParenthesis = '[';
@@ -173,7 +173,7 @@ public final class MessagesTemplate {
                     dump.getIndex() + 1, dump.getTotalBlocks(), closeParenthesis, modified, compress, cipher,
                     dump.getOffset(), dump.getLastBlock(), dump.printSize(), compressStreamSize,
                     dump.getOverallTimeInSeconds(), nominalSpeed, dump.getExplicitCompressionRatio(), realSpeed,
-                    dump.getSha1(), dump.getMd5());
+                    (dump.isZero()) ? "zero" : dump.getSha1(), dump.getMd5());
 
         }
         if (logger.isLoggable(Level.CONFIG)) {
@@ -39,6 +39,8 @@ public class BasicBlockInfo extends SimpleBlockInfo {
 
     private boolean compress;
 
+    private int compressionLevel;
+
     private boolean cipher;
 
     private int diskId;
@@ -64,6 +66,7 @@ public class BasicBlockInfo extends SimpleBlockInfo {
         this.lastBlock = sourceBlock.lastBlock;
         this.cipher = sourceBlock.cipher;
         this.compress = sourceBlock.compress;
+        this.compressionLevel = sourceBlock.compressionLevel;
         this.diskId = sourceBlock.diskId;
 
         this.originalOffset = sourceBlock.originalOffset;
@@ -96,9 +99,14 @@ public class BasicBlockInfo extends SimpleBlockInfo {
     }
 
     public BasicBlockInfo(final Block sourceBlock, final CoreResultActionDiskBackup radb, final int index) {
+        this(sourceBlock.offset, sourceBlock.length, radb, index);
+    }
 
-        this.offset = sourceBlock.offset;
-        this.lastBlock = sourceBlock.getLastBlock();
+    public BasicBlockInfo(final long offset, final long length, final CoreResultActionDiskBackup radb,
+            final int index) {
+
+        this.offset = offset;
+        this.lastBlock = (offset + length) - 1;
         this.originalOffset = this.offset;
         this.originalLastBlock = this.lastBlock;
         this.cipherOffset = 0;
@@ -107,6 +115,8 @@ public class BasicBlockInfo extends SimpleBlockInfo {
         this.fileIndex = index;
         this.cipher = radb.isCipher();
         this.compress = radb.isCompressed();
+        this.compressionCodec = radb.getCompressionCodec();
+        this.compressionLevel = radb.getCompressionLevel();
         this.diskId = radb.getDiskId();
     }
 
@@ -123,8 +133,13 @@ public class BasicBlockInfo extends SimpleBlockInfo {
             final boolean cipher) {
         super(block);
         this.lastBlock = (this.offset + block.getLength()) - 1;
-        this.originalOffset = this.offset;
-        this.originalLastBlock = this.lastBlock;
+        if (block.hasStoredRange()) {
+            this.originalOffset = block.getStoredOffset();
+            this.originalLastBlock = (block.getStoredOffset() + block.getStoredLength()) - 1;
+        } else {
+            this.originalOffset = this.offset;
+            this.originalLastBlock = this.lastBlock;
+        }
         this.generationId = generationId;
         this.fileIndex = block.getIndex();
         this.cipher = cipher;
@@ -138,6 +153,13 @@ public class BasicBlockInfo extends SimpleBlockInfo {
         return this.cipherOffset;
     }
 
+    /**
+     * @return the compression level used to dump the block
+     */
+    public int getCompressionLevel() {
+        return this.compressionLevel;
+    }
+
     /**
      * @return the diskId
      */
@@ -219,6 +241,10 @@ public class BasicBlockInfo extends SimpleBlockInfo {
         this.compress = compress;
     }
 
+    public void setCompressionLevel(final int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
     public void setDiskId(final int diskId) {
         this.diskId = diskId;
     }
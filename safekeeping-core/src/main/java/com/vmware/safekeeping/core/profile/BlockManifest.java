@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.profile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.bind.DatatypeConverter;
+
+import com.vmware.safekeeping.core.profile.dataclass.DiskProfile;
+import com.vmware.safekeeping.core.type.enums.CompressionCodec;
+
+/**
+ * Binary block table of a generation, stored next to the generation profile.
+ *
+ * <pre>
+ * header:  magic(int) version(short) compressed(byte)
+ * body:    numberOfDisks(int) { diskId(int) numberOfBlocks(int) { record } }
+ *          crc32 of the body(long)
+ * record:  index(int) offset(long) length(long) flags(byte) cipherOffset(byte)
+ *          codec(byte) md5(16 bytes) sha1(20 bytes) nonce(12 bytes)
+ *          [storedOffset(long) storedLength(long)]
+ * </pre>
+ *
+ * The body is GZIP compressed when the compressed flag is set. Digests and
+ * nonce are stored as raw bytes, absent values are zero filled and flagged.
+ * The stored range (version 2) follows only the records of blocks that are a
+ * range of a stored block.
+ */
+public final class BlockManifest {
+
+    @FunctionalInterface
+    public interface BlockConsumer {
+        void accept(int diskId, SimpleBlockInfo block) throws IOException;
+    }
+
+    public static final short VERSION = 2;
+
+    private static final int MAGIC = 0x534B424D;
+
+    private static final int MD5_LENGTH = 16;
+
+    private static final int SHA1_LENGTH = 20;
+
+    private static final int NONCE_LENGTH = 12;
+
+    public static final int RECORD_LENGTH = 4 + 8 + 8 + 3 + MD5_LENGTH + SHA1_LENGTH + NONCE_LENGTH;
+
+    private static final int FLAG_MD5 = 0x01;
+
+    private static final int FLAG_SHA1 = 0x02;
+
+    private static final int FLAG_NONCE = 0x04;
+
+    private static final int FLAG_ZERO = 0x08;
+
+    private static final int FLAG_STORED_RANGE = 0x10;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Convert a digest to raw bytes. The string must be exactly the upper case
+     * hex representation, anything else can't be stored without changing the
+     * keys of the block
+     */
+    private static byte[] parseHex(final String value, final int length, final String name) throws IOException {
+        final byte[] result = DatatypeConverter.parseHexBinary(value);
+        if ((result.length != length) || !DatatypeConverter.printHexBinary(result).equals(value)) {
+            throw new IOException(String.format("Unsupported %s %s in block manifest", name, value));
+        }
+        return result;
+    }
+
+    /**
+     * Stream the block table
+     *
+     * @param in       manifest content
+     * @param consumer called for every block in disk order
+     * @return the manifest version
+     * @throws IOException
+     */
+    public static int read(final InputStream in, final BlockConsumer consumer) throws IOException {
+        final DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("Invalid block manifest");
+        }
+        final short version = header.readShort();
+        if (version > VERSION) {
+            throw new IOException(String.format("Unsupported block manifest version %d", version));
+        }
+        final boolean compressed = header.readByte() != 0;
+        final InputStream source = compressed ? new GZIPInputStream(in, BUFFER_SIZE)
+                : new BufferedInputStream(in, BUFFER_SIZE);
+        final CRC32 crc = new CRC32();
+        final DataInputStream body = new DataInputStream(new CheckedInputStream(source, crc));
+        final byte[] md5 = new byte[MD5_LENGTH];
+        final byte[] sha1 = new byte[SHA1_LENGTH];
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        final int numberOfDisks = body.readInt();
+        for (int d = 0; d < numberOfDisks; d++) {
+            final int diskId = body.readInt();
+            final int numberOfBlocks = body.readInt();
+            for (int i = 0; i < numberOfBlocks; i++) {
+                final SimpleBlockInfo block = new SimpleBlockInfo(body.readInt());
+                block.setOffset(body.readLong());
+                block.setLength(body.readLong());
+                final int flags = body.readByte();
+                block.setCipherOffset(body.readByte());
+                final int codec = body.readByte();
+                body.readFully(md5);
+                body.readFully(sha1);
+                body.readFully(nonce);
+                if (codec > 0) {
+                    block.setCompressionCodec(CompressionCodec.values()[codec - 1]);
+                }
+                block.setZero((flags & FLAG_ZERO) != 0);
+                if ((flags & FLAG_MD5) != 0) {
+                    block.setMd5(DatatypeConverter.printHexBinary(md5));
+                }
+                if ((flags & FLAG_SHA1) != 0) {
+                    block.setSha1(DatatypeConverter.printHexBinary(sha1));
+                }
+                if ((flags & FLAG_NONCE) != 0) {
+                    block.setCipherNonce(DatatypeConverter.printHexBinary(nonce));
+                }
+                if ((flags & FLAG_STORED_RANGE) != 0) {
+                    block.setStoredOffset(body.readLong());
+                    block.setStoredLength(body.readLong());
+                }
+                consumer.accept(diskId, block);
+            }
+        }
+        final long expected = crc.getValue();
+        final long checksum;
+        try {
+            checksum = new DataInputStream(source).readLong();
+        } catch (final EOFException e) {
+            throw new IOException("Truncated block manifest", e);
+        }
+        if (checksum != expected) {
+            throw new IOException("Block manifest checksum mismatch");
+        }
+        return version;
+    }
+
+    /**
+     * Write the block table of the disks
+     *
+     * @param out      destination, not closed
+     * @param disks    disks of the generation
+     * @param compress GZIP the body
+     * @throws IOException if a block can't be represented in the manifest
+     */
+    public static void write(final OutputStream out, final Collection<DiskProfile> disks, final boolean compress)
+            throws IOException {
+        final DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        header.writeByte(compress ? 1 : 0);
+        header.flush();
+        final GZIPOutputStream gzip = compress ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        final OutputStream sink = compress ? gzip : new BufferedOutputStream(out, BUFFER_SIZE);
+        final CRC32 crc = new CRC32();
+        final DataOutputStream body = new DataOutputStream(new CheckedOutputStream(sink, crc));
+        final byte[] empty = new byte[SHA1_LENGTH];
+        body.writeInt(disks.size());
+        for (final DiskProfile disk : disks) {
+            final Map<Integer, SimpleBlockInfo> dumps = disk.getDumps();
+            body.writeInt(disk.getDiskId());
+            body.writeInt(dumps.size());
+            for (final SimpleBlockInfo block : dumps.values()) {
+                int flags = 0;
+                byte[] md5 = null;
+                byte[] sha1 = null;
+                byte[] nonce = null;
+                if (block.getMd5() != null) {
+                    md5 = parseHex(block.getMd5(), MD5_LENGTH, "md5");
+                    flags |= FLAG_MD5;
+                }
+                if (block.getSha1() != null) {
+                    sha1 = parseHex(block.getSha1(), SHA1_LENGTH, "sha1");
+                    flags |= FLAG_SHA1;
+                }
+                if (block.getCipherNonce() != null) {
+                    nonce = parseHex(block.getCipherNonce(), NONCE_LENGTH, "nonce");
+                    flags |= FLAG_NONCE;
+                }
+                if (block.isZero()) {
+                    flags |= FLAG_ZERO;
+                }
+                if (block.hasStoredRange()) {
+                    flags |= FLAG_STORED_RANGE;
+                }
+                body.writeInt(block.getIndex());
+                body.writeLong(block.getOffset());
+                body.writeLong(block.getLength());
+                body.writeByte(flags);
+                body.writeByte(block.getCipherOffset());
+                body.writeByte((block.getCompressionCodec() == null) ? 0 : (block.getCompressionCodec().ordinal() + 1));
+                body.write((md5 == null) ? empty : md5, 0, MD5_LENGTH);
+                body.write((sha1 == null) ? empty : sha1, 0, SHA1_LENGTH);
+                body.write((nonce == null) ? empty : nonce, 0, NONCE_LENGTH);
+                if (block.hasStoredRange()) {
+                    body.writeLong(block.getStoredOffset());
+                    body.writeLong(block.getStoredLength());
+                }
+            }
+        }
+        body.flush();
+        final DataOutputStream trailer = new DataOutputStream(sink);
+        trailer.writeLong(crc.getValue());
+        trailer.flush();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        out.flush();
+    }
+
+    private BlockManifest() {
+        throw new IllegalStateException("Utility class");
+    }
+}
@@ -42,6 +42,7 @@ import com.vmware.safekeeping.common.GuestOsUtils;
 import com.vmware.safekeeping.common.Utility;
 import com.vmware.safekeeping.core.control.MessageDigestAlgoritmhs;
 import com.vmware.safekeeping.core.logger.VmbkLogFormatter;
+import com.vmware.safekeeping.core.type.enums.CompressionCodec;
 import com.vmware.safekeeping.core.type.enums.WindowsQuiesceSpecVssBackupContext;
 import com.vmware.safekeeping.core.type.enums.WindowsQuiesceSpecVssBackupType;
 import com.vmware.safekeeping.core.util.KeyStoreHelper;
@@ -56,6 +57,7 @@ public class CoreGlobalSettings {
     private static final String FCO_PROFILE_FILE_NAME = "profile.json";
     private static final String CONFIG_PROPERTIES_FILENAME = "config.properties";
     public static final String GENERATION_PROFILE_FILENAME = "generation.json";
+    public static final String BLOCK_MANIFEST_FILENAME = "blocks.manifest";
 
     protected static final String ACCEPT_UNTRUSTED_CERTIFICATE = "acceptUntrustedCertificate";
 
@@ -155,6 +157,209 @@ public class CoreGlobalSettings {
     private static final String MAX_POST_DUMP_RETRIES = "maxPostDumpRetries";
     private static final String MAX_VDDK_READ_RETRIES = "maxVddkReadRetries";
     private static final Integer DEFAULT_MAX_VDDK_READ_RETRIES = 5;
+    /**
+     * Number of VDDK asynchronous reads in flight per disk. 0 use the synchronous
+     * read
+     */
+    private static final String VDDK_ASYNC_READ_QUEUE_DEPTH = "vddkAsyncReadQueueDepth";
+    private static final Integer DEFAULT_VDDK_ASYNC_READ_QUEUE_DEPTH = 4;
+    /**
+     * Number of VDDK asynchronous writes in flight per disk during restore. 0 use
+     * the synchronous write
+     */
+    private static final String VDDK_ASYNC_WRITE_QUEUE_DEPTH = "vddkAsyncWriteQueueDepth";
+    private static final Integer DEFAULT_VDDK_ASYNC_WRITE_QUEUE_DEPTH = 4;
+    /**
+     * Number of threads of each stage of the dump pipeline. 0 use the number of
+     * threads of the disk (the VDDK read queue depth for the read stage)
+     */
+    private static final String DUMP_PIPELINE_READ_THREADS = "dumpPipelineReadThreads";
+    private static final Integer DEFAULT_DUMP_PIPELINE_READ_THREADS = 0;
+    private static final String DUMP_PIPELINE_DIGEST_THREADS = "dumpPipelineDigestThreads";
+    private static final Integer DEFAULT_DUMP_PIPELINE_DIGEST_THREADS = 0;
+    private static final String DUMP_PIPELINE_COMPRESS_THREADS = "dumpPipelineCompressThreads";
+    private static final Integer DEFAULT_DUMP_PIPELINE_COMPRESS_THREADS = 0;
+    private static final String DUMP_PIPELINE_UPLOAD_THREADS = "dumpPipelineUploadThreads";
+    private static final Integer DEFAULT_DUMP_PIPELINE_UPLOAD_THREADS = 0;
+    /**
+     * Add a line for every block to the disk dump report. The lines are kept in
+     * memory until the report is posted, the same details are recorded on the
+     * generation profile
+     */
+    private static final String DUMP_REPORT_BLOCK_LINES = "dumpReportBlockLines";
+    private static final Boolean DEFAULT_DUMP_REPORT_BLOCK_LINES = false;
+    /**
+     * Local fingerprint index of the blocks stored on the repository. A block
+     * found in the index doesn't need an existence probe on the target
+     */
+    private static final String DEDUP_INDEX_ENABLED = "dedupIndexEnabled";
+    private static final Boolean DEFAULT_DEDUP_INDEX_ENABLED = true;
+    private static final String DEDUP_INDEX_PATH = "dedupIndexPath";
+    private static final String DEFAULT_DEDUP_INDEX_FOLDER = "dedupIndex";
+    /**
+     * File repositories store the new blocks on pack segments instead of one
+     * folder per block. Segments with more than filePackCompactionThreshold per
+     * cent of removed blocks are rewritten after a generation removal
+     */
+    private static final String FILE_PACK_ENABLED = "filePackEnabled";
+    private static final Boolean DEFAULT_FILE_PACK_ENABLED = false;
+    private static final String FILE_PACK_SEGMENT_SIZE_MB = "filePackSegmentSizeMb";
+    private static final Integer DEFAULT_FILE_PACK_SEGMENT_SIZE_MB = 1024;
+    private static final String FILE_PACK_COMPACTION_THRESHOLD = "filePackCompactionThreshold";
+    private static final Integer DEFAULT_FILE_PACK_COMPACTION_THRESHOLD = 50;
+    /**
+     * Codec and level of the new compressed generations (migz, lz4, zstd). Level
+     * 0 selects the codec default
+     */
+    private static final String COMPRESSION_CODEC = "compressionCodec";
+    private static final String DEFAULT_VALUE_COMPRESSION_CODEC = "lz4";
+    private static final String COMPRESSION_LEVEL = "compressionLevel";
+    private static final Integer DEFAULT_VALUE_COMPRESSION_LEVEL = 0;
+    /**
+     * The block table of a generation is stored on a binary manifest next to the
+     * generation profile instead of inside the profile json
+     */
+    private static final String BLOCK_MANIFEST = "blockManifest";
+    private static final Boolean DEFAULT_BLOCK_MANIFEST = true;
+    private static final String BLOCK_MANIFEST_COMPRESSION = "blockManifestCompression";
+    private static final Boolean DEFAULT_BLOCK_MANIFEST_COMPRESSION = true;
+    /**
+     * Blocks containing only zeros are recorded on the generation without
+     * storing any object. The restore doesn't write them on the new disks
+     */
+    private static final String ZERO_BLOCK_DETECTION = "zeroBlockDetection";
+    private static final Boolean DEFAULT_ZERO_BLOCK_DETECTION = true;
+    private static final String SKIP_ZERO_BLOCKS_ON_RESTORE = "skipZeroBlocksOnRestore";
+    private static final Boolean DEFAULT_SKIP_ZERO_BLOCKS_ON_RESTORE = true;
+    /**
+     * Changed extents closer than the gap are merged in a single read up to the
+     * target size. The unchanged sectors in the gap are read and stored again
+     */
+    private static final String EXTENT_COALESCE_GAP_KB = "extentCoalesceGapKb";
+    private static final Integer DEFAULT_EXTENT_COALESCE_GAP_KB = 64;
+    private static final String EXTENT_COALESCE_TARGET_SIZE_MB = "extentCoalesceTargetSizeMb";
+    private static final Integer DEFAULT_EXTENT_COALESCE_TARGET_SIZE_MB = 4;
+    /**
+     * Profiles, generation profiles and block manifests read from the target are
+     * kept in memory and on a local folder. An entry is used only if the md5 (or
+     * ETag) of the object on the target didn't change
+     */
+    private static final String METADATA_CACHE_SIZE_MB = "metadataCacheSizeMb";
+    private static final Integer DEFAULT_METADATA_CACHE_SIZE_MB = 64;
+    private static final String METADATA_CACHE_DISK_SIZE_MB = "metadataCacheDiskSizeMb";
+    private static final Integer DEFAULT_METADATA_CACHE_DISK_SIZE_MB = 256;
+    private static final String METADATA_CACHE_PATH = "metadataCachePath";
+    private static final String DEFAULT_METADATA_CACHE_FOLDER = "metadataCache";
+    /**
+     * A memory entry of an immutable metadata object checked against the target
+     * less than metadataCacheValidationSeconds ago is used without checking it
+     * again
+     */
+    private static final String METADATA_CACHE_VALIDATION_SECONDS = "metadataCacheValidationSeconds";
+    private static final Integer DEFAULT_METADATA_CACHE_VALIDATION_SECONDS = 30;
+    /**
+     * A virtual backup records the blocks of the previous generations by
+     * reference, a trimmed block as a range of the stored block, instead of
+     * reading and writing them again
+     */
+    private static final String VIRTUAL_BACKUP_BY_REFERENCE = "virtualBackupByReference";
+    private static final Boolean DEFAULT_VIRTUAL_BACKUP_BY_REFERENCE = true;
+    /**
+     * Decoded blocks kept off heap by the restores. A block read more times (same
+     * digest) is downloaded and decoded once
+     */
+    private static final String RESTORE_BLOCK_CACHE_SIZE_MB = "restoreBlockCacheSizeMb";
+    private static final Integer DEFAULT_RESTORE_BLOCK_CACHE_SIZE_MB = 256;
+    /**
+     * Linked vCenters are connected and queried in parallel by at most
+     * vcenterFanOutThreads threads. A vCenter not connected within
+     * vcenterConnectTimeoutSeconds from the start of its connection or not
+     * answering a query within vcenterQueryTimeoutSeconds is skipped. The cloud
+     * platform probe of a vCenter gives up after vcenterProbeTimeoutSeconds
+     */
+    private static final String VCENTER_FAN_OUT_THREADS = "vcenterFanOutThreads";
+    private static final Integer DEFAULT_VCENTER_FAN_OUT_THREADS = 8;
+    private static final String VCENTER_CONNECT_TIMEOUT_SECONDS = "vcenterConnectTimeoutSeconds";
+    private static final Integer DEFAULT_VCENTER_CONNECT_TIMEOUT_SECONDS = 180;
+    private static final String VCENTER_QUERY_TIMEOUT_SECONDS = "vcenterQueryTimeoutSeconds";
+    private static final Integer DEFAULT_VCENTER_QUERY_TIMEOUT_SECONDS = 300;
+    private static final String VCENTER_PROBE_TIMEOUT_SECONDS = "vcenterProbeTimeoutSeconds";
+    private static final Integer DEFAULT_VCENTER_PROBE_TIMEOUT_SECONDS = 10;
+    /**
+     * Improved Virtual Disk catalog reloaded after ivdCatalogTtlSeconds, the
+     * VStorageObjects are retrieved in batches of ivdCatalogBatchSize by
+     * ivdCatalogThreads threads
+     */
+    private static final String IVD_CATALOG_TTL_SECONDS = "ivdCatalogTtlSeconds";
+    private static final Integer DEFAULT_IVD_CATALOG_TTL_SECONDS = 300;
+    private static final String IVD_CATALOG_THREADS = "ivdCatalogThreads";
+    private static final Integer DEFAULT_IVD_CATALOG_THREADS = 8;
+    private static final String IVD_CATALOG_BATCH_SIZE = "ivdCatalogBatchSize";
+    private static final Integer DEFAULT_IVD_CATALOG_BATCH_SIZE = 50;
+    /**
+     * Finished tasks stay in memory for taskRetentionSeconds seconds (at most
+     * taskRetentionCount of them), then they are moved to a task journal of at
+     * most taskJournalMaxSizeMb MB
+     */
+    private static final String TASK_RETENTION_SECONDS = "taskRetentionSeconds";
+    private static final Integer DEFAULT_TASK_RETENTION_SECONDS = 600;
+    private static final String TASK_RETENTION_COUNT = "taskRetentionCount";
+    private static final Integer DEFAULT_TASK_RETENTION_COUNT = 1000;
+    private static final String TASK_JOURNAL_MAX_SIZE_MB = "taskJournalMaxSizeMb";
+    private static final Integer DEFAULT_TASK_JOURNAL_MAX_SIZE_MB = 64;
+    /**
+     * A request of task updates waits at most taskUpdatesMaxWaitSeconds for a
+     * change and returns at most taskUpdatesMaxBlocks completed blocks
+     */
+    private static final String TASK_UPDATES_MAX_WAIT_SECONDS = "taskUpdatesMaxWaitSeconds";
+    private static final Integer DEFAULT_TASK_UPDATES_MAX_WAIT_SECONDS = 30;
+    private static final String TASK_UPDATES_MAX_BLOCKS = "taskUpdatesMaxBlocks";
+    private static final Integer DEFAULT_TASK_UPDATES_MAX_BLOCKS = 1024;
+    /**
+     * vCenter inventory kept in memory and refreshed with WaitForUpdatesEx, each
+     * wait returns after at most inventoryCacheMaxWaitSeconds seconds
+     */
+    private static final String INVENTORY_CACHE_ENABLED = "inventoryCacheEnabled";
+    private static final Boolean DEFAULT_INVENTORY_CACHE_ENABLED = true;
+    private static final String INVENTORY_CACHE_MAX_WAIT_SECONDS = "inventoryCacheMaxWaitSeconds";
+    private static final Integer DEFAULT_INVENTORY_CACHE_MAX_WAIT_SECONDS = 60;
+    /**
+     * Restore read ahead: blocks fetched in disk offset order by
+     * restorePrefetchThreads threads (0 disable), at most restorePrefetchDepth
+     * blocks and restorePrefetchBufferMb MB ahead of the restore threads
+     */
+    private static final String RESTORE_PREFETCH_THREADS = "restorePrefetchThreads";
+    private static final Integer DEFAULT_RESTORE_PREFETCH_THREADS = 8;
+    private static final String RESTORE_PREFETCH_DEPTH = "restorePrefetchDepth";
+    private static final Integer DEFAULT_RESTORE_PREFETCH_DEPTH = 32;
+    private static final String RESTORE_PREFETCH_BUFFER_MB = "restorePrefetchBufferMb";
+    private static final Integer DEFAULT_RESTORE_PREFETCH_BUFFER_MB = 256;
+    /**
+     * Restore writes held back to reach VDDK in disk offset order: at most
+     * restoreWriteReorderWindow blocks (0 disable) waiting at most
+     * restoreWriteReorderTimeoutMs for the blocks before them
+     */
+    private static final String RESTORE_WRITE_REORDER_WINDOW = "restoreWriteReorderWindow";
+    private static final Integer DEFAULT_RESTORE_WRITE_REORDER_WINDOW = 16;
+    private static final String RESTORE_WRITE_REORDER_TIMEOUT_MS = "restoreWriteReorderTimeoutMs";
+    private static final Integer DEFAULT_RESTORE_WRITE_REORDER_TIMEOUT_MS = 2000;
+    /**
+     * Segments of a reference store shard merged in a new snapshot when a
+     * generation is removed
+     */
+    private static final String BLOCK_REFERENCE_COMPACTION_THRESHOLD = "blockReferenceCompactionThreshold";
+    private static final Integer DEFAULT_BLOCK_REFERENCE_COMPACTION_THRESHOLD = 64;
+    /**
+     * Max delay before a block retained by a running backup is written on the
+     * pending segments of the reference store
+     */
+    private static final String BLOCK_REFERENCE_PENDING_FLUSH_SECONDS = "blockReferencePendingFlushSeconds";
+    private static final Integer DEFAULT_BLOCK_REFERENCE_PENDING_FLUSH_SECONDS = 2;
+    /**
+     * Age after which a pending segment is considered left by a dead process
+     */
+    private static final String BLOCK_REFERENCE_PENDING_LEASE_HOURS = "blockReferencePendingLeaseHours";
+    private static final Integer DEFAULT_BLOCK_REFERENCE_PENDING_LEASE_HOURS = 72;
     private static final String OVERWRITE_VDDK_ON_START = "overwriteVddkOnStart";
     private static final Boolean DEFAULT_OVERWRITE_VDDK_ON_START = true;
     private static final String DELETE_VDDK_ON_EXIT = "deleteVddkOnExit";
@@ -308,11 +513,46 @@ public class CoreGlobalSettings {
         return getConfigPath();
     }
 
+    public static int getBlockReferenceCompactionThreshold() {
+        return configurationMap.getIntegerProperty(globalGroup, BLOCK_REFERENCE_COMPACTION_THRESHOLD,
+                DEFAULT_BLOCK_REFERENCE_COMPACTION_THRESHOLD);
+    }
+
+    public static int getBlockReferencePendingFlushSeconds() {
+        return configurationMap.getIntegerProperty(globalGroup, BLOCK_REFERENCE_PENDING_FLUSH_SECONDS,
+                DEFAULT_BLOCK_REFERENCE_PENDING_FLUSH_SECONDS);
+    }
+
+    public static int getBlockReferencePendingLeaseHours() {
+        return configurationMap.getIntegerProperty(globalGroup, BLOCK_REFERENCE_PENDING_LEASE_HOURS,
+                DEFAULT_BLOCK_REFERENCE_PENDING_LEASE_HOURS);
+    }
+
     public static String getCertPath() {
         final String certPath = getCertificatePath() + File.separatorChar + getKeystore();
         return certPath.replace('\\', '/');
     }
 
+    /**
+     * @return the configured codec, the default one if the configured value is
+     *         unknown
+     */
+    public static CompressionCodec getCompressionCodec() {
+        final String codec = configurationMap.getStringProperty(globalGroup, COMPRESSION_CODEC,
+                DEFAULT_VALUE_COMPRESSION_CODEC);
+        try {
+            return CompressionCodec.parse(codec);
+        } catch (final IllegalArgumentException e) {
+            logger.severe(String.format("%s %s is not valid, using %s", COMPRESSION_CODEC, codec,
+                    DEFAULT_VALUE_COMPRESSION_CODEC));
+            return CompressionCodec.parse(DEFAULT_VALUE_COMPRESSION_CODEC);
+        }
+    }
+
+    public static int getCompressionLevel() {
+        return configurationMap.getIntegerProperty(globalGroup, COMPRESSION_LEVEL, DEFAULT_VALUE_COMPRESSION_LEVEL);
+    }
+
     public static String getConfigPath() {
         if (StringUtils.isEmpty(configPath)) {
             return getInstallPath() + File.separatorChar + CONFIG_DIRECTORY;
@@ -325,6 +565,11 @@ public class CoreGlobalSettings {
         return new File(getDefaultDaemonPidFile());
     }
 
+    public static String getDedupIndexPath() throws URISyntaxException {
+        return configurationMap.getStringProperty(globalGroup, DEDUP_INDEX_PATH,
+                getAppData() + File.separatorChar + DEFAULT_DEDUP_INDEX_FOLDER);
+    }
+
     public static String getDefaulConfigPropertiesFile() {
         return getConfigPath() + File.separatorChar + CONFIG_PROPERTIES_FILENAME;
     }
@@ -367,6 +612,45 @@ public class CoreGlobalSettings {
                 DEFAULT_VALUE_VSS_RETRY_ON_FAILURE);
     }
 
+    public static int getDumpPipelineCompressThreads() {
+        return configurationMap.getIntegerProperty(globalGroup, DUMP_PIPELINE_COMPRESS_THREADS,
+                DEFAULT_DUMP_PIPELINE_COMPRESS_THREADS);
+    }
+
+    public static int getDumpPipelineDigestThreads() {
+        return configurationMap.getIntegerProperty(globalGroup, DUMP_PIPELINE_DIGEST_THREADS,
+                DEFAULT_DUMP_PIPELINE_DIGEST_THREADS);
+    }
+
+    public static int getDumpPipelineReadThreads() {
+        return configurationMap.getIntegerProperty(globalGroup, DUMP_PIPELINE_READ_THREADS,
+                DEFAULT_DUMP_PIPELINE_READ_THREADS);
+    }
+
+    public static int getDumpPipelineUploadThreads() {
+        return configurationMap.getIntegerProperty(globalGroup, DUMP_PIPELINE_UPLOAD_THREADS,
+                DEFAULT_DUMP_PIPELINE_UPLOAD_THREADS);
+    }
+
+    public static int getExtentCoalesceGapKb() {
+        return configurationMap.getIntegerProperty(globalGroup, EXTENT_COALESCE_GAP_KB, DEFAULT_EXTENT_COALESCE_GAP_KB);
+    }
+
+    public static int getExtentCoalesceTargetSizeMb() {
+        return configurationMap.getIntegerProperty(globalGroup, EXTENT_COALESCE_TARGET_SIZE_MB,
+                DEFAULT_EXTENT_COALESCE_TARGET_SIZE_MB);
+    }
+
+    public static int getFilePackCompactionThreshold() {
+        return configurationMap.getIntegerProperty(globalGroup, FILE_PACK_COMPACTION_THRESHOLD,
+                DEFAULT_FILE_PACK_COMPACTION_THRESHOLD);
+    }
+
+    public static int getFilePackSegmentSizeMb() {
+        return configurationMap.getIntegerProperty(globalGroup, FILE_PACK_SEGMENT_SIZE_MB,
+                DEFAULT_FILE_PACK_SEGMENT_SIZE_MB);
+    }
+
     public static String getGlobalProfileFileName() {
         return GLOBAL_PROFILE_FILE_NAME;
     }
@@ -380,6 +664,25 @@ public class CoreGlobalSettings {
         return installPath;
     }
 
+    public static int getInventoryCacheMaxWaitSeconds() {
+        return configurationMap.getIntegerProperty(globalGroup, INVENTORY_CACHE_MAX_WAIT_SECONDS,
+                DEFAULT_INVENTORY_CACHE_MAX_WAIT_SECONDS);
+    }
+
+    public static int getIvdCatalogBatchSize() {
+        return configurationMap.getIntegerProperty(globalGroup, IVD_CATALOG_BATCH_SIZE,
+                DEFAULT_IVD_CATALOG_BATCH_SIZE);
+    }
+
+    public static int getIvdCatalogThreads() {
+        return configurationMap.getIntegerProperty(globalGroup, IVD_CATALOG_THREADS, DEFAULT_IVD_CATALOG_THREADS);
+    }
+
+    public static int getIvdCatalogTtlSeconds() {
+        return configurationMap.getIntegerProperty(globalGroup, IVD_CATALOG_TTL_SECONDS,
+                DEFAULT_IVD_CATALOG_TTL_SECONDS);
+    }
+
     public static int getKeepGenerations() {
         return configurationMap.getIntegerProperty(globalGroup, KEEP_GENERATIONS, DEFAULT_VALUE_KEEP_GENERATIONS);
     }
@@ -471,6 +774,26 @@ public class CoreGlobalSettings {
                 DEFAULT_VALUE_MAX_POST_THREADS_POOL);
     }
 
+    public static int getMetadataCacheDiskSizeMb() {
+        return configurationMap.getIntegerProperty(globalGroup, METADATA_CACHE_DISK_SIZE_MB,
+                DEFAULT_METADATA_CACHE_DISK_SIZE_MB);
+    }
+
+    public static String getMetadataCachePath() throws URISyntaxException {
+        return configurationMap.getStringProperty(globalGroup, METADATA_CACHE_PATH,
+                getAppData() + File.separatorChar + DEFAULT_METADATA_CACHE_FOLDER);
+    }
+
+    public static int getMetadataCacheSizeMb() {
+        return configurationMap.getIntegerProperty(globalGroup, METADATA_CACHE_SIZE_MB,
+                DEFAULT_METADATA_CACHE_SIZE_MB);
+    }
+
+    public static int getMetadataCacheValidationSeconds() {
+        return configurationMap.getIntegerProperty(globalGroup, METADATA_CACHE_VALIDATION_SECONDS,
+                DEFAULT_METADATA_CACHE_VALIDATION_SECONDS);
+    }
+
     public static MessageDigestAlgoritmhs getMessageDigestAlgorithm() {
         final String st = configurationMap.getStringProperty(globalGroup, MESSAGE_DIGEST_ALGORITHM,
                 DEFAULT_VALUE_MESSAGE_DIGEST_ALGORITHM.toString());
@@ -490,6 +813,36 @@ public class CoreGlobalSettings {
         return configurationMap.getStringProperty(globalGroup, CSP_REFRESH_TOKEN);
     }
 
+    public static int getRestoreBlockCacheSizeMb() {
+        return configurationMap.getIntegerProperty(globalGroup, RESTORE_BLOCK_CACHE_SIZE_MB,
+                DEFAULT_RESTORE_BLOCK_CACHE_SIZE_MB);
+    }
+
+    public static int getRestorePrefetchBufferMb() {
+        return configurationMap.getIntegerProperty(globalGroup, RESTORE_PREFETCH_BUFFER_MB,
+                DEFAULT_RESTORE_PREFETCH_BUFFER_MB);
+    }
+
+    public static int getRestorePrefetchDepth() {
+        return configurationMap.getIntegerProperty(globalGroup, RESTORE_PREFETCH_DEPTH,
+                DEFAULT_RESTORE_PREFETCH_DEPTH);
+    }
+
+    public static int getRestorePrefetchThreads() {
+        return configurationMap.getIntegerProperty(globalGroup, RESTORE_PREFETCH_THREADS,
+                DEFAULT_RESTORE_PREFETCH_THREADS);
+    }
+
+    public static int getRestoreWriteReorderTimeoutMs() {
+        return configurationMap.getIntegerProperty(globalGroup, RESTORE_WRITE_REORDER_TIMEOUT_MS,
+                DEFAULT_RESTORE_WRITE_REORDER_TIMEOUT_MS);
+    }
+
+    public static int getRestoreWriteReorderWindow() {
+        return configurationMap.getIntegerProperty(globalGroup, RESTORE_WRITE_REORDER_WINDOW,
+                DEFAULT_RESTORE_WRITE_REORDER_WINDOW);
+    }
+
     public static String getRpFilter() {
         return configurationMap.getStringProperty(filterGroup, VM_RESOURCE_POOL_FILTER,
                 DEFAULT_VALUE_VM_RESOURCE_POOL_FILTER);
@@ -531,6 +884,11 @@ public class CoreGlobalSettings {
         return getInstallPath() + File.separatorChar + TASK_DIRECTORY;
     }
 
+    public static int getTaskJournalMaxSizeMb() {
+        return configurationMap.getIntegerProperty(globalGroup, TASK_JOURNAL_MAX_SIZE_MB,
+                DEFAULT_TASK_JOURNAL_MAX_SIZE_MB);
+    }
+
     /**
      * @return
      */
@@ -539,6 +897,25 @@ public class CoreGlobalSettings {
                 DEFAULT_VALUE_TASK_MAX_WAIT_SECONDS);
     }
 
+    public static int getTaskRetentionCount() {
+        return configurationMap.getIntegerProperty(globalGroup, TASK_RETENTION_COUNT, DEFAULT_TASK_RETENTION_COUNT);
+    }
+
+    public static int getTaskRetentionSeconds() {
+        return configurationMap.getIntegerProperty(globalGroup, TASK_RETENTION_SECONDS,
+                DEFAULT_TASK_RETENTION_SECONDS);
+    }
+
+    public static int getTaskUpdatesMaxBlocks() {
+        return configurationMap.getIntegerProperty(globalGroup, TASK_UPDATES_MAX_BLOCKS,
+                DEFAULT_TASK_UPDATES_MAX_BLOCKS);
+    }
+
+    public static int getTaskUpdatesMaxWaitSeconds() {
+        return configurationMap.getIntegerProperty(globalGroup, TASK_UPDATES_MAX_WAIT_SECONDS,
+                DEFAULT_TASK_UPDATES_MAX_WAIT_SECONDS);
+    }
+
     public static long getTicketLifeExpectancyInMilliSeconds() {
         Long result = configurationMap.getLongProperty(globalGroup, SSO_TICKET_LIFE_EXPECTANCY_IN_SECONDS,
                 DEFAULT_VALUE_TICKET_LIFE_EXPECTANCY_IN_SECONDS);
@@ -546,12 +923,42 @@ public class CoreGlobalSettings {
         return result;
     }
 
+    public static int getVcenterConnectTimeoutSeconds() {
+        return configurationMap.getIntegerProperty(globalGroup, VCENTER_CONNECT_TIMEOUT_SECONDS,
+                DEFAULT_VCENTER_CONNECT_TIMEOUT_SECONDS);
+    }
+
+    public static int getVcenterFanOutThreads() {
+        return configurationMap.getIntegerProperty(globalGroup, VCENTER_FAN_OUT_THREADS,
+                DEFAULT_VCENTER_FAN_OUT_THREADS);
+    }
+
+    public static int getVcenterProbeTimeoutSeconds() {
+        return configurationMap.getIntegerProperty(globalGroup, VCENTER_PROBE_TIMEOUT_SECONDS,
+                DEFAULT_VCENTER_PROBE_TIMEOUT_SECONDS);
+    }
+
+    public static int getVcenterQueryTimeoutSeconds() {
+        return configurationMap.getIntegerProperty(globalGroup, VCENTER_QUERY_TIMEOUT_SECONDS,
+                DEFAULT_VCENTER_QUERY_TIMEOUT_SECONDS);
+    }
+
     public static String getVddkConfig() {
         return getConfigPath() + File.separatorChar
                 + configurationMap.getStringProperty(globalGroup, VDDK_CONFIG, DEFAULT_VALUE_VDDK_CONFIG);
 
     }
 
+    public static int getVddkAsyncReadQueueDepth() {
+        return configurationMap.getIntegerProperty(globalGroup, VDDK_ASYNC_READ_QUEUE_DEPTH,
+                DEFAULT_VDDK_ASYNC_READ_QUEUE_DEPTH);
+    }
+
+    public static int getVddkAsyncWriteQueueDepth() {
+        return configurationMap.getIntegerProperty(globalGroup, VDDK_ASYNC_WRITE_QUEUE_DEPTH,
+                DEFAULT_VDDK_ASYNC_WRITE_QUEUE_DEPTH);
+    }
+
     public static String getVddkLibPath() {
         return configurationMap.getStringProperty(globalGroup, VDDK_LIB_PATH,
                 getInstallPath() + File.separatorChar + ((GuestOsUtils.isWindows()) ? "bin" : "lib"));
@@ -593,6 +1000,15 @@ public class CoreGlobalSettings {
         return configurationMap.getBooleanProperty(globalGroup, AUTO_CONFIGURE_CBT, DEFAULT_AUTO_CONFIGURE_CBT);
     }
 
+    public static boolean isBlockManifestCompressionEnabled() {
+        return configurationMap.getBooleanProperty(globalGroup, BLOCK_MANIFEST_COMPRESSION,
+                DEFAULT_BLOCK_MANIFEST_COMPRESSION);
+    }
+
+    public static boolean isBlockManifestEnabled() {
+        return configurationMap.getBooleanProperty(globalGroup, BLOCK_MANIFEST, DEFAULT_BLOCK_MANIFEST);
+    }
+
     public static boolean isCipherEnable() {
         return configurationMap.getBooleanProperty(globalGroup, ENABLE_CIPHER, DEFAULT_VALUE_ENABLE_CIPHER);
     }
@@ -601,6 +1017,15 @@ public class CoreGlobalSettings {
         return configurationMap.getBooleanProperty(globalGroup, ENABLE_COMPRESSION, DEFAULT_VALUE_ENABLE_COMPRESSION);
     }
 
+    public static boolean isDedupIndexEnabled() {
+        return configurationMap.getBooleanProperty(globalGroup, DEDUP_INDEX_ENABLED, DEFAULT_DEDUP_INDEX_ENABLED);
+    }
+
+    public static boolean isDumpReportBlockLinesEnabled() {
+        return configurationMap.getBooleanProperty(globalGroup, DUMP_REPORT_BLOCK_LINES,
+                DEFAULT_DUMP_REPORT_BLOCK_LINES);
+    }
+
     public static boolean isEmptyConfig() {
         return emptyConfig;
     }
@@ -610,11 +1035,25 @@ public class CoreGlobalSettings {
 
     }
 
+    public static boolean isFilePackEnabled() {
+        return configurationMap.getBooleanProperty(globalGroup, FILE_PACK_ENABLED, DEFAULT_FILE_PACK_ENABLED);
+    }
+
     public static boolean isForceSnapBeforeRestore() {
         return configurationMap.getBooleanProperty(globalGroup, FORCE_SNAPSHOT_BEFORE_RESTORE,
                 DEFAULT_VALUE_FORCE_SNAPSHOT_BEFORE_RESTORE);
     }
 
+    public static boolean isInventoryCacheEnabled() {
+        return configurationMap.getBooleanProperty(globalGroup, INVENTORY_CACHE_ENABLED,
+                DEFAULT_INVENTORY_CACHE_ENABLED);
+    }
+
+    public static boolean isSkipZeroBlocksOnRestore() {
+        return configurationMap.getBooleanProperty(globalGroup, SKIP_ZERO_BLOCKS_ON_RESTORE,
+                DEFAULT_SKIP_ZERO_BLOCKS_ON_RESTORE);
+    }
+
     /**
      * @return
      */
@@ -630,6 +1069,15 @@ public class CoreGlobalSettings {
         return configurationMap.getBooleanProperty(globalGroup, DELETE_VDDK_ON_EXIT, DEFAULT_DELETE_VDDK_ON_EXIT);
     }
 
+    public static boolean isVirtualBackupByReference() {
+        return configurationMap.getBooleanProperty(globalGroup, VIRTUAL_BACKUP_BY_REFERENCE,
+                DEFAULT_VIRTUAL_BACKUP_BY_REFERENCE);
+    }
+
+    public static boolean isZeroBlockDetectionEnabled() {
+        return configurationMap.getBooleanProperty(globalGroup, ZERO_BLOCK_DETECTION, DEFAULT_ZERO_BLOCK_DETECTION);
+    }
+
     public static boolean loadConfig(final File configPropertyFile) throws IOException {
         CoreGlobalSettings.configPropertyFile = configPropertyFile;
 
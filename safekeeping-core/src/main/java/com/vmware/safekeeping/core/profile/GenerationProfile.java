@@ -26,19 +26,23 @@
  ******************************************************************************/
 package com.vmware.safekeeping.core.profile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Logger;
 
 import org.apache.commons.lang.StringUtils;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vmware.jvix.jDiskLibConst;
 import com.vmware.pbm.InvalidArgumentFaultMsg;
 import com.vmware.pbm.PbmFaultFaultMsg;
+import com.vmware.safekeeping.common.Utility;
 import com.vmware.safekeeping.core.control.FcoArchiveManager;
 import com.vmware.safekeeping.core.control.info.ExBlockInfo;
 import com.vmware.safekeeping.core.control.target.ITargetOperation;
@@ -58,6 +62,7 @@ import com.vmware.safekeeping.core.type.ManagedEntityInfo;
 import com.vmware.safekeeping.core.type.ManagedFcoEntityInfo;
 import com.vmware.safekeeping.core.type.enums.AdapterType;
 import com.vmware.safekeeping.core.type.enums.BackupMode;
+import com.vmware.safekeeping.core.type.enums.CompressionCodec;
 import com.vmware.safekeeping.core.type.enums.FileBackingInfoProvisioningType;
 import com.vmware.safekeeping.core.type.enums.VirtualDiskModeType;
 import com.vmware.safekeeping.core.type.fco.VirtualMachineManager;
@@ -66,23 +71,51 @@ import com.vmware.vim25.RuntimeFaultFaultMsg;
 
 public class GenerationProfile {
 
+    /**
+     * Serialize the profile without the disk dumps, stored on the block manifest
+     */
+    @JsonIgnoreProperties({ "dumps" })
+    private abstract static class DiskProfileWithoutDumps {
+    }
+
+    private static final Logger logger = Logger.getLogger(GenerationProfile.class.getName());
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final ObjectMapper HEADER_OBJECT_MAPPER = new ObjectMapper().addMixIn(DiskProfile.class,
+            DiskProfileWithoutDumps.class);
+
     private final FcoGenerationProfile profile;
     private FcoArchiveManager fcoArchiveManager;
     private FcoGenerationProfile previousGeneration;
+    /**
+     * the previous generation is loaded on the first request
+     */
+    private boolean previousGenerationLoaded;
+    /**
+     * false until the dumps of a profile using the block manifest are loaded
+     */
+    private boolean blockManifestLoaded;
 
     private ITargetOperation target;
 
     public GenerationProfile() {
         this.profile = new FcoGenerationProfile();
+        this.previousGenerationLoaded = true;
+        this.blockManifestLoaded = true;
     }
 
     public GenerationProfile(final FcoArchiveManager fcoArchiveManager) {
         this.profile = new FcoGenerationProfile();
         this.fcoArchiveManager = fcoArchiveManager;
         this.target = fcoArchiveManager.getRepositoryTarget();
+        this.previousGenerationLoaded = true;
+        this.blockManifestLoaded = true;
     }
 
     /**
+     * Load the generation profile. The previous generation and the block
+     * manifest are loaded only when requested
      *
      * @param fcoArchiveManager
      * @param fcoEntity
@@ -95,34 +128,39 @@ public class GenerationProfile {
         this.target = fcoArchiveManager.getRepositoryTarget();
         final byte[] bytes = this.target.getGenerationProfileToByteArray(fcoEntity, genId);
         if ((bytes != null) && (bytes.length > 0)) {
-            final ObjectMapper objectMapper = new ObjectMapper();
-            this.profile = objectMapper.readValue(bytes, FcoGenerationProfile.class);
-            if ((this.profile.getPreviousGenerationId() != null) && (this.profile.getPreviousGenerationId() >= 0)) {
-                final byte[] bytes2 = this.target.getGenerationProfileToByteArray(fcoEntity,
-                        this.profile.getPreviousGenerationId());
-                if ((bytes2 != null) && (bytes2.length > 0)) {
-                    this.previousGeneration = objectMapper.readValue(bytes2, FcoGenerationProfile.class);
-                }
-            }
+            this.profile = OBJECT_MAPPER.readValue(bytes, FcoGenerationProfile.class);
+            this.blockManifestLoaded = this.profile.getBlockManifestVersion() == null;
         } else {
             this.profile = null;
+            this.blockManifestLoaded = true;
         }
+        this.previousGenerationLoaded = false;
     }
 
     public GenerationProfile(final GenerationProfile src) {
         this.profile = new FcoGenerationProfile(src.profile);
         this.fcoArchiveManager = src.fcoArchiveManager;
         this.target = src.fcoArchiveManager.getRepositoryTarget();
+        this.previousGenerationLoaded = true;
+        // the copy constructor doesn't copy the dumps
+        this.blockManifestLoaded = true;
+        this.profile.setBlockManifestVersion(null);
     }
 
     public void addDumpInfo(final Integer diskId, final ExBlockInfo exBlockInfo) {
         final DiskProfile diskProfile = this.profile.getDisks().get(diskId);
 
-        diskProfile.getDumps().put(exBlockInfo.getIndex(), exBlockInfo.toSimpleBlockInfo());
+        final SimpleBlockInfo block = exBlockInfo.toSimpleBlockInfo();
+        // the codec is recorded on the block only when it differs from the disk
+        // one (deduplicated blocks written by another codec)
+        if (!exBlockInfo.isCompress() || (block.getCompressionCodec() == diskProfile.getCompressionCodec())) {
+            block.setCompressionCodec(null);
+        }
+        diskProfile.getDumps().put(exBlockInfo.getIndex(), block);
     }
 
     public FcoGenerationProfile clearGenerationDependency() {
-        final FcoGenerationProfile prevGen = this.previousGeneration;
+        final FcoGenerationProfile prevGen = getPreviousGeneration();
         this.previousGeneration = null;
         this.profile.setPreviousGenerationId(-1);
 
@@ -145,6 +183,18 @@ public class GenerationProfile {
         return this.profile.getBackupMode();
     }
 
+    public String getBlockManifestPath() {
+        return String.format("%s/%d/%s", getUuid(), getGenerationId(), CoreGlobalSettings.BLOCK_MANIFEST_FILENAME);
+    }
+
+    /**
+     * @return the block manifest version, null if the dumps are inside the
+     *         profile
+     */
+    public Integer getBlockManifestVersion() {
+        return this.profile.getBlockManifestVersion();
+    }
+
     /**
      * @param ckey
      * @return
@@ -215,6 +265,10 @@ public class GenerationProfile {
         return this.profile.getDisks().get(diskId).getChangeId();
     }
 
+    public CompressionCodec getDiskCompressionCodec(final int diskId) {
+        return this.profile.getDisks().get(diskId).getCompressionCodec();
+    }
+
     /**
      * @param uuid
      * @return
@@ -257,6 +311,18 @@ public class GenerationProfile {
         return this.profile.getDisks().get(diskId).getUuid();
     }
 
+    /**
+     * Dumps of the disk. The block manifest is loaded on the first request
+     *
+     * @param diskId
+     * @return
+     * @throws IOException
+     */
+    public Map<Integer, SimpleBlockInfo> getDumps(final int diskId) throws IOException {
+        loadBlockManifest();
+        return this.profile.getDisks().get(diskId).getDumps();
+    }
+
     /**
      * @param diskId
      * @return
@@ -378,7 +444,7 @@ public class GenerationProfile {
     public int getNumberOfDumps() {
         int result = 0;
         for (final DiskProfile disk : this.profile.getDisks()) {
-            result += disk.getDumps().size();
+            result += this.blockManifestLoaded ? disk.getDumps().size() : disk.getNumberOfDumps();
         }
         return result;
     }
@@ -412,7 +478,23 @@ public class GenerationProfile {
         }
     }
 
+    /**
+     * @return the profile of the previous generation. The profile is shared by
+     *         the metadata cache and must not be modified
+     */
     public FcoGenerationProfile getPreviousGeneration() {
+        if (!this.previousGenerationLoaded) {
+            this.previousGenerationLoaded = true;
+            final Integer prevGenId = this.profile.getPreviousGenerationId();
+            if ((prevGenId != null) && (prevGenId >= 0)) {
+                try {
+                    this.previousGeneration = this.target.getGenerationProfile(this.profile.getFcoEntity(),
+                            prevGenId);
+                } catch (final IOException e) {
+                    Utility.logWarning(logger, e);
+                }
+            }
+        }
         return this.previousGeneration;
     }
 
@@ -423,6 +505,10 @@ public class GenerationProfile {
         return this.profile.getPreviousGenerationId();
     }
 
+    public String getReferenceToken() {
+        return this.profile.getReferenceToken();
+    }
+
     /**
      * @param diskId
      * @return
@@ -584,16 +670,10 @@ public class GenerationProfile {
 
         }
         if (spec.getPrevGenId() >= 0) {
-            final byte[] bytes2 = this.fcoArchiveManager.getRepositoryTarget().getGenerationProfileToByteArray(
-                    this.profile.getFcoEntity(), this.profile.getPreviousGenerationId());
-            if ((bytes2 != null) && (bytes2.length > 0)) {
-
-                final ObjectMapper objectMapper = new ObjectMapper();
-                this.previousGeneration = objectMapper.readValue(bytes2, FcoGenerationProfile.class);
-            } else {
-                this.previousGeneration = null;
-            }
+            this.previousGeneration = this.fcoArchiveManager.getRepositoryTarget()
+                    .getGenerationProfile(this.profile.getFcoEntity(), this.profile.getPreviousGenerationId());
         }
+        this.previousGenerationLoaded = true;
 
     }
 
@@ -608,11 +688,11 @@ public class GenerationProfile {
      * @param diskId
      */
     public boolean isDiskChanged(final Integer diskId) {
-        if (this.previousGeneration == null) {
+        final FcoGenerationProfile prevGen = getPreviousGeneration();
+        if (prevGen == null) {
             return true;
         }
-        return !getDisks().get(diskId).getChangeId()
-                .equals(this.previousGeneration.getDisks().get(diskId).getChangeId());
+        return !getDisks().get(diskId).getChangeId().equals(prevGen.getDisks().get(diskId).getChangeId());
 
     }
 
@@ -628,6 +708,10 @@ public class GenerationProfile {
         return this.profile != null;
     }
 
+    public boolean isReferenceStore() {
+        return this.profile.isReferenceStore();
+    }
+
     /**
      * @return
      */
@@ -718,6 +802,39 @@ public class GenerationProfile {
 
     }
 
+    /**
+     * Load the dumps from the block manifest if the profile use it and they are
+     * not loaded yet
+     *
+     * @throws IOException
+     */
+    private void loadBlockManifest() throws IOException {
+        if (this.blockManifestLoaded) {
+            return;
+        }
+        final byte[] bytes = this.target.getBlockManifestToByteArray(this.profile.getFcoEntity(), getGenerationId());
+        if ((bytes == null) || (bytes.length == 0)) {
+            throw new IOException(String.format("Missing block manifest %s", getBlockManifestPath()));
+        }
+        try (ByteArrayInputStream in = new ByteArrayInputStream(bytes)) {
+            BlockManifest.read(in, (diskId, block) -> this.profile.getDisks().get(diskId).getDumps()
+                    .put(block.getIndex(), block));
+        }
+        this.blockManifestLoaded = true;
+    }
+
+    public void setBlockManifestVersion(final Integer blockManifestVersion) {
+        this.profile.setBlockManifestVersion(blockManifestVersion);
+    }
+
+    public void setReferenceStore(final boolean referenceStore) {
+        this.profile.setReferenceStore(referenceStore);
+    }
+
+    public void setReferenceToken(final String referenceToken) {
+        this.profile.setReferenceToken(referenceToken);
+    }
+
     /**
      * @param isSucceeded
      */
@@ -746,12 +863,35 @@ public class GenerationProfile {
      * @throws NoSuchAlgorithmException
      */
     public ByteArrayInOutStream toByteArrayInOutputStream() throws NoSuchAlgorithmException, IOException {
-
-        final ObjectMapper objectMapper = new ObjectMapper();
-        final String json = objectMapper.writeValueAsString(this.profile);
+        loadBlockManifest();
+        for (final DiskProfile disk : this.profile.getDisks()) {
+            disk.setNumberOfDumps(disk.getDumps().size());
+        }
+        final String json;
+        if (this.profile.getBlockManifestVersion() == null) {
+            json = OBJECT_MAPPER.writeValueAsString(this.profile);
+        } else {
+            json = HEADER_OBJECT_MAPPER.writeValueAsString(this.profile);
+        }
         return new ByteArrayInOutStream(json);
     }
 
+    /**
+     * Write the dumps of all the disks on a block manifest. The profile is then
+     * serialized without dumps
+     *
+     * @param compress
+     * @return the manifest content
+     * @throws NoSuchAlgorithmException
+     * @throws IOException              if a block can't be stored on the manifest
+     */
+    public ByteArrayInOutStream toBlockManifest(final boolean compress) throws NoSuchAlgorithmException, IOException {
+        loadBlockManifest();
+        final ByteArrayInOutStream result = new ByteArrayInOutStream();
+        BlockManifest.write(result, this.profile.getDisks(), compress);
+        return result;
+    }
+
     public boolean isEncrypted() {
         return profile.getCryptoKeyId() != null;
     }
@@ -26,10 +26,17 @@
  ******************************************************************************/
 package com.vmware.safekeeping.core.profile;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.vmware.safekeeping.core.type.enums.CompressionCodec;
+
 public class SimpleBlockInfo {
     protected String md5;
     protected String sha1;
     protected byte cipherOffset;
+    protected String cipherNonce;
+    protected CompressionCodec compressionCodec;
+    protected boolean zero;
 
     protected long offset;
 
@@ -37,6 +44,10 @@ public class SimpleBlockInfo {
 
     protected int index;
 
+    private long storedOffset;
+
+    private long storedLength;
+
     public SimpleBlockInfo() {
     }
 
@@ -48,14 +59,35 @@ public class SimpleBlockInfo {
         this.index = sourceBlock.index;
         this.offset = sourceBlock.offset;
         this.cipherOffset = sourceBlock.cipherOffset;
+        this.cipherNonce = sourceBlock.cipherNonce;
+        this.compressionCodec = sourceBlock.compressionCodec;
+        this.zero = sourceBlock.zero;
         this.md5 = sourceBlock.md5;
         this.sha1 = sourceBlock.sha1;
+        this.storedOffset = sourceBlock.storedOffset;
+        this.storedLength = sourceBlock.storedLength;
+    }
+
+    /**
+     * @return the AEAD nonce of the block, null if the block use the legacy
+     *         cipher
+     */
+    public String getCipherNonce() {
+        return this.cipherNonce;
     }
 
     public byte getCipherOffset() {
         return this.cipherOffset;
     }
 
+    /**
+     * @return the codec of the block, null if the block use the codec of the
+     *         disk
+     */
+    public CompressionCodec getCompressionCodec() {
+        return this.compressionCodec;
+    }
+
     public int getIndex() {
         return this.index;
     }
@@ -76,10 +108,54 @@ public class SimpleBlockInfo {
         return this.sha1;
     }
 
+    /**
+     * @return the length in sectors of the stored block, 0 if the stored block
+     *         has the same range of this block
+     */
+    @JsonInclude(Include.NON_DEFAULT)
+    public long getStoredLength() {
+        return this.storedLength;
+    }
+
+    /**
+     * @return the first sector of the stored block, meaningful only if
+     *         {@link #hasStoredRange()}
+     */
+    @JsonInclude(Include.NON_DEFAULT)
+    public long getStoredOffset() {
+        return this.storedOffset;
+    }
+
+    /**
+     * A block recorded by a virtual backup can be a range of a block stored by a
+     * previous generation
+     *
+     * @return true if the block is a range of the stored block
+     */
+    public boolean hasStoredRange() {
+        return this.storedLength > 0;
+    }
+
+    /**
+     * @return true if the block contains only zeros. A zero block has no object
+     *         on the target
+     */
+    public boolean isZero() {
+        return this.zero;
+    }
+
+    public void setCipherNonce(final String cipherNonce) {
+        this.cipherNonce = cipherNonce;
+    }
+
     public void setCipherOffset(final byte cipherOffset) {
         this.cipherOffset = cipherOffset;
     }
 
+    public void setCompressionCodec(final CompressionCodec compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
     public void setIndex(final int index) {
         this.index = index;
     }
@@ -100,4 +176,16 @@ public class SimpleBlockInfo {
         this.sha1 = sha1;
     }
 
+    public void setStoredLength(final long storedLength) {
+        this.storedLength = storedLength;
+    }
+
+    public void setStoredOffset(final long storedOffset) {
+        this.storedOffset = storedOffset;
+    }
+
+    public void setZero(final boolean zero) {
+        this.zero = zero;
+    }
+
 }
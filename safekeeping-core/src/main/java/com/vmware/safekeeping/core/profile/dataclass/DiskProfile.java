@@ -49,6 +49,7 @@ import com.vmware.safekeeping.core.type.ManagedEntityInfo;
 import com.vmware.safekeeping.core.type.VmdkInfo;
 import com.vmware.safekeeping.core.type.enums.AdapterProtocolType;
 import com.vmware.safekeeping.core.type.enums.BackupMode;
+import com.vmware.safekeeping.core.type.enums.CompressionCodec;
 import com.vmware.safekeeping.core.type.enums.FileBackingInfoProvisioningType;
 import com.vmware.safekeeping.core.type.enums.VirtualDeviceBackingInfoType;
 import com.vmware.safekeeping.core.type.enums.VirtualDiskModeType;
@@ -79,6 +80,7 @@ public class DiskProfile {
     private boolean ivdDisk;
     private String changeId;
     private boolean compression;
+    private CompressionCodec compressionCodec;
     private boolean cipher;
     private BackupMode backupMode;
     private String report;
@@ -109,6 +111,11 @@ public class DiskProfile {
     private VirtualDeviceBackingInfoType virtualDeviceBackingInfo;
     private Map<String, String> metadata;
     private final Map<Integer, SimpleBlockInfo> dumps;
+    /**
+     * number of dumps, available also when the dumps are on the block manifest
+     * and not loaded yet
+     */
+    private int numberOfDumps;
 
     private ManagedEntityInfo datastoreInfo;
 
@@ -131,6 +138,7 @@ public class DiskProfile {
         this.ivdDisk = src.ivdDisk;
         this.changeId = src.changeId;
         this.compression = src.compression;
+        this.compressionCodec = src.compressionCodec;
         this.cipher = src.cipher;
         this.backupMode = src.backupMode;
         this.report = src.report;
@@ -149,6 +157,7 @@ public class DiskProfile {
         this.cryptoKeyProviderId = src.cryptoKeyProviderId;
         this.totalDumpSize = src.totalDumpSize;
         this.totalUncompressedDumpSize = src.totalUncompressedDumpSize;
+        this.numberOfDumps = src.numberOfDumps;
         this.diskId = src.diskId;
         this.ivdId = src.ivdId;
         datastoreInfo = src.datastoreInfo;
@@ -181,6 +190,7 @@ public class DiskProfile {
         this.report = iStr + REPORT_FILE_EXTENSION;
         this.succeeded = false;
         this.compression = spec.getBackupOptions().isCompression();
+        this.compressionCodec = spec.getBackupOptions().getCompressionCodec();
         this.cipher = spec.getBackupOptions().isCipher();
         this.changeId = spec.getCbt();
         if (StringUtils.isEmpty(this.changeId)) {
@@ -251,6 +261,7 @@ public class DiskProfile {
         this.virtualDeviceBackingInfo = vmdkInfo.getVirtualDeviceBackingInfo();
         if (spec.getBackupOptions() != null) {
             this.compression = spec.getBackupOptions().isCompression();
+            this.compressionCodec = spec.getBackupOptions().getCompressionCodec();
             this.cipher = spec.getBackupOptions().isCipher();
             this.backupMode = BackupMode.UNKNOW;
             this.report = vmdkInfo.getDiskId() + REPORT_FILE_EXTENSION;
@@ -320,6 +331,17 @@ public class DiskProfile {
         return this.changeId;
     }
 
+    /**
+     * @return the codec of the disk blocks. Generations without codec were
+     *         compressed with MiGz
+     */
+    public CompressionCodec getCompressionCodec() {
+        if (this.compressionCodec == null) {
+            return CompressionCodec.MIGZ;
+        }
+        return this.compressionCodec;
+    }
+
     /**
      * @return the contentId
      */
@@ -432,6 +454,13 @@ public class DiskProfile {
         return this.ivdId;
     }
 
+    /**
+     * @return the numberOfDumps
+     */
+    public int getNumberOfDumps() {
+        return this.numberOfDumps;
+    }
+
     /**
      * @return the pbmProfiles
      */
@@ -579,6 +608,13 @@ public class DiskProfile {
         this.compression = compression;
     }
 
+    /**
+     * @param compressionCodec the compressionCodec to set
+     */
+    public void setCompressionCodec(final CompressionCodec compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
     /**
      * @param contentId the contentId to set
      */
@@ -675,6 +711,13 @@ public class DiskProfile {
         this.ivdId = ivdId;
     }
 
+    /**
+     * @param numberOfDumps the numberOfDumps to set
+     */
+    public void setNumberOfDumps(final int numberOfDumps) {
+        this.numberOfDumps = numberOfDumps;
+    }
+
     public void setPbmProfile(final FcoPbmProfile pbmProfiles) {
         this.pbmProfile = pbmProfiles;
     }
@@ -130,6 +130,26 @@ public class FcoGenerationProfile {
 
     private Integer numberOfVnics;
 
+    /**
+     * true if the block references of this generation are kept on the repository
+     * reference store instead of the per block json
+     */
+    private boolean referenceStore;
+
+    /**
+     * random token making the owner of the references unique to this generation.
+     * A new backup of the same FCO reuses the generation ids of the removed
+     * generations. Null on the profiles owning references by uuid and generation
+     * id only
+     */
+    private String referenceToken;
+
+    /**
+     * version of the binary block manifest holding the disk dumps, null if the
+     * dumps are inside this profile
+     */
+    private Integer blockManifestVersion;
+
     public FcoGenerationProfile() {
         this.disks = new ArrayList<>();
         this.controllers = new HashMap<>();
@@ -185,6 +205,9 @@ public class FcoGenerationProfile {
 
         this.numberOfVnics = src.numberOfVnics;
         this.generationId = src.generationId;
+        this.referenceStore = src.referenceStore;
+        this.referenceToken = src.referenceToken;
+        this.blockManifestVersion = src.blockManifestVersion;
         this.pbmProfile = new FcoPbmProfile(src.pbmProfile);
         for (final DiskProfile disk : src.disks) {
             this.disks.add(new DiskProfile(disk));
@@ -218,6 +241,13 @@ public class FcoGenerationProfile {
         return this.backupMode;
     }
 
+    /**
+     * @return the blockManifestVersion
+     */
+    public Integer getBlockManifestVersion() {
+        return this.blockManifestVersion;
+    }
+
     public VirtualMachineConfigSpecOverlay getConfigSpec() {
         return this.configSpec;
     }
@@ -391,6 +421,10 @@ public class FcoGenerationProfile {
     /**
      * @return the resourcePoolInfo
      */
+    public String getReferenceToken() {
+        return this.referenceToken;
+    }
+
     public ManagedEntityInfo getResourcePoolInfo() {
         return this.resourcePoolInfo;
     }
@@ -571,6 +605,10 @@ public class FcoGenerationProfile {
         return this.changeTracking;
     }
 
+    public boolean isReferenceStore() {
+        return this.referenceStore;
+    }
+
     /**
      * @return the succeeded
      */
@@ -598,6 +636,13 @@ public class FcoGenerationProfile {
         this.backupMode = backupMode;
     }
 
+    /**
+     * @param blockManifestVersion the blockManifestVersion to set
+     */
+    public void setBlockManifestVersion(final Integer blockManifestVersion) {
+        this.blockManifestVersion = blockManifestVersion;
+    }
+
     /**
      * @param changeTracking the changeTracking to set
      */
@@ -747,9 +792,17 @@ public class FcoGenerationProfile {
         this.previousGenerationId = previousGenerationId;
     }
 
+    public void setReferenceStore(final boolean referenceStore) {
+        this.referenceStore = referenceStore;
+    }
+
     /**
      * @param resourcePoolInfo the resourcePoolInfo to set
      */
+    public void setReferenceToken(final String referenceToken) {
+        this.referenceToken = referenceToken;
+    }
+
     public void setResourcePoolInfo(final ManagedEntityInfo resourcePoolInfo) {
         this.resourcePoolInfo = resourcePoolInfo;
     }
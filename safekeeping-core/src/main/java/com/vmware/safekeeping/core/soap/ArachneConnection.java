@@ -247,22 +247,20 @@ public class ArachneConnection extends AbstractHttpConf implements IConnection {
                     }
 
                 }
-                final List<ImprovedVirtualDisk> ivdFcoList = this.connManager.getAllIvdList();
                 for (final String ivdUuid : ivdList) {
                     final String[] uuids = StringUtils.strip(ivdUuid, "\"").split(":");
                     if (uuids.length == 3) {
-                        for (final ImprovedVirtualDisk ivdFco : ivdFcoList) {
-                            if (ivdFco.getUuid().equals(uuids[1])) {
-                                final List<VStorageObjectSnapshotInfoVStorageObjectSnapshot> ivdSnaps = ivdFco
-                                        .getSnapshots().getSnapshots();
-                                for (final VStorageObjectSnapshotInfoVStorageObjectSnapshot snap : ivdSnaps) {
-                                    if (snap.getId().getId().equals(uuids[2])) {
-                                        final K8sIvdComponent ivdComp = new K8sIvdComponent();
-                                        ivdComp.ivd = ivdFco;
-                                        ivdComp.activeSnapshot = snap;
-                                        result.add(ivdComp);
-                                        break;
-                                    }
+                        final ImprovedVirtualDisk ivdFco = this.connManager.findIvdById(null, uuids[1]);
+                        if (ivdFco != null) {
+                            final List<VStorageObjectSnapshotInfoVStorageObjectSnapshot> ivdSnaps = ivdFco
+                                    .getSnapshots().getSnapshots();
+                            for (final VStorageObjectSnapshotInfoVStorageObjectSnapshot snap : ivdSnaps) {
+                                if (snap.getId().getId().equals(uuids[2])) {
+                                    final K8sIvdComponent ivdComp = new K8sIvdComponent();
+                                    ivdComp.ivd = ivdFco;
+                                    ivdComp.activeSnapshot = snap;
+                                    result.add(ivdComp);
+                                    break;
                                 }
                             }
                         }
@@ -35,6 +35,7 @@ import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -43,6 +44,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -85,6 +96,7 @@ import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
 import com.vmware.safekeeping.core.soap.helpers.SslUtil;
 import com.vmware.safekeeping.core.type.ManagedEntityInfo;
 import com.vmware.safekeeping.core.type.ManagedFcoEntityInfo;
+import com.vmware.safekeeping.core.type.VmbkThreadFactory;
 import com.vmware.safekeeping.core.type.enums.EntityType;
 import com.vmware.safekeeping.core.type.enums.FileBackingInfoProvisioningType;
 import com.vmware.safekeeping.core.type.enums.VMwareCloudPlatforms;
@@ -121,6 +133,77 @@ import com.vmware.vslm.VslmFaultFaultMsg;
 
 public class ConnectionManager {
 
+    /**
+     * Query run on a single vCenter during a fan-out
+     *
+     * @param <T>
+     */
+    @FunctionalInterface
+    interface VimQuery<T> {
+        T query(VimConnection vim) throws Exception;
+    }
+
+    /**
+     * vCenter connection submitted to the fan-out pool. A connection completed
+     * after the caller gave up on it is closed instead of being registered.
+     */
+    private final class VimConnectTask implements Callable<VimConnection> {
+        private final Entry<String, String> entry;
+        private final VMwareCloudPlatforms cloudPlatform;
+        private final int step;
+        private final CoreResultActionConnect rac;
+        private final CoreResultActionConnectVcenter racv;
+        private final CountDownLatch started;
+        private volatile long startedAt;
+        private boolean abandoned;
+        private VimConnection vim;
+
+        private VimConnectTask(final Entry<String, String> entry, final VMwareCloudPlatforms cloudPlatform,
+                final int step, final CoreResultActionConnect rac) {
+            this.entry = entry;
+            this.cloudPlatform = cloudPlatform;
+            this.step = step;
+            this.rac = rac;
+            this.racv = new CoreResultActionConnectVcenter(rac);
+            this.started = new CountDownLatch(1);
+        }
+
+        /**
+         * Wait for the task to leave the queue of the fan out pool
+         *
+         * @param timeoutNanos
+         * @return the start time of the task or 0 if not started
+         * @throws InterruptedException
+         */
+        private long awaitStart(final long timeoutNanos) throws InterruptedException {
+            this.started.await(timeoutNanos, TimeUnit.NANOSECONDS);
+            return this.startedAt;
+        }
+
+        /**
+         * @return the connection if completed, null otherwise
+         */
+        private synchronized VimConnection abandon() {
+            this.abandoned = true;
+            return this.vim;
+        }
+
+        @Override
+        public VimConnection call() throws CoreResultActionException {
+            this.startedAt = System.nanoTime();
+            this.started.countDown();
+            final VimConnection result = vimConnect(this.entry, this.cloudPlatform, this.step, this.rac, this.racv);
+            synchronized (this) {
+                if (this.abandoned && (result != null)) {
+                    disconnectAbandoned(result);
+                    return null;
+                }
+                this.vim = result;
+            }
+            return result;
+        }
+    }
+
     abstract static class AbstractConnectService extends Thread {
         protected boolean success;
         protected final VimConnection vim;
@@ -151,6 +234,8 @@ public class ConnectionManager {
 
     private ArachneConnection arachneConnection;
 
+    private ExecutorService fanOutExecutor;
+
     public ConnectionManager(final AbstractCoreBasicConnectOptions options) throws SafekeepingException {
         this.options = options;
         sslUtil = new SslUtil();
@@ -196,6 +281,12 @@ public class ConnectionManager {
         } catch (final CoreResultActionException e) {
             Utility.logWarning(ConnectionManager.logger, e);
         }
+        synchronized (this) {
+            if (this.fanOutExecutor != null) {
+                this.fanOutExecutor.shutdownNow();
+                this.fanOutExecutor = null;
+            }
+        }
 
     }
 
@@ -299,34 +390,15 @@ public class ConnectionManager {
                                 vimUrls.size(), vimUrls.size() > 1 ? "s" : "");
                         ConnectionManager.logger.info(msg);
                     }
-                    Map<String, VMwareCloudPlatforms> platforms = new HashMap<>();
-                    for (final Entry<String, String> entry : vimUrls.entrySet()) {
-
-                        final URL destinationURL = new URL(entry.getValue());
-                        final HttpsURLConnection conn = (HttpsURLConnection) destinationURL.openConnection();
-                        conn.connect();
-                        String cn = getCommonName((X509Certificate[]) conn.getServerCertificates());
-                        conn.disconnect();
-                        if (cn.endsWith("fractal.vmwarevmc.com")) {
-                            platforms.put(entry.getKey(), VMwareCloudPlatforms.VMC_ON_DELL_EMC);
-                        } else if (cn.endsWith(".vmwarevmc.com")) {
-                            platforms.put(entry.getKey(), VMwareCloudPlatforms.VMC_ON_AWS);
-                        } else if (cn.endsWith(".vmwarevmcgov.com")) {
-                            platforms.put(entry.getKey(), VMwareCloudPlatforms.VMC_GOVCLOUD);
-                        } else {
-                            // NO VMC
-                            platforms.put(entry.getKey(), VMwareCloudPlatforms.ON_PREM);
-                        }
-                        vmcConfiguration |= platforms.get(entry.getKey()) != VMwareCloudPlatforms.ON_PREM;
-                        rac.progressIncrease(Utility.ONE_PER_CENT);
+                    final Map<String, VMwareCloudPlatforms> platforms = probeCloudPlatforms(vimUrls, rac);
+                    for (final VMwareCloudPlatforms platform : platforms.values()) {
+                        vmcConfiguration |= platform != VMwareCloudPlatforms.ON_PREM;
                     }
                     SJvddk.initialize(vmcConfiguration);
 
                     rac.progressIncrease(Utility.TEN_PER_CENT - vimUrls.size());
                     final int step = 80 / vimUrls.size();
-                    for (final Entry<String, String> entry : vimUrls.entrySet()) {
-                        vimConnect(entry, platforms.get(entry.getKey()), step, rac);
-                    }
+                    vimConnectAll(vimUrls, platforms, step, rac);
                 } else {
                     rac.failure("Failed to connect SSO");
                 }
@@ -505,13 +577,7 @@ public class ConnectionManager {
     public ImprovedVirtualDisk findIvdById(final String key, final ID id) {
         ImprovedVirtualDisk result = null;
         if (StringUtils.isEmpty(key)) {
-            for (final VimConnection vim : this.vimConnections.values()) {
-                final ImprovedVirtualDisk ivd = vim.getVslmConnection().getIvdById(id);
-                if (ivd != null) {
-                    result = ivd;
-                    break;
-                }
-            }
+            result = queryFirst(vim -> vim.getVslmConnection().getIvdById(id));
         } else {
             if (this.vimConnections.containsKey(key)) {
                 final ImprovedVirtualDisk ivd = this.vimConnections.get(key).getVslmConnection().getIvdById(id);
@@ -526,13 +592,7 @@ public class ConnectionManager {
     public ImprovedVirtualDisk findIvdById(final String key, final String uuid) {
         ImprovedVirtualDisk result = null;
         if (StringUtils.isEmpty(key)) {
-            for (final VimConnection vim : this.vimConnections.values()) {
-                final ImprovedVirtualDisk ivd = vim.getVslmConnection().getIvdById(uuid);
-                if (ivd != null) {
-                    result = ivd;
-                    break;
-                }
-            }
+            result = queryFirst(vim -> vim.getVslmConnection().getIvdById(uuid));
         } else {
             if (this.vimConnections.containsKey(key)) {
                 final ImprovedVirtualDisk ivd = this.vimConnections.get(key).getVslmConnection().getIvdById(uuid);
@@ -551,9 +611,7 @@ public class ConnectionManager {
     public List<ImprovedVirtualDisk> findIvdByName(final String key, final String name) {
         final LinkedList<ImprovedVirtualDisk> result = new LinkedList<>();
         if (StringUtils.isEmpty(key)) {
-            for (final VimConnection vim : this.vimConnections.values()) {
-                result.addAll(vim.getVslmConnection().getIvdByName(name));
-            }
+            result.addAll(queryAll(vim -> vim.getVslmConnection().getIvdByName(name)));
         } else {
             if (this.vimConnections.containsKey(key)) {
                 result.addAll(this.vimConnections.get(key).getVslmConnection().getIvdByName(name));
@@ -571,12 +629,7 @@ public class ConnectionManager {
         VirtualAppManager result = null;
         try {
             if (StringUtils.isEmpty(key)) {
-                for (final VimConnection vim : this.vimConnections.values()) {
-                    result = vim.getFind().findVAppByMoref(moref);
-                    if (result != null) {
-                        break;
-                    }
-                }
+                result = queryFirst(vim -> vim.getFind().findVAppByMoref(moref));
             } else {
                 if (this.vimConnections.containsKey(key)) {
                     final VimConnection vim = this.vimConnections.get(key);
@@ -599,12 +652,7 @@ public class ConnectionManager {
         VirtualAppManager result = null;
         try {
             if (StringUtils.isEmpty(key)) {
-                for (final VimConnection vim : this.vimConnections.values()) {
-                    result = vim.getFind().findVAppByName(name);
-                    if (result != null) {
-                        break;
-                    }
-                }
+                result = queryFirst(vim -> vim.getFind().findVAppByName(name));
             } else {
                 if (this.vimConnections.containsKey(key)) {
                     final VimConnection vim = this.vimConnections.get(key);
@@ -627,12 +675,7 @@ public class ConnectionManager {
     public VirtualAppManager findVAppByUuid(final String key, final String uuid) {
         VirtualAppManager result = null;
         if (StringUtils.isEmpty(key)) {
-            for (final VimConnection vim : this.vimConnections.values()) {
-                result = vim.getFind().findVAppByUuid(uuid);
-                if (result != null) {
-                    break;
-                }
-            }
+            result = queryFirst(vim -> vim.getFind().findVAppByUuid(uuid));
         } else {
             if (this.vimConnections.containsKey(key)) {
                 final VimConnection vim = this.vimConnections.get(key);
@@ -658,12 +701,7 @@ public class ConnectionManager {
         try {
 
             if (StringUtils.isEmpty(key)) {
-                for (final VimConnection vim : this.vimConnections.values()) {
-                    result = vim.getFind().findVmByIp(ip);
-                    if (result != null) {
-                        break;
-                    }
-                }
+                result = queryFirst(vim -> vim.getFind().findVmByIp(ip));
             } else {
                 if (this.vimConnections.containsKey(key)) {
                     final VimConnection vim = this.vimConnections.get(key);
@@ -693,12 +731,7 @@ public class ConnectionManager {
         VirtualMachineManager result = null;
         try {
             if (StringUtils.isEmpty(key)) {
-                for (final VimConnection vim : this.vimConnections.values()) {
-                    result = vim.getFind().findVmByMoref(moref);
-                    if (result != null) {
-                        break;
-                    }
-                }
+                result = queryFirst(vim -> vim.getFind().findVmByMoref(moref));
             } else {
                 if (this.vimConnections.containsKey(key)) {
                     final VimConnection vim = this.vimConnections.get(key);
@@ -728,12 +761,7 @@ public class ConnectionManager {
         VirtualMachineManager result = null;
         try {
             if (StringUtils.isEmpty(key)) {
-                for (final VimConnection vim : this.vimConnections.values()) {
-                    result = vim.getFind().findVmByName(name);
-                    if (result != null) {
-                        break;
-                    }
-                }
+                result = queryFirst(vim -> vim.getFind().findVmByName(name));
             } else {
                 if (this.vimConnections.containsKey(key)) {
                     final VimConnection vim = this.vimConnections.get(key);
@@ -767,12 +795,7 @@ public class ConnectionManager {
         try {
 
             if (StringUtils.isEmpty(key)) {
-                for (final VimConnection vim : this.vimConnections.values()) {
-                    result = vim.getFind().findVmByUuid(uuid, instanceUuid);
-                    if (result != null) {
-                        break;
-                    }
-                }
+                result = queryFirst(vim -> vim.getFind().findVmByUuid(uuid, instanceUuid));
             } else {
                 if (this.vimConnections.containsKey(key)) {
                     final VimConnection vim = this.vimConnections.get(key);
@@ -793,27 +816,13 @@ public class ConnectionManager {
 
     public List<ImprovedVirtualDisk> getAllIvdList()
             throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg, InterruptedException {
-        final LinkedList<ImprovedVirtualDisk> ivdList = new LinkedList<>();
-        for (final VimConnection vim : this.vimConnections.values()) {
-            ivdList.addAll(vim.getVslmConnection().getIvdList());
-        }
-        return ivdList;
+        return queryAll(vim -> vim.getVslmConnection().getIvdList());
     }
 
     public List<VirtualAppManager> getAllVAppList(final String key, final String vmFilter) {
         final LinkedList<VirtualAppManager> vmList = new LinkedList<>();
         if (StringUtils.isEmpty(key)) {
-            for (final VimConnection vimConnection : this.vimConnections.values()) {
-                try {
-                    vmList.addAll(vimConnection.getFind().findAnyVapp(vmFilter));
-                } catch (InvalidPropertyFaultMsg | RuntimeFaultFaultMsg e) {
-                    Utility.logWarning(ConnectionManager.logger, e);
-                } catch (final InterruptedException e) {
-                    ConnectionManager.logger.log(Level.WARNING, "Interrupted!", e);
-                    // Restore interrupted state...
-                    Thread.currentThread().interrupt();
-                }
-            }
+            vmList.addAll(queryAll(vim -> vim.getFind().findAnyVapp(vmFilter)));
         } else {
             try {
                 vmList.addAll(this.vimConnections.get(key).getFind().findAnyVapp(vmFilter));
@@ -831,17 +840,7 @@ public class ConnectionManager {
     public List<VirtualMachineManager> getAllVmList(final String key, final String vmFilter) {
         final List<VirtualMachineManager> vmList = new LinkedList<>();
         if (StringUtils.isEmpty(key)) {
-            for (final VimConnection vimConnection : this.vimConnections.values()) {
-                try {
-                    vmList.addAll(vimConnection.getFind().findAnyVm(vmFilter));
-                } catch (InvalidPropertyFaultMsg | RuntimeFaultFaultMsg e) {
-                    Utility.logWarning(ConnectionManager.logger, e);
-                } catch (final InterruptedException e) {
-                    ConnectionManager.logger.log(Level.WARNING, "Interrupted!", e);
-                    // Restore interrupted state...
-                    Thread.currentThread().interrupt();
-                }
-            }
+            vmList.addAll(queryAll(vim -> vim.getFind().findAnyVm(vmFilter)));
         } else {
             try {
                 vmList.addAll(this.vimConnections.get(key).getFind().findAnyVm(vmFilter));
@@ -1204,9 +1203,9 @@ public class ConnectionManager {
         this.repositoryTarget = repositoryTarget;
     }
 
-    private void vimConnect(final Entry<String, String> entry, VMwareCloudPlatforms cloudPlatform, final int step,
-            final CoreResultActionConnect rac) throws CoreResultActionException {
-        final CoreResultActionConnectVcenter racv = new CoreResultActionConnectVcenter(rac);
+    private VimConnection vimConnect(final Entry<String, String> entry, VMwareCloudPlatforms cloudPlatform,
+            final int step, final CoreResultActionConnect rac, final CoreResultActionConnectVcenter racv)
+            throws CoreResultActionException {
         VimConnection vim = null;
 
         racv.start();
@@ -1319,10 +1318,7 @@ public class ConnectionManager {
             if (connectPbm.isSuccessful() && connectVslm.isSuccessful() && connectVapi.isSuccessful()) {
 
                 vim.startKeepAlive();
-                if (this.defualtVcenter == null) {
-                    this.defualtVcenter = vim;
-                }
-                this.vimConnections.put(vim.getServerIntanceUuid(), vim);
+                return vim;
 
             } else {
                 final String msg = String.format("Connection failure:%s %s %s",
@@ -1352,9 +1348,252 @@ public class ConnectionManager {
             ConnectionManager.logger.log(Level.WARNING, "Interrupted!", e);
             // Restore interrupted state...
             Thread.currentThread().interrupt();
+            if (vim != null) {
+                disconnectAbandoned(vim);
+            }
         } finally {
             racv.done();
         }
+        return null;
+    }
+
+    /**
+     * Connect every vCenter in parallel. The connections are registered in the
+     * Lookup Service order, the first one is the default vCenter. The connect
+     * timeout of a vCenter runs from the start of its task: a task queued behind
+     * vcenterFanOutThreads others waits at most for the tasks before it.
+     *
+     * @param vimUrls
+     * @param platforms
+     * @param step
+     * @param rac
+     * @throws CoreResultActionException
+     */
+    private void vimConnectAll(final Map<String, String> vimUrls, final Map<String, VMwareCloudPlatforms> platforms,
+            final int step, final CoreResultActionConnect rac) throws CoreResultActionException {
+        final Map<VimConnectTask, Future<VimConnection>> tasks = new LinkedHashMap<>();
+        for (final Entry<String, String> entry : vimUrls.entrySet()) {
+            final VimConnectTask task = new VimConnectTask(entry, platforms.get(entry.getKey()), step, rac);
+            tasks.put(task, getFanOutExecutor().submit(task));
+        }
+        final long timeoutSeconds = CoreGlobalSettings.getVcenterConnectTimeoutSeconds();
+        final long timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        final long queueDeadline = System.nanoTime()
+                + (timeoutNanos * ((tasks.size() - 1) / Math.max(1, CoreGlobalSettings.getVcenterFanOutThreads())));
+        boolean interrupted = false;
+        for (final Entry<VimConnectTask, Future<VimConnection>> entry : tasks.entrySet()) {
+            final VimConnectTask task = entry.getKey();
+            VimConnection vim = null;
+            try {
+                if (!interrupted) {
+                    final long startedAt = task.awaitStart(Math.max(0, queueDeadline - System.nanoTime()));
+                    if (startedAt == 0) {
+                        throw new TimeoutException();
+                    }
+                    vim = entry.getValue().get(Math.max(0, (startedAt + timeoutNanos) - System.nanoTime()),
+                            TimeUnit.NANOSECONDS);
+                }
+            } catch (final ExecutionException e) {
+                Utility.logWarning(ConnectionManager.logger, e.getCause());
+                task.racv.failure(e.getCause());
+            } catch (final TimeoutException e) {
+                final String msg = String.format("vCenter %s did not connect within %d seconds",
+                        task.entry.getValue(), timeoutSeconds);
+                ConnectionManager.logger.warning(msg);
+                task.racv.failure(msg);
+            } catch (final InterruptedException e) {
+                ConnectionManager.logger.log(Level.WARNING, "Interrupted!", e);
+                // Restore interrupted state...
+                Thread.currentThread().interrupt();
+                interrupted = true;
+            }
+            if (vim == null) {
+                vim = task.abandon();
+                entry.getValue().cancel(true);
+            }
+            if (vim != null) {
+                if (this.defualtVcenter == null) {
+                    this.defualtVcenter = vim;
+                }
+                this.vimConnections.put(vim.getServerIntanceUuid(), vim);
+            }
+        }
+    }
+
+    /**
+     * Detect the cloud platform of each vCenter from the Common Name of its
+     * certificate. The vCenters are probed in parallel, a probe gives up after
+     * vcenterProbeTimeoutSeconds.
+     *
+     * @param vimUrls
+     * @param rac
+     * @return
+     * @throws IOException
+     */
+    private Map<String, VMwareCloudPlatforms> probeCloudPlatforms(final Map<String, String> vimUrls,
+            final CoreResultActionConnect rac) throws IOException {
+        final int timeoutMillis = (int) TimeUnit.SECONDS.toMillis(CoreGlobalSettings.getVcenterProbeTimeoutSeconds());
+        final Map<String, Future<VMwareCloudPlatforms>> futures = new LinkedHashMap<>();
+        for (final Entry<String, String> entry : vimUrls.entrySet()) {
+            futures.put(entry.getKey(), getFanOutExecutor().submit(() -> {
+                final URL destinationURL = new URL(entry.getValue());
+                final HttpsURLConnection conn = (HttpsURLConnection) destinationURL.openConnection();
+                conn.setConnectTimeout(timeoutMillis);
+                conn.setReadTimeout(timeoutMillis);
+                conn.connect();
+                final String cn = getCommonName((X509Certificate[]) conn.getServerCertificates());
+                conn.disconnect();
+                rac.progressIncrease(Utility.ONE_PER_CENT);
+                if (cn.endsWith("fractal.vmwarevmc.com")) {
+                    return VMwareCloudPlatforms.VMC_ON_DELL_EMC;
+                } else if (cn.endsWith(".vmwarevmc.com")) {
+                    return VMwareCloudPlatforms.VMC_ON_AWS;
+                } else if (cn.endsWith(".vmwarevmcgov.com")) {
+                    return VMwareCloudPlatforms.VMC_GOVCLOUD;
+                } else {
+                    // NO VMC
+                    return VMwareCloudPlatforms.ON_PREM;
+                }
+            }));
+        }
+        final Map<String, VMwareCloudPlatforms> platforms = new HashMap<>();
+        try {
+            for (final Entry<String, Future<VMwareCloudPlatforms>> entry : futures.entrySet()) {
+                platforms.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (final InterruptedException e) {
+            ConnectionManager.logger.log(Level.WARNING, "Interrupted!", e);
+            // Restore interrupted state...
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            for (final Future<VMwareCloudPlatforms> future : futures.values()) {
+                future.cancel(true);
+            }
+        }
+        return platforms;
+    }
+
+    private void disconnectAbandoned(final VimConnection vim) {
+        try {
+            vim.disconnect();
+        } catch (final RuntimeFaultFaultMsg | WebServiceException e) {
+            Utility.logWarning(ConnectionManager.logger, e);
+        }
+    }
+
+    private synchronized ExecutorService getFanOutExecutor() {
+        if (this.fanOutExecutor == null) {
+            this.fanOutExecutor = Executors.newFixedThreadPool(CoreGlobalSettings.getVcenterFanOutThreads(),
+                    new VmbkThreadFactory("vcenter-fanout", true));
+        }
+        return this.fanOutExecutor;
+    }
+
+    /**
+     * Run the query on every vCenter in parallel and merge the results as they
+     * arrive. vCenters failing or not answering within vcenterQueryTimeoutSeconds
+     * are logged and skipped.
+     *
+     * @param query
+     * @return
+     */
+    private <T> List<T> queryAll(final VimQuery<? extends Collection<T>> query) {
+        final List<T> result = new LinkedList<>();
+        final CompletionService<Collection<T>> completion = new ExecutorCompletionService<>(getFanOutExecutor());
+        final Map<Future<Collection<T>>, VimConnection> pending = new HashMap<>();
+        for (final VimConnection vim : this.vimConnections.values()) {
+            pending.put(completion.submit(() -> query.query(vim)), vim);
+        }
+        final long timeoutSeconds = CoreGlobalSettings.getVcenterQueryTimeoutSeconds();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        try {
+            while (!pending.isEmpty()) {
+                final Future<Collection<T>> future = completion.poll(deadline - System.nanoTime(),
+                        TimeUnit.NANOSECONDS);
+                if (future == null) {
+                    break;
+                }
+                final VimConnection vim = pending.remove(future);
+                try {
+                    result.addAll(future.get());
+                } catch (final ExecutionException e) {
+                    if (ConnectionManager.logger.isLoggable(Level.WARNING)) {
+                        final String msg = String.format("Query on vCenter %s failed: %s", vim.getUrl(),
+                                e.getCause().getMessage());
+                        ConnectionManager.logger.warning(msg);
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            ConnectionManager.logger.log(Level.WARNING, "Interrupted!", e);
+            // Restore interrupted state...
+            Thread.currentThread().interrupt();
+        } finally {
+            for (final Entry<Future<Collection<T>>, VimConnection> entry : pending.entrySet()) {
+                entry.getKey().cancel(true);
+                if (ConnectionManager.logger.isLoggable(Level.WARNING)) {
+                    final String msg = String.format("vCenter %s did not answer within %d seconds",
+                            entry.getValue().getUrl(), timeoutSeconds);
+                    ConnectionManager.logger.warning(msg);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Run the query on every vCenter in parallel and return the first non null
+     * result in vCenter order, as the sequential search did. vCenters failing or
+     * not answering within vcenterQueryTimeoutSeconds are skipped.
+     *
+     * @param query
+     * @return
+     */
+    private <T> T queryFirst(final VimQuery<T> query) {
+        final Map<VimConnection, Future<T>> futures = new LinkedHashMap<>();
+        for (final VimConnection vim : this.vimConnections.values()) {
+            futures.put(vim, getFanOutExecutor().submit(() -> query.query(vim)));
+        }
+        final long timeoutSeconds = CoreGlobalSettings.getVcenterQueryTimeoutSeconds();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        T result = null;
+        try {
+            for (final Entry<VimConnection, Future<T>> entry : futures.entrySet()) {
+                try {
+                    result = entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (result != null) {
+                        break;
+                    }
+                } catch (final ExecutionException e) {
+                    if (ConnectionManager.logger.isLoggable(Level.FINE)) {
+                        final String msg = String.format("Query on vCenter %s failed: %s", entry.getKey().getUrl(),
+                                e.getCause().getMessage());
+                        ConnectionManager.logger.fine(msg);
+                    }
+                } catch (final TimeoutException e) {
+                    if (ConnectionManager.logger.isLoggable(Level.WARNING)) {
+                        final String msg = String.format("vCenter %s did not answer within %d seconds",
+                                entry.getKey().getUrl(), timeoutSeconds);
+                        ConnectionManager.logger.warning(msg);
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            ConnectionManager.logger.log(Level.WARNING, "Interrupted!", e);
+            // Restore interrupted state...
+            Thread.currentThread().interrupt();
+        } finally {
+            for (final Future<T> future : futures.values()) {
+                future.cancel(true);
+            }
+        }
+        return result;
     }
 
 }
@@ -0,0 +1,371 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.soap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vmware.safekeeping.common.Utility;
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
+import com.vmware.safekeeping.core.type.ManagedEntityInfo;
+import com.vmware.safekeeping.core.type.VmbkThreadFactory;
+import com.vmware.safekeeping.core.type.fco.ImprovedVirtualDisk;
+import com.vmware.vim25.ID;
+
+/**
+ * Catalog of the Improved Virtual Disks of a vCenter indexed by id, name and
+ * datastore. The catalog is loaded retrieving the VStorageObjects in parallel
+ * batches and reloaded once older than ivdCatalogTtlSeconds. Create, delete,
+ * rename and promote operations update the catalog directly. A failed load
+ * keeps the previous content and is retried after a short delay, a lookup
+ * miss can force a reload to find the IVDs created by other clients.
+ */
+class IvdCatalog {
+
+    /**
+     * IVD id and the datastore holding it (null when VSLM resolves the datastore)
+     */
+    static final class Location {
+        private final ID id;
+        private final ManagedEntityInfo datastore;
+
+        Location(final ID id, final ManagedEntityInfo datastore) {
+            this.id = id;
+            this.datastore = datastore;
+        }
+
+        ManagedEntityInfo getDatastore() {
+            return this.datastore;
+        }
+
+        ID getId() {
+            return this.id;
+        }
+    }
+
+    private static final Logger logger = Logger.getLogger(IvdCatalog.class.getName());
+
+    /**
+     * Minimum interval between two loads forced by a lookup miss or after a
+     * failed load
+     */
+    private static final long RELOAD_INTERVAL_MILLIS = 10000;
+    private static final long IDLE_THREAD_SECONDS = 60;
+
+    private static void index(final Map<String, Set<String>> index, final String value, final String uuid) {
+        if (value != null) {
+            index.computeIfAbsent(value, k -> new LinkedHashSet<>()).add(uuid);
+        }
+    }
+
+    private static String nameKey(final String name) {
+        return (name == null) ? null : name.toLowerCase(Utility.LOCALE);
+    }
+
+    private static void unindex(final Map<String, Set<String>> index, final String value, final String uuid) {
+        if (value != null) {
+            final Set<String> uuids = index.get(value);
+            if (uuids != null) {
+                uuids.remove(uuid);
+                if (uuids.isEmpty()) {
+                    index.remove(value);
+                }
+            }
+        }
+    }
+
+    private final VslmConnection vslmConnection;
+    private final Map<String, ImprovedVirtualDisk> byId;
+    private final Map<String, Set<String>> byName;
+    private final Map<String, Set<String>> byDatastore;
+    private final ReadWriteLock lock;
+    private final Object loadLock;
+    private volatile long loadedAt;
+    private volatile long attemptedAt;
+    private ThreadPoolExecutor executor;
+
+    IvdCatalog(final VslmConnection vslmConnection) {
+        this.vslmConnection = vslmConnection;
+        this.byId = new HashMap<>();
+        this.byName = new HashMap<>();
+        this.byDatastore = new HashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+        this.loadLock = new Object();
+    }
+
+    private List<ImprovedVirtualDisk> collect(final Set<String> uuids) {
+        final List<ImprovedVirtualDisk> result = new LinkedList<>();
+        if (uuids != null) {
+            for (final String uuid : uuids) {
+                result.add(this.byId.get(uuid));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Load the catalog if never loaded or expired
+     */
+    private void ensureLoaded() {
+        if (!isStale()) {
+            return;
+        }
+        synchronized (this.loadLock) {
+            if (isStale() && !isRecentAttempt()) {
+                load();
+            }
+        }
+    }
+
+    /**
+     * @return every IVD in the catalog
+     */
+    List<ImprovedVirtualDisk> getAll() {
+        ensureLoaded();
+        this.lock.readLock().lock();
+        try {
+            return new ArrayList<>(this.byId.values());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    List<ImprovedVirtualDisk> getByDatastore(final ManagedEntityInfo datastore) {
+        ensureLoaded();
+        this.lock.readLock().lock();
+        try {
+            return collect(this.byDatastore.get(datastore.getMorefValue()));
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    ImprovedVirtualDisk getById(final String uuid) {
+        ensureLoaded();
+        this.lock.readLock().lock();
+        try {
+            return this.byId.get(uuid);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Case insensitive lookup by name
+     *
+     * @param name
+     * @return
+     */
+    List<ImprovedVirtualDisk> getByName(final String name) {
+        ensureLoaded();
+        this.lock.readLock().lock();
+        try {
+            return collect(this.byName.get(nameKey(name)));
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (this.executor == null) {
+            final int threads = Math.max(1, CoreGlobalSettings.getIvdCatalogThreads());
+            this.executor = new ThreadPoolExecutor(threads, threads, IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new VmbkThreadFactory("ivd-catalog-" + this.vslmConnection.getServerIntanceUuid(), true));
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+        return this.executor;
+    }
+
+    private void index(final ImprovedVirtualDisk ivd) {
+        final String uuid = ivd.getId().getId();
+        this.byId.put(uuid, ivd);
+        index(this.byName, nameKey(ivd.getName()), uuid);
+        if (ivd.getDatastoreInfo() != null) {
+            index(this.byDatastore, ivd.getDatastoreInfo().getMorefValue(), uuid);
+        }
+    }
+
+    /**
+     * Force a reload on the next lookup
+     */
+    void invalidate() {
+        this.loadedAt = 0;
+    }
+
+    private boolean isRecentAttempt() {
+        return (System.currentTimeMillis() - this.attemptedAt) < RELOAD_INTERVAL_MILLIS;
+    }
+
+    private boolean isStale() {
+        final long ttl = TimeUnit.SECONDS.toMillis(CoreGlobalSettings.getIvdCatalogTtlSeconds());
+        return (this.loadedAt == 0) || ((System.currentTimeMillis() - this.loadedAt) >= ttl);
+    }
+
+    /**
+     * List the IVD ids and retrieve the VStorageObjects in batches of
+     * ivdCatalogBatchSize on ivdCatalogThreads threads. The catalog is replaced
+     * only if every IVD has been listed and retrieved
+     *
+     * @return true if the catalog has been loaded
+     */
+    private boolean load() {
+        final long start = System.currentTimeMillis();
+        this.attemptedAt = start;
+        final List<Location> locations = this.vslmConnection.listIvdLocations();
+        if (locations == null) {
+            logger.warning(String.format("IVD catalog %s: listing failed - previous content kept",
+                    this.vslmConnection.getServerIntanceUuid()));
+            return false;
+        }
+        final int batchSize = Math.max(1, CoreGlobalSettings.getIvdCatalogBatchSize());
+        final List<ImprovedVirtualDisk> loaded = new ArrayList<>(locations.size());
+        final List<Future<List<ImprovedVirtualDisk>>> futures = new LinkedList<>();
+        try {
+            for (int i = 0; i < locations.size(); i += batchSize) {
+                final List<Location> batch = locations.subList(i, Math.min(locations.size(), i + batchSize));
+                futures.add(getExecutor().submit(() -> {
+                    final List<ImprovedVirtualDisk> result = new ArrayList<>(batch.size());
+                    for (final Location location : batch) {
+                        final ImprovedVirtualDisk ivd = this.vslmConnection.retrieveIvd(location);
+                        if (ivd != null) {
+                            result.add(ivd);
+                        }
+                    }
+                    return result;
+                }));
+            }
+            for (final Future<List<ImprovedVirtualDisk>> future : futures) {
+                loaded.addAll(future.get());
+            }
+        } catch (final ExecutionException e) {
+            Utility.logWarning(logger, e.getCause());
+            futures.forEach(future -> future.cancel(true));
+            return false;
+        } catch (final InterruptedException e) {
+            logger.log(Level.WARNING, "Interrupted!", e);
+            futures.forEach(future -> future.cancel(true));
+            // Restore interrupted state...
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        this.lock.writeLock().lock();
+        try {
+            this.byId.clear();
+            this.byName.clear();
+            this.byDatastore.clear();
+            for (final ImprovedVirtualDisk ivd : loaded) {
+                index(ivd);
+            }
+            this.loadedAt = System.currentTimeMillis();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        if (logger.isLoggable(Level.INFO)) {
+            final String msg = String.format("IVD catalog %s: %d disks loaded in %dms",
+                    this.vslmConnection.getServerIntanceUuid(), loaded.size(), System.currentTimeMillis() - start);
+            logger.info(msg);
+        }
+        return true;
+    }
+
+    /**
+     * Add or replace an IVD
+     *
+     * @param ivd
+     */
+    void put(final ImprovedVirtualDisk ivd) {
+        if ((ivd == null) || (ivd.getId() == null)) {
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            final ImprovedVirtualDisk previous = this.byId.get(ivd.getId().getId());
+            if (previous != null) {
+                unindex(previous);
+            }
+            index(ivd);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reload the catalog after a lookup miss. Nothing is done if the catalog has
+     * been loaded (or a load attempted) less than 10 seconds ago
+     *
+     * @return true if the catalog has been reloaded
+     */
+    boolean reload() {
+        synchronized (this.loadLock) {
+            if (isRecentAttempt()) {
+                return false;
+            }
+            return load();
+        }
+    }
+
+    /**
+     * Remove an IVD
+     *
+     * @param uuid
+     */
+    void remove(final String uuid) {
+        this.lock.writeLock().lock();
+        try {
+            final ImprovedVirtualDisk previous = this.byId.get(uuid);
+            if (previous != null) {
+                unindex(previous);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void unindex(final ImprovedVirtualDisk ivd) {
+        final String uuid = ivd.getId().getId();
+        this.byId.remove(uuid);
+        unindex(this.byName, nameKey(ivd.getName()), uuid);
+        if (ivd.getDatastoreInfo() != null) {
+            unindex(this.byDatastore, ivd.getDatastoreInfo().getMorefValue(), uuid);
+        }
+    }
+}
@@ -75,6 +75,7 @@ import com.vmware.safekeeping.core.exception.VimObjectNotExistException;
 import com.vmware.safekeeping.core.exception.VimOperationException;
 import com.vmware.safekeeping.core.exception.VimTaskException;
 import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
+import com.vmware.safekeeping.core.soap.helpers.InventoryCache;
 import com.vmware.safekeeping.core.soap.helpers.MorefUtil;
 import com.vmware.safekeeping.core.soap.helpers.VapiAuthenticationHelper;
 import com.vmware.safekeeping.core.soap.managers.VimExtensionManager;
@@ -174,6 +175,7 @@ public class VimConnection extends AbstractConnection {
     private VimExtensionManager extensionManager;
     private MorefUtil vimHelper;
     private VimFindFco find;
+    private InventoryCache inventoryCache;
 
     private final VslmConnection vslmConnection;
     private final PbmConnection pbmConnection;
@@ -307,6 +309,10 @@ public class VimConnection extends AbstractConnection {
         this.headers = (Map<String, Object>) ((BindingProvider) this.vimPort).getResponseContext()
                 .get(MessageContext.HTTP_RESPONSE_HEADERS);
         this.vimHelper = new MorefUtil(this, VimConnection.MAX_NUMBER_OF_PROPERTY_COLLECTOR);
+        if (CoreGlobalSettings.isInventoryCacheEnabled()) {
+            this.inventoryCache = new InventoryCache(this, CoreGlobalSettings.getInventoryCacheMaxWaitSeconds());
+            this.inventoryCache.start();
+        }
         this.privilegeChecker = new VimPrivilegeChecker(this);
         this.find = new VimFindFco(this);
         this.extensionManager = new VimExtensionManager(this);
@@ -451,6 +457,10 @@ public class VimConnection extends AbstractConnection {
                 if (this.scheduler != null) {
                     this.scheduler.shutdown();
                 }
+                if (this.inventoryCache != null) {
+                    this.inventoryCache.close();
+                    this.inventoryCache = null;
+                }
                 this.vapiService.logout();
                 getVslmConnection().disconnect();
 
@@ -554,6 +564,13 @@ public class VimConnection extends AbstractConnection {
 
     public ManagedEntityInfo getDatacenterByMoref(final ManagedObjectReference moref)
             throws InvalidPropertyFaultMsg, RuntimeFaultFaultMsg, InterruptedException {
+        final InventoryCache cache = this.inventoryCache;
+        if (cache != null) {
+            final ManagedEntityInfo datacenter = cache.getDatacenter(moref);
+            if (datacenter != null) {
+                return datacenter;
+            }
+        }
         return this.vimHelper.getDatacenterByMoref(moref);
     }
 
@@ -938,6 +955,13 @@ public class VimConnection extends AbstractConnection {
      * @throws InvalidPropertyFaultMsg
      */
     public ManagedObjectReference getVAppByName(final String name) {
+        final InventoryCache cache = this.inventoryCache;
+        if (cache != null) {
+            final ManagedObjectReference moref = cache.findByName(name, EntityType.VirtualApp);
+            if (moref != null) {
+                return moref;
+            }
+        }
         try {
             return getVimHelper().vAppByName(name);
         } catch (InvalidPropertyFaultMsg | RuntimeFaultFaultMsg e) {
@@ -951,6 +975,13 @@ public class VimConnection extends AbstractConnection {
     }
 
     protected ManagedObjectReference getVAppByUuid(final String name) {
+        final InventoryCache cache = this.inventoryCache;
+        if (cache != null) {
+            final ManagedObjectReference moref = cache.findByUuid(name, EntityType.VirtualApp, true);
+            if (moref != null) {
+                return moref;
+            }
+        }
         try {
             return getVimHelper().vAppByUuid(name);
         } catch (InvalidPropertyFaultMsg | RuntimeFaultFaultMsg e) {
@@ -963,6 +994,13 @@ public class VimConnection extends AbstractConnection {
         return null;
     }
 
+    /**
+     * @return the inventory cache or null if disabled
+     */
+    public InventoryCache getInventoryCache() {
+        return this.inventoryCache;
+    }
+
     @Override
     public MorefUtil getVimHelper() {
         return this.vimHelper;
@@ -977,7 +1015,11 @@ public class VimConnection extends AbstractConnection {
     }
 
     public ManagedObjectReference getVmByName(final String name) {
-        ManagedObjectReference vmRef = null;
+        final InventoryCache cache = this.inventoryCache;
+        ManagedObjectReference vmRef = (cache != null) ? cache.findByName(name, EntityType.VirtualMachine) : null;
+        if (vmRef != null) {
+            return vmRef;
+        }
         try {
             vmRef = getVimHelper().vmByName(name);
         } catch (InvalidPropertyFaultMsg | RuntimeFaultFaultMsg e) {
@@ -36,6 +36,9 @@ import java.util.logging.Level;
 import org.apache.commons.lang.StringUtils;
 
 import com.vmware.safekeeping.common.Utility;
+import com.vmware.safekeeping.core.soap.helpers.InventoryCache;
+import com.vmware.safekeeping.core.type.ManagedEntityInfo;
+import com.vmware.safekeeping.core.type.enums.EntityType;
 import com.vmware.safekeeping.core.type.fco.ImprovedVirtualDisk;
 import com.vmware.safekeeping.core.type.fco.VirtualAppManager;
 import com.vmware.safekeeping.core.type.fco.VirtualMachineManager;
@@ -75,6 +78,13 @@ public class VimFindFco {
     public ManagedObjectReference findByInventoryPath(final String path) {
         ManagedObjectReference result = null;
         if (StringUtils.isNotBlank(path)) {
+            final InventoryCache cache = parent.getInventoryCache();
+            if (cache != null) {
+                result = cache.findByInventoryPath(path);
+                if (result != null) {
+                    return result;
+                }
+            }
             try {
                 result = vimPort.findByInventoryPath(searchIndex, path);
             } catch (final RuntimeFaultFaultMsg e) {
@@ -182,7 +192,13 @@ public class VimFindFco {
             throws InvalidPropertyFaultMsg, InterruptedException {
         VirtualMachineManager result = null;
         try {
-            final ManagedObjectReference mor = vimPort.findByUuid(searchIndex, null, uuid, true, instanceUuid);
+            final InventoryCache cache = parent.getInventoryCache();
+            ManagedObjectReference mor = (cache != null)
+                    ? cache.findByUuid(uuid, EntityType.VirtualMachine, instanceUuid)
+                    : null;
+            if (mor == null) {
+                mor = vimPort.findByUuid(searchIndex, null, uuid, true, instanceUuid);
+            }
             result = new VirtualMachineManager(parent, mor);
         } catch (final RuntimeFaultFaultMsg e) {
             Utility.logWarning(AbstractConnection.logger, e);
@@ -196,7 +212,7 @@ public class VimFindFco {
 
         ManagedObjectReference folder = null;
         if ((filter != null) && !filter.isEmpty()) {
-            folder = vimPort.findByInventoryPath(searchIndex, filter);
+            folder = findByInventoryPath(filter);
         }
         final Map<String, Vector<Object>> tmpList = parent.getVimHelper().getAllVAppList(folder);
         final List<VirtualAppManager> result = new LinkedList<>();
@@ -222,7 +238,7 @@ public class VimFindFco {
 
         ManagedObjectReference folder = null;
         if ((filter != null) && !filter.isEmpty()) {
-            folder = vimPort.findByInventoryPath(searchIndex, filter);
+            folder = findByInventoryPath(filter);
         }
         final Map<String, Vector<Object>> tmpList = parent.getVimHelper().getAllVmList(folder);
         final List<VirtualMachineManager> ret = new LinkedList<>();
@@ -251,6 +267,10 @@ public class VimFindFco {
         return getVslmConnection().getIvdById(id);
     }
 
+    public List<ImprovedVirtualDisk> findIvdByDatastore(final ManagedEntityInfo datastore) {
+        return getVslmConnection().getIvdByDatastore(datastore);
+    }
+
     public List<ImprovedVirtualDisk> findIvdByName(final String name) {
         return getVslmConnection().getIvdByName(name);
     }
@@ -47,6 +47,7 @@ import com.vmware.safekeeping.common.VersionManipulator;
 import com.vmware.safekeeping.core.command.report.RunningReport;
 import com.vmware.safekeeping.core.exception.VimTaskException;
 import com.vmware.safekeeping.core.exception.VslmTaskException;
+import com.vmware.safekeeping.core.soap.helpers.InventoryCache;
 import com.vmware.safekeeping.core.soap.sso.HeaderHandlerResolver;
 import com.vmware.safekeeping.core.type.ManagedEntityInfo;
 import com.vmware.safekeeping.core.type.enums.FileBackingInfoProvisioningType;
@@ -123,10 +124,13 @@ public class VslmConnection extends AbstractHttpConf {
 
     private boolean useVslm;
 
+    private final IvdCatalog ivdCatalog;
+
     VslmConnection(final VimConnection vimConnection, final URL url) {
         this.vimConnection = vimConnection;
         this.url = url;
         this.serviceContent = null;
+        this.ivdCatalog = new IvdCatalog(this);
         setUseVslmLogout(false);
     }
 
@@ -180,6 +184,9 @@ public class VslmConnection extends AbstractHttpConf {
                 result = true;
             }
         }
+        if (result) {
+            this.ivdCatalog.invalidate();
+        }
         return result;
     }
 
@@ -298,6 +305,9 @@ public class VslmConnection extends AbstractHttpConf {
 
             spec.getProfile().add(profile);
             result = createDiskTask(spec);
+            if (result != null) {
+                this.ivdCatalog.put(new ImprovedVirtualDisk(this, result.getConfig().getId(), result, datastore));
+            }
         }
 
         return result;
@@ -422,6 +432,9 @@ public class VslmConnection extends AbstractHttpConf {
                     .deleteVStorageObjectTask(getVsoManager(), ivd.getId(), ivd.getDatastoreInfo().getMoref());
             result = this.vimConnection.waitForTask(taskMor);
         }
+        if (result) {
+            this.ivdCatalog.remove(ivd.getId().getId());
+        }
         if (logger.isLoggable(Level.INFO)) {
             final String msg = String.format("Ivd:%s removed", ivd.toString());
             logger.info(msg);
@@ -597,11 +610,11 @@ public class VslmConnection extends AbstractHttpConf {
     ImprovedVirtualDisk getIvdById(final ID id) {
         try {
             final VStorageObject vStorageObject = getvslmPort().vslmRetrieveVStorageObject(getVsoManager(), id);
-            final ManagedObjectReference dsMor = vStorageObject.getConfig().getBacking().getDatastore();
-            final String dsName = getVimConnection().getVimHelper().entityName(dsMor);
-            final ManagedEntityInfo dsInfo = new ManagedEntityInfo(dsName, dsMor, getServerIntanceUuid());
-
-            return new ImprovedVirtualDisk(this, id, vStorageObject, dsInfo);
+            final ManagedEntityInfo dsInfo = getDatastoreInfo(
+                    vStorageObject.getConfig().getBacking().getDatastore());
+            final ImprovedVirtualDisk ivd = new ImprovedVirtualDisk(this, id, vStorageObject, dsInfo);
+            this.ivdCatalog.put(ivd);
+            return ivd;
 
         } catch (final InvalidPropertyFaultMsg | com.vmware.vim25.RuntimeFaultFaultMsg | FileFaultFaultMsg
                 | InvalidDatastoreFaultMsg | NotFoundFaultMsg | RuntimeFaultFaultMsg | VslmFaultFaultMsg e) {
@@ -645,28 +658,19 @@ public class VslmConnection extends AbstractHttpConf {
 
     ImprovedVirtualDisk getIvdById(final String uuid) {
         ImprovedVirtualDisk result = null;
-        try {
-            if (isVslm()) {
-                final ID id = new ID();
-                id.setId(uuid);
-                result = getIvdById(id);
-            } else {
-
-                final List<ImprovedVirtualDisk> allIvd = getIvdList();
-                for (final ImprovedVirtualDisk ivd : allIvd) {
-                    if (ivd.getUuid().equalsIgnoreCase(uuid)) {
-                        result = ivd;
-                        break;
-                    }
-                }
-
+        if (isVslm()) {
+            final ID id = new ID();
+            id.setId(uuid);
+            result = getIvdById(id);
+        } else {
+            ImprovedVirtualDisk cached = this.ivdCatalog.getById(uuid);
+            if ((cached == null) && this.ivdCatalog.reload()) {
+                // the IVD may have been created by another client
+                cached = this.ivdCatalog.getById(uuid);
+            }
+            if (cached != null) {
+                result = refreshIvd(cached);
             }
-        } catch (final com.vmware.vim25.RuntimeFaultFaultMsg | InvalidPropertyFaultMsg e) {
-            Utility.logWarning(logger, e);
-        } catch (final InterruptedException e) {
-            logger.log(Level.WARNING, "Interrupted!", e);
-            // Restore interrupted state...
-            Thread.currentThread().interrupt();
         }
         return result;
     }
@@ -691,87 +695,168 @@ public class VslmConnection extends AbstractHttpConf {
                     }
                 }
             } else {
-                final List<ImprovedVirtualDisk> allIvd = getIvdList();
-                for (final ImprovedVirtualDisk ivd : allIvd) {
-                    if (ivd.getName().equalsIgnoreCase(name)) {
+                List<ImprovedVirtualDisk> cachedList = this.ivdCatalog.getByName(name);
+                if (cachedList.isEmpty() && this.ivdCatalog.reload()) {
+                    // the IVD may have been created by another client
+                    cachedList = this.ivdCatalog.getByName(name);
+                }
+                for (final ImprovedVirtualDisk cached : cachedList) {
+                    final ImprovedVirtualDisk ivd = refreshIvd(cached);
+                    if ((ivd != null) && ivd.getName().equalsIgnoreCase(name)) {
                         result.add(ivd);
                     }
                 }
             }
-        } catch (final RuntimeFaultFaultMsg | com.vmware.vim25.RuntimeFaultFaultMsg | InvalidPropertyFaultMsg e) {
+        } catch (final RuntimeFaultFaultMsg e) {
             Utility.logWarning(logger, e);
-        } catch (final InterruptedException e) {
-            logger.log(Level.WARNING, "Interrupted!", e);
-            // Restore interrupted state...
-            Thread.currentThread().interrupt();
         }
         return result;
 
     }
 
+    /**
+     * IVDs of a datastore as known by the catalog
+     *
+     * @param datastore
+     * @return
+     */
+    List<ImprovedVirtualDisk> getIvdByDatastore(final ManagedEntityInfo datastore) {
+        return this.ivdCatalog.getByDatastore(datastore);
+    }
+
     List<ImprovedVirtualDisk> getIvdList()
             throws com.vmware.vim25.RuntimeFaultFaultMsg, InvalidPropertyFaultMsg, InterruptedException {
-        final Map<String, ManagedObjectReference> datastoreMap = (isVslm()) ? null
-                : getVimConnection().getDatastoreList();
-        return getIvdList(datastoreMap);
+        return this.ivdCatalog.getAll();
     }
 
-    private LinkedList<ImprovedVirtualDisk> getIvdList(final Map<String, ManagedObjectReference> datastoreMap) {
-        final LinkedList<ImprovedVirtualDisk> result = new LinkedList<>();
+    /**
+     * List the IVD ids of the vCenter. Without VSLM every datastore is listed and
+     * the location carries the datastore.
+     *
+     * @return the locations or null if the list is incomplete
+     */
+    List<IvdCatalog.Location> listIvdLocations() {
+        final List<IvdCatalog.Location> result = new ArrayList<>();
         if (isVslm()) {
             try {
-                final LinkedList<ID> idList = getIdList(datastoreMap);
-                for (final ID id : idList) {
-                    result.add(getIvdById(id));
+                for (final ID id : getIdList(null)) {
+                    result.add(new IvdCatalog.Location(id, null));
                 }
-
             } catch (final RuntimeFaultFaultMsg e) {
                 Utility.logWarning(logger, e);
+                return null;
             }
         } else {
-            List<ID> ivdList = null;
+            Map<String, ManagedObjectReference> datastoreMap = null;
+            try {
+                datastoreMap = getVimConnection().getDatastoreList();
+            } catch (final com.vmware.vim25.RuntimeFaultFaultMsg | InvalidPropertyFaultMsg e) {
+                Utility.logWarning(logger, e);
+                return null;
+            } catch (final InterruptedException e) {
+                logger.log(Level.WARNING, "Interrupted!", e);
+                // Restore interrupted state...
+                Thread.currentThread().interrupt();
+                return null;
+            }
             for (final Entry<String, ManagedObjectReference> entry : datastoreMap.entrySet()) {
                 final ManagedEntityInfo dsInfo = new ManagedEntityInfo(entry.getKey(), entry.getValue(),
                         getServerIntanceUuid());
                 try {
-                    ivdList = null;
                     if (logger.isLoggable(Level.FINE)) {
                         final String msg = String.format("retrieving IVD on datastore %s (%s) ", entry.getKey(),
                                 entry.getValue().getValue());
                         logger.fine(msg);
                     }
-                    ivdList = getVimPort().listVStorageObject(getVsoManager(), entry.getValue());
-                } catch (final com.vmware.vim25.InvalidDatastoreFaultMsg | com.vmware.vim25.RuntimeFaultFaultMsg e) {
+                    for (final ID id : getVimPort().listVStorageObject(getVsoManager(), entry.getValue())) {
+                        result.add(new IvdCatalog.Location(id, dsInfo));
+                    }
+                } catch (final com.vmware.vim25.InvalidDatastoreFaultMsg e) {
                     final String msg = String.format("Datastore %s (%s) doesn't support Improved Virtual Disk", entry,
                             entry.getValue().getValue());
                     logger.warning(msg);
                     Utility.logWarning(logger, e);
+                } catch (final com.vmware.vim25.RuntimeFaultFaultMsg e) {
+                    Utility.logWarning(logger, e);
+                    return null;
                 }
-                if (ivdList != null) {
-                    for (final ID ivdID : ivdList) {
-                        try {
-                            final VStorageObject vStorageObject = getVimPort().retrieveVStorageObject(getVsoManager(),
-                                    ivdID, entry.getValue());
-                            final ImprovedVirtualDisk ivd = new ImprovedVirtualDisk(this, ivdID, vStorageObject, dsInfo);
-                            result.add(ivd);
-                        } catch (final com.vmware.vim25.FileFaultFaultMsg | com.vmware.vim25.InvalidDatastoreFaultMsg
-                                | com.vmware.vim25.NotFoundFaultMsg | com.vmware.vim25.RuntimeFaultFaultMsg e) {
-                            final String msg = String.format(
-                                    "Improved Virtual Disk %s (%s) has some issue to be retrieved", ivdID,
-                                    entry.getValue().getValue());
-                            logger.warning(msg);
-                            Utility.logWarning(logger, e);
-                            final ImprovedVirtualDisk ivd = new ImprovedVirtualDisk(this, ivdID, null, dsInfo);
-                            result.add(ivd);
-                        }
-                    }
-                }
+            }
+        }
+        return result;
+    }
 
+    /**
+     * Retrieve the VStorageObject of a listed IVD. Without VSLM an object that
+     * cannot be retrieved is still returned with no configuration.
+     *
+     * @param location
+     * @return
+     */
+    ImprovedVirtualDisk retrieveIvd(final IvdCatalog.Location location) {
+        if (location.getDatastore() == null) {
+            return getIvdById(location.getId());
+        }
+        try {
+            final VStorageObject vStorageObject = getVimPort().retrieveVStorageObject(getVsoManager(),
+                    location.getId(), location.getDatastore().getMoref());
+            return new ImprovedVirtualDisk(this, location.getId(), vStorageObject, location.getDatastore());
+        } catch (final com.vmware.vim25.FileFaultFaultMsg | com.vmware.vim25.InvalidDatastoreFaultMsg
+                | com.vmware.vim25.NotFoundFaultMsg | com.vmware.vim25.RuntimeFaultFaultMsg e) {
+            final String msg = String.format("Improved Virtual Disk %s (%s) has some issue to be retrieved",
+                    location.getId().getId(), location.getDatastore().getMorefValue());
+            logger.warning(msg);
+            Utility.logWarning(logger, e);
+            return new ImprovedVirtualDisk(this, location.getId(), null, location.getDatastore());
+        }
+    }
+
+    /**
+     * Retrieve again an IVD found in the catalog so the caller gets the current
+     * configuration, the catalog is updated with the result
+     *
+     * @param cached
+     * @return the IVD or null if it doesn't exist anymore
+     */
+    private ImprovedVirtualDisk refreshIvd(final ImprovedVirtualDisk cached) {
+        ImprovedVirtualDisk result = null;
+        try {
+            if (isVslm()) {
+                result = getIvdById(cached.getId());
+            } else {
+                final VStorageObject vStorageObject = getVimPort().retrieveVStorageObject(getVsoManager(),
+                        cached.getId(), cached.getDatastoreInfo().getMoref());
+                result = new ImprovedVirtualDisk(this, cached.getId(), vStorageObject, cached.getDatastoreInfo());
+                this.ivdCatalog.put(result);
             }
+        } catch (final com.vmware.vim25.FileFaultFaultMsg | com.vmware.vim25.InvalidDatastoreFaultMsg
+                | com.vmware.vim25.NotFoundFaultMsg | com.vmware.vim25.RuntimeFaultFaultMsg e) {
+            Utility.logWarning(logger, e);
+        }
+        if (result == null) {
+            this.ivdCatalog.remove(cached.getId().getId());
         }
         return result;
     }
 
+    /**
+     * Datastore name from the inventory cache when available
+     *
+     * @param dsMor
+     * @return
+     * @throws InvalidPropertyFaultMsg
+     * @throws com.vmware.vim25.RuntimeFaultFaultMsg
+     * @throws InterruptedException
+     */
+    private ManagedEntityInfo getDatastoreInfo(final ManagedObjectReference dsMor)
+            throws InvalidPropertyFaultMsg, com.vmware.vim25.RuntimeFaultFaultMsg, InterruptedException {
+        final InventoryCache cache = getVimConnection().getInventoryCache();
+        String dsName = (cache != null) ? cache.getName(dsMor) : null;
+        if (dsName == null) {
+            dsName = getVimConnection().getVimHelper().entityName(dsMor);
+        }
+        return new ManagedEntityInfo(dsName, dsMor, getServerIntanceUuid());
+    }
+
     public VStorageObjectSnapshotInfo getIvdSnapInfo(final ImprovedVirtualDisk ivd)
             throws FileFaultFaultMsg, InvalidDatastoreFaultMsg, InvalidStateFaultMsg, NotFoundFaultMsg,
             RuntimeFaultFaultMsg, VslmFaultFaultMsg, com.vmware.vim25.FileFaultFaultMsg,
@@ -859,8 +944,7 @@ public class VslmConnection extends AbstractHttpConf {
                 return false;
             }
         } else {
-            final List<ImprovedVirtualDisk> ivdList = getIvdByName(name);
-            return ivdList.isEmpty();
+            return !getIvdByName(name).isEmpty();
         }
     }
 
@@ -936,6 +1020,20 @@ public class VslmConnection extends AbstractHttpConf {
         } else {
             result = getVimPort().registerDisk(getVsoManager(), urlDisk, name);
         }
+        if (result != null) {
+            try {
+                final ManagedEntityInfo dsInfo = getDatastoreInfo(result.getConfig().getBacking().getDatastore());
+                this.ivdCatalog.put(new ImprovedVirtualDisk(this, result.getConfig().getId(), result, dsInfo));
+            } catch (final InvalidPropertyFaultMsg | com.vmware.vim25.RuntimeFaultFaultMsg e) {
+                Utility.logWarning(logger, e);
+                this.ivdCatalog.invalidate();
+            } catch (final InterruptedException e) {
+                logger.log(Level.WARNING, "Interrupted!", e);
+                // Restore interrupted state...
+                Thread.currentThread().interrupt();
+                this.ivdCatalog.invalidate();
+            }
+        }
         return result;
     }
 
@@ -986,6 +1084,7 @@ public class VslmConnection extends AbstractHttpConf {
             getVimPort().renameVStorageObject(getVsoManager(), ivd.getId(), ivd.getDatastoreInfo().getMoref(), name);
 
         }
+        refreshIvd(ivd);
         return true;
     }
 
@@ -0,0 +1,565 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.soap.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.ws.WebServiceException;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.vmware.safekeeping.common.Utility;
+import com.vmware.safekeeping.core.soap.IVimConnection;
+import com.vmware.safekeeping.core.soap.helpers.builders.ObjectSpecBuilder;
+import com.vmware.safekeeping.core.soap.helpers.builders.PropertyFilterSpecBuilder;
+import com.vmware.safekeeping.core.soap.helpers.builders.PropertySpecBuilder;
+import com.vmware.safekeeping.core.soap.helpers.builders.TraversalSpecBuilder;
+import com.vmware.safekeeping.core.type.ManagedEntityInfo;
+import com.vmware.safekeeping.core.type.enums.EntityType;
+import com.vmware.vim25.InvalidCollectorVersionFaultMsg;
+import com.vmware.vim25.InvalidPropertyFaultMsg;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.ObjectUpdate;
+import com.vmware.vim25.ObjectUpdateKind;
+import com.vmware.vim25.PropertyChange;
+import com.vmware.vim25.PropertyChangeOp;
+import com.vmware.vim25.PropertyFilterSpec;
+import com.vmware.vim25.PropertyFilterUpdate;
+import com.vmware.vim25.PropertySpec;
+import com.vmware.vim25.RuntimeFaultFaultMsg;
+import com.vmware.vim25.ServiceContent;
+import com.vmware.vim25.TraversalSpec;
+import com.vmware.vim25.UpdateSet;
+import com.vmware.vim25.VimPortType;
+import com.vmware.vim25.WaitOptions;
+
+/**
+ * In-memory copy of the vCenter inventory kept current by a property collector
+ * filter over a ContainerView of the root folder. The initial
+ * WaitForUpdatesEx call returns the whole inventory, later calls return only
+ * the incremental changes, so name, UUID, inventory path and datacenter
+ * lookups are answered without a round trip to vCenter.
+ *
+ * Lookups return null while the cache is loading or after the update session
+ * failed, the callers then fall back to the regular traversal.
+ */
+public class InventoryCache {
+
+    private static final class Entity {
+        private final ManagedObjectReference moref;
+        private final EntityType entityType;
+        private final Map<String, Object> properties;
+
+        private Entity(final ManagedObjectReference moref) {
+            this.moref = moref;
+            this.entityType = EntityType.toEntityType(moref.getType());
+            this.properties = new HashMap<>();
+        }
+
+        private String getInstanceUuid() {
+            final Object value = (this.entityType == EntityType.VirtualApp)
+                    ? this.properties.get(VAPP_INSTANCE_UUID)
+                    : this.properties.get(VM_INSTANCE_UUID);
+            return (value == null) ? null : value.toString();
+        }
+
+        private String getName() {
+            final Object value = this.properties.get(NAME);
+            return (value == null) ? null : value.toString();
+        }
+
+        /**
+         * Parent in the inventory tree as seen by SearchIndex.findByInventoryPath:
+         * a vApp hangs off its folder, a VM inside a vApp hangs off the vApp.
+         *
+         * @return
+         */
+        private ManagedObjectReference getParent() {
+            for (final String property : PARENT_PROPERTIES) {
+                final Object value = this.properties.get(property);
+                if (value instanceof ManagedObjectReference) {
+                    return (ManagedObjectReference) value;
+                }
+            }
+            return null;
+        }
+
+        private String getUuid() {
+            final Object value = this.properties.get(VM_UUID);
+            return (value == null) ? null : value.toString();
+        }
+    }
+
+    private static final Logger logger = Logger.getLogger(InventoryCache.class.getName());
+
+    private static final String NAME = "name";
+    private static final String PARENT = "parent";
+    private static final String PARENT_FOLDER = "parentFolder";
+    private static final String PARENT_VAPP = "parentVApp";
+    private static final String VM_UUID = "config.uuid";
+    private static final String VM_INSTANCE_UUID = "config.instanceUuid";
+    private static final String VAPP_INSTANCE_UUID = "vAppConfig.instanceUuid";
+
+    private static final List<String> PARENT_PROPERTIES = Arrays.asList(PARENT_FOLDER, PARENT_VAPP, PARENT);
+
+    private static final EntityType[] CONTAINER_TYPES = { EntityType.Folder, EntityType.Datacenter,
+            EntityType.ComputeResource, EntityType.ClusterComputeResource, EntityType.HostSystem,
+            EntityType.ResourcePool, EntityType.Datastore };
+
+    private static final int RETRY_DELAY_SECONDS = 10;
+
+    private static String key(final ManagedObjectReference moref) {
+        return moref.getType() + ":" + moref.getValue();
+    }
+
+    private static void index(final Map<String, Set<String>> index, final String value, final String key) {
+        if (value != null) {
+            index.computeIfAbsent(value, k -> new LinkedHashSet<>()).add(key);
+        }
+    }
+
+    private static void unindex(final Map<String, Set<String>> index, final String value, final String key) {
+        if (value != null) {
+            final Set<String> keys = index.get(value);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    index.remove(value);
+                }
+            }
+        }
+    }
+
+    private final IVimConnection connection;
+    private final int maxWaitSeconds;
+
+    private final Map<String, Entity> entities;
+    private final Map<String, Set<String>> byName;
+    private final Map<String, Set<String>> byUuid;
+    private final Map<String, Set<String>> byInstanceUuid;
+    private final ReadWriteLock lock;
+
+    private volatile boolean ready;
+    private volatile boolean closed;
+    private volatile String version;
+    private long updates;
+    private long rebuilds;
+
+    private Thread updater;
+    private ManagedObjectReference collector;
+    private ManagedObjectReference view;
+    private ManagedObjectReference filter;
+
+    public InventoryCache(final IVimConnection connection, final int maxWaitSeconds) {
+        this.connection = connection;
+        this.maxWaitSeconds = maxWaitSeconds;
+        this.entities = new HashMap<>();
+        this.byName = new HashMap<>();
+        this.byUuid = new HashMap<>();
+        this.byInstanceUuid = new HashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    private void apply(final UpdateSet updateSet) {
+        if (updateSet.getFilterSet() == null) {
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            for (final PropertyFilterUpdate filterUpdate : updateSet.getFilterSet()) {
+                for (final ObjectUpdate objectUpdate : filterUpdate.getObjectSet()) {
+                    apply(objectUpdate);
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(final ObjectUpdate objectUpdate) {
+        final String key = key(objectUpdate.getObj());
+        Entity entity = this.entities.get(key);
+        if (entity != null) {
+            unindex(entity, key);
+        }
+        if (objectUpdate.getKind() == ObjectUpdateKind.LEAVE) {
+            this.entities.remove(key);
+        } else {
+            if (entity == null) {
+                entity = new Entity(objectUpdate.getObj());
+                this.entities.put(key, entity);
+            }
+            for (final PropertyChange change : objectUpdate.getChangeSet()) {
+                if ((change.getOp() == PropertyChangeOp.REMOVE) || (change.getOp() == PropertyChangeOp.INDIRECT_REMOVE)
+                        || (change.getVal() == null)) {
+                    entity.properties.remove(change.getName());
+                } else {
+                    entity.properties.put(change.getName(), change.getVal());
+                }
+            }
+            index(entity, key);
+        }
+        ++this.updates;
+    }
+
+    private PropertyFilterSpec buildPropertyFilterSpec() {
+        final TraversalSpec viewSpec = new TraversalSpecBuilder().name("view").path("view").skip(Boolean.FALSE)
+                .type(EntityType.ContainerView.toString());
+        final List<PropertySpec> propertySpecs = new ArrayList<>();
+        propertySpecs.add(new PropertySpecBuilder().all(Boolean.FALSE).type(EntityType.VirtualMachine)
+                .pathSet(NAME, PARENT, PARENT_VAPP, VM_UUID, VM_INSTANCE_UUID));
+        propertySpecs.add(new PropertySpecBuilder().all(Boolean.FALSE).type(EntityType.VirtualApp).pathSet(NAME,
+                PARENT, PARENT_FOLDER, PARENT_VAPP, VAPP_INSTANCE_UUID));
+        for (final EntityType type : CONTAINER_TYPES) {
+            propertySpecs.add(new PropertySpecBuilder().all(Boolean.FALSE).type(type).pathSet(NAME, PARENT));
+        }
+        return new PropertyFilterSpecBuilder()
+                .objectSet(new ObjectSpecBuilder().obj(this.view).skip(Boolean.TRUE).selectSet(viewSpec))
+                .propSet(propertySpecs.toArray(new PropertySpec[0]));
+    }
+
+    private void clear() {
+        this.lock.writeLock().lock();
+        try {
+            this.ready = false;
+            this.entities.clear();
+            this.byName.clear();
+            this.byUuid.clear();
+            this.byInstanceUuid.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stop the update thread and release the server side collector, view and
+     * filter
+     */
+    public void close() {
+        this.closed = true;
+        final ManagedObjectReference pc = this.collector;
+        if (pc != null) {
+            try {
+                this.connection.getVimPort().cancelWaitForUpdates(pc);
+            } catch (RuntimeFaultFaultMsg | WebServiceException e) {
+                Utility.logWarning(logger, e);
+            }
+        }
+        if (this.updater != null) {
+            this.updater.interrupt();
+        }
+    }
+
+    private void destroy() {
+        final VimPortType vimPort = this.connection.getVimPort();
+        try {
+            if (this.filter != null) {
+                vimPort.destroyPropertyFilter(this.filter);
+            }
+            if (this.view != null) {
+                vimPort.destroyView(this.view);
+            }
+            if (this.collector != null) {
+                vimPort.destroyPropertyCollector(this.collector);
+            }
+        } catch (RuntimeFaultFaultMsg | WebServiceException e) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Inventory cache cleanup failed: " + e.getMessage());
+            }
+        } finally {
+            this.filter = null;
+            this.view = null;
+            this.collector = null;
+        }
+    }
+
+    private Entity find(final Map<String, Set<String>> index, final String value, final EntityType type) {
+        final Set<String> keys = index.get(value);
+        if (keys != null) {
+            for (final String key : keys) {
+                final Entity entity = this.entities.get(key);
+                if ((entity != null) && (entity.entityType == type)) {
+                    return entity;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find an entity by inventory path (i.e. "Datacenter/vm/Folder/VmName")
+     *
+     * @param path
+     * @return the moref or null if the cache is not ready or the path is unknown
+     */
+    public ManagedObjectReference findByInventoryPath(final String path) {
+        if (!this.ready || StringUtils.isBlank(path)) {
+            return null;
+        }
+        final String[] elements = StringUtils.strip(path, "/").split("/");
+        this.lock.readLock().lock();
+        try {
+            final Set<String> candidates = this.byName.get(elements[elements.length - 1]);
+            if (candidates != null) {
+                for (final String key : candidates) {
+                    final Entity entity = this.entities.get(key);
+                    if ((entity != null) && matchPath(entity, elements)) {
+                        return entity.moref;
+                    }
+                }
+            }
+            return null;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find an entity by name. Like the property collector traversal the first
+     * entity with a matching name is returned.
+     *
+     * @param name
+     * @param type
+     * @return the moref or null if the cache is not ready or the name is unknown
+     */
+    public ManagedObjectReference findByName(final String name, final EntityType type) {
+        if (!this.ready || (name == null)) {
+            return null;
+        }
+        this.lock.readLock().lock();
+        try {
+            final Entity entity = find(this.byName, name, type);
+            return (entity == null) ? null : entity.moref;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find a Virtual Machine by BIOS or instance UUID, or a vApp by instance UUID
+     *
+     * @param uuid
+     * @param type
+     * @param instanceUuid
+     * @return the moref or null if the cache is not ready or the UUID is unknown
+     */
+    public ManagedObjectReference findByUuid(final String uuid, final EntityType type, final boolean instanceUuid) {
+        if (!this.ready || (uuid == null)) {
+            return null;
+        }
+        this.lock.readLock().lock();
+        try {
+            final Entity entity = find(instanceUuid ? this.byInstanceUuid : this.byUuid, uuid, type);
+            return (entity == null) ? null : entity.moref;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Resolve the datacenter of an entity walking the cached parent chain
+     *
+     * @param moref
+     * @return the datacenter or null if the cache is not ready or the entity is
+     *         unknown
+     */
+    public ManagedEntityInfo getDatacenter(final ManagedObjectReference moref) {
+        if (!this.ready || (moref == null)) {
+            return null;
+        }
+        this.lock.readLock().lock();
+        try {
+            Entity entity = this.entities.get(key(moref));
+            int depth = 0;
+            while ((entity != null) && (depth++ < this.entities.size())) {
+                if (entity.entityType == EntityType.Datacenter) {
+                    return new ManagedEntityInfo(entity.getName(), entity.moref,
+                            this.connection.getServerIntanceUuid());
+                }
+                final ManagedObjectReference parent = entity.getParent();
+                entity = (parent == null) ? null : this.entities.get(key(parent));
+            }
+            return null;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cached name of an entity
+     *
+     * @param moref
+     * @return the name or null if the cache is not ready or the entity is unknown
+     */
+    public String getName(final ManagedObjectReference moref) {
+        if (!this.ready || (moref == null)) {
+            return null;
+        }
+        this.lock.readLock().lock();
+        try {
+            final Entity entity = this.entities.get(key(moref));
+            return (entity == null) ? null : entity.getName();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int getSize() {
+        this.lock.readLock().lock();
+        try {
+            return this.entities.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public String getVersion() {
+        return this.version;
+    }
+
+    private void index(final Entity entity, final String key) {
+        index(this.byName, entity.getName(), key);
+        index(this.byUuid, entity.getUuid(), key);
+        index(this.byInstanceUuid, entity.getInstanceUuid(), key);
+    }
+
+    public boolean isReady() {
+        return this.ready;
+    }
+
+    /**
+     * Check the entity and its ancestors against the path elements, the root
+     * folder is not part of the inventory path
+     *
+     * @param entity
+     * @param elements
+     * @return
+     */
+    private boolean matchPath(final Entity entity, final String[] elements) {
+        Entity current = entity;
+        int i = elements.length - 1;
+        while ((current != null) && (i >= 0)) {
+            if (!elements[i].equals(current.getName())) {
+                return false;
+            }
+            --i;
+            final ManagedObjectReference parent = current.getParent();
+            current = (parent == null) ? null : this.entities.get(key(parent));
+        }
+        return (i < 0) && (current == null);
+    }
+
+    private void run() {
+        final VimPortType vimPort = this.connection.getVimPort();
+        final ServiceContent serviceContent = this.connection.getServiceContent();
+        final WaitOptions options = new WaitOptions();
+        options.setMaxWaitSeconds(this.maxWaitSeconds);
+        while (!this.closed) {
+            try {
+                this.collector = vimPort.createPropertyCollector(serviceContent.getPropertyCollector());
+                final List<String> types = new LinkedList<>();
+                types.add(EntityType.VirtualMachine.toString());
+                types.add(EntityType.VirtualApp.toString());
+                for (final EntityType type : CONTAINER_TYPES) {
+                    types.add(type.toString());
+                }
+                this.view = vimPort.createContainerView(serviceContent.getViewManager(),
+                        serviceContent.getRootFolder(), types, true);
+                this.filter = vimPort.createFilter(this.collector, buildPropertyFilterSpec(), true);
+                String currentVersion = "";
+                while (!this.closed) {
+                    final UpdateSet updateSet = vimPort.waitForUpdatesEx(this.collector, currentVersion, options);
+                    if (updateSet == null) {
+                        continue;
+                    }
+                    apply(updateSet);
+                    currentVersion = updateSet.getVersion();
+                    this.version = currentVersion;
+                    if (!this.ready && !Boolean.TRUE.equals(updateSet.isTruncated())) {
+                        this.ready = true;
+                        if (logger.isLoggable(Level.INFO)) {
+                            logger.info("Inventory cache ready: " + toString());
+                        }
+                    }
+                }
+            } catch (InvalidCollectorVersionFaultMsg | InvalidPropertyFaultMsg | RuntimeFaultFaultMsg
+                    | WebServiceException e) {
+                if (!this.closed) {
+                    Utility.logWarning(logger, e);
+                }
+            } finally {
+                clear();
+                destroy();
+            }
+            if (!this.closed) {
+                ++this.rebuilds;
+                try {
+                    TimeUnit.SECONDS.sleep(RETRY_DELAY_SECONDS);
+                } catch (final InterruptedException e) {
+                    logger.log(Level.WARNING, "Interrupted!", e);
+                    // Restore interrupted state...
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Start the update thread. The cache becomes ready once the initial update
+     * set has been received.
+     */
+    public void start() {
+        this.updater = new Thread(this::run, "InventoryCache-" + this.connection.getServerIntanceUuid());
+        this.updater.setDaemon(true);
+        this.updater.start();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Utility.LOCALE, "entities:%d version:%s updates:%d rebuilds:%d ready:%b", getSize(),
+                this.version, this.updates, this.rebuilds, this.ready);
+    }
+
+    private void unindex(final Entity entity, final String key) {
+        unindex(this.byName, entity.getName(), key);
+        unindex(this.byUuid, entity.getUuid(), key);
+        unindex(this.byInstanceUuid, entity.getInstanceUuid(), key);
+    }
+}
@@ -31,9 +31,16 @@ public class EncryptResult {
 
     private final byte offset;
 
+    private final String nonce;
+
     public EncryptResult(final int length, final byte offset) {
+        this(length, offset, null);
+    }
+
+    public EncryptResult(final int length, final byte offset, final String nonce) {
         this.length = length;
         this.offset = offset;
+        this.nonce = nonce;
     }
 
     /**
@@ -43,6 +50,13 @@ public class EncryptResult {
         return this.length;
     }
 
+    /**
+     * @return the nonce used to cipher the block
+     */
+    public String getNonce() {
+        return this.nonce;
+    }
+
     /**
      * @return the offset
      */
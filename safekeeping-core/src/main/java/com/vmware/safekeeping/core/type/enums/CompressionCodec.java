@@ -24,12 +24,56 @@
  * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
  * POSSIBILITY OF SUCH DAMAGE.
  ******************************************************************************/
-package com.vmware.safekeeping.core.core;
+package com.vmware.safekeeping.core.type.enums;
 
-import java.util.concurrent.Callable;
+import com.vmware.safekeeping.common.Utility;
 
-import com.vmware.safekeeping.core.control.info.ExBlockInfo;
+/**
+ * Codec used to compress the blocks of a disk. Generations and blocks without
+ * a codec were compressed with MiGz
+ */
+public enum CompressionCodec {
+    MIGZ, LZ4, ZSTD;
+
+    public static CompressionCodec parse(final Object codec) {
+        return parse(codec.toString());
+    }
+
+    /**
+     * @param codecStr
+     * @return the codec
+     * @throws IllegalArgumentException if the codec is unknown
+     */
+    public static CompressionCodec parse(final String codecStr) {
+        switch (codecStr.toLowerCase(Utility.LOCALE)) {
+        case "lz4":
+            return LZ4;
+        case "zstd":
+        case "zstandard":
+            return ZSTD;
+        case "migz":
+        case "gzip":
+            return MIGZ;
+        default:
+            throw new IllegalArgumentException("Unknown compression codec " + codecStr);
+        }
+    }
+
+    @Override
+    public String toString() {
+        String ret = "migz";
+        switch (this) {
+        case LZ4:
+            ret = "lz4";
+            break;
+        case ZSTD:
+            ret = "zstd";
+            break;
+        case MIGZ:
+        default:
+            break;
+        }
+        return ret;
+    }
 
-public interface IDumpThread extends Callable<Boolean> {
-    ExBlockInfo getBlockInfo();
 }
@@ -27,9 +27,11 @@
 package com.vmware.safekeeping.core.util;
 
 import java.io.InputStream;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
 import java.util.logging.Level;
@@ -42,77 +44,161 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
 
 import com.vmware.safekeeping.core.type.EncryptResult;
 
 /**
- * Encryption / Decryption service using the AES algorithm example for
- * nullbeans.com
+ * Encryption / Decryption service using the AES algorithm.
+ *
+ * New blocks are ciphered with AES/GCM: every block gets its own random nonce
+ * (recorded on the block) and an authentication tag appended to the cipher
+ * text. Blocks without a nonce were written by the previous AES/ECB engine and
+ * are still decrypted with it.
+ *
+ * Cipher objects are not thread safe, each thread owns its own engine and the
+ * data is ciphered straight into the caller buffer.
  */
 public final class AESEncryptionManager {
+    /**
+     * Per thread cipher instances
+     */
+    private static final class CipherEngine {
+        private final Cipher aead;
+        private final Cipher legacy;
+        private final byte[] nonce;
+        private final SecureRandom random;
+        private SecretKey key;
+
+        private CipherEngine() {
+            try {
+                this.aead = Cipher.getInstance(AEAD_TRANSFORMATION);
+                this.legacy = Cipher.getInstance(LEGACY_TRANSFORMATION);
+            } catch (final NoSuchAlgorithmException | NoSuchPaddingException e) {
+                throw new IllegalStateException(e);
+            }
+            this.nonce = new byte[AEAD_NONCE_LENGTH];
+            this.random = new SecureRandom();
+        }
+
+        private int decrypt(final byte[] input, final int inputOffset, final int inputLen, final byte[] output,
+                final String cipherNonce) throws IllegalBlockSizeException, BadPaddingException {
+            try {
+                checkKey();
+                this.aead.init(Cipher.DECRYPT_MODE, this.key,
+                        new GCMParameterSpec(AEAD_TAG_LENGTH_BITS, DatatypeConverter.parseHexBinary(cipherNonce)));
+                return this.aead.doFinal(input, inputOffset, inputLen, output, 0);
+            } catch (final InvalidKeyException | InvalidAlgorithmParameterException | ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int decryptLegacy(final byte[] input, final int inputOffset, final int inputLen, final byte[] output)
+                throws IllegalBlockSizeException, BadPaddingException {
+            try {
+                checkKey();
+                return this.legacy.doFinal(input, inputOffset, inputLen, output, 0);
+            } catch (final ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int encrypt(final byte[] input, final int inputOffset, final int inputLen, final byte[] output)
+                throws IllegalBlockSizeException, BadPaddingException {
+            try {
+                checkKey();
+                this.random.nextBytes(this.nonce);
+                this.aead.init(Cipher.ENCRYPT_MODE, this.key, new GCMParameterSpec(AEAD_TAG_LENGTH_BITS, this.nonce));
+                return this.aead.doFinal(input, inputOffset, inputLen, output, 0);
+            } catch (final InvalidKeyException | InvalidAlgorithmParameterException | ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Rekey the engine if the manager has been initialized with a new key
+         */
+        private void checkKey() {
+            final SecretKey current = secretKey;
+            if (current == null) {
+                throw new IllegalStateException("AES Encryption Manager not initialized");
+            }
+            if (this.key != current) {
+                try {
+                    this.legacy.init(Cipher.DECRYPT_MODE, current);
+                } catch (final InvalidKeyException e) {
+                    throw new IllegalStateException(e);
+                }
+                this.key = current;
+            }
+        }
+    }
+
     /**
      * Logger for this class
      */
     private static final Logger logger = Logger.getLogger(AESEncryptionManager.class.getName());
 
-    private static Cipher aesDecrypt;
+    private static final String AEAD_TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final String LEGACY_TRANSFORMATION = "AES/ECB/NoPadding";
+
+    public static final int AEAD_NONCE_LENGTH = 12;
+
+    private static final int AEAD_TAG_LENGTH_BITS = 128;
+
+    /**
+     * Bytes added by the authentication tag to every ciphered block
+     */
+    public static final int AEAD_TAG_LENGTH = AEAD_TAG_LENGTH_BITS / 8;
+
+    private static volatile SecretKey secretKey;
 
-    private static Cipher aesEncrypt;
+    private static final ThreadLocal<CipherEngine> engine = ThreadLocal.withInitial(CipherEngine::new);
 
     /**
+     * Decrypt a block into bufferCipher
      *
      * @param encryptedData
      * @param inputOffset
      * @param inputLen
-     * @return
+     * @param bufferCipher
+     * @param cipherOffset  padding added by the legacy engine
+     * @param cipherNonce   block nonce (hex) or null for legacy blocks
+     * @return the length of the plain data
      * @throws IllegalBlockSizeException
-     * @throws BadPaddingException
+     * @throws BadPaddingException       if the block fails the authentication
      */
     public static int decryptData(final byte[] encryptedData, final int inputOffset, final int inputLen,
-            final byte[] bufferCipher, final byte cipherOffset) throws IllegalBlockSizeException, BadPaddingException {
-
-// Decrypt the data
-        final byte[] decryptedData = aesDecrypt.doFinal(encryptedData, inputOffset, inputLen);
-        final int len = decryptedData.length - cipherOffset;
-        System.arraycopy(decryptedData, 0, bufferCipher, 0, len);
-        return len;
+            final byte[] bufferCipher, final byte cipherOffset, final String cipherNonce)
+            throws IllegalBlockSizeException, BadPaddingException {
+        if (cipherNonce == null) {
+            return engine.get().decryptLegacy(encryptedData, inputOffset, inputLen, bufferCipher) - cipherOffset;
+        }
+        return engine.get().decrypt(encryptedData, inputOffset, inputLen, bufferCipher, cipherNonce);
     }
 
     /**
-     * This method will encrypt the given data
+     * This method will encrypt the given data into bufferCipher. The cipher text
+     * is {@link #AEAD_TAG_LENGTH} bytes longer than the input
      *
      * @param data         : the data that will be encrypted
      * @param inputOffset
      * @param inputLen
      * @param bufferCipher
-     * @return Encrypted data in a byte array
-     * @throws NoSuchPaddingException
-     * @throws NoSuchAlgorithmException
-     * @throws InvalidAlgorithmParameterException
-     * @throws InvalidKeyException
+     * @return length and nonce of the encrypted data
      * @throws BadPaddingException
      * @throws IllegalBlockSizeException
-     * @throws InvalidKeySpecException
      */
     public static EncryptResult encryptData(final byte[] data, final int inputOffset, final int inputLen,
             final byte[] bufferCipher) throws BadPaddingException, IllegalBlockSizeException {
-        int len = 0;
-        byte elem = 0;
-        final byte rest = (byte) (inputLen % 16);
-        if (rest != 0) {
-            elem = (byte) (16 - rest);
-            len = inputLen + elem;
-        } else {
-            len = inputLen;
-        }
-
-        // Encrypt the data
-        final byte[] encryptedData = aesEncrypt.doFinal(data, inputOffset, len);
-        System.arraycopy(encryptedData, 0, bufferCipher, 0, encryptedData.length);
-        return new EncryptResult(encryptedData.length, elem);
-
+        final CipherEngine e = engine.get();
+        final int len = e.encrypt(data, inputOffset, inputLen, bufferCipher);
+        return new EncryptResult(len, (byte) 0, DatatypeConverter.printHexBinary(e.nonce));
     }
 
     /**
@@ -132,39 +218,32 @@ public final class AESEncryptionManager {
         return new SecretKeySpec(key, "AES");
     }
 
+    /**
+     * Stream decryption of legacy (AES/ECB) data
+     *
+     * @param stream
+     * @return
+     */
     public static CipherInputStream getCipherInputStream(final InputStream stream) {
-        // get the rest of encrypted data
-        return new CipherInputStream(stream, aesDecrypt);
+        try {
+            final Cipher aesDecrypt = Cipher.getInstance(LEGACY_TRANSFORMATION);
+            aesDecrypt.init(Cipher.DECRYPT_MODE, secretKey);
+            // get the rest of encrypted data
+            return new CipherInputStream(stream, aesDecrypt);
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     public static void initialize(final String key)
             throws NoSuchAlgorithmException, InvalidKeySpecException, InvalidKeyException, NoSuchPaddingException {
-        // Prepare the nonce
-
-        // Noonce should be 12 bytes
+        // The salt is fixed to keep the key of the existing archives
         final byte[] iv = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15 };
-//	secureRandom.nextBytes(iv);
-
-        // Prepare your key/password
-
-        final SecretKey secretKey = generateSecretKey(key, iv);
-//	final String algorithm = "RawBytes";
-//	final SecretKeySpec secretKey = new SecretKeySpec(iv, algorithm);
-        // "AES/ECB/PKCS5Padding");// "AES/CBC/PKCS5Padding");
-        aesEncrypt = Cipher.getInstance("AES/ECB/NoPadding");
-//	final GCMParameterSpec parameterSpec = new GCMParameterSpec(128, iv);
-
-        // Encryption mode on!
-        aesEncrypt.init(Cipher.ENCRYPT_MODE, secretKey);
-        // Prepare your key/password
-
-        aesDecrypt = Cipher.getInstance("AES/ECB/NoPadding");
-
-        // Encryption mode on!
-        aesDecrypt.init(Cipher.DECRYPT_MODE, secretKey);
-
-//	ByteArrayInOutStream.setAesDecrypt(aesDecrypt);
-//	ByteArrayInOutStream.setAesEncrypt(aesEncrypt);
+        final SecretKey newKey = generateSecretKey(key, iv);
+        // check the transformations are available before any thread needs them
+        Cipher.getInstance(AEAD_TRANSFORMATION);
+        Cipher.getInstance(LEGACY_TRANSFORMATION).init(Cipher.DECRYPT_MODE, newKey);
+        secretKey = newKey;
 
         if (logger.isLoggable(Level.INFO)) {
             logger.info("AES Encryption Manager initiated");
@@ -175,13 +254,4 @@ public final class AESEncryptionManager {
     private AESEncryptionManager() {
         throw new IllegalStateException("Utility class");
     }
-
-//    private void initCipher() throws InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException {
-//  	this.keygen = KeyGenerator.getInstance("AES");
-//  	this.k = this.keygen.generateKey();
-//  	this.aesDecrypt = Cipher.getInstance("AES/ECB/PKCS5Padding");
-//  	this.aesDecrypt.init(Cipher.DECRYPT_MODE, this.k);
-//  	this.aesEncrypt = Cipher.getInstance("AES/ECB/PKCS5Padding");
-//  	this.aesEncrypt.init(Cipher.ENCRYPT_MODE, this.k);
-//      }
 }
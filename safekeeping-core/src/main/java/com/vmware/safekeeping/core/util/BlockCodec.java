@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.util;
+
+import java.io.IOException;
+
+import com.vmware.safekeeping.core.type.enums.CompressionCodec;
+
+/**
+ * Block compression between TargetBuffer arrays. Implementations are stateless
+ * and shared by all the dump and restore threads
+ */
+public interface BlockCodec {
+
+    static BlockCodec getInstance(final CompressionCodec codec) {
+        if (codec == null) {
+            return MiGzBlockCodec.INSTANCE;
+        }
+        switch (codec) {
+        case LZ4:
+            return Lz4BlockCodec.INSTANCE;
+        case ZSTD:
+            return ZstdBlockCodec.INSTANCE;
+        case MIGZ:
+        default:
+            return MiGzBlockCodec.INSTANCE;
+        }
+    }
+
+    /**
+     * Compress src into dst
+     *
+     * @param src
+     * @param srcLen
+     * @param dst
+     * @param level  codec level, 0 or less for the codec default
+     * @return the compressed length
+     * @throws IOException if dst is too small
+     */
+    int compress(byte[] src, int srcLen, byte[] dst, int level) throws IOException;
+
+    /**
+     * Decompress src into dst
+     *
+     * @param src
+     * @param srcLen
+     * @param dst
+     * @return the decompressed length
+     * @throws IOException if the data is corrupted or dst is too small
+     */
+    int decompress(byte[] src, int srcLen, byte[] dst) throws IOException;
+
+}
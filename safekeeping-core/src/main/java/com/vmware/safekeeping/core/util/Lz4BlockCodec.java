@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.util;
+
+import java.io.IOException;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * LZ4 block codec. Level 0 uses the fast compressor, higher levels the LZ4 HC
+ * compressor
+ */
+final class Lz4BlockCodec implements BlockCodec {
+
+    static final Lz4BlockCodec INSTANCE = new Lz4BlockCodec();
+
+    private static final int MAX_HC_LEVEL = 17;
+
+    private final LZ4Compressor fastCompressor;
+
+    private final LZ4Compressor[] highCompressors;
+
+    private final LZ4SafeDecompressor decompressor;
+
+    private Lz4BlockCodec() {
+        final LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.fastCompressor = factory.fastCompressor();
+        this.highCompressors = new LZ4Compressor[MAX_HC_LEVEL + 1];
+        for (int level = 1; level <= MAX_HC_LEVEL; level++) {
+            this.highCompressors[level] = factory.highCompressor(level);
+        }
+        this.decompressor = factory.safeDecompressor();
+    }
+
+    @Override
+    public int compress(final byte[] src, final int srcLen, final byte[] dst, final int level) throws IOException {
+        final LZ4Compressor compressor = (level > 0) ? this.highCompressors[Math.min(level, MAX_HC_LEVEL)]
+                : this.fastCompressor;
+        try {
+            return compressor.compress(src, 0, srcLen, dst, 0, dst.length);
+        } catch (final LZ4Exception e) {
+            throw new IOException("LZ4 compression failed", e);
+        }
+    }
+
+    @Override
+    public int decompress(final byte[] src, final int srcLen, final byte[] dst) throws IOException {
+        try {
+            return this.decompressor.decompress(src, 0, srcLen, dst, 0, dst.length);
+        } catch (final LZ4Exception e) {
+            throw new IOException("LZ4 decompression failed", e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+import com.linkedin.migz.MiGzInputStream;
+import com.linkedin.migz.MiGzOutputStream;
+import com.vmware.safekeeping.common.ExtendedByteArrayOutputStream;
+
+/**
+ * MiGz (multithreaded gzip) codec. MiGz only exposes streams, they wrap the
+ * TargetBuffer arrays directly
+ */
+final class MiGzBlockCodec implements BlockCodec {
+
+    static final MiGzBlockCodec INSTANCE = new MiGzBlockCodec();
+
+    private static final int MIGZ_THREADS = 5;
+
+    private MiGzBlockCodec() {
+    }
+
+    @Override
+    public int compress(final byte[] src, final int srcLen, final byte[] dst, final int level) throws IOException {
+        final ExtendedByteArrayOutputStream b = new ExtendedByteArrayOutputStream(dst);
+        try (final MiGzOutputStream mzos = new MiGzOutputStream(b, MIGZ_THREADS,
+                MiGzOutputStream.DEFAULT_BLOCK_SIZE)) {
+            mzos.setCompressionLevel((level > 0) ? Math.min(level, Deflater.BEST_COMPRESSION) : Deflater.BEST_SPEED);
+            mzos.write(src, 0, srcLen);
+        }
+        if (b.size() > dst.length) {
+            throw new IOException("Compressed block exceeds the buffer size");
+        }
+        return b.size();
+    }
+
+    @Override
+    public int decompress(final byte[] src, final int srcLen, final byte[] dst) throws IOException {
+        int count = 0;
+        try (MiGzInputStream mgzip = new MiGzInputStream(new ByteArrayInputStream(src, 0, srcLen))) {
+            int n = 0;
+            while ((count < dst.length) && ((n = mgzip.read(dst, count, dst.length - count)) > -1)) {
+                count += n;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.util;
+
+import java.io.IOException;
+
+import com.github.luben.zstd.Zstd;
+
+/**
+ * Zstandard block codec
+ */
+final class ZstdBlockCodec implements BlockCodec {
+
+    static final ZstdBlockCodec INSTANCE = new ZstdBlockCodec();
+
+    /**
+     * Fastest standard level, the blocks are already deduplicated
+     */
+    private static final int DEFAULT_LEVEL = 1;
+
+    private ZstdBlockCodec() {
+    }
+
+    @Override
+    public int compress(final byte[] src, final int srcLen, final byte[] dst, final int level) throws IOException {
+        final long result = Zstd.compressByteArray(dst, 0, dst.length, src, 0, srcLen,
+                (level > 0) ? Math.min(level, Zstd.maxCompressionLevel()) : DEFAULT_LEVEL);
+        if (Zstd.isError(result)) {
+            throw new IOException("Zstd compression failed: " + Zstd.getErrorName(result));
+        }
+        return (int) result;
+    }
+
+    @Override
+    public int decompress(final byte[] src, final int srcLen, final byte[] dst) throws IOException {
+        final long result = Zstd.decompressByteArray(dst, 0, dst.length, src, 0, srcLen);
+        if (Zstd.isError(result)) {
+            throw new IOException("Zstd decompression failed: " + Zstd.getErrorName(result));
+        }
+        return (int) result;
+    }
+}
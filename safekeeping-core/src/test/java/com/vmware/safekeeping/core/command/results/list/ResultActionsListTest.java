@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.command.results.list;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.vmware.safekeeping.core.command.results.CoreResultActionVersion;
+import com.vmware.safekeeping.core.command.results.ICoreResultAction;
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
+
+public class ResultActionsListTest {
+	private static final int EXTRA_RESULTS = 100;
+	private static final int MAX_SWEEPS = 50;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private int countInMemory(final List<ICoreResultAction> results) {
+		int count = 0;
+		for (final ICoreResultAction res : results) {
+			if (ResultActionsList.contains(res.getResultActionId())) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Sweep until the finished results fit the retention count. A sweep already
+	 * running on the sweeper thread makes this one a no-op
+	 *
+	 * @throws InterruptedException
+	 */
+	private void sweepUntil(final List<ICoreResultAction> results, final int expected) throws InterruptedException {
+		for (int i = 0; (i < MAX_SWEEPS) && (countInMemory(results) > expected); i++) {
+			ResultActionsList.sweep();
+			Thread.sleep(20);
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		ResultActionsList.setJournal(new ResultActionJournal(this.folder.newFile("results.journal"), 1024 * 1024));
+	}
+
+	@After
+	public void tearDown() {
+		ResultActionsList.setJournal(null);
+	}
+
+	@Test
+	public void testSweepEvictsResultsOverRetentionCount() throws InterruptedException {
+		final int retention = CoreGlobalSettings.getTaskRetentionCount();
+		final List<ICoreResultAction> results = new ArrayList<>();
+		for (int i = 0; i < (retention + EXTRA_RESULTS); i++) {
+			final CoreResultActionVersion res = new CoreResultActionVersion();
+			assertNotNull(res.getResultActionId());
+			res.done();
+			results.add(res);
+		}
+		sweepUntil(results, retention);
+
+		assertTrue(countInMemory(results) <= retention);
+		int journaled = 0;
+		for (final ICoreResultAction res : results) {
+			if (!ResultActionsList.contains(res.getResultActionId())) {
+				assertTrue(ResultActionsList.isJournaled(res.getResultActionId()));
+				final JournaledResultAction summary = ResultActionsList
+						.getJournaledResultAction(res.getResultActionId());
+				assertNotNull(summary);
+				assertEquals(res.getResultActionId(), summary.getResultActionId());
+				assertTrue(summary.isDone());
+				++journaled;
+			}
+		}
+		assertTrue(journaled >= EXTRA_RESULTS);
+	}
+
+	@Test
+	public void testSweepSkipsResultsWithoutId() throws InterruptedException {
+		final int retention = CoreGlobalSettings.getTaskRetentionCount();
+		final ICoreResultAction noId = new CoreResultActionVersion() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public String getResultActionId() {
+				return null;
+			}
+		};
+		noId.done();
+		final List<ICoreResultAction> results = new ArrayList<>();
+		for (int i = 0; i < (retention + EXTRA_RESULTS); i++) {
+			final CoreResultActionVersion res = new CoreResultActionVersion();
+			res.done();
+			results.add(res);
+		}
+		sweepUntil(results, retention);
+
+		assertTrue(countInMemory(results) <= retention);
+		assertFalse(ResultActionsList.isJournaled(null));
+	}
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.vmware.safekeeping.core.profile.BasicBlockInfo;
+
+/**
+ * Randomized comparison of the sweep line consolidation with the previous
+ * TreeMap implementation and with a per sector "latest generation wins"
+ * oracle
+ */
+public class ConsolidateBlocksTest {
+	private static final long SEED = 0x5afe4ee9L;
+	private static final int LAYOUTS = 2000;
+	private static final int DISK_SECTORS = 1024;
+	private static final int MAX_GENERATIONS = 6;
+	/**
+	 * Changed block tracking reports extents aligned to the disk chunk size
+	 */
+	private static final int CHUNK_SECTORS = 8;
+	private static final int MAX_BLOCK_CHUNKS = 6;
+	private static final int LARGE_BLOCKS_PER_GENERATION = 70000;
+
+	private static BasicBlockInfo block(final int generationId, final long offset, final long length) {
+		final BasicBlockInfo result = new BasicBlockInfo(offset, length, (byte) 0);
+		result.setGenerationId(generationId);
+		return result;
+	}
+
+	/**
+	 * Consolidate with ConsolidateBlocks and check the statistics
+	 */
+	private static List<BasicBlockInfo> consolidate(final List<List<long[]>> layout) {
+		final ConsolidateBlocks consolidate = new ConsolidateBlocks(null);
+		int totalBlocks = 0;
+		for (int generationId = 0; generationId < layout.size(); generationId++) {
+			consolidate.addGeneration(toBlocks(layout.get(generationId), generationId));
+			totalBlocks += layout.get(generationId).size();
+		}
+		final List<BasicBlockInfo> result = consolidate.sweep();
+		final ConsolidateStatistic statistic = consolidate.getStatistic();
+		assertEquals(totalBlocks, statistic.getTotalBlocks());
+		assertEquals(totalBlocks,
+				(result.size() + statistic.getNumberReplacement()) - statistic.getResizedByOverlap());
+		long totalSize = 0;
+		for (final BasicBlockInfo block : result) {
+			totalSize += block.getLength();
+		}
+		assertEquals(totalSize, statistic.getTotalSize());
+		return result;
+	}
+
+	private static List<BasicBlockInfo> consolidateLegacy(final List<List<long[]>> layout) {
+		final LegacyConsolidateBlocks consolidate = new LegacyConsolidateBlocks();
+		for (int generationId = 0; generationId < layout.size(); generationId++) {
+			consolidate.addGeneration(toBlocks(layout.get(generationId), generationId));
+		}
+		return consolidate.getResult();
+	}
+
+	/**
+	 * @return the generation owning each sector, -1 if no generation wrote it
+	 */
+	private static int[] oracle(final List<List<long[]>> layout, final int diskSectors) {
+		final int[] result = new int[diskSectors];
+		Arrays.fill(result, -1);
+		for (int generationId = 0; generationId < layout.size(); generationId++) {
+			for (final long[] extent : layout.get(generationId)) {
+				Arrays.fill(result, (int) extent[0], (int) (extent[0] + extent[1]), generationId);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the generation owning each sector in a consolidated list. The list
+	 *         has to be sorted by offset without overlaps
+	 */
+	private static int[] owners(final List<BasicBlockInfo> consolidated, final int diskSectors) {
+		final int[] result = new int[diskSectors];
+		Arrays.fill(result, -1);
+		long previousLastBlock = -1;
+		for (final BasicBlockInfo block : consolidated) {
+			assertTrue("blocks overlap or are not sorted: " + block, block.getOffset() > previousLastBlock);
+			assertTrue("empty block: " + block, block.getLastBlock() >= block.getOffset());
+			Arrays.fill(result, (int) block.getOffset(), (int) block.getLastBlock() + 1, block.getGenerationId());
+			previousLastBlock = block.getLastBlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Random generations of sorted, not overlapping extents. Offsets and lengths
+	 * are multiples of alignment
+	 *
+	 * @return for each generation, from the oldest, the {offset, length} extents
+	 */
+	private static List<List<long[]>> randomLayout(final Random random, final int generations,
+			final int diskSectors, final int alignment, final int maxBlockUnits) {
+		final List<List<long[]>> result = new ArrayList<>(generations);
+		for (int generationId = 0; generationId < generations; generationId++) {
+			final List<long[]> extents = new ArrayList<>();
+			long position = (long) random.nextInt(3) * alignment;
+			for (;;) {
+				final long length = (long) (1 + random.nextInt(maxBlockUnits)) * alignment;
+				if ((position + length) > diskSectors) {
+					break;
+				}
+				if (random.nextBoolean()) {
+					extents.add(new long[] { position, length });
+				}
+				position += length + ((long) random.nextInt(3) * alignment);
+			}
+			result.add(extents);
+		}
+		return result;
+	}
+
+	private static List<BasicBlockInfo> toBlocks(final List<long[]> extents, final int generationId) {
+		final List<BasicBlockInfo> result = new ArrayList<>(extents.size());
+		for (final long[] extent : extents) {
+			result.add(block(generationId, extent[0], extent[1]));
+		}
+		return result;
+	}
+
+	/**
+	 * On chunk aligned generations the previous implementation is correct: the
+	 * sweep line has to restore the same sectors from the same generations
+	 */
+	@Test
+	public void testAlignedLayoutsMatchLegacy() {
+		final Random random = new Random(SEED);
+		for (int i = 0; i < LAYOUTS; i++) {
+			final List<List<long[]>> layout = randomLayout(random, 1 + random.nextInt(MAX_GENERATIONS),
+					DISK_SECTORS, CHUNK_SECTORS, MAX_BLOCK_CHUNKS);
+			final int[] expected = owners(consolidateLegacy(layout), DISK_SECTORS);
+			assertArrayEquals("layout " + i, expected, owners(consolidate(layout), DISK_SECTORS));
+			assertArrayEquals("layout " + i, oracle(layout, DISK_SECTORS), expected);
+		}
+	}
+
+	/**
+	 * Sector aligned generations, including the one sector overlaps the previous
+	 * implementation got wrong
+	 */
+	@Test
+	public void testUnalignedLayoutsMatchLatestGenerationWins() {
+		final Random random = new Random(SEED + 1);
+		for (int i = 0; i < LAYOUTS; i++) {
+			final List<List<long[]>> layout = randomLayout(random, 1 + random.nextInt(MAX_GENERATIONS),
+					DISK_SECTORS, 1, CHUNK_SECTORS);
+			assertArrayEquals("layout " + i, oracle(layout, DISK_SECTORS),
+					owners(consolidate(layout), DISK_SECTORS));
+		}
+	}
+
+	@Test
+	public void testOneSectorOverlap() {
+		final List<List<long[]>> layout = new ArrayList<>();
+		layout.add(Arrays.asList(new long[] { 0, 8 }, new long[] { 16, 8 }));
+		layout.add(Arrays.asList(new long[] { 7, 10 }));
+		final List<BasicBlockInfo> result = consolidate(layout);
+		assertEquals(3, result.size());
+		assertEquals(0, result.get(0).getOffset());
+		assertEquals(6, result.get(0).getLastBlock());
+		assertEquals(1, result.get(1).getGenerationId());
+		assertEquals(7, result.get(1).getOffset());
+		assertEquals(16, result.get(1).getLastBlock());
+		assertEquals(17, result.get(2).getOffset());
+		assertEquals(23, result.get(2).getLastBlock());
+	}
+
+	@Test
+	public void testEmptyGenerations() {
+		final List<List<long[]>> layout = new ArrayList<>();
+		layout.add(new ArrayList<>());
+		layout.add(new ArrayList<>());
+		assertTrue(consolidate(layout).isEmpty());
+	}
+
+	/**
+	 * Enough blocks to split the disk in regions consolidated in parallel
+	 */
+	@Test
+	public void testLargeLayoutMatchesLatestGenerationWins() {
+		final Random random = new Random(SEED + 2);
+		final int diskSectors = LARGE_BLOCKS_PER_GENERATION * CHUNK_SECTORS * 2;
+		final List<List<long[]>> layout = randomLayout(random, 3, diskSectors, CHUNK_SECTORS, 2);
+		assertArrayEquals(oracle(layout, diskSectors), owners(consolidate(layout), diskSectors));
+	}
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ExtentCoalescerTest {
+
+	private static ExtentSet set(final long... startAndLength) {
+		final ExtentSet result = new ExtentSet();
+		for (int i = 0; i < startAndLength.length; i += 2) {
+			result.add(startAndLength[i], startAndLength[i + 1]);
+		}
+		return result;
+	}
+
+	private static String extents(final ExtentSet set) {
+		final StringBuilder result = new StringBuilder();
+		set.forEach((start, length) -> {
+			if (result.length() > 0) {
+				result.append(',');
+			}
+			result.append(start).append('+').append(length);
+		});
+		return result.toString();
+	}
+
+	@Test
+	public void testEmpty() {
+		final ExtentCoalescer coalescer = new ExtentCoalescer(8, 64);
+		assertEquals("", extents(coalescer.coalesce(new ExtentSet())));
+		assertEquals(0, coalescer.getOriginalExtents());
+		assertEquals(0, coalescer.getCoalescedExtents());
+		assertEquals(0F, coalescer.getAmplification(), 0F);
+	}
+
+	@Test
+	public void testAdjacentExtentsAreMergedWithoutGap() {
+		final ExtentCoalescer coalescer = new ExtentCoalescer(0, 64);
+		assertEquals("0+20,21+4", extents(coalescer.coalesce(set(0, 10, 10, 10, 21, 4))));
+		assertEquals(0, coalescer.getFilledSectors());
+	}
+
+	@Test
+	public void testGapLimit() {
+		final ExtentCoalescer coalescer = new ExtentCoalescer(4, 1024);
+		assertEquals("0+24,29+1", extents(coalescer.coalesce(set(0, 10, 14, 10, 29, 1))));
+		assertEquals(3, coalescer.getOriginalExtents());
+		assertEquals(2, coalescer.getCoalescedExtents());
+		assertEquals(21, coalescer.getRequestedSectors());
+		assertEquals(4, coalescer.getFilledSectors());
+	}
+
+	@Test
+	public void testTargetSizeLimit() {
+		final ExtentCoalescer coalescer = new ExtentCoalescer(8, 16);
+		assertEquals("0+16,16+16,32+8", extents(coalescer.coalesce(set(0, 8, 8, 8, 16, 8, 24, 8, 32, 8))));
+		// an extent already larger than the target is not split
+		assertEquals("0+40,40+8", extents(coalescer.coalesce(set(0, 40, 40, 8))));
+	}
+
+	@Test
+	public void testSourceIsNotModified() {
+		final ExtentSet src = set(0, 10, 12, 10);
+		final ExtentCoalescer coalescer = new ExtentCoalescer(2, 64);
+		assertEquals("0+22", extents(coalescer.coalesce(src)));
+		assertEquals("0+10,12+10", extents(src));
+		assertEquals(10F, coalescer.getAmplification(), 0.001F);
+	}
+
+	@Test
+	public void testMaxOffset() {
+		final long start = Long.MAX_VALUE - 20;
+		final ExtentCoalescer coalescer = new ExtentCoalescer(4, 64);
+		assertEquals(start + "+20", extents(coalescer.coalesce(set(start, 8, start + 10, 10))));
+		assertEquals(2, coalescer.getFilledSectors());
+	}
+}
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.vmware.jvix.jDiskLib.Block;
+
+public class ExtentSetTest {
+	private static final long SEED = 0x5afe4ee9L;
+	private static final int RANDOM_RUNS = 2000;
+	private static final int RANDOM_SECTORS = 256;
+
+	private static ExtentSet set(final long... startAndLength) {
+		final ExtentSet result = new ExtentSet();
+		for (int i = 0; i < startAndLength.length; i += 2) {
+			result.add(startAndLength[i], startAndLength[i + 1]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the extents as "start+length" separated by comma
+	 */
+	private static String extents(final ExtentSet set) {
+		final StringBuilder result = new StringBuilder();
+		set.forEach((start, length) -> {
+			if (result.length() > 0) {
+				result.append(',');
+			}
+			result.append(start).append('+').append(length);
+		});
+		return result.toString();
+	}
+
+	private static BitSet toBitSet(final ExtentSet set) {
+		final BitSet result = new BitSet();
+		set.forEach((start, length) -> result.set((int) start, (int) (start + length)));
+		return result;
+	}
+
+	private static ExtentSet randomSet(final Random random) {
+		final ExtentSet result = new ExtentSet();
+		final int extents = random.nextInt(8);
+		for (int i = 0; i < extents; i++) {
+			final int start = random.nextInt(RANDOM_SECTORS);
+			result.add(start, random.nextInt(Math.min(32, RANDOM_SECTORS - start) + 1));
+		}
+		return result;
+	}
+
+	/**
+	 * A normalized set is sorted and its extents don't overlap
+	 */
+	private static void assertNormalized(final ExtentSet set) {
+		long previousEnd = Long.MIN_VALUE;
+		for (int i = 0; i < set.size(); i++) {
+			assertTrue(set.getLength(i) > 0);
+			assertTrue(set.getStart(i) >= previousEnd);
+			previousEnd = set.getStart(i) + set.getLength(i);
+		}
+	}
+
+	@Test
+	public void testAddIgnoresEmptyExtents() {
+		final ExtentSet set = set(10, 0, 20, -5);
+		assertTrue(set.isEmpty());
+		assertEquals(0, set.getTotalLength());
+	}
+
+	@Test
+	public void testAddOutOfOrder() {
+		final ExtentSet set = set(50, 10, 0, 10, 5, 10);
+		assertEquals("0+15,50+10", extents(set));
+		assertEquals(25, set.getTotalLength());
+	}
+
+	@Test
+	public void testAdjacentExtentsAreKept() {
+		assertEquals("0+10,10+10", extents(set(10, 10, 0, 10)));
+		assertEquals("0+10,10+10", extents(set(0, 10).union(set(10, 10))));
+	}
+
+	@Test
+	public void testUnion() {
+		assertEquals("", extents(new ExtentSet().union(new ExtentSet())));
+		assertEquals("5+10", extents(new ExtentSet().union(set(5, 10))));
+		assertEquals("5+10", extents(set(5, 10).union(new ExtentSet())));
+		assertEquals("0+20", extents(set(0, 15).union(set(10, 10))));
+		assertEquals("0+30", extents(set(0, 30).union(set(10, 5))));
+		assertEquals("0+5,10+5,20+5", extents(set(0, 5, 20, 5).union(set(10, 5))));
+		assertEquals("0+25", extents(set(0, 5, 20, 5).union(set(4, 17))));
+	}
+
+	@Test
+	public void testIntersect() {
+		assertEquals("", extents(new ExtentSet().intersect(set(0, 10))));
+		assertEquals("", extents(set(0, 10).intersect(new ExtentSet())));
+		assertEquals("", extents(set(0, 10).intersect(set(10, 10))));
+		assertEquals("9+1", extents(set(0, 10).intersect(set(9, 10))));
+		assertEquals("10+5", extents(set(0, 30).intersect(set(10, 5))));
+		assertEquals("5+5,20+5", extents(set(5, 20).intersect(set(0, 10, 20, 10))));
+	}
+
+	/**
+	 * getIncrementalSectorsRange intersects the changed and the allocated
+	 * sectors. The previous getOverlap used the last sector as the end of the
+	 * overlap and lost one sector per range, a single sector overlap was lost
+	 * completely
+	 */
+	@Test
+	public void testIncrementalRangeKeepsLastSector() {
+		final List<Block> changed = new ArrayList<>();
+		changed.add(new Block(0, 100));
+		changed.add(new Block(200, 251));
+		final ExtentSet allocated = set(50, 100, 250, 50);
+		final ExtentSet backup = ExtentSet.fromBlocks(changed).intersect(allocated);
+		assertEquals("50+50,250+1", extents(backup));
+		assertEquals(51, backup.getTotalLength());
+	}
+
+	@Test
+	public void testSubtract() {
+		assertEquals("", extents(new ExtentSet().subtract(set(0, 10))));
+		assertEquals("0+10", extents(set(0, 10).subtract(new ExtentSet())));
+		assertEquals("0+10", extents(set(0, 10).subtract(set(10, 10))));
+		assertEquals("", extents(set(0, 10).subtract(set(0, 10))));
+		assertEquals("", extents(set(5, 5).subtract(set(0, 20))));
+		assertEquals("0+5,15+5", extents(set(0, 20).subtract(set(5, 10))));
+		assertEquals("5+5", extents(set(0, 15).subtract(set(0, 5, 10, 10))));
+		assertEquals("2+1,6+1", extents(set(0, 8).subtract(set(0, 2, 3, 3, 7, 1))));
+	}
+
+	@Test
+	public void testSplit() {
+		assertEquals("", extents(new ExtentSet().split(4)));
+		assertEquals("0+4,4+4", extents(set(0, 8).split(4)));
+		assertEquals("0+4,4+4,8+2", extents(set(0, 10).split(4)));
+		// split extents are adjacent and stay split
+		assertEquals("0+1,1+1,2+1,10+1,11+1", extents(set(0, 3, 10, 2).split(1).union(new ExtentSet()).split(3)));
+		assertEquals("0+1,1+1,2+1", extents(set(0, 3).split(1)));
+		assertEquals(3, set(0, 3).split(1).size());
+	}
+
+	@Test
+	public void testMaxOffset() {
+		final long start = Long.MAX_VALUE - 100;
+		final ExtentSet last = set(start, 100);
+		assertEquals(start + "+100", extents(last.union(set(start - 100, 100)).subtract(set(start - 100, 100))));
+		assertEquals(start + 50 + "+50", extents(last.intersect(set(start + 50, 50))));
+		assertEquals(start + "+50", extents(last.subtract(set(start + 50, 50))));
+		assertEquals(start + "+64," + (start + 64) + "+36", extents(last.split(64)));
+		assertEquals(100, last.getTotalLength());
+	}
+
+	@Test
+	public void testBlockList() {
+		final List<Block> blocks = set(30, 5, 0, 10, 5, 10).toBlockList();
+		assertEquals(2, blocks.size());
+		assertEquals(0, blocks.get(0).offset);
+		assertEquals(15, blocks.get(0).length);
+		assertEquals(30, blocks.get(1).offset);
+		assertEquals("0+15,30+5", extents(ExtentSet.fromBlocks(blocks)));
+	}
+
+	@Test
+	public void testRandomOperationsMatchBitSet() {
+		final Random random = new Random(SEED);
+		for (int i = 0; i < RANDOM_RUNS; i++) {
+			final ExtentSet a = randomSet(random);
+			final ExtentSet b = randomSet(random);
+			final BitSet bitsA = toBitSet(a);
+			final BitSet bitsB = toBitSet(b);
+
+			final BitSet union = (BitSet) bitsA.clone();
+			union.or(bitsB);
+			final ExtentSet extentUnion = a.union(b);
+			assertNormalized(extentUnion);
+			assertEquals(union, toBitSet(extentUnion));
+
+			final BitSet intersect = (BitSet) bitsA.clone();
+			intersect.and(bitsB);
+			final ExtentSet extentIntersect = a.intersect(b);
+			assertNormalized(extentIntersect);
+			assertEquals(intersect, toBitSet(extentIntersect));
+			assertEquals(intersect.cardinality(), extentIntersect.getTotalLength());
+
+			final BitSet subtract = (BitSet) bitsA.clone();
+			subtract.andNot(bitsB);
+			final ExtentSet extentSubtract = a.subtract(b);
+			assertNormalized(extentSubtract);
+			assertEquals(subtract, toBitSet(extentSubtract));
+
+			final long maxLength = 1 + random.nextInt(16);
+			final ExtentSet split = a.split(maxLength);
+			assertEquals(bitsA, toBitSet(split));
+			for (int k = 0; k < split.size(); k++) {
+				assertTrue(split.getLength(k) <= maxLength);
+			}
+		}
+	}
+}
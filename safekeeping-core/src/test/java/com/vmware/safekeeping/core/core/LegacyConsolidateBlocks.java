@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.core.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import com.vmware.safekeeping.core.profile.BasicBlockInfo;
+
+/**
+ * The TreeMap consolidation used before the sweep line of
+ * {@link ConsolidateBlocks}, without the logging. Kept as a reference for the
+ * equivalence tests
+ */
+class LegacyConsolidateBlocks {
+	private final TreeMap<Long, BasicBlockInfo> vixBlocks;
+	private final ConsolidateStatistic statistic;
+
+	LegacyConsolidateBlocks() {
+		this.vixBlocks = new TreeMap<>();
+		this.statistic = new ConsolidateStatistic();
+	}
+
+	private void addBlock(final BasicBlockInfo newBlock) {
+		this.vixBlocks.put(newBlock.getOffset(), newBlock);
+		this.statistic.incTotalSize(newBlock.getLength());
+	}
+
+	/**
+	 * Add the blocks of a generation. The generations are added from the oldest
+	 * to the newest
+	 *
+	 * @param generationBlocks
+	 */
+	void addGeneration(final List<BasicBlockInfo> generationBlocks) {
+		for (final BasicBlockInfo newBlock : generationBlocks) {
+			this.statistic.incTotalBlocks();
+			check(newBlock);
+		}
+	}
+
+	private void blockSplit(final BasicBlockInfo block1, final BasicBlockInfo newBlock) {
+		final BasicBlockInfo block3 = new BasicBlockInfo(block1);
+		this.statistic.decTotalSize(block1.getLength());
+		block1.setLastBlock(newBlock.getOffset() - 1);
+		this.statistic.incTotalSize(block1.getLength());
+		block3.setStartBlock(newBlock.getLastBlock() + 1);
+		this.statistic.incResizedByOverlap();
+		addBlock(newBlock);
+		if (this.vixBlocks.containsKey(block3.getOffset())) {
+			check(block3);
+		} else {
+			this.vixBlocks.put(block3.getOffset(), block3);
+			this.statistic.incTotalSize(block3.getLength());
+		}
+	}
+
+	private void check(final BasicBlockInfo newBlock) {
+		Long relCeilingOffset = newBlock.getOffset();
+		Long relFloorOffset = newBlock.getOffset();
+
+		while ((relFloorOffset != null) || (relCeilingOffset != null)) {
+			if (relCeilingOffset != null) {
+				final Entry<Long, BasicBlockInfo> block1CeilingEntry = this.vixBlocks.ceilingEntry(relCeilingOffset);
+				if (block1CeilingEntry == null) {
+					relCeilingOffset = null;
+				} else {
+					final BasicBlockInfo block1 = block1CeilingEntry.getValue();
+					if (newBlock.equals(block1) || checkCeiling(newBlock, block1)) {
+						++relCeilingOffset;
+					} else {
+						relCeilingOffset = null;
+					}
+				}
+			}
+			if (relFloorOffset != null) {
+				final Entry<Long, BasicBlockInfo> block1FloorEntry = this.vixBlocks.floorEntry(relFloorOffset);
+				if (block1FloorEntry == null) {
+					relFloorOffset = null;
+				} else {
+					final BasicBlockInfo block1 = block1FloorEntry.getValue();
+					if (newBlock.equals(block1) || checkFloor(newBlock, block1)) {
+						--relFloorOffset;
+					} else {
+						relFloorOffset = null;
+					}
+				}
+			}
+		}
+		if (!this.vixBlocks.containsKey(newBlock.getOffset())) {
+			addBlock(newBlock);
+		}
+	}
+
+	private boolean checkCeiling(final BasicBlockInfo newBlock, final BasicBlockInfo block1) {
+		boolean result = false;
+		if (block1.getOffset() == newBlock.getOffset()) {
+			if (block1.getLastBlock() > newBlock.getLastBlock()) {
+				this.vixBlocks.remove(block1.getOffset());
+				this.statistic.decTotalSize(block1.getLength());
+				block1.setStartBlock(newBlock.getLastBlock() + 1);
+				addBlock(newBlock);
+				if (this.vixBlocks.containsKey(block1.getOffset())) {
+					check(block1);
+				} else {
+					addBlock(block1);
+				}
+				result = true;
+			} else {
+				this.vixBlocks.remove(block1.getOffset());
+				this.statistic.decTotalSize(block1.getLength());
+				this.statistic.incNumberReplacement();
+				addBlock(newBlock);
+				result = true;
+			}
+		} else if ((block1.getOffset() > newBlock.getOffset()) && (block1.getLastBlock() <= newBlock.getLastBlock())) {
+			this.vixBlocks.remove(block1.getOffset());
+			this.statistic.decTotalSize(block1.getLength());
+			this.statistic.incNumberReplacement();
+			addBlock(newBlock);
+			result = true;
+		} else if ((block1.getOffset() > newBlock.getOffset()) && (block1.getLastBlock() >= newBlock.getLastBlock())
+				&& (block1.getOffset() <= newBlock.getLastBlock())) {
+			this.vixBlocks.remove(block1.getOffset());
+			this.statistic.decTotalSize(block1.getLength());
+			block1.setStartBlock(newBlock.getLastBlock() + 1);
+			addBlock(newBlock);
+			if (this.vixBlocks.containsKey(block1.getOffset())) {
+				check(block1);
+			} else {
+				addBlock(block1);
+			}
+			result = true;
+		}
+		return result;
+	}
+
+	private boolean checkFloor(final BasicBlockInfo newBlock, final BasicBlockInfo block1) {
+		boolean result = false;
+		if (block1.getOffset() < newBlock.getOffset()) {
+			if (((block1.getOffset() < newBlock.getLastBlock()) && (block1.getLastBlock() > newBlock.getLastBlock()))
+					|| (block1.getLastBlock() > newBlock.getLastBlock())) {
+				blockSplit(block1, newBlock);
+				result = true;
+			} else if ((block1.getLastBlock() < newBlock.getLastBlock())
+					&& (block1.getLastBlock() > newBlock.getOffset())) {
+				this.statistic.decTotalSize(block1.getLength());
+				block1.setLastBlock(newBlock.getOffset() - 1);
+				this.statistic.incTotalSize(block1.getLength());
+				addBlock(newBlock);
+				result = true;
+			} else if (block1.getLastBlock() == newBlock.getLastBlock()) {
+				this.statistic.decTotalSize(block1.getLength());
+				block1.setLastBlock(newBlock.getOffset() - 1);
+				this.statistic.incTotalSize(block1.getLength());
+				addBlock(newBlock);
+				result = true;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the consolidated blocks sorted by offset
+	 */
+	List<BasicBlockInfo> getResult() {
+		return new ArrayList<>(this.vixBlocks.values());
+	}
+
+	ConsolidateStatistic getStatistic() {
+		return this.statistic;
+	}
+}
@@ -402,6 +402,8 @@ public class Cxf {
 	  
 	    ServletHolder apiServlet = context.addServlet(ServletContainer.class, endpointUrl+"/*");
 	     apiServlet.setInitOrder(0);
+	     // task updates are streamed without holding a request thread
+	     apiServlet.setAsyncSupported(true);
 	    apiServlet.setInitParameter(ServerProperties.PROVIDER_PACKAGES, 
 	   "io.swagger.v3.jaxrs2.integration.resources,com.vmware.safekeeping.cxf.rest.api,com.vmware.safekeeping.cxf.rest.model");
 	    apiServlet.setInitParameter(ServerProperties.PROVIDER_CLASSNAMES,"org.glassfish.jersey.media.multipart.MultiPartFeature");		
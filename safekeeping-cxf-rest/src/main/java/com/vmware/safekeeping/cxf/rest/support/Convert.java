@@ -22,6 +22,8 @@ import com.vmware.safekeeping.core.command.results.connectivity.CoreResultAction
 import com.vmware.safekeeping.core.command.results.connectivity.CoreResultActionDisconnect;
 import com.vmware.safekeeping.core.command.results.connectivity.CoreResultActionDisconnectSso;
 import com.vmware.safekeeping.core.command.results.connectivity.CoreResultActionDisconnectVcenter;
+import com.vmware.safekeeping.core.command.results.list.ResultActionUpdate;
+import com.vmware.safekeeping.core.control.info.ExBlockInfo;
 import com.vmware.safekeeping.core.control.info.FcoTypeSearch;
 import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
 import com.vmware.safekeeping.core.type.FcoTarget;
@@ -66,6 +68,50 @@ public class Convert {
 
     }
 
+    public static com.vmware.safekeeping.cxf.rest.model.BlockInfo convertBlockInfo(final ExBlockInfo src) {
+	com.vmware.safekeeping.cxf.rest.model.BlockInfo dst = new com.vmware.safekeeping.cxf.rest.model.BlockInfo();
+	dst.setGenerationId(src.getGenerationId());
+	dst.setOffset(src.getOffset());
+	dst.setLength(src.getLength());
+	dst.setIndex(src.getIndex());
+	dst.setCompress(src.isCompress());
+	dst.setCipher(src.isCipher());
+	dst.setDiskId(src.getDiskId());
+	dst.setSize(src.getSize());
+	dst.setEndTime(src.getEndTime());
+	dst.setMd5(src.getMd5());
+	dst.setKey(src.getKey());
+	dst.setStartTime(src.getStartTime());
+	dst.setStreamSize(src.getStreamSize());
+	dst.setFailed(src.isFailed());
+	dst.setReason(src.getReason());
+	dst.setTotalBlocks(src.getTotalBlocks());
+	dst.setModified(src.isModified());
+	dst.setLastBlock(src.getLastBlock());
+	dst.setSha1(src.getSha1());
+	dst.setDuplicated(src.isDuplicated());
+	return dst;
+    }
+
+    public static com.vmware.safekeeping.cxf.rest.model.TaskUpdate newTaskUpdate(final ResultActionUpdate src) {
+	com.vmware.safekeeping.cxf.rest.model.TaskUpdate dst = new com.vmware.safekeeping.cxf.rest.model.TaskUpdate();
+	dst.setId(src.getResultActionId());
+	dst.setSeq(src.getSeq());
+	dst.setDone(src.isDone());
+	if (src.getState() != null) {
+	    dst.setState(com.vmware.safekeeping.cxf.rest.model.OperationState.valueOf(src.getState().toString()));
+	    dst.setReason(src.getReason());
+	}
+	if (src.getEndDate() != null) {
+	    dst.setEndDate(src.getEndDate().getTime());
+	}
+	dst.setProgress(src.getProgress());
+	for (ExBlockInfo block : src.getBlocks()) {
+	    dst.addBlocksItem(convertBlockInfo(block));
+	}
+	return dst;
+    }
+
     public static com.vmware.safekeeping.cxf.rest.model.SapiTask newSapiTask(ICoreResultAction src) {
 	com.vmware.safekeeping.cxf.rest.model.SapiTask task = new com.vmware.safekeeping.cxf.rest.model.SapiTask();
 	task.setState(com.vmware.safekeeping.cxf.rest.model.OperationState.valueOf(src.getState().toString()));
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.cxf.rest.support;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.glassfish.jersey.server.ChunkedOutput;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vmware.safekeeping.core.command.results.list.ResultActionUpdate;
+import com.vmware.safekeeping.core.command.results.list.ResultActionUpdates;
+import com.vmware.safekeeping.core.profile.CoreGlobalSettings;
+import com.vmware.safekeeping.core.type.VmbkThreadFactory;
+
+/**
+ * Server sent events stream of the changes of a task. The stream doesn't hold
+ * a request thread: the task changes schedule an update on a small shared
+ * pool, changes arriving before the update are coalesced in the same event.
+ * The events are queued on the stream and written by a writer thread without
+ * holding the stream, so a slow client delays only its own events. A client
+ * with more than MAX_PENDING_EVENTS events queued, or whose write doesn't
+ * complete in STALLED_WRITE_SECONDS, has fallen behind and is closed. Every
+ * event has the sequence number as id, a comment is sent every
+ * KEEP_ALIVE_SECONDS without changes. The stream ends when the task is done.
+ */
+public final class TaskUpdatesStream implements Runnable {
+	private static final Logger logger = Logger.getLogger(TaskUpdatesStream.class.getName());
+
+	private static final int UPDATE_THREADS = 4;
+	/**
+	 * Below the idle timeout of the connectors
+	 */
+	private static final int KEEP_ALIVE_SECONDS = 15;
+	private static final String KEEP_ALIVE = ": keep-alive\n\n";
+	private static final int MAX_PENDING_EVENTS = 64;
+	private static final int STALLED_WRITE_SECONDS = 60;
+
+	private static final ScheduledExecutorService executor;
+	private static final ExecutorService writers;
+	private static final Set<TaskUpdatesStream> streams;
+
+	static {
+		streams = ConcurrentHashMap.newKeySet();
+		executor = Executors.newScheduledThreadPool(UPDATE_THREADS, new VmbkThreadFactory("TaskUpdates", true));
+		writers = Executors.newCachedThreadPool(new VmbkThreadFactory("TaskUpdatesWriter", true));
+		executor.scheduleWithFixedDelay(TaskUpdatesStream::keepAliveAll, KEEP_ALIVE_SECONDS, KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS);
+	}
+
+	public static int getSize() {
+		return streams.size();
+	}
+
+	private static void keepAliveAll() {
+		for (final TaskUpdatesStream stream : streams) {
+			stream.keepAlive();
+		}
+	}
+
+	/**
+	 * Open a stream of the changes of a task after sinceSeq. A task already
+	 * evicted to the task journal gets a single final event.
+	 *
+	 * @param task
+	 * @param sinceSeq
+	 * @param objectMapper
+	 * @return
+	 */
+	public static ChunkedOutput<String> open(final String task, final long sinceSeq,
+			final ObjectMapper objectMapper) {
+		final TaskUpdatesStream stream = new TaskUpdatesStream(task, sinceSeq, objectMapper);
+		streams.add(stream);
+		ResultActionUpdates.addListener(task, stream);
+		executor.execute(stream::flush);
+		return stream.output;
+	}
+
+	private final String task;
+	private final ObjectMapper objectMapper;
+	private final ChunkedOutput<String> output;
+	private final AtomicBoolean scheduled;
+	private final Deque<String> pending;
+	private long seq;
+	private long lastWrite;
+	/**
+	 * Start of the write in progress, 0 if none
+	 */
+	private long writeStarted;
+	private boolean writing;
+	private boolean ending;
+	private volatile boolean closed;
+
+	private TaskUpdatesStream(final String task, final long sinceSeq, final ObjectMapper objectMapper) {
+		this.task = task;
+		this.seq = sinceSeq;
+		this.objectMapper = objectMapper;
+		this.output = new ChunkedOutput<>(String.class);
+		this.scheduled = new AtomicBoolean();
+		this.pending = new ArrayDeque<>();
+		this.lastWrite = System.currentTimeMillis();
+	}
+
+	/**
+	 * Stop the stream, the connection is closed by a writer thread because
+	 * closing the connection of a client that fell behind can block
+	 *
+	 * @param reason
+	 */
+	private void abort(final String reason) {
+		if (markClosed()) {
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("Task " + this.task + " updates stream aborted - " + reason);
+			}
+			release();
+			writers.execute(this::closeOutput);
+		}
+	}
+
+	private void close() {
+		if (markClosed()) {
+			release();
+			closeOutput();
+		}
+	}
+
+	private void closeOutput() {
+		try {
+			this.output.close();
+		} catch (final IOException e) {
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("Task " + this.task + " updates stream - " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Write the queued events, one writer per stream
+	 */
+	private void drain() {
+		while (true) {
+			final String chunk;
+			synchronized (this) {
+				chunk = this.closed ? null : this.pending.poll();
+				if (chunk == null) {
+					this.writing = false;
+					if (!this.ending || this.closed) {
+						return;
+					}
+				} else {
+					this.writeStarted = System.currentTimeMillis();
+				}
+			}
+			if (chunk == null) {
+				// the last event of the task has been written
+				close();
+				return;
+			}
+			try {
+				this.output.write(chunk);
+			} catch (final IOException e) {
+				if (logger.isLoggable(Level.FINE)) {
+					logger.fine("Task " + this.task + " updates stream closed - " + e.getMessage());
+				}
+				close();
+				return;
+			}
+			synchronized (this) {
+				this.lastWrite = System.currentTimeMillis();
+				this.writeStarted = 0;
+			}
+		}
+	}
+
+	/**
+	 * Queue an event and start the writer of the stream if idle
+	 *
+	 * @param chunk
+	 * @return false if the client fell behind
+	 */
+	private boolean enqueue(final String chunk) {
+		if (this.pending.size() >= MAX_PENDING_EVENTS) {
+			return false;
+		}
+		this.pending.add(chunk);
+		startWriter();
+		return true;
+	}
+
+	private void flush() {
+		this.scheduled.set(false);
+		String fallBehind = null;
+		synchronized (this) {
+			if (this.closed || this.ending) {
+				return;
+			}
+			try {
+				final int maxBlocks = CoreGlobalSettings.getTaskUpdatesMaxBlocks();
+				ResultActionUpdate update;
+				do {
+					update = ResultActionUpdates.getUpdate(this.task, this.seq);
+					if (update == null) {
+						this.ending = true;
+						break;
+					}
+					if ((update.hasChanges() || update.isDone()) && !enqueue(toEvent(update))) {
+						fallBehind = MAX_PENDING_EVENTS + " events pending";
+						break;
+					}
+					this.seq = update.getSeq();
+					this.ending = update.isDone();
+				} while (!update.isDone() && (update.getBlocks().size() >= maxBlocks));
+				if (this.ending) {
+					startWriter();
+				}
+			} catch (final IOException e) {
+				fallBehind = e.getMessage();
+			}
+		}
+		if (fallBehind != null) {
+			abort(fallBehind);
+		}
+	}
+
+	/**
+	 * Called by the sweep of the shared pool, never waits for a write
+	 */
+	private void keepAlive() {
+		String stalled = null;
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			final long now = System.currentTimeMillis();
+			if (this.output.isClosed()) {
+				stalled = "connection closed";
+			} else if ((this.writeStarted != 0)
+					&& ((now - this.writeStarted) >= TimeUnit.SECONDS.toMillis(STALLED_WRITE_SECONDS))) {
+				stalled = "write stalled for " + ((now - this.writeStarted) / 1000) + "s";
+			} else if (!this.writing && !this.ending
+					&& ((now - this.lastWrite) >= TimeUnit.SECONDS.toMillis(KEEP_ALIVE_SECONDS))) {
+				enqueue(KEEP_ALIVE);
+			}
+		}
+		if (stalled != null) {
+			abort(stalled);
+		}
+	}
+
+	/**
+	 * @return false if the stream was already closed
+	 */
+	private synchronized boolean markClosed() {
+		if (this.closed) {
+			return false;
+		}
+		this.closed = true;
+		this.pending.clear();
+		return true;
+	}
+
+	private void release() {
+		streams.remove(this);
+		ResultActionUpdates.removeListener(this.task, this);
+	}
+
+	/**
+	 * Task changed, schedule an update unless one is already pending
+	 */
+	@Override
+	public void run() {
+		if (!this.closed && this.scheduled.compareAndSet(false, true)) {
+			executor.execute(this::flush);
+		}
+	}
+
+	private void startWriter() {
+		if (!this.writing) {
+			this.writing = true;
+			writers.execute(this::drain);
+		}
+	}
+
+	private String toEvent(final ResultActionUpdate update) throws IOException {
+		final StringBuilder event = new StringBuilder();
+		event.append("id: ").append(update.getSeq()).append('\n');
+		event.append("event: update\n");
+		event.append("data: ").append(this.objectMapper.writeValueAsString(Convert.newTaskUpdate(update)))
+				.append("\n\n");
+		return event.toString();
+	}
+}
@@ -60,6 +60,7 @@ import com.vmware.safekeeping.external.result.ResultActionVmBackup;
 import com.vmware.safekeeping.external.result.ResultActionVmRestore;
 import com.vmware.safekeeping.external.result.ResultActionVmVirtualBackup;
 import com.vmware.safekeeping.external.result.TaskResult;
+import com.vmware.safekeeping.external.result.TaskUpdate;
 import com.vmware.safekeeping.external.result.archive.ResultActionArchiveCheckGeneration;
 import com.vmware.safekeeping.external.result.archive.ResultActionArchiveCheckGenerationWithDependencies;
 import com.vmware.safekeeping.external.result.archive.ResultActionArchiveItem;
@@ -187,6 +188,10 @@ public interface Sapi {
 	@WebMethod
 	TaskResult getTaskInfo(@WebParam(name = "id") Task id) throws UnrecognizedToken, InvalidTask, InternalServer;
 
+	@WebMethod
+	TaskUpdate getTaskUpdates(@WebParam(name = "id") Task id, @WebParam(name = "sinceSeq") long sinceSeq)
+			throws UnrecognizedToken, InvalidTask;
+
 	@WebMethod
 	ResultActionVersion getVersion() throws InternalCoreResult;
 
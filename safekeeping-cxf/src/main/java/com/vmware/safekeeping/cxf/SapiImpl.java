@@ -42,6 +42,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.LockSupport;
 import java.util.logging.FileHandler;
 import java.util.logging.Logger;
@@ -107,6 +108,9 @@ import com.vmware.safekeeping.core.command.results.connectivity.CoreResultAction
 import com.vmware.safekeeping.core.command.results.connectivity.CoreResultActionDisconnectSso;
 import com.vmware.safekeeping.core.command.results.connectivity.CoreResultActionDisconnectVcenter;
 import com.vmware.safekeeping.core.command.results.connectivity.CoreResultActionExtension;
+import com.vmware.safekeeping.core.command.results.list.JournaledResultAction;
+import com.vmware.safekeeping.core.command.results.list.ResultActionUpdate;
+import com.vmware.safekeeping.core.command.results.list.ResultActionUpdates;
 import com.vmware.safekeeping.core.command.results.list.ResultActionsList;
 import com.vmware.safekeeping.core.command.results.support.OperationState;
 import com.vmware.safekeeping.core.control.Vmbk;
@@ -169,6 +173,7 @@ import com.vmware.safekeeping.external.result.ResultActionVmBackup;
 import com.vmware.safekeeping.external.result.ResultActionVmRestore;
 import com.vmware.safekeeping.external.result.ResultActionVmVirtualBackup;
 import com.vmware.safekeeping.external.result.TaskResult;
+import com.vmware.safekeeping.external.result.TaskUpdate;
 import com.vmware.safekeeping.external.result.archive.AbstractResultActionArchive;
 import com.vmware.safekeeping.external.result.archive.AbstractResultActionArchiveWithSubOperations;
 import com.vmware.safekeeping.external.result.archive.ResultActionArchiveCheckGeneration;
@@ -648,6 +653,13 @@ public class SapiImpl implements Sapi {
 					this.logger.warning(msg);
 					throw new InternalServer(msg);
 				}
+			} else {
+				final JournaledResultAction journaled = ResultActionsList.getJournaledResultAction(id.getId());
+				if (journaled != null) {
+					final ResultAction clsInstance = new ResultAction();
+					ResultAction.convert(journaled, clsInstance);
+					result.setResult(clsInstance);
+				}
 			}
 		} catch (final UnrecognizedToken | InvalidTask e) {
 			Utility.logWarning(this.logger, e);
@@ -662,6 +674,20 @@ public class SapiImpl implements Sapi {
 		return result;
 	}
 
+	@Override
+	public TaskUpdate getTaskUpdates(final Task id, final long sinceSeq) throws UnrecognizedToken, InvalidTask {
+		precheck();
+		if (id == null) {
+			throw new InvalidTask("invalid id");
+		}
+		final ResultActionUpdate update = ResultActionUpdates.awaitUpdate(id.getId(), sinceSeq,
+				TimeUnit.SECONDS.toMillis(CoreGlobalSettings.getTaskUpdatesMaxWaitSeconds()));
+		if (update == null) {
+			throw new InvalidTask("unknown task " + id.getId());
+		}
+		return TaskUpdate.newInstance(update);
+	}
+
 	/**
 	 * @return the usersList
 	 */
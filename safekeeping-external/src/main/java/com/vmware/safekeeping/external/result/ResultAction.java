@@ -29,6 +29,7 @@ package com.vmware.safekeeping.external.result;
 import java.util.Date;
 
 import com.vmware.safekeeping.core.command.results.ICoreResultAction;
+import com.vmware.safekeeping.core.command.results.list.JournaledResultAction;
 import com.vmware.safekeeping.core.command.results.support.OperationState;
 import com.vmware.safekeeping.core.type.ManagedFcoEntityInfo;
 import com.vmware.safekeeping.external.command.support.Task;
@@ -63,6 +64,47 @@ public class ResultAction implements Result {
         }
     }
 
+    /**
+     * Convert the summary of a result action evicted to the task journal
+     *
+     * @param src
+     * @param dst
+     */
+    public static void convert(final JournaledResultAction src, final ResultAction dst) {
+        if ((src == null) || (dst == null)) {
+            return;
+        }
+        final Task task = new Task();
+        task.setId(src.getResultActionId());
+        task.setState(src.getState());
+        task.setFcoEntity(src.getFcoEntityInfo());
+        task.setReason(src.getReason());
+        dst.setTask(task);
+        dst.setState(src.getState());
+        dst.setFcoEntityInfo(src.getFcoEntityInfo());
+        dst.setReason(src.getReason());
+        dst.setDone(src.isDone());
+
+        dst.setEndTime(src.getEndTime());
+        dst.setStartTime(src.getStartTime());
+        if (src.getStartDate() != null) {
+            dst.setStartDate(src.getStartDate().getTime());
+        }
+        if (src.getCreationDate() != null) {
+            dst.setCreationDate(src.getCreationDate().getTime());
+        }
+        if (src.getEndDate() != null) {
+            dst.setEndDate(src.getEndDate().getTime());
+        }
+        dst.setProgress(src.getProgress());
+
+        if (src.getParentId() != null) {
+            final Task parent = new Task();
+            parent.setId(src.getParentId());
+            dst.setParent(parent);
+        }
+    }
+
     @Override
     public void convert(ICoreResultAction src) {
         ResultAction.convert(src, this);
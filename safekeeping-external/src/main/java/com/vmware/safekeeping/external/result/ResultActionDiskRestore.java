@@ -40,6 +40,9 @@ public class ResultActionDiskRestore extends AbstractResultActionDiskVirtualOper
             AbstractResultActionDiskVirtualOperation.convert(src, dst);
 
             dst.setPhase(src.getPhase());
+            dst.setBlockCacheHits(src.getBlockCacheHits());
+            dst.setBlockCacheMisses(src.getBlockCacheMisses());
+            dst.setBlockCacheEvictions(src.getBlockCacheEvictions());
 
         } catch (final Exception e) {
             src.failure(e);
@@ -48,16 +51,43 @@ public class ResultActionDiskRestore extends AbstractResultActionDiskVirtualOper
     }
 
     private RestoreDiskPhases phase;
+    private long blockCacheHits;
+    private long blockCacheMisses;
+    private long blockCacheEvictions;
 
     @Override
     public void convert(ICoreResultAction src) {
         ResultActionDiskRestore.convert((CoreResultActionDiskRestore) src, this);
     }
 
+    public long getBlockCacheEvictions() {
+        return this.blockCacheEvictions;
+    }
+
+    public long getBlockCacheHits() {
+        return this.blockCacheHits;
+    }
+
+    public long getBlockCacheMisses() {
+        return this.blockCacheMisses;
+    }
+
     public RestoreDiskPhases getPhase() {
         return this.phase;
     }
 
+    public void setBlockCacheEvictions(final long blockCacheEvictions) {
+        this.blockCacheEvictions = blockCacheEvictions;
+    }
+
+    public void setBlockCacheHits(final long blockCacheHits) {
+        this.blockCacheHits = blockCacheHits;
+    }
+
+    public void setBlockCacheMisses(final long blockCacheMisses) {
+        this.blockCacheMisses = blockCacheMisses;
+    }
+
     public void setPhase(final RestoreDiskPhases phase) {
         this.phase = phase;
     }
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (C) 2021, VMware Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.vmware.safekeeping.external.result;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.vmware.safekeeping.core.command.results.list.ResultActionUpdate;
+import com.vmware.safekeeping.core.command.results.support.OperationState;
+import com.vmware.safekeeping.core.control.info.ExBlockInfo;
+import com.vmware.safekeeping.external.type.BlockInfo;
+
+/**
+ * Changes of a task after a sequence number. Only the changed fields are set.
+ */
+public class TaskUpdate {
+    public static TaskUpdate newInstance(final ResultActionUpdate src) {
+        final TaskUpdate dst = new TaskUpdate();
+        dst.setId(src.getResultActionId());
+        dst.setSeq(src.getSeq());
+        dst.setDone(src.isDone());
+        dst.setState(src.getState());
+        dst.setReason(src.getReason());
+        if (src.getEndDate() != null) {
+            dst.setEndDate(src.getEndDate().getTime());
+        }
+        dst.setProgress(src.getProgress());
+        for (final ExBlockInfo block : src.getBlocks()) {
+            dst.getBlocks().add(BlockInfo.newInstance(block));
+        }
+        return dst;
+    }
+
+    private String id;
+    private long seq;
+    private boolean done;
+    private OperationState state;
+    private String reason;
+    private Date endDate;
+    private Integer progress;
+    private List<BlockInfo> blocks;
+
+    public TaskUpdate() {
+        this.blocks = new ArrayList<>();
+    }
+
+    /**
+     * @return the blocks completed after the requested sequence number
+     */
+    public List<BlockInfo> getBlocks() {
+        return this.blocks;
+    }
+
+    /**
+     * @return the endDate
+     */
+    public Date getEndDate() {
+        return this.endDate;
+    }
+
+    /**
+     * @return the id
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * @return the progress or null if unchanged
+     */
+    public Integer getProgress() {
+        return this.progress;
+    }
+
+    /**
+     * @return the reason
+     */
+    public String getReason() {
+        return this.reason;
+    }
+
+    /**
+     * @return the sequence number to use for the next request
+     */
+    public long getSeq() {
+        return this.seq;
+    }
+
+    /**
+     * @return the state or null if unchanged
+     */
+    public OperationState getState() {
+        return this.state;
+    }
+
+    /**
+     * @return the done
+     */
+    public boolean isDone() {
+        return this.done;
+    }
+
+    /**
+     * @param blocks the blocks to set
+     */
+    public void setBlocks(final List<BlockInfo> blocks) {
+        this.blocks = blocks;
+    }
+
+    /**
+     * @param done the done to set
+     */
+    public void setDone(final boolean done) {
+        this.done = done;
+    }
+
+    /**
+     * @param endDate the endDate to set
+     */
+    public void setEndDate(final Date endDate) {
+        this.endDate = endDate;
+    }
+
+    /**
+     * @param id the id to set
+     */
+    public void setId(final String id) {
+        this.id = id;
+    }
+
+    /**
+     * @param progress the progress to set
+     */
+    public void setProgress(final Integer progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * @param reason the reason to set
+     */
+    public void setReason(final String reason) {
+        this.reason = reason;
+    }
+
+    /**
+     * @param seq the seq to set
+     */
+    public void setSeq(final long seq) {
+        this.seq = seq;
+    }
+
+    /**
+     * @param state the state to set
+     */
+    public void setState(final OperationState state) {
+        this.state = state;
+    }
+}
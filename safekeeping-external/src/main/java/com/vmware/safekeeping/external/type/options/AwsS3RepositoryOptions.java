@@ -40,6 +40,12 @@ public class AwsS3RepositoryOptions extends RepositoryOptions {
 		dst.setBacket(src.backet);
 		dst.setRegion(src.region);
 		dst.setBase64(src.base64);
+		dst.setEndpoint(src.endpoint);
+		dst.setPathStyleAccess(src.pathStyleAccess);
+		dst.setMaxConnections(src.maxConnections);
+		dst.setMaxConcurrentUploads(src.maxConcurrentUploads);
+		dst.setMultipartThreshold(src.multipartThreshold);
+		dst.setMultipartPartSize(src.multipartPartSize);
 
 	}
 
@@ -53,6 +59,12 @@ public class AwsS3RepositoryOptions extends RepositoryOptions {
 		dst.setBacket(src.getBacket());
 		dst.setRegion(src.getRegion());
 		dst.setBase64(src.isBase64());
+		dst.setEndpoint(src.getEndpoint());
+		dst.setPathStyleAccess(src.isPathStyleAccess());
+		dst.setMaxConnections(src.getMaxConnections());
+		dst.setMaxConcurrentUploads(src.getMaxConcurrentUploads());
+		dst.setMultipartThreshold(src.getMultipartThreshold());
+		dst.setMultipartPartSize(src.getMultipartPartSize());
 
 	}
 
@@ -65,6 +77,13 @@ public class AwsS3RepositoryOptions extends RepositoryOptions {
 	private String region;
 	private boolean base64;
 
+	private String endpoint;
+	private boolean pathStyleAccess;
+	private int maxConnections;
+	private int maxConcurrentUploads;
+	private long multipartThreshold;
+	private long multipartPartSize;
+
 	public AwsS3RepositoryOptions convert(CoreAwsS3TargetOptions src) {
 		AwsS3RepositoryOptions.convert(src, this);
 		return this;
@@ -78,6 +97,26 @@ public class AwsS3RepositoryOptions extends RepositoryOptions {
 		return this.backet;
 	}
 
+	public String getEndpoint() {
+		return this.endpoint;
+	}
+
+	public int getMaxConcurrentUploads() {
+		return this.maxConcurrentUploads;
+	}
+
+	public int getMaxConnections() {
+		return this.maxConnections;
+	}
+
+	public long getMultipartPartSize() {
+		return this.multipartPartSize;
+	}
+
+	public long getMultipartThreshold() {
+		return this.multipartThreshold;
+	}
+
 	public String getRegion() {
 		return this.region;
 	}
@@ -90,6 +129,10 @@ public class AwsS3RepositoryOptions extends RepositoryOptions {
 		return this.base64;
 	}
 
+	public boolean isPathStyleAccess() {
+		return this.pathStyleAccess;
+	}
+
 	public void setAccessKey(final String accessKey) {
 		this.accessKey = accessKey;
 	}
@@ -102,6 +145,30 @@ public class AwsS3RepositoryOptions extends RepositoryOptions {
 		this.base64 = base64;
 	}
 
+	public void setEndpoint(final String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	public void setMaxConcurrentUploads(final int maxConcurrentUploads) {
+		this.maxConcurrentUploads = maxConcurrentUploads;
+	}
+
+	public void setMaxConnections(final int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public void setMultipartPartSize(final long multipartPartSize) {
+		this.multipartPartSize = multipartPartSize;
+	}
+
+	public void setMultipartThreshold(final long multipartThreshold) {
+		this.multipartThreshold = multipartThreshold;
+	}
+
+	public void setPathStyleAccess(final boolean pathStyleAccess) {
+		this.pathStyleAccess = pathStyleAccess;
+	}
+
 	public void setRegion(final String region) {
 		this.region = region;
 	}